@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.google.bitcoin.core;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Access to the lock of a {@link Wallet}, which bitcoinj 0.11 keeps protected. Holding it, a check of the wallet and a
+ * change to it happen without block or transaction processing in between, as the network threads take the same lock.
+ * Lives in the package of the wallet for that reason only.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletLock
+{
+	public static ReentrantLock of(@Nonnull final Wallet wallet)
+	{
+		return wallet.lock;
+	}
+}
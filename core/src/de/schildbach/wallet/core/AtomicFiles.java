@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Replaces files as a whole: the content is written to a temporary file next to the file, which is then renamed over it.
+ * Readers never see a half written file, and a crash while writing leaves the previous version in place.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class AtomicFiles
+{
+	public interface Content
+	{
+		void writeTo(@Nonnull Writer writer) throws IOException;
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static void write(@Nonnull final File file, @Nonnull final Content content) throws IOException
+	{
+		write(file, content, false);
+	}
+
+	/**
+	 * Like {@link #write(File, Content)}, but the file is readable by its owner only, and never appears with wider
+	 * permissions. For key backups and the like.
+	 */
+	public static void writePrivate(@Nonnull final File file, @Nonnull final Content content) throws IOException
+	{
+		write(file, content, true);
+	}
+
+	public static void writePrivate(@Nonnull final File file, @Nonnull final String content) throws IOException
+	{
+		writePrivate(file, new Content()
+		{
+			@Override
+			public void writeTo(final Writer writer) throws IOException
+			{
+				writer.write(content);
+			}
+		});
+	}
+
+	/**
+	 * Takes away all permissions from group and others. Directories stay accessible for the owner.
+	 */
+	public static void restrictToOwner(@Nonnull final File file) throws IOException
+	{
+		final boolean directory = file.isDirectory();
+		final boolean restricted = file.setReadable(false, false) && file.setReadable(true, true) && file.setWritable(false, false)
+				&& file.setWritable(true, true) && file.setExecutable(false, false) && (!directory || file.setExecutable(true, true));
+		if (!restricted)
+			throw new IOException("cannot restrict permissions of: " + file);
+	}
+
+	private static void write(@Nonnull final File file, @Nonnull final Content content, final boolean restricted) throws IOException
+	{
+		final File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		if (tempFile.exists() && !tempFile.delete())
+			throw new IOException("cannot delete: " + tempFile);
+
+		if (restricted)
+		{
+			if (!tempFile.createNewFile())
+				throw new IOException("cannot create: " + tempFile);
+			restrictToOwner(tempFile);
+		}
+
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8);
+		try
+		{
+			content.writeTo(writer);
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		// on some platforms, renaming does not replace an existing file
+		if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file)))
+			throw new IOException("cannot rename " + tempFile + " to " + file);
+	}
+}
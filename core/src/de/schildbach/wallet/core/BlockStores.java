@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.CheckpointManager;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.store.BlockStoreException;
+import com.google.bitcoin.store.SPVBlockStore;
+
+/**
+ * Opens the block store that wallets are synced against.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class BlockStores
+{
+	public interface CheckpointsSource
+	{
+		InputStream open() throws IOException;
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(BlockStores.class);
+
+	/**
+	 * Opens the block store kept in the given file. If there is no such file yet, the wallets are reset, as they need to
+	 * see their transactions again on the new chain, and the new store starts at the last checkpoint before the earliest
+	 * key of the wallets was created. Clearing transactions fires no wallet events.
+	 *
+	 * @param checkpoints
+	 *            where to read checkpoints from, or null to start a new store at the genesis block
+	 */
+	public static SPVBlockStore open(@Nonnull final NetworkParameters params, @Nonnull final File file,
+			@Nonnull final Collection<Wallet> wallets, @Nullable final CheckpointsSource checkpoints) throws BlockStoreException
+	{
+		final boolean fileExists = file.exists();
+
+		if (!fileExists)
+		{
+			log.info("blockchain does not exist, resetting {} wallets", wallets.size());
+
+			for (final Wallet wallet : wallets)
+			{
+				wallet.clearTransactions(0);
+				wallet.setLastBlockSeenHeight(-1); // magic value
+				wallet.setLastBlockSeenHash(null);
+			}
+		}
+
+		final SPVBlockStore blockStore = new SPVBlockStore(params, file);
+		blockStore.getChainHead(); // detect corruptions as early as possible
+
+		final long earliestKeyCreationTime = earliestKeyCreationTime(wallets);
+
+		if (!fileExists && earliestKeyCreationTime > 0 && checkpoints != null)
+		{
+			try
+			{
+				final InputStream is = checkpoints.open();
+				try
+				{
+					CheckpointManager.checkpoint(params, is, blockStore, earliestKeyCreationTime);
+				}
+				finally
+				{
+					is.close();
+				}
+			}
+			catch (final IOException x)
+			{
+				log.error("problem reading checkpoints, continuing without", x);
+			}
+		}
+
+		return blockStore;
+	}
+
+	public static long earliestKeyCreationTime(@Nonnull final Collection<Wallet> wallets)
+	{
+		long earliestKeyCreationTime = Long.MAX_VALUE;
+		for (final Wallet wallet : wallets)
+			earliestKeyCreationTime = Math.min(earliestKeyCreationTime, wallet.getEarliestKeyCreationTime());
+		return earliestKeyCreationTime;
+	}
+}
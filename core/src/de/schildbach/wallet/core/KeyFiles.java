@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.DumpedPrivateKey;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+
+/**
+ * Key backup format: one base58 private key per line, optionally followed by its creation time in ISO 8601. Empty
+ * lines and lines starting with '#' are skipped.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class KeyFiles
+{
+	public static void writeKeys(@Nonnull final Writer out, @Nonnull final List<ECKey> keys, @Nonnull final NetworkParameters params)
+			throws IOException
+	{
+		out.write("# KEEP YOUR PRIVATE KEYS SAFE! Anyone who can read this can spend your Bitcoins.\n");
+
+		appendKeys(out, keys, params);
+	}
+
+	/**
+	 * Writes keys in the format of {@link #writeKeys(Writer, List, NetworkParameters)}, but without the header, for
+	 * appending to a file.
+	 */
+	public static void appendKeys(@Nonnull final Writer out, @Nonnull final List<ECKey> keys, @Nonnull final NetworkParameters params)
+			throws IOException
+	{
+		final DateFormat format = newDateTimeFormat();
+
+		for (final ECKey key : keys)
+		{
+			out.write(key.getPrivateKeyEncoded(params).toString());
+			if (key.getCreationTimeSeconds() != 0)
+			{
+				out.write(' ');
+				out.write(format.format(new Date(key.getCreationTimeSeconds() * 1000)));
+			}
+			out.write('\n');
+		}
+	}
+
+	public static List<ECKey> readKeys(@Nonnull final BufferedReader in, @Nonnull final NetworkParameters params) throws IOException
+	{
+		try
+		{
+			final DateFormat format = newDateTimeFormat();
+
+			final List<ECKey> keys = new LinkedList<ECKey>();
+
+			while (true)
+			{
+				final String line = in.readLine();
+				if (line == null)
+					break; // eof
+				if (line.trim().isEmpty() || line.charAt(0) == '#')
+					continue; // skip comment
+
+				final String[] parts = line.split(" ");
+
+				final ECKey key = new DumpedPrivateKey(params, parts[0]).getKey();
+				key.setCreationTimeSeconds(parts.length >= 2 ? format.parse(parts[1]).getTime() / 1000 : 0);
+
+				keys.add(key);
+			}
+
+			return keys;
+		}
+		catch (final AddressFormatException x)
+		{
+			throw new IOException("AddressFormatException when reading keys", x);
+		}
+		catch (final ParseException x)
+		{
+			throw new IOException("ParseException when reading keys", x);
+		}
+	}
+
+	private static DateFormat newDateTimeFormat()
+	{
+		final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.bitcoin.core.AbstractBlockChain;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.PeerGroup;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.net.discovery.PeerDiscovery;
+
+/**
+ * Sets up the peer group that syncs wallets against the block chain, the same way for the app and the daemon.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class PeerGroups
+{
+	/**
+	 * Creates a peer group for the given wallets, whose bloom filters are merged. A trusted peer is put in front of the
+	 * given discoveries, or is connected to exclusively. The peer group is not started yet, so callers can add their
+	 * own listeners first.
+	 *
+	 * @param trustedPeerHost
+	 *            host of the trusted peer, or null if there is none
+	 */
+	public static PeerGroup create(@Nonnull final NetworkParameters params, @Nonnull final AbstractBlockChain blockChain,
+			@Nonnull final Collection<Wallet> wallets, @Nonnull final String userAgent, @Nonnull final String version,
+			@Nullable final String trustedPeerHost, final boolean trustedPeerOnly, final int maxConnections,
+			@Nonnull final PeerDiscovery... discoveries)
+	{
+		final PeerGroup peerGroup = new PeerGroup(params, blockChain);
+		for (final Wallet wallet : wallets)
+			peerGroup.addWallet(wallet);
+		peerGroup.setUserAgent(userAgent, version);
+
+		final boolean connectTrustedPeerOnly = trustedPeerHost != null && trustedPeerOnly;
+		peerGroup.setMaxConnections(connectTrustedPeerOnly ? 1 : maxConnections);
+		peerGroup.addPeerDiscovery(new TrustedPeerDiscovery(params, trustedPeerHost, connectTrustedPeerOnly, maxConnections, discoveries));
+
+		return peerGroup;
+	}
+
+	/**
+	 * Stops a peer group created by {@link #create}, after detaching the wallets from it.
+	 */
+	public static void stop(@Nonnull final PeerGroup peerGroup, @Nonnull final Collection<Wallet> wallets, final boolean wait)
+	{
+		for (final Wallet wallet : wallets)
+			peerGroup.removeWallet(wallet);
+
+		if (wait)
+			peerGroup.stopAndWait();
+		else
+			peerGroup.stop();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.net.discovery.PeerDiscovery;
+import com.google.bitcoin.net.discovery.PeerDiscoveryException;
+
+/**
+ * Offers an optional trusted peer along with, or instead of, the peers found by other discoveries.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class TrustedPeerDiscovery implements PeerDiscovery
+{
+	private final NetworkParameters params;
+	@Nullable
+	private final String trustedPeerHost;
+	private final boolean trustedPeerOnly;
+	private final int maxConnectedPeers;
+	private final List<PeerDiscovery> discoveries;
+
+	private static final Logger log = LoggerFactory.getLogger(TrustedPeerDiscovery.class);
+
+	/**
+	 * @param trustedPeerHost
+	 *            host of the trusted peer, or null if there is none
+	 * @param trustedPeerOnly
+	 *            if the other discoveries are not to be asked at all
+	 * @param maxConnectedPeers
+	 *            number of connections the peer group makes
+	 */
+	public TrustedPeerDiscovery(@Nonnull final NetworkParameters params, @Nullable final String trustedPeerHost, final boolean trustedPeerOnly,
+			final int maxConnectedPeers, @Nonnull final PeerDiscovery... discoveries)
+	{
+		this.params = params;
+		this.trustedPeerHost = trustedPeerHost;
+		this.trustedPeerOnly = trustedPeerOnly;
+		this.maxConnectedPeers = maxConnectedPeers;
+		this.discoveries = Arrays.asList(discoveries);
+	}
+
+	@Override
+	public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit) throws PeerDiscoveryException
+	{
+		final List<InetSocketAddress> peers = new LinkedList<InetSocketAddress>();
+
+		boolean needsTrimPeersWorkaround = false;
+
+		if (trustedPeerHost != null)
+		{
+			log.info("trusted peer '" + trustedPeerHost + "'" + (trustedPeerOnly ? " only" : ""));
+
+			final InetSocketAddress addr = new InetSocketAddress(trustedPeerHost, params.getPort());
+			if (addr.getAddress() != null)
+			{
+				peers.add(addr);
+				needsTrimPeersWorkaround = true;
+			}
+		}
+
+		if (!trustedPeerOnly)
+			for (final PeerDiscovery discovery : discoveries)
+				peers.addAll(Arrays.asList(discovery.getPeers(timeoutValue, timeoutUnit)));
+
+		// workaround because PeerGroup will shuffle peers
+		if (needsTrimPeersWorkaround)
+			while (peers.size() > 1 && peers.size() >= maxConnectedPeers)
+				peers.remove(peers.size() - 1);
+
+		return peers.toArray(new InetSocketAddress[0]);
+	}
+
+	@Override
+	public void shutdown()
+	{
+		for (final PeerDiscovery discovery : discoveries)
+			discovery.shutdown();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+
+import org.bitcoinj.wallet.Protos;
+import org.litecoin.LitecoinWallet;
+
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.store.UnreadableWalletException;
+import com.google.bitcoin.store.WalletProtobufSerializer;
+
+/**
+ * Reads wallets from their protobuf files.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletLoader
+{
+	/**
+	 * @throws UnreadableWalletException
+	 *             if the file cannot be parsed, belongs to other network parameters or holds an inconsistent wallet
+	 */
+	public static Wallet load(@Nonnull final NetworkParameters params, @Nonnull final File file) throws IOException, UnreadableWalletException
+	{
+		final InputStream is = new FileInputStream(file);
+
+		try
+		{
+			final WalletProtobufSerializer serializer = new WalletProtobufSerializer();
+			final Protos.Wallet walletProto;
+			try
+			{
+				walletProto = serializer.parseToProto(is);
+			}
+			catch (final IOException x)
+			{
+				throw new UnreadableWalletException("could not parse input stream to protobuf", x);
+			}
+
+			final String paramsId = walletProto.getNetworkIdentifier();
+			if (!params.getId().equals(paramsId))
+				throw new UnreadableWalletException("bad wallet network parameters: " + paramsId);
+
+			final Wallet wallet = new LitecoinWallet(params);
+			serializer.readWallet(walletProto, wallet);
+
+			if (!wallet.isConsistent())
+				throw new UnreadableWalletException("inconsistent wallet: " + file);
+
+			return wallet;
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class AtomicFilesTest
+{
+	private File dir;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("atomic", "");
+		dir.delete();
+		dir.mkdir();
+		file = new File(dir, "file");
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void writeReplaces() throws Exception
+	{
+		AtomicFiles.writePrivate(file, "first\n");
+		AtomicFiles.writePrivate(file, "second\n");
+
+		assertEquals("second", read(file));
+		assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void failedWriteKeepsPreviousVersion() throws Exception
+	{
+		AtomicFiles.writePrivate(file, "first\n");
+
+		try
+		{
+			AtomicFiles.write(file, new AtomicFiles.Content()
+			{
+				@Override
+				public void writeTo(final Writer writer) throws IOException
+				{
+					writer.write("half");
+					throw new IOException("disk full");
+				}
+			});
+			fail();
+		}
+		catch (final IOException x)
+		{
+			// expected
+		}
+
+		assertEquals("first", read(file));
+	}
+
+	@Test
+	public void privateFileIsOwnerOnly() throws Exception
+	{
+		AtomicFiles.writePrivate(file, "secret\n");
+
+		assertTrue(file.canRead());
+		assertTrue(file.canWrite());
+		assertFalse(file.canExecute());
+	}
+
+	private static String read(final File file) throws IOException
+	{
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try
+		{
+			return reader.readLine();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
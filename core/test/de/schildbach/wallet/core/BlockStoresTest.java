@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.AbstractBlockChain.NewBlockType;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.store.SPVBlockStore;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class BlockStoresTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private File dir;
+	private File file;
+	private Wallet wallet;
+	private int checkpointsOpened;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("blockstore", "");
+		dir.delete();
+		dir.mkdir();
+		file = new File(dir, "blockchain");
+
+		wallet = new Wallet(PARAMS);
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+
+		final Transaction tx = new Transaction(PARAMS);
+		tx.addInput(new Transaction(PARAMS).addOutput(BigInteger.ONE, new ECKey().toAddress(PARAMS)));
+		tx.addOutput(BigInteger.ONE, key.toAddress(PARAMS));
+		wallet.receiveFromBlock(tx, new StoredBlock(PARAMS.getGenesisBlock().cloneAsHeader(), BigInteger.ONE, 1),
+				NewBlockType.BEST_CHAIN, 0);
+		wallet.setLastBlockSeenHeight(1);
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void newStoreResetsWallets() throws Exception
+	{
+		final SPVBlockStore blockStore = BlockStores.open(PARAMS, file, Collections.singletonList(wallet), null);
+
+		assertEquals(0, blockStore.getChainHead().getHeight());
+		assertEquals(0, wallet.getTransactions(true).size());
+		assertEquals(-1, wallet.getLastBlockSeenHeight());
+		blockStore.close();
+	}
+
+	@Test
+	public void existingStoreKeepsWallets() throws Exception
+	{
+		BlockStores.open(PARAMS, file, Collections.<Wallet> emptyList(), null).close();
+
+		final SPVBlockStore blockStore = BlockStores.open(PARAMS, file, Collections.singletonList(wallet), checkpoints());
+
+		assertEquals(1, wallet.getTransactions(true).size());
+		assertEquals(1, wallet.getLastBlockSeenHeight());
+		assertEquals(0, checkpointsOpened);
+		blockStore.close();
+	}
+
+	@Test
+	public void unreadableCheckpointsAreSkipped() throws Exception
+	{
+		final SPVBlockStore blockStore = BlockStores.open(PARAMS, file, Collections.singletonList(wallet), checkpoints());
+
+		assertEquals(1, checkpointsOpened);
+		assertEquals(0, blockStore.getChainHead().getHeight());
+		blockStore.close();
+	}
+
+	@Test
+	public void earliestKeyCreationTime() throws Exception
+	{
+		final Wallet other = new Wallet(PARAMS);
+		final ECKey key = new ECKey();
+		key.setCreationTimeSeconds(1388534400);
+		other.addKey(key);
+
+		assertEquals(1388534400, BlockStores.earliestKeyCreationTime(Arrays.asList(wallet, other)));
+	}
+
+	private BlockStores.CheckpointsSource checkpoints()
+	{
+		return new BlockStores.CheckpointsSource()
+		{
+			@Override
+			public InputStream open() throws IOException
+			{
+				checkpointsOpened++;
+				throw new IOException("no checkpoints");
+			}
+		};
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class KeyFilesTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	@Test
+	public void writeAndRead() throws Exception
+	{
+		final ECKey key1 = new ECKey();
+		key1.setCreationTimeSeconds(1388534400); // 2014-01-01
+		final ECKey key2 = new ECKey();
+		key2.setCreationTimeSeconds(0);
+
+		final StringWriter out = new StringWriter();
+		KeyFiles.writeKeys(out, Arrays.asList(key1, key2), PARAMS);
+
+		assertTrue(out.toString().startsWith("#"));
+		assertTrue(out.toString().contains(" 2014-01-01T00:00:00Z\n"));
+
+		final List<ECKey> keys = read(out.toString());
+
+		assertEquals(2, keys.size());
+		assertArrayEquals(key1.getPrivKeyBytes(), keys.get(0).getPrivKeyBytes());
+		assertEquals(1388534400, keys.get(0).getCreationTimeSeconds());
+		assertArrayEquals(key2.getPrivKeyBytes(), keys.get(1).getPrivKeyBytes());
+		assertEquals(0, keys.get(1).getCreationTimeSeconds());
+	}
+
+	@Test
+	public void appendWithoutHeader() throws Exception
+	{
+		final StringWriter out = new StringWriter();
+		KeyFiles.writeKeys(out, Arrays.asList(new ECKey()), PARAMS);
+		final String header = out.toString().substring(0, out.toString().indexOf('\n') + 1);
+		KeyFiles.appendKeys(out, Arrays.asList(new ECKey()), PARAMS);
+
+		assertEquals(out.toString().indexOf('#'), out.toString().lastIndexOf('#'));
+		assertTrue(out.toString().startsWith(header));
+		assertEquals(2, read(out.toString()).size());
+	}
+
+	@Test
+	public void skipCommentsAndEmptyLines() throws Exception
+	{
+		final StringWriter out = new StringWriter();
+		KeyFiles.appendKeys(out, Arrays.asList(new ECKey()), PARAMS);
+
+		assertEquals(1, read("# comment\n\n   \n" + out).size());
+	}
+
+	@Test
+	public void rejectBadKey() throws Exception
+	{
+		try
+		{
+			read("notakey\n");
+			fail();
+		}
+		catch (final IOException x)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void rejectBadCreationTime() throws Exception
+	{
+		final ECKey key = new ECKey();
+		key.setCreationTimeSeconds(0);
+		final StringWriter out = new StringWriter();
+		KeyFiles.appendKeys(out, Arrays.asList(key), PARAMS);
+
+		try
+		{
+			read(out.toString().trim() + " yesterday\n");
+			fail();
+		}
+		catch (final IOException x)
+		{
+			// expected
+		}
+	}
+
+	private List<ECKey> read(final String keys) throws IOException
+	{
+		return KeyFiles.readKeys(new BufferedReader(new StringReader(keys)), PARAMS);
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.BlockChain;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.PeerGroup;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.store.MemoryBlockStore;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class PeerGroupsTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private BlockChain blockChain;
+	private Wallet wallet1;
+	private Wallet wallet2;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		blockChain = new BlockChain(PARAMS, new MemoryBlockStore(PARAMS));
+
+		wallet1 = new Wallet(PARAMS);
+		wallet1.addKey(new ECKey());
+		wallet2 = new Wallet(PARAMS);
+		wallet2.addKey(new ECKey());
+	}
+
+	@Test
+	public void connectsTrustedPeerAmongOthers() throws Exception
+	{
+		final PeerGroup peerGroup = PeerGroups.create(PARAMS, blockChain, Arrays.asList(wallet1, wallet2), "test", "1.0", "localhost", false,
+				6);
+
+		assertEquals(6, peerGroup.getMaxConnections());
+	}
+
+	@Test
+	public void connectsTrustedPeerOnly() throws Exception
+	{
+		final PeerGroup peerGroup = PeerGroups.create(PARAMS, blockChain, Arrays.asList(wallet1), "test", "1.0", "localhost", true, 6);
+
+		assertEquals(1, peerGroup.getMaxConnections());
+	}
+
+	@Test
+	public void trustedPeerOnlyNeedsTrustedPeer() throws Exception
+	{
+		final PeerGroup peerGroup = PeerGroups.create(PARAMS, blockChain, Arrays.asList(wallet1), "test", "1.0", null, true, 6);
+
+		assertEquals(6, peerGroup.getMaxConnections());
+	}
+}
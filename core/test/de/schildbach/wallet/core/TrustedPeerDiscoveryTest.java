@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.net.discovery.PeerDiscovery;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class TrustedPeerDiscoveryTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+	private static final String TRUSTED_PEER = "127.0.0.1";
+
+	@Test
+	public void withoutTrustedPeer() throws Exception
+	{
+		final FixedDiscovery discovery1 = new FixedDiscovery(3);
+		final FixedDiscovery discovery2 = new FixedDiscovery(2);
+
+		final InetSocketAddress[] peers = new TrustedPeerDiscovery(PARAMS, null, false, 4, discovery1, discovery2).getPeers(10,
+				TimeUnit.SECONDS);
+
+		assertEquals(5, peers.length);
+	}
+
+	@Test
+	public void trustedPeerFirst() throws Exception
+	{
+		final InetSocketAddress[] peers = new TrustedPeerDiscovery(PARAMS, TRUSTED_PEER, false, 4, new FixedDiscovery(10)).getPeers(10,
+				TimeUnit.SECONDS);
+
+		// trimmed, so that the trusted peer survives the shuffle
+		assertEquals(3, peers.length);
+		assertEquals(TRUSTED_PEER, peers[0].getAddress().getHostAddress());
+		assertEquals(PARAMS.getPort(), peers[0].getPort());
+	}
+
+	@Test
+	public void trustedPeerOnly() throws Exception
+	{
+		final FixedDiscovery discovery = new FixedDiscovery(10);
+
+		final InetSocketAddress[] peers = new TrustedPeerDiscovery(PARAMS, TRUSTED_PEER, true, 1, discovery).getPeers(10, TimeUnit.SECONDS);
+
+		assertEquals(1, peers.length);
+		assertEquals(TRUSTED_PEER, peers[0].getAddress().getHostAddress());
+		assertEquals(0, discovery.numCalls);
+	}
+
+	@Test
+	public void shutdownAll() throws Exception
+	{
+		final FixedDiscovery discovery1 = new FixedDiscovery(1);
+		final FixedDiscovery discovery2 = new FixedDiscovery(1);
+
+		new TrustedPeerDiscovery(PARAMS, null, false, 4, discovery1, discovery2).shutdown();
+
+		assertTrue(discovery1.shutdown);
+		assertTrue(discovery2.shutdown);
+	}
+
+	private static final class FixedDiscovery implements PeerDiscovery
+	{
+		private final int numPeers;
+		private int numCalls = 0;
+		private boolean shutdown = false;
+
+		public FixedDiscovery(final int numPeers)
+		{
+			this.numPeers = numPeers;
+		}
+
+		@Override
+		public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit)
+		{
+			numCalls++;
+
+			final InetSocketAddress[] peers = new InetSocketAddress[numPeers];
+			for (int i = 0; i < numPeers; i++)
+				peers[i] = new InetSocketAddress("10.0.0." + (i + 1), PARAMS.getPort());
+			return peers;
+		}
+
+		@Override
+		public void shutdown()
+		{
+			shutdown = true;
+		}
+	}
+}
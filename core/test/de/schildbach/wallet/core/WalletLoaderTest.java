@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.params.MainNetParams;
+import com.google.bitcoin.store.UnreadableWalletException;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class WalletLoaderTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile("wallet", "");
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception
+	{
+		final Wallet wallet = new Wallet(PARAMS);
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+		wallet.saveToFile(file);
+
+		final Wallet loaded = WalletLoader.load(PARAMS, file);
+
+		assertEquals(1, loaded.getKeychainSize());
+		assertArrayEquals(key.getPubKey(), loaded.getKeys().get(0).getPubKey());
+	}
+
+	@Test
+	public void rejectOtherNetwork() throws Exception
+	{
+		final Wallet wallet = new Wallet(MainNetParams.get());
+		wallet.addKey(new ECKey());
+		wallet.saveToFile(file);
+
+		assertUnreadable();
+	}
+
+	@Test
+	public void rejectGarbage() throws Exception
+	{
+		final OutputStream os = new FileOutputStream(file);
+		os.write("garbage".getBytes("US-ASCII"));
+		os.close();
+
+		assertUnreadable();
+	}
+
+	private void assertUnreadable() throws Exception
+	{
+		try
+		{
+			WalletLoader.load(PARAMS, file);
+			fail();
+		}
+		catch (final UnreadableWalletException x)
+		{
+			// expected
+		}
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerGroup;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+
+import de.schildbach.wallet.core.AtomicFiles;
+
+/**
+ * Control API of the daemon. Listens on the loopback interface only; clients send one JSON object per line, e.g.
+ * <code>{"id":1,"token":"...","method":"status"}</code>, and get one JSON object per line back, carrying either a
+ * <code>result</code> or an <code>error</code> along with the request's <code>id</code>.
+ *
+ * As any local user can connect to the port, every request has to carry the token from the cookie file. The token is
+ * generated at startup, and the cookie file is readable by the user running the daemon only and deleted on close.
+ *
+ * <pre>
+ * status      chain height, peers, download progress and throughput
+ * balance     estimated and available balance
+ * peers       connected peers
+ * newaddress  adds a key to the wallet, backs it up and returns its address
+ * stop        shuts down the daemon
+ * </pre>
+ *
+ * @author Litecoin Dev Team
+ */
+public final class ControlServer implements Runnable
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final WalletEngine engine;
+	private final File cookieFile;
+	private final byte[] token;
+	private final ServerSocket serverSocket;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private static final Logger log = LoggerFactory.getLogger(ControlServer.class);
+
+	/**
+	 * @param port
+	 *            port to listen on, or 0 for any free port
+	 */
+	public ControlServer(@Nonnull final WalletEngine engine, final int port, @Nonnull final File cookieFile) throws IOException
+	{
+		this.engine = engine;
+		this.cookieFile = cookieFile;
+
+		final byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		final String token = Utils.bytesToHexString(random);
+		this.token = token.getBytes(UTF_8);
+		AtomicFiles.writePrivate(cookieFile, token + "\n");
+
+		this.serverSocket = new ServerSocket(port, 8, InetAddress.getByName("127.0.0.1"));
+
+		log.info("control api listening on {}", serverSocket.getLocalSocketAddress());
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			while (true)
+			{
+				final Socket socket = serverSocket.accept();
+				final Thread thread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						serve(socket);
+					}
+				}, "control connection");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+		catch (final SocketException x)
+		{
+			// closed by stop
+		}
+		catch (final IOException x)
+		{
+			log.error("problem accepting control connection", x);
+		}
+	}
+
+	/**
+	 * Blocks until a client asked the daemon to stop.
+	 */
+	public void awaitStop() throws InterruptedException
+	{
+		stopped.await();
+	}
+
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	public void close()
+	{
+		try
+		{
+			serverSocket.close();
+		}
+		catch (final IOException x)
+		{
+			// swallow
+		}
+
+		cookieFile.delete();
+	}
+
+	private void serve(@Nonnull final Socket socket)
+	{
+		try
+		{
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+			final Writer writer = new OutputStreamWriter(socket.getOutputStream(), UTF_8);
+
+			String line;
+			while (null != (line = reader.readLine()))
+			{
+				if (line.trim().length() == 0)
+					continue;
+
+				writer.write(handle(line).toString());
+				writer.write('\n');
+				writer.flush();
+			}
+		}
+		catch (final IOException x)
+		{
+			log.info("control connection closed", x);
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (final IOException x)
+			{
+				// swallow
+			}
+		}
+	}
+
+	private JSONObject handle(@Nonnull final String line)
+	{
+		try
+		{
+			final JSONObject response = new JSONObject();
+			Object id = null;
+
+			try
+			{
+				final JSONObject request = new JSONObject(line);
+				id = request.opt("id");
+
+				final String requestToken = request.optString("token", null);
+				if (requestToken == null || !MessageDigest.isEqual(token, requestToken.getBytes(UTF_8)))
+					response.put("error", "unauthorized");
+				else
+					response.put("result", dispatch(request.getString("method")));
+			}
+			catch (final JSONException x)
+			{
+				response.put("error", "bad request: " + x.getMessage());
+			}
+			catch (final IllegalArgumentException x)
+			{
+				response.put("error", x.getMessage());
+			}
+			catch (final IOException x)
+			{
+				log.error("problem handling control request", x);
+				response.put("error", x.getMessage());
+			}
+
+			response.put("id", id != null ? id : JSONObject.NULL);
+			return response;
+		}
+		catch (final JSONException x)
+		{
+			throw new RuntimeException(x);
+		}
+	}
+
+	private Object dispatch(@Nonnull final String method) throws JSONException, IOException
+	{
+		if ("status".equals(method))
+			return status();
+		else if ("balance".equals(method))
+			return balance();
+		else if ("peers".equals(method))
+			return peers();
+		else if ("newaddress".equals(method))
+			return newAddress();
+		else if ("stop".equals(method))
+			return stop();
+		else
+			throw new IllegalArgumentException("unknown method: " + method);
+	}
+
+	private JSONObject status() throws JSONException
+	{
+		final StoredBlock chainHead = engine.getBlockChain().getChainHead();
+		final PeerGroup peerGroup = engine.getPeerGroup();
+		final Long downloadTimeMs = engine.getDownloadTimeMs();
+
+		final JSONObject status = new JSONObject();
+		status.put("bestChainHeight", chainHead.getHeight());
+		status.put("bestChainTime", chainHead.getHeader().getTimeSeconds());
+		status.put("mostCommonChainHeight", peerGroup != null ? peerGroup.getMostCommonChainHeight() : 0);
+		status.put("peers", peerGroup != null ? peerGroup.numConnectedPeers() : 0);
+		status.put("downloading", downloadTimeMs == null);
+		if (downloadTimeMs != null)
+			status.put("downloadTimeMs", downloadTimeMs.longValue());
+		status.put("blocksDownloaded", engine.getBlocksDownloaded());
+		status.put("blocksPerSecond", engine.getBlocksPerSecond());
+		status.put("transactionsReceived", engine.getTransactionsReceived());
+		status.put("transactions", engine.getWallet().getTransactions(true).size());
+		status.put("keys", engine.getWallet().getKeychainSize());
+		return status;
+	}
+
+	private JSONObject balance() throws JSONException
+	{
+		final Wallet wallet = engine.getWallet();
+
+		final JSONObject balance = new JSONObject();
+		balance.put("estimated", Utils.bitcoinValueToFriendlyString(wallet.getBalance(BalanceType.ESTIMATED)));
+		balance.put("available", Utils.bitcoinValueToFriendlyString(wallet.getBalance(BalanceType.AVAILABLE)));
+		return balance;
+	}
+
+	private JSONArray peers() throws JSONException
+	{
+		final JSONArray peers = new JSONArray();
+
+		final PeerGroup peerGroup = engine.getPeerGroup();
+		if (peerGroup == null)
+			return peers;
+
+		for (final Peer peer : peerGroup.getConnectedPeers())
+		{
+			final JSONObject p = new JSONObject();
+			p.put("address", peer.getAddress().toString());
+			p.put("subVer", peer.getPeerVersionMessage().subVer);
+			p.put("bestHeight", peer.getBestHeight());
+			p.put("pingMs", peer.getLastPingTime());
+			peers.put(p);
+		}
+
+		return peers;
+	}
+
+	private String newAddress() throws IOException
+	{
+		return engine.newAddress().toString();
+	}
+
+	private String stop()
+	{
+		log.info("stop requested via control api");
+		stopped.countDown();
+		return "stopping";
+	}
+}
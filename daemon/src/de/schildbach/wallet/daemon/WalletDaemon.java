@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.daemon;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.litecoin.LitecoinParams;
+
+/**
+ * Headless daemon that keeps a wallet in sync with the network, for running the wallet engine on servers.
+ *
+ * <pre>
+ * usage: WalletDaemon -dir=&lt;data dir&gt; [-port=&lt;control port&gt;] [-checkpoints=&lt;file&gt;]
+ *                     [-trusted-peer=&lt;host&gt;] [-max-connections=&lt;n&gt;]
+ * </pre>
+ *
+ * The data directory holds the wallet, key backup and block store, under the same names as in the app. A missing wallet
+ * is created. The token for the control API is written to <code>control.cookie</code> in the data directory.
+ * The daemon runs until it is asked to stop via the control API (see {@link ControlServer}) or the JVM shuts down.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletDaemon
+{
+	private static final int DEFAULT_PORT = 9339;
+	private static final int DEFAULT_MAX_CONNECTIONS = 6;
+	private static final String COOKIE_FILENAME = "control.cookie";
+
+	public static void main(final String[] args) throws Exception
+	{
+		final Map<String, String> options = parseOptions(args);
+		final String dir = options.get("dir");
+
+		if (dir == null)
+		{
+			System.err.println("usage: WalletDaemon -dir=<data dir> [-port=<control port>] [-checkpoints=<file>]");
+			System.err.println("                    [-trusted-peer=<host>] [-max-connections=<n>]");
+			System.exit(1);
+			return;
+		}
+
+		final int port = options.containsKey("port") ? Integer.parseInt(options.get("port")) : DEFAULT_PORT;
+		final File checkpoints = options.containsKey("checkpoints") ? new File(options.get("checkpoints")) : null;
+		final int maxConnections = options.containsKey("max-connections") ? Integer.parseInt(options.get("max-connections"))
+				: DEFAULT_MAX_CONNECTIONS;
+
+		final File dataDir = new File(dir);
+		if (!dataDir.isDirectory() && !dataDir.mkdirs())
+		{
+			System.err.println("cannot create data dir: " + dataDir);
+			System.exit(2);
+			return;
+		}
+
+		final WalletEngine engine = new WalletEngine(LitecoinParams.get(), dataDir, checkpoints, options.get("trusted-peer"), maxConnections);
+		final ControlServer controlServer = new ControlServer(engine, port, new File(dataDir, COOKIE_FILENAME));
+
+		final Thread shutdownHook = new Thread("shutdown")
+		{
+			@Override
+			public void run()
+			{
+				controlServer.close();
+				engine.stop();
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+		engine.start();
+
+		final Thread controlThread = new Thread(controlServer, "control server");
+		controlThread.setDaemon(true);
+		controlThread.start();
+
+		controlServer.awaitStop();
+
+		// System.exit() runs the shutdown hook, which stops everything
+		System.exit(0);
+	}
+
+	private static Map<String, String> parseOptions(@Nonnull final String[] args)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+
+		for (final String arg : args)
+		{
+			if (!arg.startsWith("-"))
+				throw new IllegalArgumentException("cannot parse argument: " + arg);
+
+			final int eq = arg.indexOf('=');
+			if (eq == -1)
+				options.put(arg.substring(1), "");
+			else
+				options.put(arg.substring(1, eq), arg.substring(eq + 1));
+		}
+
+		return options;
+	}
+}
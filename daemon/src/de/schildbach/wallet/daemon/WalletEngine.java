@@ -0,0 +1,373 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.daemon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.litecoin.LitecoinWallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.AbstractPeerEventListener;
+import com.google.bitcoin.core.AbstractWalletEventListener;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.BlockChain;
+import com.google.bitcoin.core.DownloadListener;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerGroup;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.net.discovery.DnsDiscovery;
+import com.google.bitcoin.store.BlockStore;
+import com.google.bitcoin.store.BlockStoreException;
+import com.google.bitcoin.store.UnreadableWalletException;
+import com.google.bitcoin.utils.Threading;
+import com.google.bitcoin.wallet.WalletFiles;
+
+import de.schildbach.wallet.core.AtomicFiles;
+import de.schildbach.wallet.core.BlockStores;
+import de.schildbach.wallet.core.KeyFiles;
+import de.schildbach.wallet.core.PeerGroups;
+import de.schildbach.wallet.core.WalletLoader;
+
+/**
+ * Wallet, block store and peer group, set up with the same core as the app's blockchain service. Uses the same file
+ * names as the app, so an app's data directory can be synced as is. Every key of the wallet is backed up to a file only
+ * the owner can read, in the format of the app's key backups. The wallet file, which holds the same keys, and the
+ * temporary files it is saved through are owner-only as well.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletEngine
+{
+	private static final String WALLET_FILENAME_PROTOBUF = "wallet-protobuflitecoin";
+	private static final String BLOCKCHAIN_FILENAME = "blockchainlitecoin";
+	static final String KEY_BACKUP_FILENAME = "key-backup-base58litecoin";
+	private static final String USER_AGENT = "Litecoin Wallet Daemon";
+	private static final String VERSION = "1.0";
+
+	private final NetworkParameters params;
+	private final File walletFile;
+	private final File blockChainFile;
+	private final File keyBackupFile;
+	@Nullable
+	private final File checkpointsFile;
+	@Nullable
+	private final String trustedPeerHost;
+	private final int maxConnections;
+
+	private Wallet wallet;
+	private BlockStore blockStore;
+	private BlockChain blockChain;
+	private PeerGroup peerGroup;
+
+	private final AtomicLong blocksDownloaded = new AtomicLong();
+	private final AtomicLong transactionsReceived = new AtomicLong();
+	private volatile long startedAt = 0;
+	private volatile long downloadDoneAt = 0;
+
+	private static final Logger log = LoggerFactory.getLogger(WalletEngine.class);
+
+	public WalletEngine(@Nonnull final NetworkParameters params, @Nonnull final File dir, @Nullable final File checkpointsFile,
+			@Nullable final String trustedPeerHost, final int maxConnections)
+	{
+		this.params = params;
+		this.walletFile = new File(dir, WALLET_FILENAME_PROTOBUF);
+		this.blockChainFile = new File(dir, BLOCKCHAIN_FILENAME);
+		this.keyBackupFile = new File(dir, KEY_BACKUP_FILENAME);
+		this.checkpointsFile = checkpointsFile;
+		this.trustedPeerHost = trustedPeerHost;
+		this.maxConnections = maxConnections;
+	}
+
+	public void start() throws IOException, BlockStoreException, UnreadableWalletException
+	{
+		open();
+		connect();
+	}
+
+	/**
+	 * Loads or creates the wallet and opens the block chain, without going online.
+	 */
+	public void open() throws IOException, BlockStoreException, UnreadableWalletException
+	{
+		startedAt = System.currentTimeMillis();
+
+		wallet = loadWallet();
+		wallet.autosaveToFile(walletFile, 1, TimeUnit.SECONDS, autosaveListener);
+		wallet.addEventListener(walletEventListener, Threading.SAME_THREAD);
+		backupKeys();
+
+		blockStore = BlockStores.open(params, blockChainFile, Collections.singletonList(wallet),
+				checkpointsFile != null ? new BlockStores.CheckpointsSource()
+				{
+					@Override
+					public InputStream open() throws IOException
+					{
+						return new FileInputStream(checkpointsFile);
+					}
+				} : null);
+
+		blockChain = new BlockChain(params, wallet, blockStore);
+	}
+
+	/**
+	 * Connects to the network and starts downloading the block chain.
+	 */
+	public void connect()
+	{
+		log.info("starting peergroup at height {}", blockChain.getBestChainHeight());
+		// a trusted peer is connected to exclusively
+		peerGroup = PeerGroups.create(params, blockChain, Collections.singletonList(wallet), USER_AGENT, VERSION, trustedPeerHost, true,
+				maxConnections, new DnsDiscovery(params));
+		peerGroup.addEventListener(peerEventListener, Threading.SAME_THREAD);
+
+		peerGroup.start();
+		peerGroup.startBlockChainDownload(downloadListener);
+	}
+
+	public void stop()
+	{
+		if (peerGroup != null)
+		{
+			peerGroup.removeEventListener(peerEventListener);
+			PeerGroups.stop(peerGroup, Collections.singletonList(wallet), true);
+			log.info("peergroup stopped");
+		}
+
+		if (blockStore != null)
+		{
+			try
+			{
+				blockStore.close();
+			}
+			catch (final BlockStoreException x)
+			{
+				log.error("problem closing block store", x);
+			}
+		}
+
+		if (wallet != null)
+		{
+			wallet.removeEventListener(walletEventListener);
+
+			try
+			{
+				saveWallet(wallet);
+				log.info("wallet saved to: '{}'", walletFile);
+			}
+			catch (final IOException x)
+			{
+				log.error("problem saving wallet", x);
+			}
+		}
+	}
+
+	/**
+	 * Adds a new key to the wallet, and saves and backs up the wallet before returning.
+	 */
+	public synchronized Address newAddress() throws IOException
+	{
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+		saveWallet(wallet);
+		backupKeys();
+
+		log.info("key added and backed up to: '{}'", keyBackupFile);
+		return key.toAddress(params);
+	}
+
+	public NetworkParameters getParams()
+	{
+		return params;
+	}
+
+	public Wallet getWallet()
+	{
+		return wallet;
+	}
+
+	public BlockChain getBlockChain()
+	{
+		return blockChain;
+	}
+
+	/**
+	 * @return peer group, or null if not connected
+	 */
+	@CheckForNull
+	public PeerGroup getPeerGroup()
+	{
+		return peerGroup;
+	}
+
+	public long getBlocksDownloaded()
+	{
+		return blocksDownloaded.get();
+	}
+
+	public long getTransactionsReceived()
+	{
+		return transactionsReceived.get();
+	}
+
+	/**
+	 * @return time the initial block chain download took, or null if it is still running
+	 */
+	@CheckForNull
+	public Long getDownloadTimeMs()
+	{
+		final long doneAt = downloadDoneAt;
+		return doneAt != 0 ? doneAt - startedAt : null;
+	}
+
+	/**
+	 * @return blocks downloaded per second, averaged since start
+	 */
+	public double getBlocksPerSecond()
+	{
+		final long end = downloadDoneAt != 0 ? downloadDoneAt : System.currentTimeMillis();
+		final long elapsed = end - startedAt;
+		return elapsed > 0 ? blocksDownloaded.get() * 1000.0 / elapsed : 0;
+	}
+
+	private Wallet loadWallet() throws IOException, UnreadableWalletException
+	{
+		if (!walletFile.exists())
+		{
+			final Wallet wallet = new LitecoinWallet(params);
+			wallet.addKey(new ECKey());
+			saveWallet(wallet);
+			log.info("new wallet created: '{}'", walletFile);
+			return wallet;
+		}
+
+		// wallets written before they were kept owner-only
+		AtomicFiles.restrictToOwner(walletFile);
+
+		final long start = System.currentTimeMillis();
+		final Wallet wallet = WalletLoader.load(params, walletFile);
+		log.info("wallet loaded from: '{}', took {}ms", walletFile, System.currentTimeMillis() - start);
+		return wallet;
+	}
+
+	/**
+	 * Like {@link Wallet#saveToFile(File)}, but through a temporary file that is owner-only before any key is written to
+	 * it. The wallet file is renamed from it, so it ends up owner-only too.
+	 */
+	private void saveWallet(@Nonnull final Wallet wallet) throws IOException
+	{
+		final File tempFile = File.createTempFile("wallet", null, walletFile.getAbsoluteFile().getParentFile());
+		AtomicFiles.restrictToOwner(tempFile);
+		wallet.saveToFile(tempFile, walletFile);
+	}
+
+	private synchronized void backupKeys() throws IOException
+	{
+		final StringWriter keys = new StringWriter();
+		KeyFiles.writeKeys(keys, wallet.getKeys(), params);
+		AtomicFiles.writePrivate(keyBackupFile, keys.toString());
+	}
+
+	private final WalletFiles.Listener autosaveListener = new WalletFiles.Listener()
+	{
+		@Override
+		public void onBeforeAutoSave(final File tempFile)
+		{
+			// called before the wallet is written to the temporary file
+			try
+			{
+				AtomicFiles.restrictToOwner(tempFile);
+			}
+			catch (final IOException x)
+			{
+				log.error("problem restricting permissions of: " + tempFile, x);
+			}
+		}
+
+		@Override
+		public void onAfterAutoSave(final File file)
+		{
+		}
+	};
+
+	private final AbstractWalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			transactionsReceived.incrementAndGet();
+			log.info("received {}: {} LTC", tx.getHashAsString(), Utils.bitcoinValueToFriendlyString(tx.getValue(wallet)));
+		}
+
+		@Override
+		public void onCoinsSent(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			transactionsReceived.incrementAndGet();
+			log.info("sent {}: {} LTC", tx.getHashAsString(), Utils.bitcoinValueToFriendlyString(tx.getValue(wallet)));
+		}
+	};
+
+	private final AbstractPeerEventListener peerEventListener = new AbstractPeerEventListener()
+	{
+		@Override
+		public void onBlocksDownloaded(final Peer peer, final Block block, final int blocksLeft)
+		{
+			blocksDownloaded.incrementAndGet();
+		}
+
+		@Override
+		public void onPeerConnected(final Peer peer, final int peerCount)
+		{
+			log.info("peer connected: {}, {} peers", peer.getAddress(), peerCount);
+		}
+
+		@Override
+		public void onPeerDisconnected(final Peer peer, final int peerCount)
+		{
+			log.info("peer disconnected: {}, {} peers", peer.getAddress(), peerCount);
+		}
+	};
+
+	private final DownloadListener downloadListener = new DownloadListener()
+	{
+		@Override
+		protected void doneDownload()
+		{
+			downloadDoneAt = System.currentTimeMillis();
+			log.info("block chain downloaded at height {}: {} blocks in {}ms", blockChain.getBestChainHeight(), blocksDownloaded.get(),
+					downloadDoneAt - startedAt);
+		}
+	};
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.NetworkParameters;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class ControlServerTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private File dir;
+	private File cookieFile;
+	private WalletEngine engine;
+	private ControlServer controlServer;
+	private String token;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("daemon", "");
+		dir.delete();
+		dir.mkdir();
+
+		engine = new WalletEngine(PARAMS, dir, null, null, 1);
+		engine.open();
+
+		cookieFile = new File(dir, "control.cookie");
+		controlServer = new ControlServer(engine, 0, cookieFile);
+		final Thread thread = new Thread(controlServer, "control server");
+		thread.setDaemon(true);
+		thread.start();
+
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cookieFile), "UTF-8"));
+		token = reader.readLine();
+		reader.close();
+	}
+
+	@After
+	public void tearDown()
+	{
+		controlServer.close();
+		engine.stop();
+
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void cookie() throws Exception
+	{
+		assertEquals(64, token.length());
+		assertTrue(cookieFile.canRead());
+	}
+
+	@Test
+	public void rejectMissingToken() throws Exception
+	{
+		final JSONObject response = request("{\"id\":1,\"method\":\"newaddress\"}");
+
+		assertEquals("unauthorized", response.getString("error"));
+		assertEquals(1, response.getInt("id"));
+		assertFalse(response.has("result"));
+		assertEquals(1, engine.getWallet().getKeychainSize());
+	}
+
+	@Test
+	public void rejectWrongToken() throws Exception
+	{
+		final String wrongToken = (token.charAt(0) == '0' ? "1" : "0") + token.substring(1);
+		final JSONObject response = request("{\"token\":\"" + wrongToken + "\",\"method\":\"stop\"}");
+
+		assertEquals("unauthorized", response.getString("error"));
+		assertTrue(response.isNull("id"));
+	}
+
+	@Test
+	public void status() throws Exception
+	{
+		final JSONObject result = authorizedRequest("status").getJSONObject("result");
+
+		assertEquals(0, result.getInt("bestChainHeight"));
+		assertEquals(0, result.getInt("peers"));
+		assertEquals(1, result.getInt("keys"));
+		assertTrue(result.getBoolean("downloading"));
+	}
+
+	@Test
+	public void balance() throws Exception
+	{
+		final JSONObject result = authorizedRequest("balance").getJSONObject("result");
+
+		assertEquals("0.00", result.getString("estimated"));
+		assertEquals("0.00", result.getString("available"));
+	}
+
+	@Test
+	public void peers() throws Exception
+	{
+		assertEquals(0, authorizedRequest("peers").getJSONArray("result").length());
+	}
+
+	@Test
+	public void newAddress() throws Exception
+	{
+		final Address address = new Address(PARAMS, authorizedRequest("newaddress").getString("result"));
+
+		assertEquals(2, engine.getWallet().getKeychainSize());
+		assertTrue(engine.getWallet().isPubKeyHashMine(address.getHash160()));
+	}
+
+	@Test
+	public void unknownMethod() throws Exception
+	{
+		assertEquals("unknown method: foo", authorizedRequest("foo").getString("error"));
+	}
+
+	@Test
+	public void badRequest() throws Exception
+	{
+		assertTrue(request("not json").getString("error").startsWith("bad request: "));
+	}
+
+	@Test
+	public void stop() throws Exception
+	{
+		assertEquals("stopping", authorizedRequest("stop").getString("result"));
+
+		controlServer.awaitStop();
+	}
+
+	@Test
+	public void closeDeletesCookie() throws Exception
+	{
+		controlServer.close();
+
+		assertFalse(cookieFile.exists());
+	}
+
+	private JSONObject authorizedRequest(final String method) throws Exception
+	{
+		return request("{\"token\":\"" + token + "\",\"method\":\"" + method + "\"}");
+	}
+
+	private JSONObject request(final String line) throws Exception
+	{
+		final Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), controlServer.getPort());
+		try
+		{
+			final Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+			writer.write(line);
+			writer.write('\n');
+			writer.flush();
+
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			return new JSONObject(reader.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.daemon;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+
+import de.schildbach.wallet.core.KeyFiles;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class WalletEngineTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private File dir;
+	private WalletEngine engine;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("daemon", "");
+		dir.delete();
+		dir.mkdir();
+
+		engine = new WalletEngine(PARAMS, dir, null, null, 1);
+		engine.open();
+	}
+
+	@After
+	public void tearDown()
+	{
+		engine.stop();
+
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void openCreatesWalletAndBackup() throws Exception
+	{
+		assertEquals(1, engine.getWallet().getKeychainSize());
+		assertEquals(0, engine.getBlockChain().getBestChainHeight());
+		assertNull(engine.getPeerGroup());
+
+		final List<ECKey> backedUp = readBackup();
+		assertEquals(1, backedUp.size());
+		assertArrayEquals(engine.getWallet().getKeys().get(0).getPrivKeyBytes(), backedUp.get(0).getPrivKeyBytes());
+	}
+
+	@Test
+	public void newAddressIsBackedUp() throws Exception
+	{
+		final Address address = engine.newAddress();
+
+		assertEquals(2, engine.getWallet().getKeychainSize());
+		assertTrue(engine.getWallet().isPubKeyHashMine(address.getHash160()));
+
+		final List<ECKey> backedUp = readBackup();
+		assertEquals(2, backedUp.size());
+		assertEquals(address, backedUp.get(1).toAddress(PARAMS));
+	}
+
+	@Test
+	public void reopenKeepsKeys() throws Exception
+	{
+		final Address address = engine.newAddress();
+		engine.stop();
+
+		engine = new WalletEngine(PARAMS, dir, null, null, 1);
+		engine.open();
+
+		assertEquals(2, engine.getWallet().getKeychainSize());
+		assertTrue(engine.getWallet().isPubKeyHashMine(address.getHash160()));
+	}
+
+	private List<ECKey> readBackup() throws Exception
+	{
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir,
+				WalletEngine.KEY_BACKUP_FILENAME)), "UTF-8"));
+		try
+		{
+			return KeyFiles.readKeys(reader, PARAMS);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
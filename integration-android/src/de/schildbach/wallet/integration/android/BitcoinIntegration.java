@@ -28,7 +28,12 @@ import android.widget.Toast;
  */
 public final class BitcoinIntegration
 {
+	public static final String ACTION_SEND_BATCH = "litecoin.intent.action.SEND_BATCH";
+	public static final String INTENT_EXTRA_ADDRESSES = "addresses";
+	public static final String INTENT_EXTRA_AMOUNTS = "amounts";
+
 	private static final String INTENT_EXTRA_TRANSACTION_HASH = "transaction_hash";
+	private static final String INTENT_EXTRA_TRANSACTION_HASHES = "transaction_hashes";
 
 	/**
 	 * Request any amount of Bitcoins (probably a donation) from user, without feedback from the app.
@@ -104,6 +109,63 @@ public final class BitcoinIntegration
 		startForResult(activity, requestCode, intent);
 	}
 
+	/**
+	 * Request payments to many recipients at once, with feedback from the app. The wallet pays them with as few
+	 * transactions as possible. Result intent can be received by overriding
+	 * {@link android.app.Activity#onActivityResult()}. Result indicates either {@link Activity#RESULT_OK} or
+	 * {@link Activity#RESULT_CANCELED}. In the success case, use {@link #transactionHashesFromResult(Intent)} to read the
+	 * transaction hashes from the intent.
+	 * 
+	 * Warning: A success indication is no guarantee! To be on the safe side, you must drive your own Bitcoin
+	 * infrastructure and validate the transactions.
+	 * 
+	 * @param activity
+	 *            Android activity
+	 * @param addresses
+	 *            Bitcoin addresses
+	 * @param amounts
+	 *            Bitcoin amounts in nanocoins, one for each address
+	 */
+	public static void requestBatchForResult(final Activity activity, final int requestCode, final String[] addresses, final long[] amounts)
+	{
+		if (addresses.length != amounts.length)
+			throw new IllegalArgumentException("need one amount per address");
+
+		final Intent intent = new Intent(ACTION_SEND_BATCH);
+		intent.putExtra(INTENT_EXTRA_ADDRESSES, addresses);
+		intent.putExtra(INTENT_EXTRA_AMOUNTS, amounts);
+
+		startForResult(activity, requestCode, intent);
+	}
+
+	/**
+	 * Put transaction hashes of a batch payment into result intent. Meant for usage by Bitcoin wallet applications.
+	 * 
+	 * @param result
+	 *            result intent
+	 * @param txHashes
+	 *            transaction hashes
+	 */
+	public static void transactionHashesToResult(final Intent result, final String[] txHashes)
+	{
+		result.putExtra(INTENT_EXTRA_TRANSACTION_HASHES, txHashes);
+	}
+
+	/**
+	 * Get transaction hashes from result intent of a batch payment. Meant for usage by applications initiating a
+	 * Bitcoin payment.
+	 * 
+	 * @param result
+	 *            result intent
+	 * @return transaction hashes
+	 */
+	public static String[] transactionHashesFromResult(final Intent result)
+	{
+		final String[] txHashes = result.getStringArrayExtra(INTENT_EXTRA_TRANSACTION_HASHES);
+
+		return txHashes;
+	}
+
 	/**
 	 * Put transaction hash into result intent. Meant for usage by Bitcoin wallet applications.
 	 * 
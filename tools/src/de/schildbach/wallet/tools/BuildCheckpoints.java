@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.VerificationException;
+import com.google.bitcoin.store.BlockStore;
+import com.google.bitcoin.store.BlockStoreException;
+import com.google.bitcoin.store.SPVBlockStore;
+
+/**
+ * Command line tool that builds a checkpoints file in the format of the app's checkpoints asset, from either an SPV
+ * block store or a directory of raw block headers. Difficulty transitions are verified along the way.
+ *
+ * <pre>
+ * usage: BuildCheckpoints (-store=&lt;file&gt; | -headers=&lt;dir&gt;) -output=&lt;file&gt;
+ *                         [-base=&lt;checkpoints file&gt;] [-interval=&lt;blocks&gt;] [-min-age-days=&lt;days&gt;]
+ * </pre>
+ *
+ * An SPV block store only holds the most recent few thousand blocks, so in that mode the existing checkpoints should be
+ * passed as base; new checkpoints are then appended. Header files are read in file name order and must contain
+ * concatenated 80 byte headers in chain order, starting either at the genesis block or right after one of the base
+ * checkpoints.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class BuildCheckpoints
+{
+	private static final int HEADER_SIZE = 80;
+	private static final long DEFAULT_MIN_AGE_DAYS = 7;
+	private static final long DAY_IN_SECONDS = 24 * 60 * 60;
+
+	private final NetworkParameters params;
+	private final int interval;
+	private final DifficultyVerifier verifier;
+	private final List<StoredBlock> candidates = new LinkedList<StoredBlock>();
+
+	public BuildCheckpoints(@Nonnull final NetworkParameters params, final int interval)
+	{
+		if (interval <= 0 || interval % params.getInterval() != 0)
+			throw new IllegalArgumentException("interval must be a multiple of the retarget interval " + params.getInterval() + ": "
+					+ interval);
+
+		this.params = params;
+		this.interval = interval;
+		this.verifier = new DifficultyVerifier(params);
+	}
+
+	public static void main(final String[] args) throws IOException
+	{
+		final Map<String, String> options = parseOptions(args);
+		final String store = options.get("store");
+		final String headers = options.get("headers");
+		final String base = options.get("base");
+		final String output = options.get("output");
+
+		if ((store == null) == (headers == null) || output == null)
+		{
+			System.err.println("usage: BuildCheckpoints (-store=<file> | -headers=<dir>) -output=<file>");
+			System.err.println("                        [-base=<checkpoints file>] [-interval=<blocks>] [-min-age-days=<days>]");
+			System.exit(1);
+			return;
+		}
+
+		final NetworkParameters params = LitecoinParams.get();
+		final int interval = options.containsKey("interval") ? Integer.parseInt(options.get("interval")) : params.getInterval();
+		final long minAgeDays = options.containsKey("min-age-days") ? Long.parseLong(options.get("min-age-days")) : DEFAULT_MIN_AGE_DAYS;
+
+		final List<StoredBlock> baseCheckpoints;
+		if (base != null)
+		{
+			final InputStream is = new FileInputStream(base);
+			try
+			{
+				baseCheckpoints = CheckpointsFile.read(params, is);
+			}
+			finally
+			{
+				is.close();
+			}
+			System.out.println("read " + baseCheckpoints.size() + " base checkpoints from " + base);
+		}
+		else
+		{
+			baseCheckpoints = new ArrayList<StoredBlock>(0);
+		}
+
+		final BuildCheckpoints builder = new BuildCheckpoints(params, interval);
+
+		final StoredBlock head;
+		try
+		{
+			if (store != null)
+				head = builder.readBlockStore(new File(store));
+			else
+				head = builder.readHeaders(new File(headers), baseCheckpoints);
+		}
+		catch (final VerificationException x)
+		{
+			System.err.println("verification failed: " + x.getMessage());
+			System.exit(2);
+			return;
+		}
+		catch (final BlockStoreException x)
+		{
+			System.err.println("cannot read block store: " + x.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		System.out.println("chain head at height " + head.getHeight() + ": " + head.getHeader().getHashAsString());
+		System.out.println("verified " + builder.verifier.getNumTransitionsVerified() + " difficulty transitions, skipped "
+				+ builder.verifier.getNumTransitionsSkipped() + " for lack of history");
+
+		final long maxTime = head.getHeader().getTimeSeconds() - minAgeDays * DAY_IN_SECONDS;
+		final List<StoredBlock> checkpoints = builder.merge(baseCheckpoints, maxTime);
+
+		final OutputStream os = new FileOutputStream(output);
+		final Sha256Hash hash;
+		try
+		{
+			hash = CheckpointsFile.write(checkpoints, os);
+		}
+		finally
+		{
+			os.close();
+		}
+
+		final StoredBlock last = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+		System.out.println("wrote " + checkpoints.size() + " checkpoints to " + output
+				+ (last != null ? ", last at height " + last.getHeight() : "") + ", hash " + hash);
+	}
+
+	/**
+	 * @return chain head of the store
+	 */
+	public StoredBlock readBlockStore(@Nonnull final File file) throws BlockStoreException, VerificationException
+	{
+		if (!file.exists())
+			throw new BlockStoreException("does not exist: " + file);
+
+		final BlockStore blockStore = new SPVBlockStore(params, file);
+		try
+		{
+			// the store is a ring buffer, so walk back as far as it reaches
+			final LinkedList<StoredBlock> blocks = new LinkedList<StoredBlock>();
+			StoredBlock block = blockStore.getChainHead();
+			while (block != null)
+			{
+				blocks.addFirst(block);
+				block = block.getPrev(blockStore);
+			}
+
+			StoredBlock prev = null;
+			for (final StoredBlock current : blocks)
+			{
+				if (prev != null)
+					verifier.verify(prev, current.getHeader());
+				consider(current);
+				prev = current;
+			}
+
+			return blocks.getLast();
+		}
+		finally
+		{
+			blockStore.close();
+		}
+	}
+
+	/**
+	 * @return last header read
+	 */
+	public StoredBlock readHeaders(@Nonnull final File dir, @Nonnull final List<StoredBlock> baseCheckpoints) throws IOException,
+			VerificationException
+	{
+		final File[] files = dir.listFiles();
+		if (files == null)
+			throw new IOException("not a directory: " + dir);
+		Arrays.sort(files);
+
+		final Map<Sha256Hash, StoredBlock> startingPoints = new HashMap<Sha256Hash, StoredBlock>();
+		for (final StoredBlock checkpoint : baseCheckpoints)
+			startingPoints.put(checkpoint.getHeader().getHash(), checkpoint);
+
+		final byte[] header = new byte[HEADER_SIZE];
+		StoredBlock prev = null;
+
+		for (final File file : files)
+		{
+			if (!file.isFile())
+				continue;
+			if (file.length() % HEADER_SIZE != 0)
+				throw new IOException("not a multiple of " + HEADER_SIZE + " bytes: " + file);
+
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
+			{
+				while (true)
+				{
+					try
+					{
+						in.readFully(header);
+					}
+					catch (final EOFException x)
+					{
+						break;
+					}
+
+					final Block block = new Block(params, header);
+
+					if (prev == null)
+					{
+						prev = startingPoint(block, startingPoints);
+						if (prev.getHeight() == 0)
+						{
+							consider(prev);
+							continue;
+						}
+					}
+
+					verifier.verify(prev, block);
+					final StoredBlock current = prev.build(block);
+					consider(current);
+					prev = current;
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		if (prev == null)
+			throw new IOException("no headers found in: " + dir);
+
+		return prev;
+	}
+
+	private StoredBlock startingPoint(@Nonnull final Block first, @Nonnull final Map<Sha256Hash, StoredBlock> startingPoints)
+			throws VerificationException
+	{
+		final Block genesis = params.getGenesisBlock();
+		if (first.getHash().equals(genesis.getHash()))
+			return new StoredBlock(genesis.cloneAsHeader(), genesis.getWork(), 0);
+
+		final StoredBlock checkpoint = startingPoints.get(first.getPrevBlockHash());
+		if (checkpoint != null)
+			return checkpoint;
+
+		throw new VerificationException("first header " + first.getHashAsString()
+				+ " is neither the genesis block nor does it follow a base checkpoint");
+	}
+
+	private void consider(@Nonnull final StoredBlock block)
+	{
+		if (block.getHeight() > 0 && block.getHeight() % interval == 0)
+			candidates.add(block);
+	}
+
+	/**
+	 * Merge collected checkpoints into the base checkpoints, refusing to paper over a fork between both.
+	 */
+	public List<StoredBlock> merge(@Nonnull final List<StoredBlock> baseCheckpoints, final long maxTime) throws IOException
+	{
+		final TreeMap<Integer, StoredBlock> merged = new TreeMap<Integer, StoredBlock>();
+		for (final StoredBlock checkpoint : baseCheckpoints)
+			merged.put(checkpoint.getHeight(), checkpoint);
+
+		for (final StoredBlock candidate : candidates)
+		{
+			if (candidate.getHeader().getTimeSeconds() > maxTime)
+				continue; // too young, might still be reorganized away
+
+			final StoredBlock existing = merged.get(candidate.getHeight());
+			if (existing != null && !existing.getHeader().getHash().equals(candidate.getHeader().getHash()))
+				throw new IOException("fork against base checkpoint at height " + candidate.getHeight() + ": "
+						+ existing.getHeader().getHashAsString() + " vs " + candidate.getHeader().getHashAsString());
+
+			merged.put(candidate.getHeight(), candidate);
+		}
+
+		return new ArrayList<StoredBlock>(merged.values());
+	}
+
+	private static Map<String, String> parseOptions(@Nonnull final String[] args)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+
+		for (final String arg : args)
+		{
+			if (!arg.startsWith("-"))
+				throw new IllegalArgumentException("cannot parse argument: " + arg);
+
+			final int eq = arg.indexOf('=');
+			if (eq == -1)
+				options.put(arg.substring(1), "");
+			else
+				options.put(arg.substring(1, eq), arg.substring(eq + 1));
+		}
+
+		return options;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.StoredBlock;
+
+/**
+ * Reads and writes the binary checkpoints format understood by {@link com.google.bitcoin.core.CheckpointManager}, which is
+ * the format of the checkpoints asset shipped with the app.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class CheckpointsFile
+{
+	private static final String MAGIC = "CHECKPOINTS 1";
+	private static final int SIGNATURE_SIZE = 65;
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	public static List<StoredBlock> read(@Nonnull final NetworkParameters params, @Nonnull final InputStream is) throws IOException
+	{
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+
+		final byte[] magic = new byte[MAGIC.length()];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC.getBytes(US_ASCII)))
+			throw new IOException("not a checkpoints file, magic: " + new String(magic, US_ASCII));
+
+		final int numSignatures = in.readInt();
+		in.readFully(new byte[numSignatures * SIGNATURE_SIZE]);
+
+		final int numCheckpoints = in.readInt();
+		final List<StoredBlock> checkpoints = new ArrayList<StoredBlock>(numCheckpoints);
+		final ByteBuffer buffer = ByteBuffer.allocate(StoredBlock.COMPACT_SERIALIZED_SIZE);
+
+		for (int i = 0; i < numCheckpoints; i++)
+		{
+			in.readFully(buffer.array());
+			buffer.position(0);
+			checkpoints.add(StoredBlock.deserializeCompact(params, buffer));
+		}
+
+		return checkpoints;
+	}
+
+	/**
+	 * @return hash of the checkpoint data, the same way {@link com.google.bitcoin.core.CheckpointManager} computes it
+	 */
+	public static Sha256Hash write(@Nonnull final List<StoredBlock> checkpoints, @Nonnull final OutputStream os) throws IOException
+	{
+		final MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (final NoSuchAlgorithmException x)
+		{
+			throw new RuntimeException(x); // cannot happen
+		}
+
+		final DigestOutputStream digestOutputStream = new DigestOutputStream(os, digest);
+		final DataOutputStream out = new DataOutputStream(digestOutputStream);
+
+		// magic and signatures are not part of the hash
+		digestOutputStream.on(false);
+		out.write(MAGIC.getBytes(US_ASCII));
+		out.writeInt(0); // no signatures
+		digestOutputStream.on(true);
+
+		out.writeInt(checkpoints.size());
+
+		final ByteBuffer buffer = ByteBuffer.allocate(StoredBlock.COMPACT_SERIALIZED_SIZE);
+		for (final StoredBlock checkpoint : checkpoints)
+		{
+			buffer.position(0);
+			checkpoint.serializeCompact(buffer);
+			out.write(buffer.array());
+		}
+
+		out.flush();
+
+		return new Sha256Hash(digest.digest());
+	}
+}
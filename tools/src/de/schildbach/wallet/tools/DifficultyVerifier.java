@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.tools;
+
+import java.math.BigInteger;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.VerificationException;
+
+/**
+ * Checks block linkage and difficulty transitions of a header chain that is fed in ascending order. Only the timestamps
+ * of the last retarget interval are kept, so arbitrarily long chains can be verified in constant memory.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class DifficultyVerifier
+{
+	private final NetworkParameters params;
+	private final int interval;
+	private final long targetTimespan;
+
+	private final long[] times;
+	private int lowestHeight = -1;
+	private int highestHeight = -1;
+
+	private int numTransitionsVerified = 0;
+	private int numTransitionsSkipped = 0;
+
+	public DifficultyVerifier(@Nonnull final NetworkParameters params)
+	{
+		this.params = params;
+		this.interval = params.getInterval();
+		this.targetTimespan = params.getTargetTimespan();
+		this.times = new long[interval + 1];
+	}
+
+	/**
+	 * Verify that next connects to prev and carries the expected difficulty target. Blocks must be passed in ascending
+	 * order without gaps, starting with the block that is passed as prev first.
+	 */
+	public void verify(@Nonnull final StoredBlock prev, @Nonnull final Block next) throws VerificationException
+	{
+		final Block prevHeader = prev.getHeader();
+		final int height = prev.getHeight() + 1;
+
+		remember(prev);
+
+		if (!next.getPrevBlockHash().equals(prevHeader.getHash()))
+			throw new VerificationException("block " + next.getHashAsString() + " at height " + height + " does not connect to "
+					+ prevHeader.getHashAsString());
+
+		if (height % interval != 0)
+		{
+			if (next.getDifficultyTarget() != prevHeader.getDifficultyTarget())
+				throw new VerificationException("unexpected difficulty change at height " + height + ": "
+						+ Long.toHexString(prevHeader.getDifficultyTarget()) + " -> " + Long.toHexString(next.getDifficultyTarget()));
+
+			return;
+		}
+
+		// litecoin looks back a full interval, except for the very first retarget
+		final int blocksToGoBack = height == interval ? interval - 1 : interval;
+		final int firstHeight = prev.getHeight() - blocksToGoBack;
+
+		if (firstHeight < lowestHeight || lowestHeight == -1)
+		{
+			// not enough history, e.g. at the start of an SPV block store window
+			numTransitionsSkipped++;
+			return;
+		}
+
+		long timespan = prevHeader.getTimeSeconds() - times[firstHeight % times.length];
+		if (timespan < targetTimespan / 4)
+			timespan = targetTimespan / 4;
+		if (timespan > targetTimespan * 4)
+			timespan = targetTimespan * 4;
+
+		BigInteger newTarget = prevHeader.getDifficultyTargetAsInteger();
+		newTarget = newTarget.multiply(BigInteger.valueOf(timespan));
+		newTarget = newTarget.divide(BigInteger.valueOf(targetTimespan));
+
+		if (newTarget.compareTo(params.getProofOfWorkLimit()) > 0)
+			newTarget = params.getProofOfWorkLimit();
+
+		// the compact encoding loses precision, so only compare the bytes that can be represented
+		final int accuracyBytes = (int) (next.getDifficultyTarget() >>> 24) - 3;
+		final BigInteger mask = BigInteger.valueOf(0xFFFFFFL).shiftLeft(accuracyBytes * 8);
+		final BigInteger receivedTarget = next.getDifficultyTargetAsInteger();
+
+		if (newTarget.and(mask).compareTo(receivedTarget) != 0)
+			throw new VerificationException("bad difficulty transition at height " + height + ": expected " + newTarget.toString(16)
+					+ ", got " + receivedTarget.toString(16));
+
+		numTransitionsVerified++;
+	}
+
+	private void remember(@Nonnull final StoredBlock block)
+	{
+		final int height = block.getHeight();
+
+		if (height == highestHeight)
+			return;
+		if (highestHeight != -1 && height != highestHeight + 1)
+			throw new IllegalStateException("gap in chain: " + highestHeight + " -> " + height);
+
+		times[height % times.length] = block.getHeader().getTimeSeconds();
+
+		highestHeight = height;
+		if (lowestHeight == -1)
+			lowestHeight = height;
+		else
+			lowestHeight = Math.max(lowestHeight, height - times.length + 1);
+	}
+
+	public int getNumTransitionsVerified()
+	{
+		return numTransitionsVerified;
+	}
+
+	public int getNumTransitionsSkipped()
+	{
+		return numTransitionsSkipped;
+	}
+}
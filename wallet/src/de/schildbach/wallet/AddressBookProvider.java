@@ -17,18 +17,29 @@
 
 package de.schildbach.wallet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.RemoteException;
 
 /**
  * @author Andreas Schildbach, Litecoin Dev Team
@@ -36,6 +47,8 @@ import android.net.Uri;
 public class AddressBookProvider extends ContentProvider
 {
 	private static final String DATABASE_TABLE = "address_book";
+	private static final String DATABASE_TABLE_INDEX = "address_book_fts";
+	private static final List<String> MATCH_OPERATORS = Arrays.asList("AND", "OR", "NOT", "NEAR");
 
 	public static final String KEY_ROWID = "_id";
 	public static final String KEY_ADDRESS = "address";
@@ -68,7 +81,58 @@ public class AddressBookProvider extends ContentProvider
 		return label;
 	}
 
+	/**
+	 * Set the labels of many addresses at once. Addresses that are not in the address book yet are added with one bulk
+	 * insert, changed labels are applied as one batch, so observers are notified at most twice.
+	 *
+	 * @return number of entries that were added or changed
+	 */
+	public static int importLabels(final Context context, @Nonnull final Map<String, String> labels) throws RemoteException,
+			OperationApplicationException
+	{
+		final ContentResolver contentResolver = context.getContentResolver();
+		final Uri uri = contentUri(context.getPackageName());
+
+		final Map<String, String> existingLabels = new HashMap<String, String>();
+		final Cursor cursor = contentResolver.query(uri, new String[] { KEY_ADDRESS, KEY_LABEL }, null, null, null);
+		if (cursor != null)
+		{
+			while (cursor.moveToNext())
+				existingLabels.put(cursor.getString(0), cursor.getString(1));
+
+			cursor.close();
+		}
+
+		final List<ContentValues> inserts = new ArrayList<ContentValues>(labels.size());
+		final ArrayList<ContentProviderOperation> updates = new ArrayList<ContentProviderOperation>();
+		for (final Map.Entry<String, String> entry : labels.entrySet())
+		{
+			final String address = entry.getKey();
+			final String label = entry.getValue();
+
+			if (!existingLabels.containsKey(address))
+			{
+				final ContentValues values = new ContentValues(2);
+				values.put(KEY_ADDRESS, address);
+				values.put(KEY_LABEL, label);
+				inserts.add(values);
+			}
+			else if (!label.equals(existingLabels.get(address)))
+			{
+				updates.add(ContentProviderOperation.newUpdate(uri.buildUpon().appendPath(address).build()).withValue(KEY_LABEL, label).build());
+			}
+		}
+
+		if (!inserts.isEmpty())
+			contentResolver.bulkInsert(uri, inserts.toArray(new ContentValues[inserts.size()]));
+		if (!updates.isEmpty())
+			contentResolver.applyBatch(uri.getAuthority(), updates);
+
+		return inserts.size() + updates.size();
+	}
+
 	private Helper helper;
+	private final ThreadLocal<boolean[]> batchChanged = new ThreadLocal<boolean[]>();
 
 	@Override
 	public boolean onCreate()
@@ -96,11 +160,78 @@ public class AddressBookProvider extends ContentProvider
 
 		final Uri rowUri = contentUri(getContext().getPackageName()).buildUpon().appendPath(address).appendPath(Long.toString(rowId)).build();
 
-		getContext().getContentResolver().notifyChange(rowUri, null);
+		notifyChange(rowUri);
 
 		return rowUri;
 	}
 
+	@Override
+	public int bulkInsert(final Uri uri, final ContentValues[] values)
+	{
+		if (uri.getPathSegments().size() != 0)
+			throw new IllegalArgumentException(uri.toString());
+
+		for (final ContentValues v : values)
+			if (!v.containsKey(KEY_ADDRESS))
+				throw new IllegalArgumentException("missing " + KEY_ADDRESS + ": " + v);
+
+		final SQLiteDatabase db = helper.getWritableDatabase();
+		db.beginTransaction();
+		try
+		{
+			for (final ContentValues v : values)
+				db.insertOrThrow(DATABASE_TABLE, null, v);
+
+			db.setTransactionSuccessful();
+		}
+		finally
+		{
+			db.endTransaction();
+		}
+
+		if (values.length > 0)
+			getContext().getContentResolver().notifyChange(uri, null);
+
+		return values.length;
+	}
+
+	@Override
+	public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations) throws OperationApplicationException
+	{
+		final SQLiteDatabase db = helper.getWritableDatabase();
+		final ContentProviderResult[] results;
+
+		// the single operations only record that something changed, notification happens once the batch is committed
+		final boolean[] changed = new boolean[1];
+		batchChanged.set(changed);
+		db.beginTransaction();
+		try
+		{
+			results = super.applyBatch(operations);
+
+			db.setTransactionSuccessful();
+		}
+		finally
+		{
+			db.endTransaction();
+			batchChanged.remove();
+		}
+
+		if (changed[0])
+			getContext().getContentResolver().notifyChange(contentUri(getContext().getPackageName()), null);
+
+		return results;
+	}
+
+	private void notifyChange(@Nonnull final Uri uri)
+	{
+		final boolean[] changed = batchChanged.get();
+		if (changed != null)
+			changed[0] = true;
+		else
+			getContext().getContentResolver().notifyChange(uri, null);
+	}
+
 	@Override
 	public int update(final Uri uri, final ContentValues values, final String selection, final String[] selectionArgs)
 	{
@@ -112,7 +243,7 @@ public class AddressBookProvider extends ContentProvider
 		final int count = helper.getWritableDatabase().update(DATABASE_TABLE, values, KEY_ADDRESS + "=?", new String[] { address });
 
 		if (count > 0)
-			getContext().getContentResolver().notifyChange(uri, null);
+			notifyChange(uri);
 
 		return count;
 	}
@@ -129,14 +260,14 @@ public class AddressBookProvider extends ContentProvider
 		final int count = helper.getWritableDatabase().delete(DATABASE_TABLE, KEY_ADDRESS + "=?", new String[] { address });
 
 		if (count > 0)
-			getContext().getContentResolver().notifyChange(uri, null);
+			notifyChange(uri);
 
 		return count;
 	}
 
 	@Override
 	public Cursor query(final Uri uri, final String[] projection, final String originalSelection, final String[] originalSelectionArgs,
-			final String sortOrder)
+			String sortOrder)
 	{
 		final SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
 		qb.setTables(DATABASE_TABLE);
@@ -173,9 +304,23 @@ public class AddressBookProvider extends ContentProvider
 		}
 		else if (SELECTION_QUERY.equals(originalSelection))
 		{
-			final String query = '%' + originalSelectionArgs[0].trim() + '%';
-			selection = KEY_ADDRESS + " LIKE ? OR " + KEY_LABEL + " LIKE ?";
-			selectionArgs = new String[] { query, query };
+			final String query = originalSelectionArgs[0].trim();
+			final String matchExpression = matchExpression(query);
+
+			if (matchExpression != null)
+			{
+				// prefix lookup in the full-text index rather than scanning the table with LIKE
+				selection = KEY_ROWID + " IN (SELECT docid FROM " + DATABASE_TABLE_INDEX + " WHERE " + DATABASE_TABLE_INDEX + " MATCH ?)";
+				selectionArgs = new String[] { matchExpression };
+
+				if (sortOrder == null)
+				{
+					// rank entries whose label or address starts with the query first
+					final String prefix = DatabaseUtils.sqlEscapeString(escapeLike(query) + '%');
+					sortOrder = "CASE WHEN " + KEY_LABEL + " LIKE " + prefix + " ESCAPE '\\' THEN 0 WHEN " + KEY_ADDRESS + " LIKE " + prefix
+							+ " ESCAPE '\\' THEN 1 ELSE 2 END, " + KEY_LABEL + " COLLATE LOCALIZED ASC";
+				}
+			}
 		}
 
 		final Cursor cursor = qb.query(helper.getReadableDatabase(), projection, selection, selectionArgs, null, null, sortOrder);
@@ -185,6 +330,39 @@ public class AddressBookProvider extends ContentProvider
 		return cursor;
 	}
 
+	/**
+	 * Build a full-text match expression that requires every word of the query as a prefix of some word in either the
+	 * address or the label.
+	 *
+	 * @return match expression, or null if the query does not contain any searchable characters
+	 */
+	static String matchExpression(@Nonnull final String query)
+	{
+		final StringBuilder expression = new StringBuilder();
+
+		// split the same way the simple tokenizer does, which also gets rid of any query syntax characters
+		for (final String token : query.split("[^\\p{L}\\p{N}]+"))
+		{
+			if (token.length() == 0)
+				continue;
+
+			if (expression.length() > 0)
+				expression.append(' ');
+			if (MATCH_OPERATORS.contains(token))
+				expression.append(token.toLowerCase(Locale.US)); // the index is case insensitive anyway
+			else
+				expression.append(token);
+			expression.append('*');
+		}
+
+		return expression.length() > 0 ? expression.toString() : null;
+	}
+
+	private static String escapeLike(@Nonnull final String str)
+	{
+		return str.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+
 	private static void appendAddresses(@Nonnull final SQLiteQueryBuilder qb, @Nonnull final String[] addresses)
 	{
 		for (final String address : addresses)
@@ -198,13 +376,24 @@ public class AddressBookProvider extends ContentProvider
 	private static class Helper extends SQLiteOpenHelper
 	{
 		private static final String DATABASE_NAME = "address_book";
-		private static final int DATABASE_VERSION = 1;
+		private static final int DATABASE_VERSION = 2;
 
 		private static final String DATABASE_CREATE = "CREATE TABLE " + DATABASE_TABLE + " (" //
 				+ KEY_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " //
 				+ KEY_ADDRESS + " TEXT NOT NULL, " //
 				+ KEY_LABEL + " TEXT NULL);";
 
+		private static final String[] DATABASE_CREATE_INDEX = {
+				"CREATE VIRTUAL TABLE " + DATABASE_TABLE_INDEX + " USING fts3(" + KEY_ADDRESS + ", " + KEY_LABEL + ");",
+				"CREATE TRIGGER " + DATABASE_TABLE_INDEX + "_insert AFTER INSERT ON " + DATABASE_TABLE + " BEGIN " //
+						+ "INSERT INTO " + DATABASE_TABLE_INDEX + " (docid, " + KEY_ADDRESS + ", " + KEY_LABEL + ") " //
+						+ "VALUES (new." + KEY_ROWID + ", new." + KEY_ADDRESS + ", new." + KEY_LABEL + "); END;",
+				"CREATE TRIGGER " + DATABASE_TABLE_INDEX + "_update AFTER UPDATE ON " + DATABASE_TABLE + " BEGIN " //
+						+ "UPDATE " + DATABASE_TABLE_INDEX + " SET " + KEY_ADDRESS + " = new." + KEY_ADDRESS + ", " + KEY_LABEL + " = new." + KEY_LABEL
+						+ " WHERE docid = old." + KEY_ROWID + "; END;",
+				"CREATE TRIGGER " + DATABASE_TABLE_INDEX + "_delete AFTER DELETE ON " + DATABASE_TABLE + " BEGIN " //
+						+ "DELETE FROM " + DATABASE_TABLE_INDEX + " WHERE docid = old." + KEY_ROWID + "; END;" };
+
 		public Helper(final Context context)
 		{
 			super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -214,6 +403,13 @@ public class AddressBookProvider extends ContentProvider
 		public void onCreate(final SQLiteDatabase db)
 		{
 			db.execSQL(DATABASE_CREATE);
+			createIndex(db);
+		}
+
+		private void createIndex(final SQLiteDatabase db)
+		{
+			for (final String sql : DATABASE_CREATE_INDEX)
+				db.execSQL(sql);
 		}
 
 		@Override
@@ -237,7 +433,9 @@ public class AddressBookProvider extends ContentProvider
 		{
 			if (oldVersion == 1)
 			{
-				// future
+				createIndex(db);
+				db.execSQL("INSERT INTO " + DATABASE_TABLE_INDEX + " (docid, " + KEY_ADDRESS + ", " + KEY_LABEL + ") SELECT " + KEY_ROWID + ", "
+						+ KEY_ADDRESS + ", " + KEY_LABEL + " FROM " + DATABASE_TABLE + ";");
 			}
 			else
 			{
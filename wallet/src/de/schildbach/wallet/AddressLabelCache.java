@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import de.schildbach.wallet.util.HandlerExecutor;
+
+/**
+ * Process-wide cache of address book labels. Misses are resolved in batches using {@link #prefetch(Collection)} or
+ * {@link #prefetchInBackground(Collection, Runnable)}, and addresses without a label are cached as well. List rows should
+ * only read the cache via {@link #getCachedLabel(String)}, so that binding a row never queries the address book. The
+ * cache invalidates itself on any change notification of the {@link AddressBookProvider}, and tells its listeners
+ * afterwards.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class AddressLabelCache
+{
+	public interface OnLabelsChangedListener
+	{
+		/** Called on the main thread after the cache has been invalidated. */
+		void onLabelsChanged();
+	}
+
+	interface LabelSource
+	{
+		/**
+		 * @return labels of the given addresses that are in the address book, possibly null for entries without label
+		 */
+		@Nonnull
+		Map<String, String> queryLabels(@Nonnull List<String> addresses);
+	}
+
+	private static final String NULL_MARKER = "";
+	private static final int BATCH_SIZE = 200;
+
+	private final LabelSource source;
+	private final Executor backgroundExecutor;
+	private final Executor mainExecutor;
+
+	private final ConcurrentMap<String, String> labels = new ConcurrentHashMap<String, String>();
+	private final List<OnLabelsChangedListener> listeners = new CopyOnWriteArrayList<OnLabelsChangedListener>();
+	private int generation = 0; // guarded by labels
+
+	private static final ThreadFactory BACKGROUND_THREAD_FACTORY = new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(final Runnable r)
+		{
+			final Thread thread = new Thread(r, "address labels");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	public AddressLabelCache(@Nonnull final Context context)
+	{
+		this(new ProviderLabelSource(context.getContentResolver(), AddressBookProvider.contentUri(context.getPackageName())),
+				Executors.newSingleThreadExecutor(BACKGROUND_THREAD_FACTORY), new HandlerExecutor(new Handler(Looper.getMainLooper())));
+
+		// no handler, so invalidation does not wait for the main thread
+		final Uri contentUri = AddressBookProvider.contentUri(context.getPackageName());
+		context.getContentResolver().registerContentObserver(contentUri, true, new ContentObserver(null)
+		{
+			@Override
+			public void onChange(final boolean selfChange)
+			{
+				invalidate();
+			}
+		});
+	}
+
+	AddressLabelCache(@Nonnull final LabelSource source, @Nonnull final Executor backgroundExecutor, @Nonnull final Executor mainExecutor)
+	{
+		this.source = source;
+		this.backgroundExecutor = backgroundExecutor;
+		this.mainExecutor = mainExecutor;
+	}
+
+	/**
+	 * Look up the label of a single address, querying the address book on a miss. Not to be used for binding list rows.
+	 *
+	 * @return label, or null if the address is not in the address book
+	 */
+	@CheckForNull
+	public String resolveLabel(@Nonnull final String address)
+	{
+		final String cachedLabel = labels.get(address);
+		if (cachedLabel != null)
+			return cachedLabel != NULL_MARKER ? cachedLabel : null;
+
+		final int queryGeneration = generation();
+		final String label = source.queryLabels(Collections.singletonList(address)).get(address);
+		synchronized (labels)
+		{
+			if (queryGeneration == generation)
+				labels.put(address, label != null ? label : NULL_MARKER);
+		}
+
+		return label;
+	}
+
+	/**
+	 * Look up the label of an address in the cache only, never querying the address book.
+	 *
+	 * @return label, or null if the address is not in the address book or not cached yet
+	 */
+	@CheckForNull
+	public String getCachedLabel(@Nonnull final String address)
+	{
+		final String cachedLabel = labels.get(address);
+		return cachedLabel != null && cachedLabel != NULL_MARKER ? cachedLabel : null;
+	}
+
+	/**
+	 * Resolve all given addresses that are not cached yet, using as few address book queries as possible. Blocks, so it
+	 * is meant to be called from a background thread, e.g. a loader, before a list of addresses gets displayed.
+	 */
+	public void prefetch(@Nonnull final Collection<String> addresses)
+	{
+		final Set<String> missSet = new LinkedHashSet<String>();
+		for (final String address : addresses)
+			if (!labels.containsKey(address))
+				missSet.add(address);
+		final List<String> misses = new ArrayList<String>(missSet);
+
+		for (int i = 0; i < misses.size(); i += BATCH_SIZE)
+			query(misses.subList(i, Math.min(i + BATCH_SIZE, misses.size())));
+	}
+
+	/**
+	 * Like {@link #prefetch(Collection)}, but on a background thread of the cache.
+	 *
+	 * @param callback
+	 *            run on the main thread once the labels are cached
+	 */
+	public void prefetchInBackground(@Nonnull final Collection<String> addresses, @Nullable final Runnable callback)
+	{
+		final List<String> addressesCopy = new ArrayList<String>(addresses);
+
+		backgroundExecutor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				prefetch(addressesCopy);
+
+				if (callback != null)
+					mainExecutor.execute(callback);
+			}
+		});
+	}
+
+	private void query(@Nonnull final List<String> addresses)
+	{
+		final int queryGeneration = generation();
+		final Map<String, String> labelsFound = source.queryLabels(addresses);
+
+		final Map<String, String> result = new HashMap<String, String>(addresses.size());
+		for (final String address : addresses)
+		{
+			final String label = labelsFound.get(address);
+			result.put(address, label != null ? label : NULL_MARKER);
+		}
+
+		// a change notification might have arrived while querying, in which case the result could be stale
+		synchronized (labels)
+		{
+			if (queryGeneration == generation)
+				labels.putAll(result);
+		}
+	}
+
+	private int generation()
+	{
+		synchronized (labels)
+		{
+			return generation;
+		}
+	}
+
+	public void invalidate()
+	{
+		synchronized (labels)
+		{
+			generation++;
+			labels.clear();
+		}
+
+		mainExecutor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (final OnLabelsChangedListener listener : listeners)
+					listener.onLabelsChanged();
+			}
+		});
+	}
+
+	public void addOnLabelsChangedListener(@Nonnull final OnLabelsChangedListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeOnLabelsChangedListener(@Nonnull final OnLabelsChangedListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	private static final class ProviderLabelSource implements LabelSource
+	{
+		private static final String[] PROJECTION = { AddressBookProvider.KEY_ADDRESS, AddressBookProvider.KEY_LABEL };
+
+		private final ContentResolver contentResolver;
+		private final Uri contentUri;
+
+		public ProviderLabelSource(@Nonnull final ContentResolver contentResolver, @Nonnull final Uri contentUri)
+		{
+			this.contentResolver = contentResolver;
+			this.contentUri = contentUri;
+		}
+
+		@Override
+		public Map<String, String> queryLabels(@Nonnull final List<String> addresses)
+		{
+			final StringBuilder selection = new StringBuilder();
+			for (final String address : addresses)
+			{
+				if (selection.length() > 0)
+					selection.append(',');
+				selection.append(address);
+			}
+
+			final Map<String, String> result = new HashMap<String, String>(addresses.size());
+
+			final Cursor cursor = contentResolver.query(contentUri, PROJECTION, AddressBookProvider.SELECTION_IN,
+					new String[] { selection.toString() }, null);
+			if (cursor == null)
+				return result;
+
+			try
+			{
+				final int addressIndex = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_ADDRESS);
+				final int labelIndex = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_LABEL);
+
+				while (cursor.moveToNext())
+				{
+					final String address = cursor.getString(addressIndex);
+					if (!result.containsKey(address))
+						result.put(address, cursor.getString(labelIndex));
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+
+			return result;
+		}
+	}
+}
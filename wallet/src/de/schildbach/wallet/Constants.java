@@ -48,6 +48,8 @@ public class Constants
 
 	public static final String WALLET_KEY_BACKUP_BASE58 = "key-backup-base58" + FILENAME_NETWORK_SUFFIX;
 
+	public static final String WALLET_REGISTRY_DIRECTORY = "wallets" + FILENAME_NETWORK_SUFFIX;
+
 	public static final File EXTERNAL_WALLET_BACKUP_DIR = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
 	public static final String EXTERNAL_WALLET_KEY_BACKUP = "litecoin-wallet-keys";
 
@@ -67,6 +69,7 @@ public class Constants
 	public static final String DEFAULT_EXCHANGE_CURRENCY = "USD";
 	public static final int WALLET_OPERATION_STACK_SIZE = 256 * 1024;
 	public static final long BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS = DateUtils.SECOND_IN_MILLIS;
+	public static final long BLOCKCHAIN_STATE_COMPAT_BROADCAST_THROTTLE_MS = DateUtils.MINUTE_IN_MILLIS;
 	public static final long BLOCKCHAIN_UPTODATE_THRESHOLD_MS = DateUtils.HOUR_IN_MILLIS;
 
 	public static final String CURRENCY_CODE_BTC = "LTC";
@@ -83,6 +86,12 @@ public class Constants
     public static final BigInteger CENT = new BigInteger("1000000", 10);
     public static final BigInteger MIN_TX_FEE = CENT.divide(new BigInteger("10"));
     public static final BigInteger TX_FEE_PER_KB = CENT.divide(new BigInteger("10"));
+    // outputs below this cost an extra fee, so change below it is rather given to the fee
+    public static final BigInteger DUST_THRESHOLD = CENT.divide(new BigInteger("10"));
+    // outputs below this are merged into larger ones when the wallet is idle, if enabled
+    public static final BigInteger CONSOLIDATION_SMALL_OUTPUT = CENT.multiply(new BigInteger("10"));
+    public static final int CONSOLIDATION_MIN_OUTPUTS = 50;
+    public static final int CONSOLIDATION_MAX_INPUTS = 200;
 
 	public static final int BTC_MAX_PRECISION = 8;
 	public static final int MBTC_MAX_PRECISION = 5;
@@ -120,6 +129,9 @@ public class Constants
 	public static final String PREFS_KEY_TRUSTED_PEER = "trusted_peer";
 	public static final String PREFS_KEY_TRUSTED_PEER_ONLY = "trusted_peer_only";
 	public static final String PREFS_KEY_LABS_BLUETOOTH_OFFLINE_TRANSACTIONS = "labs_bluetooth_offline_transactions";
+	public static final String PREFS_KEY_LABS_CONSOLIDATE_OUTPUTS = "labs_consolidate_outputs";
+	public static final String PREFS_KEY_LABS_KEY_POOL_DEPTH = "labs_key_pool_depth";
+	public static final String PREFS_DEFAULT_KEY_POOL_DEPTH = "5";
 	public static final String PREFS_KEY_BTC_PRECISION = "btc_precision";
 	public static final String PREFS_DEFAULT_BTC_PRECISION = "4";
 	public static final String PREFS_KEY_DISCLAIMER = "disclaimer";
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+
+import de.schildbach.wallet.core.AtomicFiles;
+import de.schildbach.wallet.core.KeyFiles;
+
+/**
+ * Daily key backup files, one per day and reused every 100 days. Pooled keys are appended to today's file; everything else
+ * causes a rewrite of it. Appends and rewrites are serialized, as appends come from the key pool thread while rewrites for
+ * imported keys can come from any thread.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class KeyBackup implements KeyPool.Backup
+{
+	public interface KeySource
+	{
+		/**
+		 * @return keys to back up besides the pooled keys
+		 */
+		List<ECKey> getKeys();
+	}
+
+	private final NetworkParameters params;
+	private final File dir;
+	private final String baseName;
+	private final KeySource keySource;
+
+	private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Logger log = LoggerFactory.getLogger(KeyBackup.class);
+
+	public KeyBackup(@Nonnull final NetworkParameters params, @Nonnull final File dir, @Nonnull final String baseName,
+			@Nonnull final KeySource keySource)
+	{
+		this.params = params;
+		this.dir = dir;
+		this.baseName = baseName;
+		this.keySource = keySource;
+	}
+
+	@Override
+	public synchronized void append(@Nonnull final List<ECKey> newKeys, @Nonnull final List<ECKey> pooledKeys) throws IOException
+	{
+		final long day = System.currentTimeMillis() / DAY_IN_MILLIS;
+		final File file = getFile(day);
+
+		// file names repeat every 100 days, so only a file written today can be appended to
+		if (file.exists() && file.lastModified() / DAY_IN_MILLIS == day)
+		{
+			final Writer out = new OutputStreamWriter(new FileOutputStream(file, true), UTF_8);
+			try
+			{
+				KeyFiles.appendKeys(out, newKeys, params);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		else
+		{
+			write(file, pooledKeys);
+		}
+	}
+
+	/**
+	 * Rewrites today's backup, for keys that did not come from the key pool, like imported keys.
+	 */
+	public synchronized void rewrite(@Nonnull final List<ECKey> pooledKeys) throws IOException
+	{
+		write(getFile(System.currentTimeMillis() / DAY_IN_MILLIS), pooledKeys);
+	}
+
+	public File getFile(final long day)
+	{
+		return new File(dir, String.format(Locale.US, "%s.%02d", baseName, day % 100l));
+	}
+
+	private void write(@Nonnull final File file, @Nonnull final List<ECKey> pooledKeys) throws IOException
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>(keySource.getKeys());
+		keys.addAll(pooledKeys);
+
+		AtomicFiles.write(file, new AtomicFiles.Content()
+		{
+			@Override
+			public void writeTo(final Writer writer) throws IOException
+			{
+				KeyFiles.writeKeys(writer, keys, params);
+			}
+		});
+
+		log.info("{} keys written to {}", keys.size(), file);
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.BloomFilter;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.PeerFilterProvider;
+import com.google.bitcoin.core.Wallet;
+
+import de.schildbach.wallet.core.AtomicFiles;
+import de.schildbach.wallet.core.KeyFiles;
+
+/**
+ * Keys generated ahead of time on a background thread, so that a new address can be handed out without generating a key
+ * and rewriting the key backup on the caller's thread. Every key is backed up before it is handed out. Pooled keys are
+ * already part of the bloom filter of the peer group, so a payment to a freshly handed out key is not missed while the
+ * updated filter is on its way to the peers.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class KeyPool implements PeerFilterProvider
+{
+	public interface Backup
+	{
+		/**
+		 * Called on the pool thread before new keys are made available or handed out. If this throws, the keys are
+		 * discarded.
+		 *
+		 * @param pooledKeys
+		 *            all keys of the pool, including the new ones, for when the backup needs to be rewritten
+		 */
+		void append(@Nonnull List<ECKey> newKeys, @Nonnull List<ECKey> pooledKeys) throws IOException;
+	}
+
+	public interface OnRefillListener
+	{
+		void onRefill(@Nonnull KeyPool pool);
+	}
+
+	private final NetworkParameters params;
+	private final File file;
+	private final int depth;
+	private final Backup backup;
+
+	private final LinkedList<ECKey> keys = new LinkedList<ECKey>(); // guarded by this
+	private final List<OnRefillListener> listeners = new CopyOnWriteArrayList<OnRefillListener>();
+	private final ExecutorService executor;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Logger log = LoggerFactory.getLogger(KeyPool.class);
+
+	/**
+	 * @param wallet
+	 *            keys already in this wallet are dropped from the pool, in case the pool was not saved after handing
+	 *            them out
+	 */
+	public KeyPool(@Nonnull final File file, final int depth, @Nonnull final Backup backup, @Nonnull final Wallet wallet)
+	{
+		this.params = wallet.getParams();
+		this.file = file;
+		this.depth = depth;
+		this.backup = backup;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(final Runnable r)
+			{
+				final Thread thread = new Thread(r, "key pool");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+
+		load(wallet);
+
+		executor.execute(refillRunnable);
+	}
+
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	public synchronized int size()
+	{
+		return keys.size();
+	}
+
+	/**
+	 * @return keys currently pooled, for backups
+	 */
+	public synchronized List<ECKey> getKeys()
+	{
+		return new ArrayList<ECKey>(keys);
+	}
+
+	/**
+	 * Hands out a pooled key, which is already backed up. If the pool has run dry, blocks until a key has been generated
+	 * and backed up on the pool thread.
+	 *
+	 * @throws IOException
+	 *             if the pool was empty and backing up a new key failed, in which case no key is handed out
+	 */
+	public ECKey take() throws IOException
+	{
+		ECKey key;
+		synchronized (this)
+		{
+			key = keys.poll();
+		}
+
+		if (key == null)
+		{
+			log.info("key pool empty, waiting for a key to be backed up");
+
+			try
+			{
+				key = executor.submit(backedUpKeyCallable).get();
+			}
+			catch (final InterruptedException x)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while waiting for a key", x);
+			}
+			catch (final ExecutionException x)
+			{
+				final Throwable cause = x.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+
+		executor.execute(refillRunnable);
+
+		return key;
+	}
+
+	/**
+	 * Blocks until the refills asked for so far are done.
+	 */
+	public void awaitRefill() throws InterruptedException
+	{
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				latch.countDown();
+			}
+		});
+		latch.await();
+	}
+
+	public void addOnRefillListener(@Nonnull final OnRefillListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeOnRefillListener(@Nonnull final OnRefillListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	@Override
+	public long getEarliestKeyCreationTime()
+	{
+		// pooled keys have not been handed out yet, so nothing can have been paid to them in the past
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public synchronized int getBloomFilterElementCount()
+	{
+		return keys.size() * 2;
+	}
+
+	@Override
+	public synchronized BloomFilter getBloomFilter(final int size, final double falsePositiveRate, final long nTweak)
+	{
+		final BloomFilter filter = new BloomFilter(size, falsePositiveRate, nTweak, BloomFilter.BloomUpdate.UPDATE_P2PUBKEY_ONLY);
+		for (final ECKey key : keys)
+		{
+			filter.insert(key.getPubKey());
+			filter.insert(key.getPubKeyHash());
+		}
+		return filter;
+	}
+
+	@Override
+	public boolean isRequiringUpdateAllBloomFilter()
+	{
+		return false;
+	}
+
+	public void appendReport(@Nonnull final Appendable report) throws IOException
+	{
+		report.append(size() + " keys pooled, depth " + depth + "\n");
+	}
+
+	private final Callable<ECKey> backedUpKeyCallable = new Callable<ECKey>()
+	{
+		@Override
+		public ECKey call() throws IOException
+		{
+			// a refill may have run in the meantime
+			synchronized (KeyPool.this)
+			{
+				final ECKey pooledKey = keys.poll();
+				if (pooledKey != null)
+					return pooledKey;
+			}
+
+			final ECKey key = new ECKey();
+			final List<ECKey> newKeys = new ArrayList<ECKey>(1);
+			newKeys.add(key);
+
+			backup.append(newKeys, newKeys);
+
+			return key;
+		}
+	};
+
+	private final Runnable refillRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final int missing;
+			synchronized (KeyPool.this)
+			{
+				missing = depth - keys.size();
+			}
+
+			if (missing > 0)
+			{
+				final long start = System.currentTimeMillis();
+
+				final List<ECKey> newKeys = new ArrayList<ECKey>(missing);
+				for (int i = 0; i < missing; i++)
+					newKeys.add(new ECKey());
+
+				final List<ECKey> pooledKeys;
+				synchronized (KeyPool.this)
+				{
+					pooledKeys = new ArrayList<ECKey>(keys);
+				}
+				pooledKeys.addAll(newKeys);
+
+				try
+				{
+					backup.append(newKeys, pooledKeys);
+				}
+				catch (final IOException x)
+				{
+					log.error("problem backing up pooled keys, not adding them", x);
+					return;
+				}
+
+				synchronized (KeyPool.this)
+				{
+					keys.addAll(newKeys);
+				}
+
+				log.info("{} keys added to pool, took {}ms", missing, System.currentTimeMillis() - start);
+
+				for (final OnRefillListener listener : listeners)
+					listener.onRefill(KeyPool.this);
+			}
+
+			save();
+		}
+	};
+
+	private void load(@Nonnull final Wallet wallet)
+	{
+		BufferedReader reader = null;
+
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+			final List<ECKey> loadedKeys = KeyFiles.readKeys(reader, params);
+
+			for (final Iterator<ECKey> i = loadedKeys.iterator(); i.hasNext();)
+				if (wallet.hasKey(i.next()))
+					i.remove();
+
+			synchronized (this)
+			{
+				keys.addAll(loadedKeys);
+			}
+
+			log.info("{} keys pooled", loadedKeys.size());
+		}
+		catch (final FileNotFoundException x)
+		{
+			// nothing pooled yet
+		}
+		catch (final IOException x)
+		{
+			log.info("problem loading key pool", x);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	private void save()
+	{
+		final List<ECKey> keysToSave;
+		synchronized (this)
+		{
+			keysToSave = new ArrayList<ECKey>(keys);
+		}
+
+		try
+		{
+			AtomicFiles.write(file, new AtomicFiles.Content()
+			{
+				@Override
+				public void writeTo(final Writer writer) throws IOException
+				{
+					KeyFiles.writeKeys(writer, keysToSave, params);
+				}
+			});
+		}
+		catch (final IOException x)
+		{
+			log.info("problem saving key pool", x);
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.schildbach.wallet.core.AtomicFiles;
+
+/**
+ * Process-wide cache of host names of peers. Lookups run on a small pool of threads, so the names of many peers arrive
+ * together rather than one after another, and each address is looked up only once at a time. Results, including
+ * addresses without a name, are kept in a file for a while, so they survive the screens showing them.
+ *
+ * @author Litecoin Dev Team
+ */
+public class ReverseDnsResolver
+{
+	private static final int NUM_THREADS = 4;
+	private static final long TTL_MS = TimeUnit.DAYS.toMillis(1);
+	private static final long NEGATIVE_TTL_MS = TimeUnit.HOURS.toMillis(1);
+	private static final int MAX_ENTRIES = 500;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final class Entry
+	{
+		@CheckForNull
+		public final String hostname;
+		public final long expires;
+
+		public Entry(@CheckForNull final String hostname, final long expires)
+		{
+			this.hostname = hostname;
+			this.expires = expires;
+		}
+	}
+
+	private final File cacheFile;
+	private final ExecutorService executor;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>(); // guarded by entries
+	private final Set<String> pending = new HashSet<String>(); // guarded by entries
+
+	private static final Logger log = LoggerFactory.getLogger(ReverseDnsResolver.class);
+
+	public ReverseDnsResolver(@Nonnull final File cacheFile)
+	{
+		this.cacheFile = cacheFile;
+
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+				{
+					private int count = 0;
+
+					@Override
+					public synchronized Thread newThread(final Runnable r)
+					{
+						final Thread thread = new Thread(r, "reverse dns " + count++);
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		this.executor = executor;
+
+		load();
+	}
+
+	/**
+	 * Returns the host name of an address if it is known. Otherwise, a lookup is started and the name will be returned
+	 * once it is available. Does not block.
+	 */
+	@CheckForNull
+	public String getHostname(@Nonnull final InetAddress address)
+	{
+		final String key = address.getHostAddress();
+		final long now = System.currentTimeMillis();
+
+		synchronized (entries)
+		{
+			final Entry entry = entries.get(key);
+			if (entry != null && entry.expires > now)
+				return entry.hostname;
+
+			if (pending.add(key))
+				executor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						resolve(address, key);
+					}
+				});
+
+			// stale names are still better than none
+			return entry != null ? entry.hostname : null;
+		}
+	}
+
+	/**
+	 * Looks up the host name of an address, blocking. Returns null if there is none.
+	 */
+	@CheckForNull
+	protected String lookup(@Nonnull final InetAddress address)
+	{
+		final String hostname = address.getCanonicalHostName();
+
+		// the address itself is returned if there is no name
+		return hostname.equals(address.getHostAddress()) ? null : hostname;
+	}
+
+	private void resolve(@Nonnull final InetAddress address, @Nonnull final String key)
+	{
+		String hostname = null;
+		try
+		{
+			hostname = lookup(address);
+		}
+		finally
+		{
+			final long now = System.currentTimeMillis();
+
+			synchronized (entries)
+			{
+				entries.put(key, new Entry(hostname, now + (hostname != null ? TTL_MS : NEGATIVE_TTL_MS)));
+				pending.remove(key);
+
+				if (entries.size() > MAX_ENTRIES)
+					for (final Iterator<Entry> i = entries.values().iterator(); i.hasNext();)
+						if (i.next().expires <= now)
+							i.remove();
+			}
+
+			save();
+		}
+	}
+
+	private void load()
+	{
+		BufferedReader reader = null;
+
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), UTF_8));
+			final long now = System.currentTimeMillis();
+
+			synchronized (entries)
+			{
+				String line;
+				while (null != (line = reader.readLine()))
+				{
+					final String[] fields = line.split("\t", -1);
+					if (fields.length != 3)
+						continue;
+
+					try
+					{
+						final long expires = Long.parseLong(fields[2]);
+						if (expires > now)
+							entries.put(fields[0], new Entry(fields[1].isEmpty() ? null : fields[1], expires));
+					}
+					catch (final NumberFormatException x)
+					{
+						// skip line
+					}
+				}
+			}
+		}
+		catch (final FileNotFoundException x)
+		{
+			// nothing cached yet
+		}
+		catch (final IOException x)
+		{
+			log.info("problem loading reverse dns cache", x);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	private void save()
+	{
+		final List<Map.Entry<String, Entry>> snapshot;
+		synchronized (entries)
+		{
+			snapshot = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+		}
+
+		// keep the entries that live longest
+		Collections.sort(snapshot, new Comparator<Map.Entry<String, Entry>>()
+		{
+			@Override
+			public int compare(final Map.Entry<String, Entry> lhs, final Map.Entry<String, Entry> rhs)
+			{
+				final long l = lhs.getValue().expires;
+				final long r = rhs.getValue().expires;
+				return l > r ? -1 : (l < r ? 1 : 0);
+			}
+		});
+
+		synchronized (cacheFile)
+		{
+			try
+			{
+				AtomicFiles.write(cacheFile, new AtomicFiles.Content()
+				{
+					@Override
+					public void writeTo(final Writer writer) throws IOException
+					{
+						final long now = System.currentTimeMillis();
+						int count = 0;
+						for (final Map.Entry<String, Entry> mapEntry : snapshot)
+						{
+							final Entry entry = mapEntry.getValue();
+							if (entry.expires <= now || count++ >= MAX_ENTRIES)
+								continue;
+
+							writer.write(mapEntry.getKey() + "\t" + (entry.hostname != null ? entry.hostname : "") + "\t" + entry.expires + "\n");
+						}
+					}
+				});
+			}
+			catch (final IOException x)
+			{
+				log.info("problem saving reverse dns cache", x);
+			}
+		}
+	}
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.AbstractWalletEventListener;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.ScriptException;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionConfidence;
+import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
+import com.google.bitcoin.core.TransactionInput;
+import com.google.bitcoin.core.TransactionOutPoint;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.utils.Threading;
+import com.google.bitcoin.wallet.DefaultCoinSelector;
+
+/**
+ * Index of the spendable outputs of the wallet, ordered by value (largest first) and then by depth (deepest first). It
+ * is updated per transaction from wallet events, and rebuilt from scratch on a background thread initially, on
+ * reorganizations and whenever {@link #rebuild()} is called. Spendable balance and balance per address are kept
+ * alongside, so reading them does not need to walk the wallet.
+ *
+ * Only outputs that the default coin selector would select are indexed, so the spendable balance corresponds to
+ * {@link Wallet.BalanceType#AVAILABLE}.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class UnspentOutputIndex
+{
+	private final Wallet wallet;
+	private final NetworkParameters params;
+
+	private final Object lock = new Object();
+	private final TreeSet<Entry> entries = new TreeSet<Entry>(ENTRY_COMPARATOR); // guarded by lock
+	private final Map<OutPoint, Entry> entriesByOutPoint = new HashMap<OutPoint, Entry>(); // guarded by lock
+	private final Map<Address, BigInteger> balancesByAddress = new HashMap<Address, BigInteger>(); // guarded by lock
+	private BigInteger balance = BigInteger.ZERO; // guarded by lock
+	private int numPendingRebuilds = 0; // guarded by lock
+	private final AtomicLong numChanges = new AtomicLong();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(final Runnable r)
+		{
+			final Thread thread = new Thread(r, "unspent outputs");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private static final Logger log = LoggerFactory.getLogger(UnspentOutputIndex.class);
+
+	private static final class OutPoint
+	{
+		public final Sha256Hash hash;
+		public final long index;
+
+		public OutPoint(@Nonnull final Sha256Hash hash, final long index)
+		{
+			this.hash = hash;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (o == this)
+				return true;
+			if (!(o instanceof OutPoint))
+				return false;
+			final OutPoint other = (OutPoint) o;
+			return index == other.index && hash.equals(other.hash);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash.hashCode() * 31 + (int) index;
+		}
+	}
+
+	private static final class Entry
+	{
+		public final OutPoint outPoint;
+		public final TransactionOutput output;
+		public final BigInteger value;
+		public final int height;
+		@CheckForNull
+		public final Address address;
+
+		public Entry(@Nonnull final OutPoint outPoint, @Nonnull final TransactionOutput output, final int height, @Nullable final Address address)
+		{
+			this.outPoint = outPoint;
+			this.output = output;
+			this.value = output.getValue();
+			this.height = height;
+			this.address = address;
+		}
+	}
+
+	private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>()
+	{
+		@Override
+		public int compare(final Entry lhs, final Entry rhs)
+		{
+			final int valueComparison = rhs.value.compareTo(lhs.value);
+			if (valueComparison != 0)
+				return valueComparison;
+
+			// lower height means more confirmations
+			if (lhs.height != rhs.height)
+				return lhs.height < rhs.height ? -1 : 1;
+
+			final byte[] lhsHash = lhs.outPoint.hash.getBytes();
+			final byte[] rhsHash = rhs.outPoint.hash.getBytes();
+			for (int i = 0; i < lhsHash.length; i++)
+				if (lhsHash[i] != rhsHash[i])
+					return (lhsHash[i] & 0xff) < (rhsHash[i] & 0xff) ? -1 : 1;
+
+			return lhs.outPoint.index < rhs.outPoint.index ? -1 : (lhs.outPoint.index > rhs.outPoint.index ? 1 : 0);
+		}
+	};
+
+	public UnspentOutputIndex(@Nonnull final Wallet wallet)
+	{
+		this.wallet = wallet;
+		this.params = wallet.getParams();
+
+		// runs synchronously inside the wallet lock, so the index never lags behind the wallet
+		wallet.addEventListener(walletEventListener, Threading.SAME_THREAD);
+
+		rebuild();
+	}
+
+	/**
+	 * Rebuild the index on a background thread. Needed after changes of the wallet that do not fire events, like
+	 * clearing its transactions.
+	 */
+	public void rebuild()
+	{
+		synchronized (lock)
+		{
+			numPendingRebuilds++;
+		}
+		numChanges.incrementAndGet();
+
+		executor.execute(rebuildRunnable);
+	}
+
+	/**
+	 * @return false while a rebuild is pending, in which case the index might not reflect the wallet
+	 */
+	public boolean isReady()
+	{
+		synchronized (lock)
+		{
+			return numPendingRebuilds == 0;
+		}
+	}
+
+	/**
+	 * Wait for pending rebuilds to finish. Not to be called on the main thread.
+	 */
+	public void awaitReady()
+	{
+		synchronized (lock)
+		{
+			try
+			{
+				while (numPendingRebuilds > 0)
+					lock.wait();
+			}
+			catch (final InterruptedException x)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Spendable outputs, largest first. Every step is a lookup in the index, so taking the first few outputs does not copy
+	 * the index. Outputs that get spent while iterating may still be returned, so check them with
+	 * {@link #isSpendable(TransactionOutput)}.
+	 */
+	public Iterator<TransactionOutput> largestFirst()
+	{
+		return new Iterator<TransactionOutput>()
+		{
+			private Entry last = null;
+			private Entry next = null;
+			private boolean fetched = false;
+
+			@Override
+			public boolean hasNext()
+			{
+				if (!fetched)
+				{
+					synchronized (lock)
+					{
+						if (last != null)
+							next = entries.higher(last);
+						else
+							next = !entries.isEmpty() ? entries.first() : null;
+					}
+					fetched = true;
+				}
+
+				return next != null;
+			}
+
+			@Override
+			public TransactionOutput next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				last = next;
+				fetched = false;
+				return last.output;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return all spendable outputs, largest first
+	 */
+	public List<TransactionOutput> getOutputs()
+	{
+		synchronized (lock)
+		{
+			final List<TransactionOutput> outputs = new ArrayList<TransactionOutput>(entries.size());
+			for (final Entry entry : entries)
+				outputs.add(entry.output);
+			return outputs;
+		}
+	}
+
+	public BigInteger getBalance()
+	{
+		synchronized (lock)
+		{
+			return balance;
+		}
+	}
+
+	public BigInteger getBalance(@Nonnull final Address address)
+	{
+		synchronized (lock)
+		{
+			final BigInteger addressBalance = balancesByAddress.get(address);
+			return addressBalance != null ? addressBalance : BigInteger.ZERO;
+		}
+	}
+
+	public int size()
+	{
+		synchronized (lock)
+		{
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Whether the given output may currently be spent. Use this to double check outputs taken from the index, as the
+	 * wallet may have changed since.
+	 */
+	public boolean isSpendable(@Nonnull final TransactionOutput output)
+	{
+		final Transaction tx = output.getParentTransaction();
+		if (tx == null || !output.isAvailableForSpending() || !output.isMine(wallet))
+			return false;
+		if (!DefaultCoinSelector.isSelectable(tx))
+			return false;
+		if (tx.isCoinBase())
+		{
+			final TransactionConfidence confidence = tx.getConfidence();
+			if (confidence.getConfidenceType() != ConfidenceType.BUILDING
+					|| confidence.getDepthInBlocks() < params.getSpendableCoinbaseDepth())
+				return false;
+		}
+
+		return true;
+	}
+
+	private final Runnable rebuildRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final long start = System.currentTimeMillis();
+			final int size = rebuildNow();
+
+			synchronized (lock)
+			{
+				numPendingRebuilds--;
+				lock.notifyAll();
+			}
+
+			log.info("indexed " + size + " spendable outputs, took " + (System.currentTimeMillis() - start) + " ms");
+		}
+	};
+
+	private int rebuildNow()
+	{
+		while (true)
+		{
+			final long changes = numChanges.get();
+
+			// don't hold our lock while calling into the wallet, wallet listeners take the locks the other way round
+			final List<Entry> newEntries = new ArrayList<Entry>();
+			for (final TransactionOutput output : wallet.calculateAllSpendCandidates(true))
+				if (isSpendable(output))
+					newEntries.add(entry(output));
+
+			synchronized (lock)
+			{
+				if (changes != numChanges.get())
+					continue; // the wallet changed while walking it, which might not be reflected
+
+				entries.clear();
+				entriesByOutPoint.clear();
+				balancesByAddress.clear();
+				balance = BigInteger.ZERO;
+
+				for (final Entry entry : newEntries)
+					put(entry);
+			}
+
+			return newEntries.size();
+		}
+	}
+
+	/**
+	 * Re-evaluate the outputs of a transaction, and the outputs it spends.
+	 */
+	private void update(@Nonnull final Transaction tx)
+	{
+		numChanges.incrementAndGet();
+
+		final List<TransactionOutput> affected = new ArrayList<TransactionOutput>(tx.getOutputs());
+
+		for (final TransactionInput input : tx.getInputs())
+		{
+			final TransactionOutPoint outPoint = input.getOutpoint();
+			final Transaction parent = wallet.getTransaction(outPoint.getHash());
+			if (parent != null && outPoint.getIndex() < parent.getOutputs().size())
+				affected.add(parent.getOutput((int) outPoint.getIndex()));
+		}
+
+		final List<Entry> toPut = new ArrayList<Entry>(affected.size());
+		final List<OutPoint> toRemove = new ArrayList<OutPoint>(affected.size());
+		for (final TransactionOutput output : affected)
+		{
+			if (isSpendable(output))
+				toPut.add(entry(output));
+			else
+				toRemove.add(outPoint(output));
+		}
+
+		synchronized (lock)
+		{
+			for (final OutPoint outPoint : toRemove)
+				remove(outPoint);
+			for (final Entry entry : toPut)
+				put(entry);
+		}
+	}
+
+	private void put(@Nonnull final Entry entry)
+	{
+		remove(entry.outPoint);
+
+		entries.add(entry);
+		entriesByOutPoint.put(entry.outPoint, entry);
+		balance = balance.add(entry.value);
+		if (entry.address != null)
+			addToAddress(entry.address, entry.value);
+	}
+
+	private void remove(@Nonnull final OutPoint outPoint)
+	{
+		final Entry entry = entriesByOutPoint.remove(outPoint);
+		if (entry == null)
+			return;
+
+		entries.remove(entry);
+		balance = balance.subtract(entry.value);
+		if (entry.address != null)
+			addToAddress(entry.address, entry.value.negate());
+	}
+
+	private void addToAddress(@Nonnull final Address address, @Nonnull final BigInteger value)
+	{
+		final BigInteger addressBalance = balancesByAddress.get(address);
+		final BigInteger newBalance = addressBalance != null ? addressBalance.add(value) : value;
+		if (newBalance.signum() != 0)
+			balancesByAddress.put(address, newBalance);
+		else
+			balancesByAddress.remove(address);
+	}
+
+	private Entry entry(@Nonnull final TransactionOutput output)
+	{
+		final TransactionConfidence confidence = output.getParentTransaction().getConfidence();
+		final int height = confidence.getConfidenceType() == ConfidenceType.BUILDING ? confidence.getAppearedAtChainHeight()
+				: Integer.MAX_VALUE;
+
+		Address address = null;
+		try
+		{
+			if (output.getScriptPubKey().isSentToAddress())
+				address = output.getScriptPubKey().getToAddress(params);
+		}
+		catch (final ScriptException x)
+		{
+			// no address, so not counted per address
+		}
+
+		return new Entry(outPoint(output), output, height, address);
+	}
+
+	private static OutPoint outPoint(@Nonnull final TransactionOutput output)
+	{
+		final Transaction tx = output.getParentTransaction();
+		return new OutPoint(tx.getHash(), tx.getOutputs().indexOf(output));
+	}
+
+	private final AbstractWalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			update(tx);
+		}
+
+		@Override
+		public void onCoinsSent(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			update(tx);
+		}
+
+		@Override
+		public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx)
+		{
+			final ConfidenceType confidenceType = tx.getConfidence().getConfidenceType();
+
+			// Every new block changes the depth of all transactions, which only matters for the ordering if the
+			// transaction just got into the chain. Pending transactions can become selectable as they propagate, dead
+			// ones release what they spent, and coinbases mature.
+			if (confidenceType != ConfidenceType.BUILDING || tx.getConfidence().getDepthInBlocks() <= 1 || tx.isCoinBase())
+				update(tx);
+		}
+
+		@Override
+		public void onReorganize(final Wallet wallet)
+		{
+			rebuild();
+		}
+	};
+}
@@ -19,22 +19,16 @@ package de.schildbach.wallet;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
-import org.bitcoinj.wallet.Protos;
 import org.litecoin.LitecoinWallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +44,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
+import android.net.Uri;
 import android.os.Build;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
@@ -68,16 +63,20 @@ import com.google.bitcoin.core.ECKey;
 import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.store.UnreadableWalletException;
-import com.google.bitcoin.store.WalletProtobufSerializer;
 import com.google.bitcoin.utils.Threading;
 import com.google.bitcoin.wallet.WalletFiles;
-import com.google.bitcoin.core.NetworkParameters;
 
+import de.schildbach.wallet.core.WalletLoader;
 import de.schildbach.wallet.service.BlockchainService;
 import de.schildbach.wallet.service.BlockchainServiceImpl;
+import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.service.BroadcastOutbox;
+import de.schildbach.wallet.service.PeerMetricsCollector;
+import de.schildbach.wallet.util.AsyncBatchingAppender;
 import de.schildbach.wallet.util.CrashReporter;
 import de.schildbach.wallet.util.Io;
 import de.schildbach.wallet.util.LinuxSecureRandom;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -96,8 +95,25 @@ public class WalletApplication extends Application
 	private File walletFile;
 	private Wallet wallet;
 	private PackageInfo packageInfo;
+	private AddressLabelCache addressLabelCache;
+	private UnspentOutputIndex unspentOutputIndex;
+	private WalletBalanceTracker balanceTracker;
+	private WalletEventDispatcher walletEventDispatcher;
+	private WalletRegistry walletRegistry;
+	private ReverseDnsResolver reverseDnsResolver;
+	private BroadcastOutbox broadcastOutbox;
+	private WatchedAddresses watchedAddresses;
+	private KeyBackup keyBackup;
+	private KeyPool keyPool;
+	private final PeerMetricsCollector peerMetrics = new PeerMetricsCollector();
+	private final StateObservable<BlockchainState> blockchainState = new StateObservable<BlockchainState>();
+	private final StateObservable<Integer> peerState = new StateObservable<Integer>();
 
 	private static final int KEY_ROTATION_VERSION_CODE = 135;
+	private static final String REVERSE_DNS_CACHE_FILENAME = "reverse-dns.cache";
+	private static final String BROADCAST_OUTBOX_FILENAME = "broadcast.outbox";
+	private static final String WATCHED_ADDRESSES_FILENAME = "watched.addresses";
+	private static final String KEY_POOL_FILENAME = "key.pool";
 
 	private static final Logger log = LoggerFactory.getLogger(WalletApplication.class);
 
@@ -139,6 +155,7 @@ public class WalletApplication extends Application
 
 		prefs = PreferenceManager.getDefaultSharedPreferences(this);
 		activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+		addressLabelCache = new AddressLabelCache(this);
 
 		blockchainServiceIntent = new Intent(this, BlockchainServiceImpl.class);
 		blockchainServiceCancelCoinsReceivedIntent = new Intent(BlockchainService.ACTION_CANCEL_COINS_RECEIVED, null, this,
@@ -151,6 +168,10 @@ public class WalletApplication extends Application
 
 		loadWalletFromProtobuf();
 		wallet.autosaveToFile(walletFile, 1, TimeUnit.SECONDS, new WalletAutosaveEventListener());
+		unspentOutputIndex = new UnspentOutputIndex(wallet);
+		balanceTracker = new WalletBalanceTracker(wallet, unspentOutputIndex);
+		walletEventDispatcher = new WalletEventDispatcher(wallet, balanceTracker);
+		walletRegistry = new WalletRegistry(Constants.NETWORK_PARAMETERS, getDir(Constants.WALLET_REGISTRY_DIRECTORY, Context.MODE_PRIVATE), new WalletAutosaveEventListener());
 
 		final int lastVersionCode = prefs.getInt(Constants.PREFS_KEY_LAST_VERSION, 0);
 		prefs.edit().putInt(Constants.PREFS_KEY_LAST_VERSION, packageInfo.versionCode).commit();
@@ -166,6 +187,21 @@ public class WalletApplication extends Application
 			wallet.setKeyRotationTime(System.currentTimeMillis() / 1000);
 		}
 
+		final int keyPoolDepth = Integer.parseInt(prefs.getString(Constants.PREFS_KEY_LABS_KEY_POOL_DEPTH, Constants.PREFS_DEFAULT_KEY_POOL_DEPTH));
+		keyBackup = new KeyBackup(Constants.NETWORK_PARAMETERS, getFilesDir(), Constants.WALLET_KEY_BACKUP_BASE58, new KeyBackup.KeySource()
+		{
+			@Override
+			public List<ECKey> getKeys()
+			{
+				final List<ECKey> keys = new LinkedList<ECKey>();
+				for (final ECKey key : wallet.getKeys())
+					if (!wallet.isKeyRotating(key))
+						keys.add(key);
+				return keys;
+			}
+		});
+		keyPool = new KeyPool(getFileStreamPath(KEY_POOL_FILENAME), keyPoolDepth, keyBackup, wallet);
+
 		ensureKey();
 	}
 
@@ -196,6 +232,11 @@ public class WalletApplication extends Application
 		fileAppender.setRollingPolicy(rollingPolicy);
 		fileAppender.start();
 
+		// keep file writes off the threads doing the logging
+		final AsyncBatchingAppender asyncFileAppender = new AsyncBatchingAppender(fileAppender, filePattern);
+		asyncFileAppender.setContext(context);
+		asyncFileAppender.start();
+
 		final PatternLayoutEncoder logcatTagPattern = new PatternLayoutEncoder();
 		logcatTagPattern.setContext(context);
 		logcatTagPattern.setPattern("%logger{0}");
@@ -213,9 +254,23 @@ public class WalletApplication extends Application
 		logcatAppender.start();
 
 		final ch.qos.logback.classic.Logger log = context.getLogger(Logger.ROOT_LOGGER_NAME);
-		log.addAppender(fileAppender);
+		log.addAppender(asyncFileAppender);
 		log.addAppender(logcatAppender);
 		log.setLevel(Level.INFO);
+
+		// write out what is still queued before the process dies
+		final Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()
+		{
+			@Override
+			public void uncaughtException(final Thread thread, final Throwable throwable)
+			{
+				context.stop();
+
+				if (previousHandler != null)
+					previousHandler.uncaughtException(thread, throwable);
+			}
+		});
 	}
 
 	private static final class WalletAutosaveEventListener implements WalletFiles.Listener
@@ -239,6 +294,104 @@ public class WalletApplication extends Application
 		return wallet;
 	}
 
+	/**
+	 * @return additional wallets that are synced along with the main wallet
+	 */
+	public WalletRegistry getWalletRegistry()
+	{
+		return walletRegistry;
+	}
+
+	/**
+	 * @return the main wallet, followed by all additional wallets
+	 */
+	public List<Wallet> getAllWallets()
+	{
+		final List<Wallet> wallets = new ArrayList<Wallet>();
+		wallets.add(wallet);
+		wallets.addAll(walletRegistry.getWallets());
+		return wallets;
+	}
+
+	public AddressLabelCache getAddressLabelCache()
+	{
+		return addressLabelCache;
+	}
+
+	public UnspentOutputIndex getUnspentOutputIndex()
+	{
+		return unspentOutputIndex;
+	}
+
+	public synchronized ReverseDnsResolver getReverseDnsResolver()
+	{
+		// only the network monitor needs it
+		if (reverseDnsResolver == null)
+			reverseDnsResolver = new ReverseDnsResolver(new File(getCacheDir(), REVERSE_DNS_CACHE_FILENAME));
+
+		return reverseDnsResolver;
+	}
+
+	public synchronized BroadcastOutbox getBroadcastOutbox()
+	{
+		if (broadcastOutbox == null)
+			broadcastOutbox = new BroadcastOutbox(getFileStreamPath(BROADCAST_OUTBOX_FILENAME));
+
+		return broadcastOutbox;
+	}
+
+	/**
+	 * Keys that are ready to be handed out, see {@link #addNewKeyToWallet()}.
+	 */
+	public KeyPool getKeyPool()
+	{
+		return keyPool;
+	}
+
+	public synchronized WatchedAddresses getWatchedAddresses()
+	{
+		if (watchedAddresses == null)
+			watchedAddresses = new WatchedAddresses(Constants.NETWORK_PARAMETERS, getFileStreamPath(WATCHED_ADDRESSES_FILENAME));
+
+		return watchedAddresses;
+	}
+
+	/**
+	 * Outlives the blockchain service, so the metrics of the last session can still go into reports.
+	 */
+	public PeerMetricsCollector getPeerMetrics()
+	{
+		return peerMetrics;
+	}
+
+	/**
+	 * Latest state of the blockchain service, for listeners that would otherwise register for
+	 * {@link BlockchainService#ACTION_BLOCKCHAIN_STATE}.
+	 */
+	public StateObservable<BlockchainState> getBlockchainState()
+	{
+		return blockchainState;
+	}
+
+	/**
+	 * Latest number of connected peers, for listeners that would otherwise register for
+	 * {@link BlockchainService#ACTION_PEER_STATE}.
+	 */
+	public StateObservable<Integer> getPeerState()
+	{
+		return peerState;
+	}
+
+	public WalletBalanceTracker getBalanceTracker()
+	{
+		return balanceTracker;
+	}
+
+	public WalletEventDispatcher getWalletEventDispatcher()
+	{
+		return walletEventDispatcher;
+	}
+
 	private void migrateWalletToProtobuf()
 	{
 		final File oldWalletFile = getFileStreamPath(Constants.WALLET_FILENAME);
@@ -275,28 +428,13 @@ public class WalletApplication extends Application
 		{
 			final long start = System.currentTimeMillis();
 
-			FileInputStream walletStream = null;
-
 			try
 			{
-				walletStream = new FileInputStream(walletFile);
-
-                try {
-                    WalletProtobufSerializer ser = new WalletProtobufSerializer();
-                    Protos.Wallet walletProto = ser.parseToProto(walletStream);
-                    final String paramsID = walletProto.getNetworkIdentifier();
-                    NetworkParameters params = NetworkParameters.fromID(paramsID);
-                    if (params == null)
-                        throw new UnreadableWalletException("Unknown network parameters ID " + paramsID);
-                    wallet = new LitecoinWallet(params);
-                    ser.readWallet(walletProto, wallet);
-                } catch (IOException e) {
-                    throw new UnreadableWalletException("Could not parse input stream to protobuf", e);
-                }
+				wallet = WalletLoader.load(Constants.NETWORK_PARAMETERS, walletFile);
 
 				log.info("wallet loaded from: '" + walletFile + "', took " + (System.currentTimeMillis() - start) + "ms");
 			}
-			catch (final FileNotFoundException x)
+			catch (final IOException x)
 			{
 				log.error("problem loading wallet", x);
 
@@ -312,30 +450,6 @@ public class WalletApplication extends Application
 
 				wallet = restoreWalletFromBackup();
 			}
-			finally
-			{
-				if (walletStream != null)
-				{
-					try
-					{
-						walletStream.close();
-					}
-					catch (final IOException x)
-					{
-						// swallow
-					}
-				}
-			}
-
-			if (!wallet.isConsistent())
-			{
-				Toast.makeText(this, "inconsistent wallet: " + walletFile, Toast.LENGTH_LONG).show();
-
-				wallet = restoreWalletFromBackup();
-			}
-
-			if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
-				throw new Error("bad wallet network parameters: " + wallet.getParams().getId());
 		}
 		else
 		{
@@ -390,16 +504,28 @@ public class WalletApplication extends Application
 				return; // found
 
 		log.info("wallet has no usable key - creating");
-		addNewKeyToWallet();
+		try
+		{
+			addNewKeyToWallet();
+		}
+		catch (final IOException x)
+		{
+			throw new RuntimeException(x);
+		}
 	}
 
-	public void addNewKeyToWallet()
+	/**
+	 * Adds a key from the pool, which has been backed up already. This is cheap while the pool has keys left. If it has
+	 * run dry, it blocks until a new key has been generated and backed up.
+	 *
+	 * @throws IOException
+	 *             if the pool had run dry and the new key could not be backed up, in which case no key is added
+	 */
+	public void addNewKeyToWallet() throws IOException
 	{
-		wallet.addKey(new ECKey());
-
-		backupKeys();
+		wallet.addKey(keyPool.take());
 
-		prefs.edit().putBoolean(Constants.PREFS_KEY_REMIND_BACKUP, true).commit();
+		prefs.edit().putBoolean(Constants.PREFS_KEY_REMIND_BACKUP, true).apply();
 	}
 
 	public void saveWallet()
@@ -424,17 +550,17 @@ public class WalletApplication extends Application
 		if (Constants.TEST)
 			Io.chmod(walletFile, 0777);
 
-		log.debug("wallet saved to: '" + walletFile + "', took " + (System.currentTimeMillis() - start) + "ms");
+		log.debug("wallet saved to: '{}', took {}ms", walletFile, System.currentTimeMillis() - start);
 	}
 
-    // Changed to append date/time stamp to prevent key overwriting
-	private void backupKeys()
+	/**
+	 * Rewrites today's key backup, for keys that did not come from the key pool, like imported keys.
+	 */
+	public void backupKeys()
 	{
 		try
 		{
-			final String filename = String.format(Locale.US, "%s.%02d", Constants.WALLET_KEY_BACKUP_BASE58,
-					(System.currentTimeMillis() / DateUtils.DAY_IN_MILLIS) % 100l);
-			writeKeys(openFileOutput(filename, Context.MODE_PRIVATE));
+			keyBackup.rewrite(keyPool.getKeys());
 		}
 		catch (final IOException x)
 		{
@@ -442,18 +568,6 @@ public class WalletApplication extends Application
 		}
 	}
 
-	private void writeKeys(@Nonnull final OutputStream os) throws IOException
-	{
-		final List<ECKey> keys = new LinkedList<ECKey>();
-		for (final ECKey key : wallet.getKeys())
-			if (!wallet.isKeyRotating(key))
-				keys.add(key);
-
-		final Writer out = new OutputStreamWriter(os, Constants.UTF_8);
-		WalletUtils.writeKeys(out, keys);
-		out.close();
-	}
-
 	public Address determineSelectedAddress()
 	{
 		final String selectedAddress = prefs.getString(Constants.PREFS_KEY_SELECTED_ADDRESS, null);
@@ -497,11 +611,22 @@ public class WalletApplication extends Application
 
 	public void broadcastTransaction(@Nonnull final Transaction tx)
 	{
+		// queue first, so the transaction is not lost if the service is not running or cannot connect
+		getBroadcastOutbox().add(tx.getHash(), System.currentTimeMillis());
+
 		final Intent intent = new Intent(BlockchainService.ACTION_BROADCAST_TRANSACTION, null, this, BlockchainServiceImpl.class);
 		intent.putExtra(BlockchainService.ACTION_BROADCAST_TRANSACTION_HASH, tx.getHash().getBytes());
 		startService(intent);
 	}
 
+	/**
+	 * Imports addresses to watch from a text file, one address per line. The import runs in the blockchain service.
+	 */
+	public void importWatchedAddresses(@Nonnull final Uri uri)
+	{
+		startService(new Intent(BlockchainService.ACTION_IMPORT_WATCHED_ADDRESSES, uri, this, BlockchainServiceImpl.class));
+	}
+
 	public boolean isServiceRunning(final Class<? extends Service> serviceClass)
 	{
 		final String packageName = getPackageName();
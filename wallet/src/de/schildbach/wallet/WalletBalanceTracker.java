@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.math.BigInteger;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.AbstractWalletEventListener;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+import com.google.bitcoin.utils.Threading;
+
+/**
+ * Keeps the balances of the wallet, so that widgets, notifications and the UI can read them cheaply. A balance is
+ * computed by walking the wallet at most once per wallet change, no matter how many consumers ask for it. The available
+ * balance is taken from the {@link UnspentOutputIndex}, which keeps it up to date without walking the wallet at all.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletBalanceTracker
+{
+	private final Wallet wallet;
+	private final UnspentOutputIndex unspentOutputIndex;
+
+	private final AtomicLong version = new AtomicLong();
+	private final Map<BalanceType, Balance> balances = new EnumMap<BalanceType, Balance>(BalanceType.class);
+	private long numComputed = 0;
+	private long numServed = 0;
+
+	private static final class Balance
+	{
+		public final long version;
+		public final BigInteger value;
+
+		public Balance(final long version, @Nonnull final BigInteger value)
+		{
+			this.version = version;
+			this.value = value;
+		}
+	}
+
+	public WalletBalanceTracker(@Nonnull final Wallet wallet, @Nonnull final UnspentOutputIndex unspentOutputIndex)
+	{
+		this.wallet = wallet;
+		this.unspentOutputIndex = unspentOutputIndex;
+
+		// runs synchronously inside the wallet lock, so no reader can see a balance from before the change once the
+		// change is visible to the wallet's other listeners
+		wallet.addEventListener(walletEventListener, Threading.SAME_THREAD);
+	}
+
+	@Nonnull
+	public BigInteger getBalance(@Nonnull final BalanceType type)
+	{
+		// while the index is rebuilding, its balance might be incomplete
+		if (type == BalanceType.AVAILABLE && unspentOutputIndex.isReady())
+			return unspentOutputIndex.getBalance();
+
+		synchronized (balances)
+		{
+			numServed++;
+
+			final Balance balance = balances.get(type);
+			if (balance != null && balance.version == version.get())
+				return balance.value;
+		}
+
+		// compute outside of our lock, as the wallet takes its own
+		final long computeVersion = version.get();
+		final BigInteger value = wallet.getBalance(type);
+
+		synchronized (balances)
+		{
+			numComputed++;
+
+			// a change might have happened while computing, in which case don't keep the value
+			if (computeVersion == version.get())
+				balances.put(type, new Balance(computeVersion, value));
+		}
+
+		return value;
+	}
+
+	@Override
+	public String toString()
+	{
+		synchronized (balances)
+		{
+			return "balances computed " + numComputed + " times for " + numServed + " reads";
+		}
+	}
+
+	private final AbstractWalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onWalletChanged(final Wallet wallet)
+		{
+			version.incrementAndGet();
+		}
+
+		@Override
+		public void onReorganize(final Wallet wallet)
+		{
+			version.incrementAndGet();
+		}
+	};
+}
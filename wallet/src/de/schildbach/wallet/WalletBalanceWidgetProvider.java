@@ -32,7 +32,6 @@ import android.text.Editable;
 import android.text.SpannableStringBuilder;
 import android.widget.RemoteViews;
 
-import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.core.Wallet.BalanceType;
 
 import de.schildbach.wallet.ui.RequestCoinsActivity;
@@ -52,8 +51,7 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider
 	public void onUpdate(final Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds)
 	{
 		final WalletApplication application = (WalletApplication) context.getApplicationContext();
-		final Wallet wallet = application.getWallet();
-		final BigInteger balance = wallet.getBalance(BalanceType.ESTIMATED);
+		final BigInteger balance = application.getBalanceTracker().getBalance(BalanceType.ESTIMATED);
 
 		updateWidgets(context, appWidgetManager, appWidgetIds, balance);
 	}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.Sha256Hash;
+
+/**
+ * What changed in the wallet between two deliveries of the {@link WalletEventDispatcher}. A transaction is in at most
+ * one of the three sets.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletDiff
+{
+	/** transactions new to the wallet */
+	public final Set<Sha256Hash> added;
+	/** transactions no longer in the wallet */
+	public final Set<Sha256Hash> removed;
+	/** transactions whose confidence changed, e.g. by being announced or included in a block */
+	public final Set<Sha256Hash> changed;
+	/** change of the estimated balance */
+	public final BigInteger balanceDelta;
+	/** if the chain was reorganized, in which case any transaction may have changed its place */
+	public final boolean reorganized;
+
+	public WalletDiff(@Nonnull final Set<Sha256Hash> added, @Nonnull final Set<Sha256Hash> removed, @Nonnull final Set<Sha256Hash> changed,
+			@Nonnull final BigInteger balanceDelta, final boolean reorganized)
+	{
+		this.added = Collections.unmodifiableSet(added);
+		this.removed = Collections.unmodifiableSet(removed);
+		this.changed = Collections.unmodifiableSet(changed);
+		this.balanceDelta = balanceDelta;
+		this.reorganized = reorganized;
+	}
+
+	/**
+	 * @return a diff covering this one followed by the given later one
+	 */
+	public WalletDiff merge(@Nonnull final WalletDiff later)
+	{
+		final Set<Sha256Hash> added = new HashSet<Sha256Hash>(this.added);
+		added.removeAll(later.removed);
+		added.addAll(later.added);
+
+		// a transaction added here and removed later never existed as far as the receiver is concerned
+		final Set<Sha256Hash> removed = new HashSet<Sha256Hash>(this.removed);
+		removed.removeAll(later.added);
+		for (final Sha256Hash hash : later.removed)
+			if (!this.added.contains(hash))
+				removed.add(hash);
+
+		final Set<Sha256Hash> changed = new HashSet<Sha256Hash>(this.changed);
+		changed.addAll(later.changed);
+		changed.removeAll(added);
+		changed.removeAll(removed);
+		changed.removeAll(later.removed);
+
+		return new WalletDiff(added, removed, changed, balanceDelta.add(later.balanceDelta), reorganized || later.reorganized);
+	}
+
+	public boolean isEmpty()
+	{
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && balanceDelta.signum() == 0 && !reorganized;
+	}
+
+	/**
+	 * @return true if the set of transactions changed, rather than just their confidence
+	 */
+	public boolean isStructural()
+	{
+		return !added.isEmpty() || !removed.isEmpty() || reorganized;
+	}
+
+	@Override
+	public String toString()
+	{
+		return added.size() + " added, " + removed.size() + " removed, " + changed.size() + " changed, balance " + balanceDelta
+				+ (reorganized ? ", reorganized" : "");
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.AbstractWalletEventListener;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+import com.google.bitcoin.utils.Threading;
+
+/**
+ * Single subscriber to the events of the wallet, fanning them out as {@link WalletDiff}s. Events are collected inside
+ * the wallet lock without any work beyond remembering the transaction hash, then turned into a diff on one background
+ * thread. Each subscriber is given diffs at most once per its throttle interval; diffs arriving in between are merged.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletEventDispatcher
+{
+	public interface Subscriber
+	{
+		void onWalletChanged(@Nonnull WalletDiff diff);
+	}
+
+	private static final long BATCH_MS = 100;
+
+	private final Wallet wallet;
+	private final WalletBalanceTracker balanceTracker;
+	private final ScheduledExecutorService executor;
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	private final Set<Sha256Hash> added = new HashSet<Sha256Hash>(); // guarded by this
+	private final Set<Sha256Hash> changed = new HashSet<Sha256Hash>(); // guarded by this
+	private boolean reorganized = false; // guarded by this
+	private boolean rescan = false; // guarded by this
+	private boolean explained = false; // guarded by this
+	private boolean batchScheduled = false; // guarded by this
+
+	private Set<Sha256Hash> known; // only accessed from executor
+	private BigInteger balance; // only accessed from executor
+
+	private static final Logger log = LoggerFactory.getLogger(WalletEventDispatcher.class);
+
+	public WalletEventDispatcher(@Nonnull final Wallet wallet, @Nonnull final WalletBalanceTracker balanceTracker)
+	{
+		this.wallet = wallet;
+		this.balanceTracker = balanceTracker;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(final Runnable r)
+			{
+				final Thread thread = new Thread(r, "wallet events");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				known = transactionHashes();
+				balance = balanceTracker.getBalance(BalanceType.ESTIMATED);
+			}
+		});
+
+		wallet.addEventListener(walletEventListener, Threading.SAME_THREAD);
+	}
+
+	/**
+	 * @param throttleMs
+	 *            minimum time between two deliveries to this subscriber
+	 * @param executor
+	 *            executor to call the subscriber on, e.g. a {@link de.schildbach.wallet.util.HandlerExecutor} for the main
+	 *            thread
+	 */
+	public void subscribe(@Nonnull final Subscriber subscriber, final long throttleMs, @Nonnull final Executor executor)
+	{
+		subscriptions.add(new Subscription(subscriber, throttleMs, executor));
+	}
+
+	public void unsubscribe(@Nonnull final Subscriber subscriber)
+	{
+		for (final Subscription subscription : subscriptions)
+		{
+			if (subscription.subscriber == subscriber)
+			{
+				subscription.removed = true;
+				subscriptions.remove(subscription);
+			}
+		}
+	}
+
+	private final AbstractWalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			synchronized (WalletEventDispatcher.this)
+			{
+				added.add(tx.getHash());
+				explained = true;
+				scheduleBatch();
+			}
+		}
+
+		@Override
+		public void onCoinsSent(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
+		{
+			onCoinsReceived(wallet, tx, prevBalance, newBalance);
+		}
+
+		@Override
+		public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx)
+		{
+			synchronized (WalletEventDispatcher.this)
+			{
+				changed.add(tx.getHash());
+				explained = true;
+				scheduleBatch();
+			}
+		}
+
+		@Override
+		public void onReorganize(final Wallet wallet)
+		{
+			synchronized (WalletEventDispatcher.this)
+			{
+				reorganized = true;
+				explained = true;
+				scheduleBatch();
+			}
+		}
+
+		@Override
+		public void onWalletChanged(final Wallet wallet)
+		{
+			synchronized (WalletEventDispatcher.this)
+			{
+				// e.g. transactions cleared for a replay; find out by comparing with what is known
+				if (!explained)
+					rescan = true;
+				explained = false;
+				scheduleBatch();
+			}
+		}
+	};
+
+	private void scheduleBatch()
+	{
+		if (!batchScheduled)
+		{
+			batchScheduled = true;
+			executor.schedule(batch, BATCH_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private final Runnable batch = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final Set<Sha256Hash> batchAdded;
+			final Set<Sha256Hash> batchChanged;
+			final boolean batchReorganized;
+			final boolean batchRescan;
+
+			synchronized (WalletEventDispatcher.this)
+			{
+				batchAdded = new HashSet<Sha256Hash>(added);
+				batchChanged = new HashSet<Sha256Hash>(changed);
+				batchReorganized = reorganized;
+				batchRescan = rescan;
+				added.clear();
+				changed.clear();
+				reorganized = false;
+				rescan = false;
+				batchScheduled = false;
+			}
+
+			final Set<Sha256Hash> batchRemoved = new HashSet<Sha256Hash>();
+			if (batchReorganized || batchRescan)
+			{
+				final Set<Sha256Hash> current = transactionHashes();
+				for (final Sha256Hash hash : current)
+					if (!known.contains(hash))
+						batchAdded.add(hash);
+				for (final Sha256Hash hash : known)
+					if (!current.contains(hash))
+						batchRemoved.add(hash);
+				known = current;
+			}
+			else
+			{
+				known.addAll(batchAdded);
+			}
+
+			batchChanged.removeAll(batchAdded);
+			batchChanged.removeAll(batchRemoved);
+
+			final BigInteger newBalance = balanceTracker.getBalance(BalanceType.ESTIMATED);
+			final BigInteger balanceDelta = newBalance.subtract(balance);
+			balance = newBalance;
+
+			final WalletDiff diff = new WalletDiff(batchAdded, batchRemoved, batchChanged, balanceDelta, batchReorganized);
+			if (diff.isEmpty())
+				return;
+
+			log.debug("wallet changed: {}", diff);
+
+			final long now = System.currentTimeMillis();
+			for (final Subscription subscription : subscriptions)
+				subscription.offer(diff, now);
+		}
+	};
+
+	private Set<Sha256Hash> transactionHashes()
+	{
+		final Set<Transaction> transactions = wallet.getTransactions(true);
+		final Set<Sha256Hash> hashes = new HashSet<Sha256Hash>(transactions.size());
+		for (final Transaction tx : transactions)
+			hashes.add(tx.getHash());
+		return hashes;
+	}
+
+	private final class Subscription implements Runnable
+	{
+		public final Subscriber subscriber;
+		private final long throttleMs;
+		private final Executor deliveryExecutor;
+		public volatile boolean removed = false;
+
+		// only accessed from executor
+		private WalletDiff pending = null;
+		private long lastDeliveryTime = 0;
+		private boolean deliveryScheduled = false;
+
+		public Subscription(@Nonnull final Subscriber subscriber, final long throttleMs, @Nonnull final Executor deliveryExecutor)
+		{
+			this.subscriber = subscriber;
+			this.throttleMs = throttleMs;
+			this.deliveryExecutor = deliveryExecutor;
+		}
+
+		public void offer(@Nonnull final WalletDiff diff, final long now)
+		{
+			pending = pending != null ? pending.merge(diff) : diff;
+
+			if (deliveryScheduled)
+				return;
+
+			final long delay = lastDeliveryTime + throttleMs - now;
+			if (delay <= 0)
+			{
+				run();
+			}
+			else
+			{
+				deliveryScheduled = true;
+				executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			final WalletDiff diff = pending;
+			pending = null;
+			deliveryScheduled = false;
+			lastDeliveryTime = System.currentTimeMillis();
+
+			if (diff == null || diff.isEmpty())
+				return;
+
+			deliveryExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if (!removed)
+						subscriber.onWalletChanged(diff);
+				}
+			});
+		}
+	}
+}
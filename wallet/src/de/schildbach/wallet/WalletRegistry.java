@@ -0,0 +1,344 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.litecoin.LitecoinWallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.store.UnreadableWalletException;
+import com.google.bitcoin.wallet.WalletFiles;
+
+import de.schildbach.wallet.core.AtomicFiles;
+import de.schildbach.wallet.core.KeyFiles;
+import de.schildbach.wallet.core.WalletLoader;
+
+/**
+ * Named wallets kept next to the main wallet, e.g. for segregating hot, watching and escrow funds. Each wallet has its own
+ * file and autosave, but all of them are registered with the one block chain and peer group of the blockchain service.
+ * Their keys end up in the same bloom filter, so an additional wallet costs no additional sync.
+ *
+ * The private keys of each wallet are backed up to a key file of its own, rather than to the backup of the main wallet.
+ * Restoring that backup imports into the main wallet, which would merge funds that are meant to stay apart.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WalletRegistry
+{
+	public interface OnWalletAddedListener
+	{
+		void onWalletAdded(@Nonnull String name, @Nonnull Wallet wallet);
+	}
+
+	private static final String FILENAME_SUFFIX = ".wallet";
+	private static final String KEY_BACKUP_FILENAME_SUFFIX = ".keys";
+	private static final Pattern NAME_PATTERN = Pattern.compile("[a-z0-9_-]{1,32}");
+
+	private final NetworkParameters params;
+	private final File dir;
+	@Nullable
+	private final WalletFiles.Listener autosaveListener;
+	private final Map<String, Wallet> wallets = new TreeMap<String, Wallet>(); // guarded by this
+	private final List<OnWalletAddedListener> listeners = new CopyOnWriteArrayList<OnWalletAddedListener>();
+
+	private static final Logger log = LoggerFactory.getLogger(WalletRegistry.class);
+
+	/**
+	 * Loads all wallets found in the given directory. Wallets that cannot be read are logged and left alone.
+	 */
+	public WalletRegistry(@Nonnull final NetworkParameters params, @Nonnull final File dir,
+			@Nullable final WalletFiles.Listener autosaveListener)
+	{
+		this.params = params;
+		this.dir = dir;
+		this.autosaveListener = autosaveListener;
+
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return;
+
+		for (final File file : files)
+		{
+			final String filename = file.getName();
+			if (!filename.endsWith(FILENAME_SUFFIX))
+				continue;
+
+			final String name = filename.substring(0, filename.length() - FILENAME_SUFFIX.length());
+			if (!NAME_PATTERN.matcher(name).matches())
+				continue;
+
+			final long start = System.currentTimeMillis();
+
+			try
+			{
+				final Wallet wallet = WalletLoader.load(params, file);
+				wallet.autosaveToFile(file, 1, TimeUnit.SECONDS, autosaveListener);
+				wallets.put(name, wallet);
+
+				log.info("wallet '{}' loaded from: '{}', took {}ms", name, file, System.currentTimeMillis() - start);
+
+				// wallets created before their keys were backed up separately
+				if (!keyBackupFile(name).exists())
+					backupKeys(name, wallet);
+			}
+			catch (final IOException x)
+			{
+				log.error("problem loading wallet '" + name + "' or backing up its keys", x);
+			}
+			catch (final UnreadableWalletException x)
+			{
+				log.error("problem loading wallet '" + name + "'", x);
+			}
+		}
+	}
+
+	/**
+	 * Creates a new wallet with one fresh key. As none of its keys can have been used before, it can join the block chain
+	 * at its current head.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the name is not made of lowercase letters, digits, '_' and '-', or is already taken
+	 */
+	public Wallet create(@Nonnull final String name) throws IOException
+	{
+		final Wallet wallet = new LitecoinWallet(params);
+		wallet.addKey(new ECKey());
+
+		add(name, wallet);
+
+		log.info("wallet '{}' created", name);
+
+		return wallet;
+	}
+
+	/**
+	 * Creates a watch-only wallet, for following the balance of keys kept offline. The wallet joins the block chain at
+	 * its current head, so payments the keys have received before only show after a replay of the block chain.
+	 *
+	 * @param publicKeys
+	 *            keys without private part
+	 * @throws IllegalArgumentException
+	 *             if the name is not made of lowercase letters, digits, '_' and '-', or is already taken, or if a key
+	 *             has a private part
+	 */
+	public Wallet createWatching(@Nonnull final String name, @Nonnull final List<ECKey> publicKeys) throws IOException
+	{
+		if (publicKeys.isEmpty())
+			throw new IllegalArgumentException("no keys to watch");
+
+		final long now = System.currentTimeMillis() / 1000;
+		final Wallet wallet = new LitecoinWallet(params);
+		for (final ECKey key : publicKeys)
+		{
+			if (key.hasPrivKey())
+				throw new IllegalArgumentException("not a public key: " + key);
+
+			key.setCreationTimeSeconds(now);
+			wallet.addKey(key);
+		}
+
+		add(name, wallet);
+
+		log.info("watching wallet '{}' created with {} keys", name, publicKeys.size());
+
+		return wallet;
+	}
+
+	/**
+	 * Parses public keys in hex, separated by whitespace or commas.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any of them is not a compressed or uncompressed public key
+	 */
+	public static List<ECKey> parsePublicKeys(@Nonnull final String str)
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>();
+
+		for (final String hex : str.trim().split("[\\s,]+"))
+		{
+			if (hex.length() == 0)
+				continue;
+
+			final byte[] pubKey;
+			try
+			{
+				pubKey = Hex.decode(hex);
+			}
+			catch (final RuntimeException x)
+			{
+				throw new IllegalArgumentException("not hex: " + hex);
+			}
+
+			final boolean compressed = pubKey.length == 33 && (pubKey[0] == 0x02 || pubKey[0] == 0x03);
+			final boolean uncompressed = pubKey.length == 65 && pubKey[0] == 0x04;
+			if (!compressed && !uncompressed)
+				throw new IllegalArgumentException("not a public key: " + hex);
+
+			keys.add(new ECKey(null, pubKey));
+		}
+
+		return keys;
+	}
+
+	/**
+	 * @return true if the wallet cannot spend, because none of its keys has a private part
+	 */
+	public static boolean isWatching(@Nonnull final Wallet wallet)
+	{
+		for (final ECKey key : wallet.getKeys())
+			if (key.hasPrivKey())
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * @return keys with private part of all wallets, for exporting them along with the main wallet
+	 */
+	public List<ECKey> getPrivateKeys()
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>();
+
+		for (final Wallet wallet : getWallets())
+			for (final ECKey key : wallet.getKeys())
+				if (key.hasPrivKey())
+					keys.add(key);
+
+		return keys;
+	}
+
+	@CheckForNull
+	public synchronized Wallet get(@Nonnull final String name)
+	{
+		return wallets.get(name);
+	}
+
+	/**
+	 * @return names of all wallets, in alphabetical order
+	 */
+	public synchronized List<String> getNames()
+	{
+		return new ArrayList<String>(wallets.keySet());
+	}
+
+	/**
+	 * @return all wallets, in the order of their names
+	 */
+	public synchronized List<Wallet> getWallets()
+	{
+		return Collections.unmodifiableList(new ArrayList<Wallet>(wallets.values()));
+	}
+
+	public void saveAll()
+	{
+		for (final Map.Entry<String, Wallet> entry : snapshot().entrySet())
+		{
+			try
+			{
+				entry.getValue().saveToFile(new File(dir, entry.getKey() + FILENAME_SUFFIX));
+			}
+			catch (final IOException x)
+			{
+				log.error("problem saving wallet '" + entry.getKey() + "'", x);
+			}
+		}
+	}
+
+	public void addOnWalletAddedListener(@Nonnull final OnWalletAddedListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeOnWalletAddedListener(@Nonnull final OnWalletAddedListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	private void add(@Nonnull final String name, @Nonnull final Wallet wallet) throws IOException
+	{
+		if (!NAME_PATTERN.matcher(name).matches())
+			throw new IllegalArgumentException("bad wallet name: '" + name + "'");
+
+		synchronized (this)
+		{
+			if (wallets.containsKey(name))
+				throw new IllegalArgumentException("wallet already exists: '" + name + "'");
+
+			final File file = new File(dir, name + FILENAME_SUFFIX);
+			wallet.saveToFile(file);
+			backupKeys(name, wallet);
+			wallet.autosaveToFile(file, 1, TimeUnit.SECONDS, autosaveListener);
+			wallets.put(name, wallet);
+		}
+
+		for (final OnWalletAddedListener listener : listeners)
+			listener.onWalletAdded(name, wallet);
+	}
+
+	private void backupKeys(@Nonnull final String name, @Nonnull final Wallet wallet) throws IOException
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>();
+		for (final ECKey key : wallet.getKeys())
+			if (key.hasPrivKey())
+				keys.add(key);
+		if (keys.isEmpty())
+			return;
+
+		final File file = keyBackupFile(name);
+		AtomicFiles.writePrivate(file, new AtomicFiles.Content()
+		{
+			@Override
+			public void writeTo(final Writer writer) throws IOException
+			{
+				KeyFiles.writeKeys(writer, keys, params);
+			}
+		});
+
+		log.info("{} keys of wallet '{}' written to {}", keys.size(), name, file);
+	}
+
+	private File keyBackupFile(@Nonnull final String name)
+	{
+		return new File(dir, name + KEY_BACKUP_FILENAME_SUFFIX);
+	}
+
+	private synchronized Map<String, Wallet> snapshot()
+	{
+		return new TreeMap<String, Wallet>(wallets);
+	}
+}
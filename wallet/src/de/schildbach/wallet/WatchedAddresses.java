@@ -0,0 +1,707 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import com.google.bitcoin.core.AbstractBlockChain.NewBlockType;
+import com.google.bitcoin.core.AbstractBlockChainListener;
+import com.google.bitcoin.core.AbstractPeerEventListener;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.BlockChainListener;
+import com.google.bitcoin.core.BloomFilter;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerEventListener;
+import com.google.bitcoin.core.PeerFilterProvider;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+
+import de.schildbach.wallet.core.AtomicFiles;
+import de.schildbach.wallet.util.Hash160Index;
+
+/**
+ * Addresses that are watched for incoming payments without being part of the wallet, e.g. deposit addresses whose keys
+ * are kept elsewhere. The addresses are held in a {@link Hash160Index}, so tens of thousands of them fit into a few
+ * megabytes and matching a transaction costs a binary search per output. They are added to the bloom filter of the peer
+ * group, and the total received per address is kept up to date from the transactions in new blocks.
+ *
+ * Payments are counted from the time of import on. The last {@value #MAX_RECENT_BLOCKS} blocks are remembered, so that
+ * their payments can be moved between chains on a reorganization.
+ *
+ * The file is neither read nor written on construction; {@link #load()} and {@link #saveIfDirty()} are meant to be called
+ * on a background thread. Saving copies the entries under the lock and writes them outside of it, so the network thread
+ * is not held up by disk I/O.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WatchedAddresses implements PeerFilterProvider
+{
+	public interface OnChangedListener
+	{
+		void onChanged();
+	}
+
+	public static final class Totals
+	{
+		public final int numAddresses;
+		public final int numPaid;
+		public final long received;
+
+		private Totals(final int numAddresses, final int numPaid, final long received)
+		{
+			this.numAddresses = numAddresses;
+			this.numPaid = numPaid;
+			this.received = received;
+		}
+	}
+
+	private static final int MAX_RECENT_BLOCKS = 100;
+	private static final int MAX_PENDING_TRANSACTIONS = 1000;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final NetworkParameters params;
+	private final File file;
+
+	private final Hash160Index index = new Hash160Index(); // guarded by this
+	private final Map<Sha256Hash, List<Credit>> pendingTransactions = boundedMap(MAX_PENDING_TRANSACTIONS); // guarded by this
+	private final Map<Sha256Hash, RecentBlock> recentBlocks = boundedMap(MAX_RECENT_BLOCKS); // guarded by this
+	private boolean loaded = false; // guarded by this
+	private boolean dirty = false; // guarded by this
+	private final List<OnChangedListener> listeners = new CopyOnWriteArrayList<OnChangedListener>();
+
+	private static final Logger log = LoggerFactory.getLogger(WatchedAddresses.class);
+
+	private static final class Credit
+	{
+		public final byte[] hash160;
+		public final long value;
+
+		public Credit(@Nonnull final byte[] hash160, final long value)
+		{
+			this.hash160 = hash160;
+			this.value = value;
+		}
+	}
+
+	private static final class RecentBlock
+	{
+		public final List<Credit> credits = new LinkedList<Credit>();
+		public boolean applied = false;
+	}
+
+	public WatchedAddresses(@Nonnull final NetworkParameters params, @Nonnull final File file)
+	{
+		this.params = params;
+		this.file = file;
+	}
+
+	/**
+	 * Adds addresses to watch. Addresses already watched keep their totals. Pay-to-script-hash addresses are not supported
+	 * and skipped.
+	 *
+	 * @return number of addresses actually added
+	 */
+	public int add(@Nonnull final List<Address> addresses)
+	{
+		final List<byte[]> hashes = new ArrayList<byte[]>(addresses.size());
+		for (final Address address : addresses)
+			if (address.getVersion() == params.getAddressHeader())
+				hashes.add(address.getHash160());
+
+		final int added;
+		synchronized (this)
+		{
+			added = index.addAll(hashes);
+			if (added > 0)
+				dirty = true;
+		}
+
+		log.info("{} addresses added to watch, {} skipped or already watched", added, addresses.size() - added);
+
+		if (added > 0)
+			notifyChanged();
+
+		return added;
+	}
+
+	public synchronized int size()
+	{
+		return index.size();
+	}
+
+	public synchronized boolean isWatched(@Nonnull final Address address)
+	{
+		return index.indexOf(address.getHash160()) != -1;
+	}
+
+	/**
+	 * @return total received by the address on the best chain, or null if the address is not watched
+	 */
+	@CheckForNull
+	public synchronized Long getReceived(@Nonnull final Address address)
+	{
+		final int i = index.indexOf(address.getHash160());
+		return i != -1 ? index.getValue(i) : null;
+	}
+
+	/**
+	 * @return watched address at the given position; positions are stable until addresses are added
+	 */
+	public synchronized Address getAddress(final int i)
+	{
+		return new Address(params, index.get(i));
+	}
+
+	/**
+	 * @return total received by the watched address at the given position
+	 */
+	public synchronized long getReceived(final int i)
+	{
+		return index.getValue(i);
+	}
+
+	public synchronized Totals getTotals()
+	{
+		int numPaid = 0;
+		long received = 0;
+
+		for (int i = 0; i < index.size(); i++)
+		{
+			final long value = index.getValue(i);
+			if (value > 0)
+			{
+				numPaid++;
+				received += value;
+			}
+		}
+
+		return new Totals(index.size(), numPaid, received);
+	}
+
+	/**
+	 * @return true if any output of the transaction pays to a watched address
+	 */
+	public synchronized boolean matches(@Nonnull final Transaction tx)
+	{
+		for (final TransactionOutput output : tx.getOutputs())
+		{
+			final byte[] script = output.getScriptBytes();
+			final int offset = hash160Offset(script);
+			if (offset != -1 && index.indexOf(script, offset) != -1)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes the addresses and their totals, unless nothing changed or they have not been loaded yet.
+	 */
+	public void saveIfDirty()
+	{
+		// serializes writers, so an older copy can never overwrite a newer one
+		synchronized (file)
+		{
+			final Hash160Index copy;
+			synchronized (this)
+			{
+				if (!loaded || !dirty)
+					return;
+
+				copy = index.copy();
+				dirty = false;
+			}
+
+			if (!save(copy))
+			{
+				synchronized (this)
+				{
+					dirty = true;
+				}
+			}
+		}
+	}
+
+	@Override
+	public long getEarliestKeyCreationTime()
+	{
+		// payments are only counted from the time of import, so no older blocks are needed
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public synchronized int getBloomFilterElementCount()
+	{
+		return index.size();
+	}
+
+	@Override
+	public synchronized BloomFilter getBloomFilter(final int size, final double falsePositiveRate, final long nTweak)
+	{
+		final BloomFilter filter = new BloomFilter(size, falsePositiveRate, nTweak, BloomFilter.BloomUpdate.UPDATE_P2PUBKEY_ONLY);
+		for (int i = 0; i < index.size(); i++)
+			filter.insert(index.get(i));
+		return filter;
+	}
+
+	@Override
+	public boolean isRequiringUpdateAllBloomFilter()
+	{
+		return false;
+	}
+
+	/**
+	 * @return listener to register with the peer group, for pending transactions
+	 */
+	public PeerEventListener getPeerEventListener()
+	{
+		return peerEventListener;
+	}
+
+	/**
+	 * @return listener to register with the block chain, for transactions in blocks
+	 */
+	public BlockChainListener getBlockChainListener()
+	{
+		return blockChainListener;
+	}
+
+	public void appendReport(@Nonnull final Appendable report) throws IOException
+	{
+		final Totals totals = getTotals();
+
+		report.append(Integer.toString(totals.numAddresses)).append(" addresses watched, ").append(Integer.toString(totals.numPaid))
+				.append(" of them paid, ").append(Long.toString(totals.received)).append(" satoshis received in total\n");
+	}
+
+	/**
+	 * Listeners are called on the thread that changed the addresses or their totals.
+	 */
+	public void addOnChangedListener(@Nonnull final OnChangedListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeOnChangedListener(@Nonnull final OnChangedListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	private void notifyChanged()
+	{
+		for (final OnChangedListener listener : listeners)
+			listener.onChanged();
+	}
+
+	/**
+	 * Remembers pending transactions paying to watched addresses, as a block that includes them later usually comes
+	 * without them.
+	 */
+	private final AbstractPeerEventListener peerEventListener = new AbstractPeerEventListener()
+	{
+		@Override
+		public void onTransaction(final Peer peer, final Transaction tx)
+		{
+			final List<Credit> credits = credits(tx);
+			if (!credits.isEmpty())
+			{
+				synchronized (WatchedAddresses.this)
+				{
+					pendingTransactions.put(tx.getHash(), credits);
+				}
+			}
+		}
+	};
+
+	private final AbstractBlockChainListener blockChainListener = new AbstractBlockChainListener()
+	{
+		@Override
+		public boolean isTransactionRelevant(final Transaction tx)
+		{
+			return matches(tx);
+		}
+
+		@Override
+		public void receiveFromBlock(final Transaction tx, final StoredBlock block, final NewBlockType blockType, final int relativityOffset)
+		{
+			final List<Credit> credits = credits(tx);
+			final boolean changed;
+			synchronized (WatchedAddresses.this)
+			{
+				pendingTransactions.remove(tx.getHash());
+				changed = credit(block, blockType, credits);
+			}
+
+			if (changed)
+				notifyChanged();
+		}
+
+		@Override
+		public void notifyTransactionIsInBlock(final Sha256Hash txHash, final StoredBlock block, final NewBlockType blockType,
+				final int relativityOffset)
+		{
+			final boolean changed;
+			synchronized (WatchedAddresses.this)
+			{
+				final List<Credit> credits = pendingTransactions.remove(txHash);
+				changed = credits != null && credit(block, blockType, credits);
+			}
+
+			if (changed)
+				notifyChanged();
+		}
+
+		@Override
+		public void reorganize(final StoredBlock splitPoint, final List<StoredBlock> oldBlocks, final List<StoredBlock> newBlocks)
+		{
+			boolean changed = false;
+			synchronized (WatchedAddresses.this)
+			{
+				for (final StoredBlock block : oldBlocks)
+				{
+					final RecentBlock recentBlock = recentBlocks.get(block.getHeader().getHash());
+					if (recentBlock != null && recentBlock.applied)
+					{
+						changed |= apply(recentBlock.credits, -1);
+						recentBlock.applied = false;
+					}
+				}
+
+				for (final StoredBlock block : newBlocks)
+				{
+					final RecentBlock recentBlock = recentBlocks.get(block.getHeader().getHash());
+					if (recentBlock != null && !recentBlock.applied)
+					{
+						changed |= apply(recentBlock.credits, 1);
+						recentBlock.applied = true;
+					}
+				}
+			}
+
+			if (changed)
+				notifyChanged();
+		}
+	};
+
+	private List<Credit> credits(@Nonnull final Transaction tx)
+	{
+		final List<Credit> credits = new LinkedList<Credit>();
+
+		synchronized (this)
+		{
+			for (final TransactionOutput output : tx.getOutputs())
+			{
+				final byte[] script = output.getScriptBytes();
+				final int offset = hash160Offset(script);
+				if (offset != -1 && index.indexOf(script, offset) != -1)
+				{
+					final byte[] hash160 = new byte[Hash160Index.HASH_LENGTH];
+					System.arraycopy(script, offset, hash160, 0, Hash160Index.HASH_LENGTH);
+					credits.add(new Credit(hash160, output.getValue().longValue()));
+				}
+			}
+		}
+
+		return credits;
+	}
+
+	/**
+	 * @return true if any total changed
+	 */
+	private boolean credit(@Nonnull final StoredBlock block, @Nonnull final NewBlockType blockType, @Nonnull final List<Credit> credits)
+	{
+		final Sha256Hash blockHash = block.getHeader().getHash();
+		RecentBlock recentBlock = recentBlocks.get(blockHash);
+		if (recentBlock == null)
+		{
+			recentBlock = new RecentBlock();
+			recentBlock.applied = blockType == NewBlockType.BEST_CHAIN;
+			recentBlocks.put(blockHash, recentBlock);
+		}
+
+		recentBlock.credits.addAll(credits);
+		return recentBlock.applied && apply(credits, 1);
+	}
+
+	/**
+	 * @return true if any total changed
+	 */
+	private boolean apply(@Nonnull final List<Credit> credits, final int sign)
+	{
+		boolean changed = false;
+
+		for (final Credit credit : credits)
+		{
+			final int i = index.indexOf(credit.hash160);
+			if (i != -1)
+			{
+				index.setValue(i, index.getValue(i) + sign * credit.value);
+				dirty = true;
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * @return offset of the hash160 in a pay-to-address output script, or -1 if the script is something else
+	 */
+	static int hash160Offset(@Nonnull final byte[] script)
+	{
+		// OP_DUP OP_HASH160 <20 bytes> OP_EQUALVERIFY OP_CHECKSIG
+		if (script.length == 25 && script[0] == (byte) 0x76 && script[1] == (byte) 0xa9 && script[2] == Hash160Index.HASH_LENGTH
+				&& script[23] == (byte) 0x88 && script[24] == (byte) 0xac)
+			return 3;
+		else
+			return -1;
+	}
+
+	private static <K, V> Map<K, V> boundedMap(final int maxSize)
+	{
+		return new LinkedHashMap<K, V>()
+		{
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Reads addresses, one per line. Anything after the address on a line is ignored, as are empty lines and lines
+	 * starting with '#'. Invalid addresses are skipped.
+	 */
+	public static List<Address> readAddresses(@Nonnull final NetworkParameters params, @Nonnull final Reader reader) throws IOException
+	{
+		final BufferedReader in = new BufferedReader(reader);
+		final List<Address> addresses = new ArrayList<Address>();
+		int numInvalid = 0;
+
+		String line;
+		while (null != (line = in.readLine()))
+		{
+			line = line.trim();
+			if (line.length() == 0 || line.charAt(0) == '#')
+				continue;
+
+			final String[] fields = line.split("[\\s,;]", 2);
+
+			try
+			{
+				addresses.add(new Address(params, fields[0]));
+			}
+			catch (final AddressFormatException x)
+			{
+				numInvalid++;
+			}
+		}
+
+		if (numInvalid > 0)
+			log.info("skipped {} invalid addresses", numInvalid);
+
+		return addresses;
+	}
+
+	public static final FileFilter FILE_FILTER = new FileFilter()
+	{
+		@Override
+		public boolean accept(final File file)
+		{
+			return file.isFile() && file.getName().toLowerCase(Locale.US).endsWith(".txt");
+		}
+	};
+
+	/**
+	 * Reads the addresses and their totals from the file, and merges them with what has been added in the meantime.
+	 * Should be called once, before the first save. If the file cannot be read, nothing is saved, so it is not
+	 * overwritten.
+	 */
+	public void load()
+	{
+		final long start = System.currentTimeMillis();
+		final List<byte[]> hashes = new ArrayList<byte[]>();
+		final List<Long> values = new ArrayList<Long>();
+		BufferedReader reader = null;
+
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+
+			String line;
+			while (null != (line = reader.readLine()))
+			{
+				final String[] fields = line.split("\t", -1);
+				if (fields.length != 2)
+					continue;
+
+				try
+				{
+					final byte[] hash160 = parseHash160(fields[0]);
+					final long value = Long.parseLong(fields[1]);
+					hashes.add(hash160);
+					values.add(value);
+				}
+				catch (final IllegalArgumentException x)
+				{
+					// skip line, also covers NumberFormatException
+				}
+			}
+		}
+		catch (final FileNotFoundException x)
+		{
+			// nothing watched yet
+		}
+		catch (final IOException x)
+		{
+			log.info("problem loading watched addresses", x);
+			return;
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+
+		synchronized (this)
+		{
+			index.addAll(hashes);
+			for (int i = 0; i < hashes.size(); i++)
+			{
+				final int j = index.indexOf(hashes.get(i));
+				index.setValue(j, index.getValue(j) + values.get(i));
+			}
+
+			loaded = true;
+		}
+
+		log.info("{} addresses watched, loading took {}ms", hashes.size(), System.currentTimeMillis() - start);
+
+		if (!hashes.isEmpty())
+			notifyChanged();
+	}
+
+	/**
+	 * @param str
+	 *            hash160 as hex, or an address as written by earlier versions
+	 */
+	private byte[] parseHash160(@Nonnull final String str)
+	{
+		if (str.length() == Hash160Index.HASH_LENGTH * 2)
+		{
+			try
+			{
+				return Hex.decode(str);
+			}
+			catch (final RuntimeException x)
+			{
+				throw new IllegalArgumentException("not hex: " + str);
+			}
+		}
+
+		try
+		{
+			return new Address(params, str).getHash160();
+		}
+		catch (final AddressFormatException x)
+		{
+			throw new IllegalArgumentException("not an address: " + str);
+		}
+	}
+
+	/**
+	 * @return true if the entries were written
+	 */
+	private boolean save(@Nonnull final Hash160Index entries)
+	{
+		final long start = System.currentTimeMillis();
+
+		try
+		{
+			AtomicFiles.write(file, new AtomicFiles.Content()
+			{
+				@Override
+				public void writeTo(final Writer writer) throws IOException
+				{
+					final char[] line = new char[Hash160Index.HASH_LENGTH * 2];
+					for (int i = 0; i < entries.size(); i++)
+					{
+						final byte[] hash160 = entries.get(i);
+						for (int b = 0; b < hash160.length; b++)
+						{
+							line[b * 2] = HEX_DIGITS[(hash160[b] >> 4) & 0xf];
+							line[b * 2 + 1] = HEX_DIGITS[hash160[b] & 0xf];
+						}
+						writer.write(line);
+						writer.write('\t');
+						writer.write(Long.toString(entries.getValue(i)));
+						writer.write('\n');
+					}
+				}
+			});
+
+			log.debug("{} watched addresses saved, took {}ms", entries.size(), System.currentTimeMillis() - start);
+
+			return true;
+		}
+		catch (final IOException x)
+		{
+			log.info("problem saving watched addresses", x);
+
+			return false;
+		}
+	}
+}
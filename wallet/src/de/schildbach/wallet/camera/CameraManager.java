@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.annotation.SuppressLint;
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
@@ -45,6 +46,8 @@ public final class CameraManager
 	private static final int MAX_FRAME_SIZE = 600;
 	private static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
 	private static final int MAX_PREVIEW_PIXELS = 1280 * 720;
+	// one being filled by the camera, one waiting and one being decoded
+	private static final int NUM_PREVIEW_BUFFERS = 3;
 
 	private Camera camera;
 	private Camera.Size cameraResolution;
@@ -63,6 +66,11 @@ public final class CameraManager
 		return framePreview;
 	}
 
+	public Camera.Size getPreviewSize()
+	{
+		return cameraResolution;
+	}
+
 	public Camera open(final SurfaceHolder holder, final boolean continuousAutoFocus) throws IOException
 	{
 		// try back-facing camera
@@ -138,8 +146,10 @@ public final class CameraManager
 	{
 		if (camera != null)
 		{
+			camera.setPreviewCallbackWithBuffer(null);
 			camera.stopPreview();
 			camera.release();
+			camera = null;
 		}
 	}
 
@@ -226,9 +236,24 @@ public final class CameraManager
 		camera.setParameters(parameters);
 	}
 
-	public void requestPreviewFrame(final PreviewCallback callback)
+	/**
+	 * Deliver preview frames into preallocated buffers. The callback needs to hand each buffer back via
+	 * {@link #addCallbackBuffer(byte[])} once it is done with it, otherwise the camera runs out of buffers and stops
+	 * delivering frames.
+	 */
+	public void startPreviewCallbacks(final PreviewCallback callback)
+	{
+		final int bufferSize = cameraResolution.width * cameraResolution.height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+		for (int i = 0; i < NUM_PREVIEW_BUFFERS; i++)
+			camera.addCallbackBuffer(new byte[bufferSize]);
+
+		camera.setPreviewCallbackWithBuffer(callback);
+	}
+
+	public void addCallbackBuffer(final byte[] buffer)
 	{
-		camera.setOneShotPreviewCallback(callback);
+		if (camera != null)
+			camera.addCallbackBuffer(buffer);
 	}
 
 	public PlanarYUVLuminanceSource buildLuminanceSource(final byte[] data)
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.camera;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+/**
+ * Decodes QR codes from camera preview frames on a worker thread. The camera delivers frames faster than they can be
+ * decoded, so only the newest frame is kept: a frame that is still waiting when a newer one arrives is dropped and its
+ * buffer handed back right away. The framed region can first be tried at half resolution, which is a quarter of the
+ * work and is enough for most codes held close to the camera. Result points found at half resolution are scaled back,
+ * both in the result and on their way to a result point callback.
+ *
+ * Frames are in a YUV format with a full resolution luminance plane first, like the NV21 format of camera previews.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class FrameDecoder
+{
+	public interface Listener
+	{
+		/**
+		 * Called on the decoder thread. The decoder stops afterwards, and the frame is not handed back.
+		 */
+		void onResult(@Nonnull Result result, @Nonnull byte[] frame);
+
+		/**
+		 * Called when the decoder is done with a frame buffer, on the decoder thread or on the thread offering frames.
+		 */
+		void onFrameDone(@Nonnull byte[] frame);
+	}
+
+	private final int width;
+	private final int height;
+	private final int left;
+	private final int top;
+	private final int frameWidth;
+	private final int frameHeight;
+	private final boolean tryDownscaled;
+	private final Map<DecodeHintType, Object> hints;
+	private final Map<DecodeHintType, Object> downscaledHints;
+	private final Listener listener;
+
+	private final QRCodeReader reader = new QRCodeReader();
+	private final byte[] downscaledFrame;
+
+	private final Object lock = new Object();
+	private byte[] pendingFrame; // guarded by lock
+	private long pendingFrameTime; // guarded by lock
+	private boolean running = false; // guarded by lock
+	private Thread thread;
+
+	private long startTime;
+	private int numFramesOffered = 0; // guarded by lock
+	private int numFramesDropped = 0; // guarded by lock
+	private int numFramesDecoded = 0; // guarded by lock
+	private int numDownscaledHits = 0; // guarded by lock
+	private long totalLatency = 0; // guarded by lock
+
+	/**
+	 * @param width
+	 *            width of the preview frames
+	 * @param height
+	 *            height of the preview frames
+	 * @param left
+	 *            left edge of the region to decode
+	 * @param top
+	 *            top edge of the region to decode
+	 * @param frameWidth
+	 *            width of the region to decode
+	 * @param frameHeight
+	 *            height of the region to decode
+	 */
+	public FrameDecoder(final int width, final int height, final int left, final int top, final int frameWidth, final int frameHeight,
+			final boolean tryDownscaled, @Nonnull final Map<DecodeHintType, Object> hints, @Nonnull final Listener listener)
+	{
+		this.width = width;
+		this.height = height;
+		this.left = left;
+		this.top = top;
+		this.frameWidth = frameWidth;
+		this.frameHeight = frameHeight;
+		this.tryDownscaled = tryDownscaled;
+		this.hints = hints;
+		this.listener = listener;
+
+		this.downscaledFrame = tryDownscaled ? new byte[(frameWidth / 2) * (frameHeight / 2)] : null;
+		this.downscaledHints = tryDownscaled ? scale(hints, 2) : null;
+	}
+
+	public void start()
+	{
+		synchronized (lock)
+		{
+			running = true;
+		}
+
+		startTime = System.nanoTime();
+
+		thread = new Thread("frame decoder")
+		{
+			@Override
+			public void run()
+			{
+				decodeLoop();
+			}
+		};
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		thread.start();
+	}
+
+	public void stop()
+	{
+		synchronized (lock)
+		{
+			running = false;
+			lock.notifyAll();
+		}
+
+		if (thread != null && thread != Thread.currentThread())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (final InterruptedException x)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Hand over a frame for decoding. Does not block.
+	 */
+	public void offer(@Nonnull final byte[] frame)
+	{
+		final byte[] droppedFrame;
+
+		synchronized (lock)
+		{
+			numFramesOffered++;
+
+			droppedFrame = pendingFrame;
+			if (droppedFrame != null)
+				numFramesDropped++;
+
+			pendingFrame = frame;
+			pendingFrameTime = System.nanoTime();
+			lock.notifyAll();
+		}
+
+		if (droppedFrame != null)
+			listener.onFrameDone(droppedFrame);
+	}
+
+	private void decodeLoop()
+	{
+		while (true)
+		{
+			final byte[] frame;
+			final long frameTime;
+
+			synchronized (lock)
+			{
+				while (running && pendingFrame == null)
+				{
+					try
+					{
+						lock.wait();
+					}
+					catch (final InterruptedException x)
+					{
+						running = false;
+					}
+				}
+
+				if (!running)
+					return;
+
+				frame = pendingFrame;
+				frameTime = pendingFrameTime;
+				pendingFrame = null;
+			}
+
+			final Result result = decode(frame);
+
+			synchronized (lock)
+			{
+				numFramesDecoded++;
+				totalLatency += System.nanoTime() - frameTime;
+
+				if (result != null)
+					running = false;
+			}
+
+			if (result != null)
+			{
+				listener.onResult(result, frame);
+				return;
+			}
+
+			listener.onFrameDone(frame);
+		}
+	}
+
+	/**
+	 * Decode a single frame on the calling thread, the same way frames offered to the decoder thread are decoded. Must
+	 * not be used while the decoder thread is running.
+	 */
+	@CheckForNull
+	Result decode(@Nonnull final byte[] frame)
+	{
+		if (tryDownscaled)
+		{
+			final Result result = decode(downscale(frame), downscaledHints);
+			if (result != null)
+			{
+				synchronized (lock)
+				{
+					numDownscaledHits++;
+				}
+
+				return scale(result, 2);
+			}
+		}
+
+		return decode(new PlanarYUVLuminanceSource(frame, width, height, left, top, frameWidth, frameHeight, false), hints);
+	}
+
+	@CheckForNull
+	private Result decode(@Nonnull final LuminanceSource source, @Nonnull final Map<DecodeHintType, Object> hints)
+	{
+		try
+		{
+			return reader.decode(new BinaryBitmap(new HybridBinarizer(source)), hints);
+		}
+		catch (final ReaderException x)
+		{
+			return null;
+		}
+		finally
+		{
+			reader.reset();
+		}
+	}
+
+	private LuminanceSource downscale(@Nonnull final byte[] frame)
+	{
+		final int downscaledWidth = frameWidth / 2;
+		final int downscaledHeight = frameHeight / 2;
+
+		int i = 0;
+		for (int y = 0; y < downscaledHeight; y++)
+		{
+			int row0 = (top + y * 2) * width + left;
+			int row1 = row0 + width;
+
+			for (int x = 0; x < downscaledWidth; x++)
+			{
+				final int sum = (frame[row0] & 0xff) + (frame[row0 + 1] & 0xff) + (frame[row1] & 0xff) + (frame[row1 + 1] & 0xff);
+				downscaledFrame[i++] = (byte) (sum >> 2);
+				row0 += 2;
+				row1 += 2;
+			}
+		}
+
+		return new PlanarYUVLuminanceSource(downscaledFrame, downscaledWidth, downscaledHeight, 0, 0, downscaledWidth, downscaledHeight, false);
+	}
+
+	private static Result scale(@Nonnull final Result result, final int factor)
+	{
+		final ResultPoint[] points = result.getResultPoints();
+		final ResultPoint[] scaledPoints = points != null ? new ResultPoint[points.length] : null;
+		if (points != null)
+			for (int i = 0; i < points.length; i++)
+				scaledPoints[i] = scale(points[i], factor);
+
+		final Result scaledResult = new Result(result.getText(), result.getRawBytes(), scaledPoints, result.getBarcodeFormat(),
+				result.getTimestamp());
+		scaledResult.putAllMetadata(result.getResultMetadata());
+		return scaledResult;
+	}
+
+	/**
+	 * @return hints whose result point callback, if any, gets points scaled by the given factor
+	 */
+	private static Map<DecodeHintType, Object> scale(@Nonnull final Map<DecodeHintType, Object> hints, final int factor)
+	{
+		final ResultPointCallback callback = (ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+		if (callback == null)
+			return hints;
+
+		final Map<DecodeHintType, Object> scaledHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+		scaledHints.putAll(hints);
+		scaledHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback()
+		{
+			@Override
+			public void foundPossibleResultPoint(final ResultPoint point)
+			{
+				callback.foundPossibleResultPoint(scale(point, factor));
+			}
+		});
+		return scaledHints;
+	}
+
+	private static ResultPoint scale(@Nonnull final ResultPoint point, final int factor)
+	{
+		return new ResultPoint(point.getX() * factor, point.getY() * factor);
+	}
+
+	public int getNumFramesDecoded()
+	{
+		synchronized (lock)
+		{
+			return numFramesDecoded;
+		}
+	}
+
+	public int getNumDownscaledHits()
+	{
+		synchronized (lock)
+		{
+			return numDownscaledHits;
+		}
+	}
+
+	public int getNumFramesDropped()
+	{
+		synchronized (lock)
+		{
+			return numFramesDropped;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		synchronized (lock)
+		{
+			final double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+			final double framesPerSecond = seconds > 0 ? numFramesDecoded / seconds : 0;
+			final long averageLatencyMs = numFramesDecoded > 0 ? totalLatency / numFramesDecoded / 1000000 : 0;
+
+			return String.format("%d frames offered, %d dropped, %d decoded (%d at half resolution), %.1f frames/s, %d ms average latency",
+					numFramesOffered, numFramesDropped, numFramesDecoded, numDownscaledHits, framesPerSecond, averageLatencyMs);
+		}
+	}
+}
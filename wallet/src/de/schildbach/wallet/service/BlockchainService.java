@@ -24,6 +24,7 @@ import javax.annotation.CheckForNull;
 import com.google.bitcoin.core.Peer;
 import com.google.bitcoin.core.StoredBlock;
 
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet_ltc.R;
 
 /**
@@ -47,9 +48,16 @@ public interface BlockchainService
 	public static final String ACTION_RESET_BLOCKCHAIN = R.class.getPackage().getName() + ".reset_blockchain";
 	public static final String ACTION_BROADCAST_TRANSACTION = R.class.getPackage().getName() + ".broadcast_transaction";
 	public static final String ACTION_BROADCAST_TRANSACTION_HASH = "hash";
+	public static final String ACTION_IMPORT_WATCHED_ADDRESSES = R.class.getPackage().getName() + ".import_watched_addresses";
 
 	@CheckForNull
 	List<Peer> getConnectedPeers();
 
+	PeerMetricsCollector getPeerMetrics();
+
+	StateObservable<BlockchainState> getBlockchainState();
+
+	StateObservable<Integer> getPeerState();
+
 	List<StoredBlock> getRecentBlocks(int maxBlocks);
 }
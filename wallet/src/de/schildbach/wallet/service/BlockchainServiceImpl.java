@@ -20,12 +20,13 @@ package de.schildbach.wallet.service;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigInteger;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,7 +37,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import android.util.Log;
-import com.google.bitcoin.script.Script;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.litecoin.LitcoinPeerDBDiscovery;
@@ -56,18 +56,25 @@ import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.Process;
 import android.preference.PreferenceManager;
 import android.support.v4.app.NotificationCompat;
 import android.text.format.DateUtils;
+import android.widget.Toast;
 
 import com.google.bitcoin.core.AbstractPeerEventListener;
+import com.google.bitcoin.core.AbstractWalletEventListener;
 import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.Block;
 import com.google.bitcoin.core.BlockChain;
-import com.google.bitcoin.core.CheckpointManager;
+import com.google.bitcoin.core.GetDataMessage;
+import com.google.bitcoin.core.InventoryItem;
+import com.google.bitcoin.core.InventoryMessage;
+import com.google.bitcoin.core.Message;
 import com.google.bitcoin.core.Peer;
 import com.google.bitcoin.core.PeerEventListener;
 import com.google.bitcoin.core.PeerGroup;
@@ -78,22 +85,35 @@ import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
 import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.core.Wallet.BalanceType;
+import com.google.bitcoin.core.Wallet.SendRequest;
 import com.google.bitcoin.core.WalletEventListener;
 import com.google.bitcoin.net.discovery.DnsDiscovery;
 import com.google.bitcoin.net.discovery.PeerDiscovery;
 import com.google.bitcoin.net.discovery.PeerDiscoveryException;
 import com.google.bitcoin.store.BlockStore;
 import com.google.bitcoin.store.BlockStoreException;
-import com.google.bitcoin.store.SPVBlockStore;
+import com.google.bitcoin.utils.Threading;
 
 import de.schildbach.wallet.AddressBookProvider;
 import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.KeyPool;
+import de.schildbach.wallet.UnspentOutputIndex;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.WalletBalanceWidgetProvider;
+import de.schildbach.wallet.WalletDiff;
+import de.schildbach.wallet.WalletEventDispatcher;
+import de.schildbach.wallet.WalletRegistry;
+import de.schildbach.wallet.WatchedAddresses;
+import de.schildbach.wallet.core.BlockStores;
+import de.schildbach.wallet.core.PeerGroups;
 import de.schildbach.wallet.ui.WalletActivity;
+import de.schildbach.wallet.util.ConsolidationPlanner;
 import de.schildbach.wallet.util.CrashReporter;
+import de.schildbach.wallet.util.FeeAwareCoinSelector;
 import de.schildbach.wallet.util.GenericUtils;
-import de.schildbach.wallet.util.ThrottlingWalletChangeListener;
+import de.schildbach.wallet.util.HandlerExecutor;
+import de.schildbach.wallet.util.ParallelInputSigner;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -113,8 +133,13 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	private final Handler handler = new Handler();
 	private final Handler delayHandler = new Handler();
+	private HandlerThread backgroundThread;
+	private Handler backgroundHandler;
 	private WakeLock wakeLock;
 
+	private boolean consolidationStarted = false;
+	private boolean consolidating = false;
+
 	private PeerConnectivityListener peerConnectivityListener;
 	private NotificationManager nm;
 	private static final int NOTIFICATION_ID_CONNECTED = 0;
@@ -125,6 +150,9 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	private final List<Address> notificationAddresses = new LinkedList<Address>();
 	private AtomicInteger transactionsReceived = new AtomicInteger();
 	private int bestChainHeightEver;
+	private BlockchainState lastBroadcastBlockchainState = null;
+	private long lastBroadcastBlockchainStateTime = 0;
+	private BlockchainState pendingBroadcastBlockchainState = null;
 	private long serviceCreatedAt;
 	private boolean resetBlockchainOnShutdown = false;
 
@@ -136,14 +164,8 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	private static final Logger log = LoggerFactory.getLogger(BlockchainServiceImpl.class);
 
-	private final WalletEventListener walletEventListener = new ThrottlingWalletChangeListener(APPWIDGET_THROTTLE_MS)
+	private final WalletEventListener walletEventListener = new AbstractWalletEventListener()
 	{
-		@Override
-		public void onThrottledWalletChanged()
-		{
-			notifyWidgets();
-		}
-
 		@Override
 		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final BigInteger prevBalance, final BigInteger newBalance)
 		{
@@ -182,10 +204,107 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		{
 			transactionsReceived.incrementAndGet();
 		}
+	};
+
+	private final WalletEventDispatcher.Subscriber widgetSubscriber = new WalletEventDispatcher.Subscriber()
+	{
+		@Override
+		public void onWalletChanged(@Nonnull final WalletDiff diff)
+		{
+			// most confidence changes are just more peers announcing a pending transaction
+			if (diff.balanceDelta.signum() != 0 || diff.reorganized)
+				notifyWidgets();
+		}
+	};
+
+	private final WalletRegistry.OnWalletAddedListener walletAddedListener = new WalletRegistry.OnWalletAddedListener()
+	{
+		@Override
+		public void onWalletAdded(final String name, final Wallet wallet)
+		{
+			// a new wallet has only fresh keys, so it can join at the current chain head without a replay
+			blockChain.addWallet(wallet);
+			wallet.addEventListener(walletEventListener);
+
+			if (peerGroup != null)
+				peerGroup.addWallet(wallet);
+		}
+	};
+
+	private final KeyPool.OnRefillListener keyPoolRefillListener = new KeyPool.OnRefillListener()
+	{
+		@Override
+		public void onRefill(final KeyPool pool)
+		{
+			handler.post(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					// so that payments to the new keys are detected as soon as they are handed out
+					if (peerGroup != null)
+						peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.SEND_IF_CHANGED);
+				}
+			});
+		}
+	};
+
+	private void importWatchedAddresses(@Nonnull final Uri uri)
+	{
+		final WatchedAddresses watchedAddresses = application.getWatchedAddresses();
 
-        @Override
-        public void onScriptsAdded(Wallet wallet, List<Script> scripts) { }
-    };
+		new Thread("import watched addresses")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final InputStream is = getContentResolver().openInputStream(uri);
+					final List<Address> addresses;
+					try
+					{
+						addresses = WatchedAddresses.readAddresses(Constants.NETWORK_PARAMETERS, new InputStreamReader(is, Constants.UTF_8));
+					}
+					finally
+					{
+						is.close();
+					}
+
+					final int added = watchedAddresses.add(addresses);
+					watchedAddresses.saveIfDirty();
+
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							if (added > 0 && peerGroup != null)
+								peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.SEND_IF_CHANGED);
+
+							Toast.makeText(BlockchainServiceImpl.this,
+									getString(R.string.watched_addresses_import_msg_success, added, addresses.size() - added), Toast.LENGTH_LONG)
+									.show();
+						}
+					});
+				}
+				catch (final IOException x)
+				{
+					log.info("problem importing watched addresses from " + uri, x);
+
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							Toast.makeText(BlockchainServiceImpl.this, getString(R.string.watched_addresses_import_msg_failed, x.getMessage()),
+									Toast.LENGTH_LONG).show();
+						}
+					});
+				}
+			}
+		}.start();
+	}
 
 	private void notifyCoinsReceived(@Nullable final Address from, @Nonnull final BigInteger amount)
 	{
@@ -238,6 +357,125 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	}
 
 
+	private final PeerEventListener broadcastOutboxListener = new AbstractPeerEventListener()
+	{
+		@Override
+		public void onPeerConnected(final Peer peer, final int peerCount)
+		{
+			// announce everything queued in one message, the peer asks for what it does not have yet
+			final InventoryMessage inv = inventoryMessage(application.getBroadcastOutbox().getQueued());
+			if (inv != null)
+			{
+				log.info("announcing {} queued transactions to {}", inv.getItems().size(), peer);
+				peer.sendMessage(inv);
+			}
+		}
+
+		@Override
+		public Message onPreMessageReceived(final Peer peer, final Message m)
+		{
+			if (m instanceof InventoryMessage)
+			{
+				final BroadcastOutbox outbox = application.getBroadcastOutbox();
+				final long now = System.currentTimeMillis();
+
+				for (final InventoryItem item : ((InventoryMessage) m).getItems())
+					if (item.type == InventoryItem.Type.Transaction && outbox.acknowledge(item.hash, peer.getAddress(), now))
+						log.info("transaction {} relayed by the network", item.hash);
+			}
+
+			return m;
+		}
+
+		@Override
+		public List<Message> getData(final Peer peer, final GetDataMessage m)
+		{
+			final BroadcastOutbox outbox = application.getBroadcastOutbox();
+			final Wallet wallet = application.getWallet();
+			final List<Message> transactions = new LinkedList<Message>();
+
+			for (final InventoryItem item : m.getItems())
+			{
+				if (item.type == InventoryItem.Type.Transaction && outbox.contains(item.hash))
+				{
+					final Transaction tx = wallet.getTransaction(item.hash);
+					if (tx != null)
+						transactions.add(tx);
+				}
+			}
+
+			return transactions;
+		}
+	};
+
+	private final Runnable broadcastOutboxRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			if (peerGroup == null)
+				return;
+
+			final BroadcastOutbox outbox = application.getBroadcastOutbox();
+			final Wallet wallet = application.getWallet();
+			final List<Sha256Hash> retries = new LinkedList<Sha256Hash>();
+
+			for (final Map.Entry<Sha256Hash, Integer> entry : outbox.pollDue(System.currentTimeMillis()).entrySet())
+			{
+				final Sha256Hash hash = entry.getKey();
+				final Transaction tx = wallet.getTransaction(hash);
+				final ConfidenceType confidenceType = tx != null ? tx.getConfidence().getConfidenceType() : null;
+
+				if (confidenceType == null || confidenceType == ConfidenceType.BUILDING || confidenceType == ConfidenceType.DEAD)
+				{
+					// gone from the wallet, already in a block or double spent
+					outbox.remove(hash);
+				}
+				else if (entry.getValue() == 1)
+				{
+					log.info("broadcasting transaction {}", hash);
+					peerGroup.broadcastTransaction(tx);
+				}
+				else
+				{
+					retries.add(hash);
+				}
+			}
+
+			final InventoryMessage inv = inventoryMessage(retries);
+			if (inv != null)
+			{
+				final List<Peer> peers = peerGroup.getConnectedPeers();
+				log.info("announcing {} transactions again to {} peers", retries.size(), peers.size());
+				for (final Peer peer : peers)
+					peer.sendMessage(inv);
+			}
+
+			scheduleBroadcastOutbox();
+		}
+	};
+
+	private void scheduleBroadcastOutbox()
+	{
+		handler.removeCallbacks(broadcastOutboxRunnable);
+
+		final long nextAttemptAt = application.getBroadcastOutbox().getNextAttemptAt();
+		if (nextAttemptAt != Long.MAX_VALUE)
+			handler.postDelayed(broadcastOutboxRunnable, Math.max(nextAttemptAt - System.currentTimeMillis(), 0));
+	}
+
+	@CheckForNull
+	private static InventoryMessage inventoryMessage(@Nonnull final List<Sha256Hash> transactionHashes)
+	{
+		if (transactionHashes.isEmpty())
+			return null;
+
+		final InventoryMessage inv = new InventoryMessage(Constants.NETWORK_PARAMETERS);
+		for (final Sha256Hash hash : transactionHashes)
+			inv.addItem(new InventoryItem(InventoryItem.Type.Transaction, hash));
+		return inv;
+	}
+
 	private final class PeerConnectivityListener extends AbstractPeerEventListener
 	{
 		private int peerCount;
@@ -347,7 +585,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			if (ConnectivityManager.CONNECTIVITY_ACTION.equals(action))
 			{
 				hasConnectivity = !intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false);
-				log.info("network is " + (hasConnectivity ? "up" : "down"));
+				log.info("network is {}", hasConnectivity ? "up" : "down");
 
 				check();
 			}
@@ -370,7 +608,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		@SuppressLint("Wakelock")
 		private void check()
 		{
-			final Wallet wallet = application.getWallet();
+			final List<Wallet> wallets = application.getAllWallets();
 			final boolean hasEverything = hasConnectivity && hasStorage;
 
 			if (hasEverything && peerGroup == null)
@@ -379,93 +617,75 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 				wakeLock.acquire();
 
 				// consistency check
-				final int walletLastBlockSeenHeight = wallet.getLastBlockSeenHeight();
 				final int bestChainHeight = blockChain.getBestChainHeight();
-				if (walletLastBlockSeenHeight != -1 && walletLastBlockSeenHeight != bestChainHeight)
+				for (final Wallet wallet : wallets)
 				{
-					final String message = "wallet/blockchain out of sync: " + walletLastBlockSeenHeight + "/" + bestChainHeight;
-					log.error(message);
-					CrashReporter.saveBackgroundTrace(new RuntimeException(message), application.packageInfo());
+					final int walletLastBlockSeenHeight = wallet.getLastBlockSeenHeight();
+					if (walletLastBlockSeenHeight != -1 && walletLastBlockSeenHeight != bestChainHeight)
+					{
+						final String message = "wallet/blockchain out of sync: " + walletLastBlockSeenHeight + "/" + bestChainHeight;
+						log.error(message);
+						CrashReporter.saveBackgroundTrace(new RuntimeException(message), application.packageInfo());
+					}
 				}
 
-				log.info("starting peergroup");
-				peerGroup = new PeerGroup(Constants.NETWORK_PARAMETERS, blockChain);
-				peerGroup.addWallet(wallet);
-				peerGroup.setUserAgent(Constants.USER_AGENT, application.packageInfo().versionName);
-				peerGroup.addEventListener(peerConnectivityListener);
-
-				final int maxConnectedPeers = application.maxConnectedPeers();
-
 				final String trustedPeerHost = prefs.getString(Constants.PREFS_KEY_TRUSTED_PEER, "").trim();
-				final boolean hasTrustedPeer = !trustedPeerHost.isEmpty();
-
-				final boolean connectTrustedPeerOnly = hasTrustedPeer && prefs.getBoolean(Constants.PREFS_KEY_TRUSTED_PEER_ONLY, false);
-				peerGroup.setMaxConnections(connectTrustedPeerOnly ? 1 : maxConnectedPeers);
+				final boolean trustedPeerOnly = prefs.getBoolean(Constants.PREFS_KEY_TRUSTED_PEER_ONLY, false);
 
-				peerGroup.addPeerDiscovery(new PeerDiscovery()
-				{
-					private final PeerDiscovery normalPeerDiscovery = new DnsDiscovery(Constants.NETWORK_PARAMETERS);
-                    private PeerDiscovery dbPeerDiscovery = null;
-
-					@Override
-					public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit) throws PeerDiscoveryException
-					{
-                        try {
-                            dbPeerDiscovery = new LitcoinPeerDBDiscovery(Constants.NETWORK_PARAMETERS,
-                                    getFileStreamPath("litecoin.peerdb"), peerGroup);
-                        } catch(IllegalStateException e) {
-                            // This can happen in the guts of bitcoinj
-                            Log.i(TAG, "IllegalStateException in bitcoinj: " + e.getMessage());
-                        }
-						final List<InetSocketAddress> peers = new LinkedList<InetSocketAddress>();
-
-						boolean needsTrimPeersWorkaround = false;
-
-						if (hasTrustedPeer)
+				log.info("starting peergroup for {} wallets", wallets.size());
+				peerGroup = PeerGroups.create(Constants.NETWORK_PARAMETERS, blockChain, wallets, Constants.USER_AGENT,
+						application.packageInfo().versionName, !trustedPeerHost.isEmpty() ? trustedPeerHost : null, trustedPeerOnly,
+						application.maxConnectedPeers(), new DnsDiscovery(Constants.NETWORK_PARAMETERS), new PeerDiscovery()
 						{
-							log.info("trusted peer '" + trustedPeerHost + "'" + (connectTrustedPeerOnly ? " only" : ""));
+							private PeerDiscovery dbPeerDiscovery = null;
 
-							final InetSocketAddress addr = new InetSocketAddress(trustedPeerHost, Constants.NETWORK_PARAMETERS.getPort());
-							if (addr.getAddress() != null)
+							@Override
+							public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit) throws PeerDiscoveryException
 							{
-								peers.add(addr);
-								needsTrimPeersWorkaround = true;
+								try
+								{
+									dbPeerDiscovery = new LitcoinPeerDBDiscovery(Constants.NETWORK_PARAMETERS, getFileStreamPath("litecoin.peerdb"),
+											peerGroup);
+								}
+								catch (final IllegalStateException x)
+								{
+									// This can happen in the guts of bitcoinj
+									Log.i(TAG, "IllegalStateException in bitcoinj: " + x.getMessage());
+								}
+
+								return dbPeerDiscovery != null ? dbPeerDiscovery.getPeers(1, TimeUnit.SECONDS) : new InetSocketAddress[0];
 							}
-						}
-
-						if (!connectTrustedPeerOnly) {
-							peers.addAll(Arrays.asList(normalPeerDiscovery.getPeers(timeoutValue, timeoutUnit)));
-                            if(dbPeerDiscovery != null)
-                                peers.addAll(Arrays.asList(dbPeerDiscovery.getPeers(1, TimeUnit.SECONDS)));
-                        }
-
-						// workaround because PeerGroup will shuffle peers
-						if (needsTrimPeersWorkaround)
-							while (peers.size() >= maxConnectedPeers)
-								peers.remove(peers.size() - 1);
-
-						return peers.toArray(new InetSocketAddress[0]);
-					}
 
-					@Override
-					public void shutdown()
-					{
-						normalPeerDiscovery.shutdown();
-                        if(dbPeerDiscovery != null)
-                            dbPeerDiscovery.shutdown();
-					}
-				});
+							@Override
+							public void shutdown()
+							{
+								if (dbPeerDiscovery != null)
+									dbPeerDiscovery.shutdown();
+							}
+						});
+				peerGroup.addEventListener(peerConnectivityListener);
+				application.getPeerMetrics().peerGroupStarting();
+				peerGroup.addEventListener(application.getPeerMetrics(), Threading.SAME_THREAD);
+				peerGroup.addEventListener(broadcastOutboxListener, Threading.SAME_THREAD);
+				peerGroup.addPeerFilterProvider(application.getWatchedAddresses());
+				peerGroup.addPeerFilterProvider(application.getKeyPool());
+				peerGroup.addEventListener(application.getWatchedAddresses().getPeerEventListener(), Threading.SAME_THREAD);
 
 				// start peergroup
 				peerGroup.start();
 				peerGroup.startBlockChainDownload(blockchainDownloadListener);
+
+				scheduleBroadcastOutbox();
 			}
 			else if (!hasEverything && peerGroup != null)
 			{
 				log.info("stopping peergroup");
+				handler.removeCallbacks(broadcastOutboxRunnable);
+				peerGroup.removeEventListener(broadcastOutboxListener);
 				peerGroup.removeEventListener(peerConnectivityListener);
-				peerGroup.removeWallet(wallet);
-				peerGroup.stop();
+				peerGroup.removeEventListener(application.getWatchedAddresses().getPeerEventListener());
+				application.getPeerMetrics().peerGroupStopping();
+				PeerGroups.stop(peerGroup, wallets, false);
 				peerGroup = null;
 
 				log.debug("releasing wakelock");
@@ -497,6 +717,15 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		}
 	}
 
+	private final Runnable saveWatchedAddressesRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			application.getWatchedAddresses().saveIfDirty();
+		}
+	};
+
 	private final BroadcastReceiver tickReceiver = new BroadcastReceiver()
 	{
 		private int lastChainHeight = 0;
@@ -505,6 +734,8 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		@Override
 		public void onReceive(final Context context, final Intent intent)
 		{
+			backgroundHandler.post(saveWatchedAddressesRunnable);
+
 			final int chainHeight = blockChain.getBestChainHeight();
 
 			if (lastChainHeight > 0)
@@ -520,14 +751,17 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 					activityHistory.remove(activityHistory.size() - 1);
 
 				// print
-				final StringBuilder builder = new StringBuilder();
-				for (final ActivityHistoryEntry entry : activityHistory)
+				if (log.isInfoEnabled())
 				{
-					if (builder.length() > 0)
-						builder.append(", ");
-					builder.append(entry);
+					final StringBuilder builder = new StringBuilder();
+					for (final ActivityHistoryEntry entry : activityHistory)
+					{
+						if (builder.length() > 0)
+							builder.append(", ");
+						builder.append(entry);
+					}
+					log.info("History of transactions/blocks: {}", builder);
 				}
-				log.info("History of transactions/blocks: " + builder);
 
 				// determine if block and transaction activity is idling
 				boolean isIdle = false;
@@ -548,11 +782,26 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 					}
 				}
 
-				// if idling, shutdown service
+				// if idling, use the quiet time for housekeeping, then shutdown service
 				if (isIdle)
 				{
-					log.info("idling detected, stopping service");
-					stopSelf();
+					if (peerGroup != null && !application.getBroadcastOutbox().isEmpty())
+					{
+						log.info("idling detected, but transactions are waiting for broadcast");
+					}
+					else if (consolidating)
+					{
+						log.info("idling detected, but outputs are being consolidated");
+					}
+					else if (maybeConsolidateOutputs())
+					{
+						log.info("idling detected, consolidating outputs before stopping service");
+					}
+					else
+					{
+						log.info("idling detected, stopping service");
+						stopSelf();
+					}
 				}
 			}
 
@@ -596,6 +845,10 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 		nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
+		backgroundThread = new HandlerThread("backgroundThread", Process.THREAD_PRIORITY_BACKGROUND);
+		backgroundThread.start();
+		backgroundHandler = new Handler(backgroundThread.getLooper());
+
 		final String lockName = getPackageName() + " blockchain sync";
 
 		final PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
@@ -603,7 +856,17 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 		application = (WalletApplication) getApplication();
 		prefs = PreferenceManager.getDefaultSharedPreferences(this);
+
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				application.getWatchedAddresses().load();
+			}
+		});
 		final Wallet wallet = application.getWallet();
+		final List<Wallet> wallets = application.getAllWallets();
 
 		bestChainHeightEver = prefs.getInt(Constants.PREFS_KEY_BEST_CHAIN_HEIGHT_EVER, 0);
 
@@ -620,34 +883,20 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		blockChainFile = new File(getDir("blockstore", Context.MODE_PRIVATE), Constants.BLOCKCHAIN_FILENAME);
 		final boolean blockChainFileExists = blockChainFile.exists();
 
-		if (!blockChainFileExists)
-		{
-			log.info("blockchain does not exist, resetting wallet");
-
-			wallet.clearTransactions(0);
-			wallet.setLastBlockSeenHeight(-1); // magic value
-			wallet.setLastBlockSeenHash(null);
-		}
-
 		try
 		{
-			blockStore = new SPVBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile);
-			blockStore.getChainHead(); // detect corruptions as early as possible
-
-			final long earliestKeyCreationTime = wallet.getEarliestKeyCreationTime();
-
-			if (!blockChainFileExists && earliestKeyCreationTime > 0)
+			blockStore = BlockStores.open(Constants.NETWORK_PARAMETERS, blockChainFile, wallets, new BlockStores.CheckpointsSource()
 			{
-				try
-				{
-					final InputStream checkpointsInputStream = getAssets().open(Constants.CHECKPOINTS_FILENAME);
-					CheckpointManager.checkpoint(Constants.NETWORK_PARAMETERS, checkpointsInputStream, blockStore, earliestKeyCreationTime);
-				}
-				catch (final IOException x)
+				@Override
+				public InputStream open() throws IOException
 				{
-					log.error("problem reading checkpoints, continuing without", x);
+					return getAssets().open(Constants.CHECKPOINTS_FILENAME);
 				}
-			}
+			});
+
+			// clearing transactions fires no wallet events
+			if (!blockChainFileExists)
+				application.getUnspentOutputIndex().rebuild();
 		}
 		catch (final BlockStoreException x)
 		{
@@ -663,13 +912,20 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		try
 		{
 			blockChain = new BlockChain(Constants.NETWORK_PARAMETERS, wallet, blockStore);
+			for (final Wallet w : application.getWalletRegistry().getWallets())
+				blockChain.addWallet(w);
+			blockChain.addListener(application.getWatchedAddresses().getBlockChainListener(), Threading.SAME_THREAD);
 		}
 		catch (final BlockStoreException x)
 		{
 			throw new Error("blockchain cannot be created", x);
 		}
 
-		application.getWallet().addEventListener(walletEventListener);
+		for (final Wallet w : wallets)
+			w.addEventListener(walletEventListener);
+		application.getWalletRegistry().addOnWalletAddedListener(walletAddedListener);
+		application.getKeyPool().addOnRefillListener(keyPoolRefillListener);
+		application.getWalletEventDispatcher().subscribe(widgetSubscriber, APPWIDGET_THROTTLE_MS, new HandlerExecutor(handler));
 
 		registerReceiver(tickReceiver, new IntentFilter(Intent.ACTION_TIME_TICK));
 
@@ -679,8 +935,9 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	@Override
 	public int onStartCommand(final Intent intent, final int flags, final int startId)
 	{
-		log.info("service start command: " + intent
-				+ (intent.hasExtra(Intent.EXTRA_ALARM_COUNT) ? " (alarm count: " + intent.getIntExtra(Intent.EXTRA_ALARM_COUNT, 0) + ")" : ""));
+		if (log.isInfoEnabled())
+			log.info("service start command: {}{}", intent,
+					intent.hasExtra(Intent.EXTRA_ALARM_COUNT) ? " (alarm count: " + intent.getIntExtra(Intent.EXTRA_ALARM_COUNT, 0) + ")" : "");
 
 		final String action = intent.getAction();
 
@@ -702,17 +959,16 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		else if (BlockchainService.ACTION_BROADCAST_TRANSACTION.equals(action))
 		{
 			final Sha256Hash hash = new Sha256Hash(intent.getByteArrayExtra(BlockchainService.ACTION_BROADCAST_TRANSACTION_HASH));
-			final Transaction tx = application.getWallet().getTransaction(hash);
+			application.getBroadcastOutbox().add(hash, System.currentTimeMillis());
 
 			if (peerGroup != null)
-			{
-				log.info("broadcasting transaction " + tx.getHashAsString());
-				peerGroup.broadcastTransaction(tx);
-			}
+				scheduleBroadcastOutbox();
 			else
-			{
-				log.info("peergroup not available, not broadcasting transaction " + tx.getHashAsString());
-			}
+				log.info("peergroup not available, transaction {} queued for broadcast", hash);
+		}
+		else if (BlockchainService.ACTION_IMPORT_WATCHED_ADDRESSES.equals(action))
+		{
+			importWatchedAddresses(intent.getData());
 		}
 
 		return START_NOT_STICKY;
@@ -727,13 +983,21 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 		unregisterReceiver(tickReceiver);
 
-		application.getWallet().removeEventListener(walletEventListener);
+		application.getWalletEventDispatcher().unsubscribe(widgetSubscriber);
+		application.getWalletRegistry().removeOnWalletAddedListener(walletAddedListener);
+		application.getKeyPool().removeOnRefillListener(keyPoolRefillListener);
+		final List<Wallet> wallets = application.getAllWallets();
+		for (final Wallet wallet : wallets)
+			wallet.removeEventListener(walletEventListener);
 
 		if (peerGroup != null)
 		{
+			handler.removeCallbacks(broadcastOutboxRunnable);
+			peerGroup.removeEventListener(broadcastOutboxListener);
 			peerGroup.removeEventListener(peerConnectivityListener);
-			peerGroup.removeWallet(application.getWallet());
-			peerGroup.stopAndWait();
+			peerGroup.removeEventListener(application.getWatchedAddresses().getPeerEventListener());
+			application.getPeerMetrics().peerGroupStopping();
+			PeerGroups.stop(peerGroup, wallets, true);
 
 			log.info("peergroup stopped");
 		}
@@ -759,6 +1023,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		}
 
 		application.saveWallet();
+		application.getWalletRegistry().saveAll();
 
 		if (wakeLock.isHeld())
 		{
@@ -772,6 +1037,18 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			blockChainFile.delete();
 		}
 
+		// drops what is still queued, like quitting right away would, but saves the watched addresses first
+		backgroundHandler.removeCallbacksAndMessages(null);
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				saveWatchedAddressesRunnable.run();
+				backgroundThread.getLooper().quit();
+			}
+		});
+
 		super.onDestroy();
 
 		log.info("service was up for " + ((System.currentTimeMillis() - serviceCreatedAt) / 1000 / 60) + " minutes");
@@ -793,6 +1070,24 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			return null;
 	}
 
+	@Override
+	public PeerMetricsCollector getPeerMetrics()
+	{
+		return application.getPeerMetrics();
+	}
+
+	@Override
+	public StateObservable<BlockchainState> getBlockchainState()
+	{
+		return application.getBlockchainState();
+	}
+
+	@Override
+	public StateObservable<Integer> getPeerState()
+	{
+		return application.getPeerState();
+	}
+
 	@Override
 	public List<StoredBlock> getRecentBlocks(final int maxBlocks)
 	{
@@ -822,6 +1117,9 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	private void sendBroadcastPeerState(final int numPeers)
 	{
+		application.getPeerState().set(numPeers);
+
+		// compatibility path, in-process listeners use the state observable
 		final Intent broadcast = new Intent(ACTION_PEER_STATE);
 		broadcast.setPackage(getPackageName());
 		broadcast.putExtra(ACTION_PEER_STATE_NUM_PEERS, numPeers);
@@ -830,25 +1128,67 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	private void removeBroadcastPeerState()
 	{
+		application.getPeerState().clear();
 		removeStickyBroadcast(new Intent(ACTION_PEER_STATE));
 	}
 
 	private void sendBroadcastBlockchainState(final int download)
 	{
 		final StoredBlock chainHead = blockChain.getChainHead();
+		final BlockchainState state = new BlockchainState(chainHead.getHeader().getTime(), chainHead.getHeight(),
+				chainHead.getHeight() < bestChainHeightEver, download);
+
+		application.getBlockchainState().set(state);
+
+		// compatibility path, in-process listeners use the state observable; only the flags are sent right away, the
+		// progress of the download at most once per throttle interval, the last one at the end of it
+		final long now = System.currentTimeMillis();
+		final BlockchainState last = lastBroadcastBlockchainState;
+		if (last != null && last.download == state.download && last.replaying == state.replaying
+				&& now - lastBroadcastBlockchainStateTime < Constants.BLOCKCHAIN_STATE_COMPAT_BROADCAST_THROTTLE_MS)
+		{
+			if (pendingBroadcastBlockchainState == null)
+				handler.postDelayed(pendingBroadcastBlockchainStateRunnable, lastBroadcastBlockchainStateTime
+						+ Constants.BLOCKCHAIN_STATE_COMPAT_BROADCAST_THROTTLE_MS - now);
+			pendingBroadcastBlockchainState = state;
+			return;
+		}
+
+		sendStickyBroadcastBlockchainState(state, now);
+	}
+
+	private final Runnable pendingBroadcastBlockchainStateRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			if (pendingBroadcastBlockchainState != null)
+				sendStickyBroadcastBlockchainState(pendingBroadcastBlockchainState, System.currentTimeMillis());
+		}
+	};
+
+	private void sendStickyBroadcastBlockchainState(@Nonnull final BlockchainState state, final long now)
+	{
+		handler.removeCallbacks(pendingBroadcastBlockchainStateRunnable);
+		pendingBroadcastBlockchainState = null;
+		lastBroadcastBlockchainState = state;
+		lastBroadcastBlockchainStateTime = now;
 
 		final Intent broadcast = new Intent(ACTION_BLOCKCHAIN_STATE);
 		broadcast.setPackage(getPackageName());
-		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_BEST_CHAIN_DATE, chainHead.getHeader().getTime());
-		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_BEST_CHAIN_HEIGHT, chainHead.getHeight());
-		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_REPLAYING, chainHead.getHeight() < bestChainHeightEver);
-		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_DOWNLOAD, download);
+		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_BEST_CHAIN_DATE, state.bestChainDate);
+		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_BEST_CHAIN_HEIGHT, state.bestChainHeight);
+		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_REPLAYING, state.replaying);
+		broadcast.putExtra(ACTION_BLOCKCHAIN_STATE_DOWNLOAD, state.download);
 
 		sendStickyBroadcast(broadcast);
 	}
 
 	private void removeBroadcastBlockchainState()
 	{
+		handler.removeCallbacks(pendingBroadcastBlockchainStateRunnable);
+		pendingBroadcastBlockchainState = null;
+		application.getBlockchainState().clear();
 		removeStickyBroadcast(new Intent(ACTION_BLOCKCHAIN_STATE));
 	}
 
@@ -864,8 +1204,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 			if (appWidgetIds.length > 0)
 			{
-				final Wallet wallet = application.getWallet();
-				final BigInteger balance = wallet.getBalance(BalanceType.ESTIMATED);
+				final BigInteger balance = application.getBalanceTracker().getBalance(BalanceType.ESTIMATED);
 
 				WalletBalanceWidgetProvider.updateWidgets(this, appWidgetManager, appWidgetIds, balance);
 			}
@@ -876,6 +1215,89 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		}
 	}
 
+	/**
+	 * Plans and, if enabled by the user, sends sweep transactions on the background thread. This happens at most once per
+	 * run of the service.
+	 * 
+	 * @return true if consolidation has been started, so the service should stay up until it has finished
+	 */
+	private boolean maybeConsolidateOutputs()
+	{
+		final String mode = prefs.getString(Constants.PREFS_KEY_LABS_CONSOLIDATE_OUTPUTS, "off");
+		if ("off".equals(mode) || consolidationStarted)
+			return false;
+
+		final Wallet wallet = application.getWallet();
+
+		// wait for earlier payments and sweeps to confirm, so sweeps don't build on unconfirmed outputs
+		if (!wallet.getPendingTransactions().isEmpty())
+			return false;
+
+		consolidationStarted = true;
+		consolidating = true;
+
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					consolidateOutputs(wallet, "on".equals(mode));
+				}
+				catch (final RuntimeException x)
+				{
+					log.warn("problem consolidating outputs", x);
+				}
+				finally
+				{
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							// sent sweeps keep the service up via the broadcast outbox
+							consolidating = false;
+						}
+					});
+				}
+			}
+		});
+
+		return true;
+	}
+
+	private void consolidateOutputs(@Nonnull final Wallet wallet, final boolean send)
+	{
+		// fees are fixed per kilobyte in this network, so sweeps always pay the minimum rate
+		final UnspentOutputIndex unspentOutputIndex = application.getUnspentOutputIndex();
+		final FeeAwareCoinSelector coinSelector = new FeeAwareCoinSelector(wallet, unspentOutputIndex, Constants.TX_FEE_PER_KB,
+				Constants.MIN_TX_FEE, Constants.DUST_THRESHOLD);
+		final ConsolidationPlanner.Plan plan = new ConsolidationPlanner(unspentOutputIndex, coinSelector, Constants.TX_FEE_PER_KB,
+				Constants.CONSOLIDATION_SMALL_OUTPUT, Constants.CONSOLIDATION_MIN_OUTPUTS, Constants.CONSOLIDATION_MAX_INPUTS).plan();
+
+		log.info("consolidation " + (send ? "on" : "dry run") + ": " + plan);
+
+		if (!send)
+			return;
+
+		final Address address = WalletUtils.pickOldestKey(wallet).toAddress(Constants.NETWORK_PARAMETERS);
+		final ParallelInputSigner signer = new ParallelInputSigner(wallet);
+
+		for (final FeeAwareCoinSelector.Selection sweep : plan.sweeps)
+		{
+			final SendRequest sendRequest = sweep.toSendRequest(address, address);
+
+			// fails if a payment of the user has spent some of the inputs in the meantime
+			sweep.complete(wallet, sendRequest, signer);
+			sweep.commit(wallet, sendRequest);
+
+			log.info("consolidated " + sweep.inputs.size() + " outputs into " + sendRequest.tx.getHashAsString());
+
+			application.broadcastTransaction(sendRequest.tx);
+		}
+	}
+
 	private void maybeRotateKeys()
 	{
 		final Wallet wallet = application.getWallet();
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.util.Date;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The content of {@link BlockchainService#ACTION_BLOCKCHAIN_STATE}, as published in-process.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class BlockchainState
+{
+	public final Date bestChainDate;
+	public final int bestChainHeight;
+	public final boolean replaying;
+	public final int download;
+
+	public BlockchainState(@Nonnull final Date bestChainDate, final int bestChainHeight, final boolean replaying, final int download)
+	{
+		this.bestChainDate = bestChainDate;
+		this.bestChainHeight = bestChainHeight;
+		this.replaying = replaying;
+		this.download = download;
+	}
+
+	@Override
+	public boolean equals(final Object o)
+	{
+		if (o == this)
+			return true;
+		if (!(o instanceof BlockchainState))
+			return false;
+
+		final BlockchainState other = (BlockchainState) o;
+		return bestChainDate.equals(other.bestChainDate) && bestChainHeight == other.bestChainHeight && replaying == other.replaying
+				&& download == other.download;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return bestChainHeight * 31 + download;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "height " + bestChainHeight + " at " + bestChainDate + (replaying ? ", replaying" : "") + ", download " + download;
+	}
+}
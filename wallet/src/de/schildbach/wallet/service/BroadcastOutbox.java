@@ -0,0 +1,318 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.PeerAddress;
+import com.google.bitcoin.core.Sha256Hash;
+
+import de.schildbach.wallet.core.AtomicFiles;
+
+/**
+ * Durable queue of transactions waiting to be relayed by the network. A transaction stays queued until enough peers have
+ * announced it back to us, and is offered again with exponential backoff until then. The queue is kept in a file, so
+ * transactions created while offline or while the service is not running are sent as soon as peers are available.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class BroadcastOutbox
+{
+	public static final int NUM_ACKNOWLEDGEMENTS_REQUIRED = 2;
+	public static final int MAX_ATTEMPTS = 10;
+
+	private static final long INITIAL_BACKOFF_MS = TimeUnit.SECONDS.toMillis(30);
+	private static final long MAX_BACKOFF_MS = TimeUnit.HOURS.toMillis(1);
+	private static final int MAX_RELAY_TIMES = 32;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final class Entry
+	{
+		public final long queuedAt;
+		public int attempts;
+		public long nextAttemptAt;
+		public long firstRelayAt;
+		public final Set<PeerAddress> acknowledgedBy = new HashSet<PeerAddress>();
+
+		public Entry(final long queuedAt, final int attempts, final long nextAttemptAt, final long firstRelayAt)
+		{
+			this.queuedAt = queuedAt;
+			this.attempts = attempts;
+			this.nextAttemptAt = nextAttemptAt;
+			this.firstRelayAt = firstRelayAt;
+		}
+	}
+
+	private final File file;
+	private final Map<Sha256Hash, Entry> entries = new LinkedHashMap<Sha256Hash, Entry>(); // guarded by this
+	private final LinkedList<Long> relayTimes = new LinkedList<Long>(); // guarded by this
+
+	private static final Logger log = LoggerFactory.getLogger(BroadcastOutbox.class);
+
+	public BroadcastOutbox(@Nonnull final File file)
+	{
+		this.file = file;
+
+		load();
+	}
+
+	/**
+	 * Queues a transaction. It is due for its first attempt right away.
+	 */
+	public synchronized void add(@Nonnull final Sha256Hash hash, final long now)
+	{
+		if (entries.containsKey(hash))
+			return;
+
+		entries.put(hash, new Entry(now, 0, now, 0));
+		save();
+	}
+
+	public synchronized boolean contains(@Nonnull final Sha256Hash hash)
+	{
+		return entries.containsKey(hash);
+	}
+
+	public synchronized boolean isEmpty()
+	{
+		return entries.isEmpty();
+	}
+
+	/**
+	 * @return all queued transactions, oldest first
+	 */
+	public synchronized List<Sha256Hash> getQueued()
+	{
+		return new ArrayList<Sha256Hash>(entries.keySet());
+	}
+
+	/**
+	 * Takes the transactions that are due for another attempt and reschedules them. Transactions that ran out of attempts
+	 * are dropped, the wallet still rebroadcasts them as pending transactions.
+	 *
+	 * @return due transactions, oldest first, each with the number of its attempt
+	 */
+	public synchronized Map<Sha256Hash, Integer> pollDue(final long now)
+	{
+		final Map<Sha256Hash, Integer> due = new LinkedHashMap<Sha256Hash, Integer>();
+
+		for (final Iterator<Map.Entry<Sha256Hash, Entry>> i = entries.entrySet().iterator(); i.hasNext();)
+		{
+			final Map.Entry<Sha256Hash, Entry> mapEntry = i.next();
+			final Entry entry = mapEntry.getValue();
+			if (entry.nextAttemptAt > now)
+				continue;
+
+			if (entry.attempts >= MAX_ATTEMPTS)
+			{
+				log.info("giving up broadcasting {} after {} attempts", mapEntry.getKey(), entry.attempts);
+				i.remove();
+				continue;
+			}
+
+			entry.attempts++;
+			entry.nextAttemptAt = now + backoff(entry.attempts);
+			due.put(mapEntry.getKey(), entry.attempts);
+		}
+
+		if (!due.isEmpty())
+			save();
+
+		return due;
+	}
+
+	/**
+	 * @return time of the next due attempt, or {@link Long#MAX_VALUE} if nothing is queued
+	 */
+	public synchronized long getNextAttemptAt()
+	{
+		long next = Long.MAX_VALUE;
+		for (final Entry entry : entries.values())
+			next = Math.min(next, entry.nextAttemptAt);
+		return next;
+	}
+
+	/**
+	 * Records that a peer announced a queued transaction.
+	 *
+	 * @return true if the transaction is now considered relayed and has left the queue
+	 */
+	public synchronized boolean acknowledge(@Nonnull final Sha256Hash hash, @Nonnull final PeerAddress peer, final long now)
+	{
+		final Entry entry = entries.get(hash);
+		if (entry == null)
+			return false;
+
+		if (!entry.acknowledgedBy.add(peer))
+			return false;
+
+		if (entry.firstRelayAt == 0)
+		{
+			entry.firstRelayAt = now;
+
+			relayTimes.add(now - entry.queuedAt);
+			if (relayTimes.size() > MAX_RELAY_TIMES)
+				relayTimes.removeFirst();
+
+			log.info("transaction {} first relayed after {} ms, attempt {}", hash, now - entry.queuedAt, entry.attempts);
+		}
+
+		if (entry.acknowledgedBy.size() < NUM_ACKNOWLEDGEMENTS_REQUIRED)
+			return false;
+
+		entries.remove(hash);
+		save();
+
+		return true;
+	}
+
+	public synchronized void remove(@Nonnull final Sha256Hash hash)
+	{
+		if (entries.remove(hash) != null)
+			save();
+	}
+
+	public synchronized void appendReport(@Nonnull final Appendable report) throws IOException
+	{
+		final long now = System.currentTimeMillis();
+
+		for (final Map.Entry<Sha256Hash, Entry> mapEntry : entries.entrySet())
+		{
+			final Entry entry = mapEntry.getValue();
+			report.append(mapEntry.getKey().toString()).append(": queued ").append(Long.toString((now - entry.queuedAt) / 1000))
+					.append("s ago, ").append(Integer.toString(entry.attempts)).append(" attempts, ")
+					.append(Integer.toString(entry.acknowledgedBy.size())).append(" acknowledgements\n");
+		}
+
+		if (!relayTimes.isEmpty())
+		{
+			final List<Long> sorted = new ArrayList<Long>(relayTimes);
+			Collections.sort(sorted);
+			report.append("Time to first relay of last ").append(Integer.toString(sorted.size())).append(" transactions: median ")
+					.append(Long.toString(sorted.get(sorted.size() / 2))).append(" ms, max ")
+					.append(Long.toString(sorted.get(sorted.size() - 1))).append(" ms\n");
+		}
+	}
+
+	static long backoff(final int attempts)
+	{
+		final int shift = Math.min(attempts - 1, 20);
+		return Math.min(INITIAL_BACKOFF_MS << shift, MAX_BACKOFF_MS);
+	}
+
+	private void load()
+	{
+		BufferedReader reader = null;
+
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+
+			synchronized (this)
+			{
+				String line;
+				while (null != (line = reader.readLine()))
+				{
+					final String[] fields = line.split("\t", -1);
+					if (fields.length != 4)
+						continue;
+
+					try
+					{
+						// after a restart, everything is due right away
+						entries.put(new Sha256Hash(fields[0]),
+								new Entry(Long.parseLong(fields[1]), Integer.parseInt(fields[2]), 0, Long.parseLong(fields[3])));
+					}
+					catch (final IllegalArgumentException x)
+					{
+						// skip line
+					}
+				}
+			}
+
+			log.info("{} transactions waiting for broadcast", entries.size());
+		}
+		catch (final FileNotFoundException x)
+		{
+			// nothing queued yet
+		}
+		catch (final IOException x)
+		{
+			log.info("problem loading broadcast outbox", x);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	private void save()
+	{
+		try
+		{
+			AtomicFiles.write(file, new AtomicFiles.Content()
+			{
+				@Override
+				public void writeTo(final Writer writer) throws IOException
+				{
+					for (final Map.Entry<Sha256Hash, Entry> mapEntry : entries.entrySet())
+					{
+						final Entry entry = mapEntry.getValue();
+						writer.write(mapEntry.getKey() + "\t" + entry.queuedAt + "\t" + entry.attempts + "\t" + entry.firstRelayAt + "\n");
+					}
+				}
+			});
+		}
+		catch (final IOException x)
+		{
+			log.info("problem saving broadcast outbox", x);
+		}
+	}
+}
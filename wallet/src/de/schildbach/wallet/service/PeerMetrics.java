@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.PeerAddress;
+
+/**
+ * Traffic counters of one peer. Counters refer to the current or last connection to the address, only the number of
+ * connects accumulates. They are updated from the network thread without locking and can be read from any thread at any
+ * time; a reading is not an atomic snapshot across counters.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class PeerMetrics
+{
+	public final PeerAddress address;
+
+	final AtomicLong bytesReceived = new AtomicLong();
+	final AtomicLong numMessages = new AtomicLong();
+	final AtomicLong numBlocks = new AtomicLong();
+	final AtomicLong numFilteredBlocks = new AtomicLong();
+	final AtomicLong numBloomMatches = new AtomicLong();
+	final AtomicLong numTransactionsAnnounced = new AtomicLong();
+	final AtomicLong numTransactionsReceived = new AtomicLong();
+	final AtomicInteger numConnects = new AtomicInteger();
+
+	private volatile long connectedAt;
+	private volatile long disconnectedAt = 0;
+	@CheckForNull
+	private volatile String disconnectReason;
+
+	PeerMetrics(@Nonnull final PeerAddress address)
+	{
+		this.address = address;
+	}
+
+	void connected(final long now)
+	{
+		numConnects.incrementAndGet();
+		bytesReceived.set(0);
+		numMessages.set(0);
+		numBlocks.set(0);
+		numFilteredBlocks.set(0);
+		numBloomMatches.set(0);
+		numTransactionsAnnounced.set(0);
+		numTransactionsReceived.set(0);
+		connectedAt = now;
+		disconnectedAt = 0;
+		disconnectReason = null;
+	}
+
+	void disconnected(final long now, @Nonnull final String reason)
+	{
+		disconnectedAt = now;
+		disconnectReason = reason;
+	}
+
+	public boolean isConnected()
+	{
+		return disconnectedAt == 0;
+	}
+
+	public long getConnectedAt()
+	{
+		return connectedAt;
+	}
+
+	public long getDisconnectedAt()
+	{
+		return disconnectedAt;
+	}
+
+	@CheckForNull
+	public String getDisconnectReason()
+	{
+		return disconnectReason;
+	}
+
+	public long getBytesReceived()
+	{
+		return bytesReceived.get();
+	}
+
+	public long getNumMessages()
+	{
+		return numMessages.get();
+	}
+
+	public long getNumBlocks()
+	{
+		return numBlocks.get();
+	}
+
+	public long getNumFilteredBlocks()
+	{
+		return numFilteredBlocks.get();
+	}
+
+	public long getNumBloomMatches()
+	{
+		return numBloomMatches.get();
+	}
+
+	public long getNumTransactionsAnnounced()
+	{
+		return numTransactionsAnnounced.get();
+	}
+
+	public long getNumTransactionsReceived()
+	{
+		return numTransactionsReceived.get();
+	}
+
+	public int getNumConnects()
+	{
+		return numConnects.get();
+	}
+
+	public double getMessagesPerSecond(final long now)
+	{
+		final long end = isConnected() ? now : disconnectedAt;
+		final long ms = end - connectedAt;
+		return ms > 0 ? numMessages.get() * 1000.0 / ms : 0;
+	}
+
+	public String toString(final long now)
+	{
+		final StringBuilder builder = new StringBuilder();
+		builder.append(address);
+		builder.append(isConnected() ? " connected " : " disconnected ");
+		builder.append(((isConnected() ? now : disconnectedAt) - connectedAt) / 1000).append("s");
+		if (!isConnected())
+			builder.append(" (").append(disconnectReason).append(")");
+		if (getNumConnects() > 1)
+			builder.append(", ").append(getNumConnects()).append(" connects");
+		builder.append(String.format(", %d bytes in, %d messages (%.1f/s)", getBytesReceived(), getNumMessages(), getMessagesPerSecond(now)));
+		builder.append(", ").append(getNumBlocks()).append(" blocks");
+		builder.append(", ").append(getNumFilteredBlocks()).append(" filtered blocks");
+		builder.append(", ").append(getNumBloomMatches()).append(" bloom matches");
+		builder.append(", ").append(getNumTransactionsAnnounced()).append(" tx announced");
+		builder.append(", ").append(getNumTransactionsReceived()).append(" tx received");
+		return builder.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return toString(System.currentTimeMillis());
+	}
+}
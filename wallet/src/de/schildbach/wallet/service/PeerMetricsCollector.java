@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.AbstractPeerEventListener;
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.FilteredBlock;
+import com.google.bitcoin.core.InventoryItem;
+import com.google.bitcoin.core.InventoryMessage;
+import com.google.bitcoin.core.Message;
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerAddress;
+import com.google.bitcoin.core.Transaction;
+
+/**
+ * Collects {@link PeerMetrics} for all peers of a peer group. Must be registered with
+ * {@link com.google.bitcoin.utils.Threading#SAME_THREAD}, as bitcoinj only shows incoming messages to such listeners.
+ * Metrics of disconnected peers are kept for a while, so failing peers can be told apart.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class PeerMetricsCollector extends AbstractPeerEventListener
+{
+	private static final int MAX_DISCONNECTED = 32;
+	private static final int MESSAGE_HEADER_SIZE = 24;
+
+	private final ConcurrentMap<PeerAddress, PeerMetrics> metrics = new ConcurrentHashMap<PeerAddress, PeerMetrics>();
+	private volatile boolean stopping = false;
+
+	/**
+	 * Call before stopping the peer group, so the following disconnects are not blamed on the peers.
+	 */
+	public void peerGroupStopping()
+	{
+		stopping = true;
+	}
+
+	public void peerGroupStarting()
+	{
+		stopping = false;
+	}
+
+	@Override
+	public void onPeerConnected(final Peer peer, final int peerCount)
+	{
+		metricsFor(peer).connected(System.currentTimeMillis());
+	}
+
+	@Override
+	public void onPeerDisconnected(final Peer peer, final int peerCount)
+	{
+		final PeerMetrics peerMetrics = metricsFor(peer);
+
+		final String reason;
+		if (stopping)
+			reason = "stopped";
+		else if (peerMetrics.getNumMessages() == 0)
+			reason = "no response";
+		else
+			reason = "connection lost";
+		peerMetrics.disconnected(System.currentTimeMillis(), reason);
+
+		trim();
+	}
+
+	@Override
+	public Message onPreMessageReceived(final Peer peer, final Message m)
+	{
+		final PeerMetrics peerMetrics = metricsFor(peer);
+
+		peerMetrics.numMessages.incrementAndGet();
+		peerMetrics.bytesReceived.addAndGet(MESSAGE_HEADER_SIZE + messageSize(m));
+
+		if (m instanceof FilteredBlock)
+		{
+			peerMetrics.numFilteredBlocks.incrementAndGet();
+			peerMetrics.numBloomMatches.addAndGet(((FilteredBlock) m).getTransactionHashes().size());
+		}
+		else if (m instanceof Block)
+		{
+			peerMetrics.numBlocks.incrementAndGet();
+		}
+		else if (m instanceof Transaction)
+		{
+			peerMetrics.numTransactionsReceived.incrementAndGet();
+		}
+		else if (m instanceof InventoryMessage)
+		{
+			int numTransactions = 0;
+			for (final InventoryItem item : ((InventoryMessage) m).getItems())
+				if (item.type == InventoryItem.Type.Transaction)
+					numTransactions++;
+			peerMetrics.numTransactionsAnnounced.addAndGet(numTransactions);
+		}
+
+		return m;
+	}
+
+	@CheckForNull
+	public PeerMetrics getMetrics(@Nonnull final Peer peer)
+	{
+		return metrics.get(peer.getAddress());
+	}
+
+	/**
+	 * @return metrics of connected peers first, then of recently disconnected ones, most recent first
+	 */
+	public List<PeerMetrics> getAllMetrics()
+	{
+		final List<PeerMetrics> all = new ArrayList<PeerMetrics>(metrics.values());
+		Collections.sort(all, new Comparator<PeerMetrics>()
+		{
+			@Override
+			public int compare(final PeerMetrics lhs, final PeerMetrics rhs)
+			{
+				if (lhs.isConnected() != rhs.isConnected())
+					return lhs.isConnected() ? -1 : 1;
+
+				final long l = lhs.isConnected() ? lhs.getConnectedAt() : lhs.getDisconnectedAt();
+				final long r = rhs.isConnected() ? rhs.getConnectedAt() : rhs.getDisconnectedAt();
+				return l > r ? -1 : (l < r ? 1 : 0);
+			}
+		});
+		return all;
+	}
+
+	public void appendReport(@Nonnull final Appendable report) throws IOException
+	{
+		final long now = System.currentTimeMillis();
+		for (final PeerMetrics peerMetrics : getAllMetrics())
+			report.append(peerMetrics.toString(now)).append('\n');
+	}
+
+	private PeerMetrics metricsFor(@Nonnull final Peer peer)
+	{
+		final PeerAddress address = peer.getAddress();
+		final PeerMetrics peerMetrics = metrics.get(address);
+		if (peerMetrics != null)
+			return peerMetrics;
+
+		final PeerMetrics newMetrics = new PeerMetrics(address);
+		final PeerMetrics existingMetrics = metrics.putIfAbsent(address, newMetrics);
+		return existingMetrics != null ? existingMetrics : newMetrics;
+	}
+
+	private void trim()
+	{
+		final List<PeerMetrics> all = getAllMetrics();
+		int numDisconnected = 0;
+		for (final PeerMetrics peerMetrics : all)
+			if (!peerMetrics.isConnected() && ++numDisconnected > MAX_DISCONNECTED)
+				metrics.remove(peerMetrics.address, peerMetrics);
+	}
+
+	private static int messageSize(@Nonnull final Message m)
+	{
+		try
+		{
+			return m.getMessageSize();
+		}
+		catch (final RuntimeException x)
+		{
+			// length not known for some lazily parsed messages
+			return 0;
+		}
+	}
+}
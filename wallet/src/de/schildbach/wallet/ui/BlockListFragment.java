@@ -36,6 +36,7 @@ import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.preference.PreferenceManager;
 import android.support.v4.app.LoaderManager;
@@ -64,6 +65,9 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.service.BlockchainService;
 import de.schildbach.wallet.service.BlockchainServiceImpl;
+import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.util.HandlerExecutor;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -337,14 +341,12 @@ public final class BlockListFragment extends SherlockListFragment
 
 	private static class BlockLoader extends AsyncTaskLoader<List<StoredBlock>>
 	{
-		private Context context;
 		private BlockchainService service;
 
 		private BlockLoader(final Context context, final BlockchainService service)
 		{
 			super(context);
 
-			this.context = context.getApplicationContext();
 			this.service = service;
 		}
 
@@ -353,13 +355,13 @@ public final class BlockListFragment extends SherlockListFragment
 		{
 			super.onStartLoading();
 
-			context.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+			service.getBlockchainState().addListener(blockchainStateListener, new HandlerExecutor(new Handler()));
 		}
 
 		@Override
 		protected void onStopLoading()
 		{
-			context.unregisterReceiver(broadcastReceiver);
+			service.getBlockchainState().removeListener(blockchainStateListener);
 
 			super.onStopLoading();
 		}
@@ -370,10 +372,10 @@ public final class BlockListFragment extends SherlockListFragment
 			return service.getRecentBlocks(MAX_BLOCKS);
 		}
 
-		private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+		private final StateObservable.Listener<BlockchainState> blockchainStateListener = new StateObservable.Listener<BlockchainState>()
 		{
 			@Override
-			public void onReceive(final Context context, final Intent intent)
+			public void onStateChanged(@Nonnull final BlockchainState state)
 			{
 				forceLoad();
 			}
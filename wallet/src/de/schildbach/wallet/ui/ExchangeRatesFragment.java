@@ -19,15 +19,15 @@ package de.schildbach.wallet.ui;
 
 import java.math.BigInteger;
 
+import javax.annotation.Nonnull;
+
 import android.app.Activity;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
@@ -43,15 +43,16 @@ import com.actionbarsherlock.view.ActionMode;
 import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuInflater;
 import com.actionbarsherlock.view.MenuItem;
-import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.core.Wallet.BalanceType;
 
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.ExchangeRatesProvider;
 import de.schildbach.wallet.ExchangeRatesProvider.ExchangeRate;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.service.BlockchainService;
+import de.schildbach.wallet.service.BlockchainState;
 import de.schildbach.wallet.util.GenericUtils;
+import de.schildbach.wallet.util.HandlerExecutor;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -62,7 +63,6 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 {
 	private AbstractWalletActivity activity;
 	private WalletApplication application;
-	private Wallet wallet;
 	private SharedPreferences prefs;
 	private LoaderManager loaderManager;
 
@@ -82,7 +82,6 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 
 		this.activity = (AbstractWalletActivity) activity;
 		this.application = (WalletApplication) activity.getApplication();
-		this.wallet = application.getWallet();
 		this.prefs = PreferenceManager.getDefaultSharedPreferences(activity);
 		this.loaderManager = getLoaderManager();
 	}
@@ -103,7 +102,7 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 	{
 		super.onResume();
 
-		activity.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+		application.getBlockchainState().addListener(blockchainStateListener, new HandlerExecutor(new Handler()));
 
 		loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
 		loaderManager.initLoader(ID_RATE_LOADER, null, rateLoaderCallbacks);
@@ -122,7 +121,7 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 		loaderManager.destroyLoader(ID_RATE_LOADER);
 		loaderManager.destroyLoader(ID_BALANCE_LOADER);
 
-		activity.unregisterReceiver(broadcastReceiver);
+		application.getBlockchainState().removeListener(blockchainStateListener);
 
 		super.onPause();
 	}
@@ -193,7 +192,7 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 
 	private void updateView()
 	{
-		balance = application.getWallet().getBalance(BalanceType.ESTIMATED);
+		balance = application.getBalanceTracker().getBalance(BalanceType.ESTIMATED);
 
 		if (adapter != null)
 		{
@@ -206,18 +205,16 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 		}
 	}
 
-	private final BlockchainBroadcastReceiver broadcastReceiver = new BlockchainBroadcastReceiver();
-
-	private final class BlockchainBroadcastReceiver extends BroadcastReceiver
+	private final StateObservable.Listener<BlockchainState> blockchainStateListener = new StateObservable.Listener<BlockchainState>()
 	{
 		@Override
-		public void onReceive(final Context context, final Intent intent)
+		public void onStateChanged(@Nonnull final BlockchainState state)
 		{
-			replaying = intent.getBooleanExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_REPLAYING, false);
+			replaying = state.replaying;
 
 			updateView();
 		}
-	}
+	};
 
 	private final LoaderCallbacks<Cursor> rateLoaderCallbacks = new LoaderManager.LoaderCallbacks<Cursor>()
 	{
@@ -245,7 +242,7 @@ public final class ExchangeRatesFragment extends SherlockListFragment implements
 		@Override
 		public Loader<BigInteger> onCreateLoader(final int id, final Bundle args)
 		{
-			return new WalletBalanceLoader(activity, wallet);
+			return new WalletBalanceLoader(activity);
 		}
 
 		@Override
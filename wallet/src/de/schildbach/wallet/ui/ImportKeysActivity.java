@@ -191,6 +191,8 @@ public final class ImportKeysActivity extends AbstractWalletActivity
 
 			final int numKeysToImport = importedKeys.size();
 			final int numKeysImported = wallet.addKeys(importedKeys);
+			if (numKeysImported > 0)
+				getWalletApplication().backupKeys();
 
 			final AlertDialog.Builder dialog = new AlertDialog.Builder(this);
 			dialog.setInverseBackgroundForced(true);
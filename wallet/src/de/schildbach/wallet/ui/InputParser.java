@@ -19,7 +19,6 @@ package de.schildbach.wallet.ui;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -31,7 +30,6 @@ import android.content.DialogInterface.OnClickListener;
 
 import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.AddressFormatException;
-import com.google.bitcoin.core.Base58;
 import com.google.bitcoin.core.DumpedPrivateKey;
 import com.google.bitcoin.core.ECKey;
 import com.google.bitcoin.core.ProtocolException;
@@ -41,6 +39,7 @@ import com.google.bitcoin.uri.BitcoinURIParseException;
 
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.util.Bluetooth;
+import de.schildbach.wallet.util.InputClassifier;
 import de.schildbach.wallet.util.Qr;
 import de.schildbach.wallet_ltc.R;
 
@@ -61,72 +60,77 @@ public abstract class InputParser
 		@Override
 		public void parse()
 		{
-			if (input.startsWith("litecoin:"))
+			switch (CLASSIFIER.classify(input))
 			{
-				try
-				{
-					final BitcoinURI bitcoinUri = new BitcoinURI(Constants.NETWORK_PARAMETERS, input);
-					final Address address = bitcoinUri.getAddress();
-					final String addressLabel = bitcoinUri.getLabel();
-					final BigInteger amount = bitcoinUri.getAmount();
-					final String bluetoothMac = (String) bitcoinUri.getParameterByName(Bluetooth.MAC_URI_PARAM);
-
-					bitcoinRequest(address, addressLabel, amount, bluetoothMac);
-				}
-				catch (final BitcoinURIParseException x)
-				{
-					error(R.string.input_parser_invalid_litecoin_uri, input);
-				}
-			}
-			else if (PATTERN_BITCOIN_ADDRESS.matcher(input).matches())
-			{
-				try
-				{
-					final Address address = new Address(Constants.NETWORK_PARAMETERS, input);
-
-					bitcoinRequest(address, null, null, null);
-				}
-				catch (final AddressFormatException x)
-				{
-					error(R.string.input_parser_invalid_address);
-				}
-			}
-			else if (PATTERN_PRIVATE_KEY.matcher(input).matches())
-			{
-                // Scan of a private key
-                // Add it to the wallet
-                // TODO: In the future, give a sweep option as well
-                //       See issue #11
-				try
-				{
-					final ECKey key = new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, input).getKey();
-                    handlePrivateKey(key);
-				}
-				catch (final AddressFormatException x)
-				{
+				case BITCOIN_URI:
+					try
+					{
+						final BitcoinURI bitcoinUri = new BitcoinURI(Constants.NETWORK_PARAMETERS, input);
+						final Address address = bitcoinUri.getAddress();
+						final String addressLabel = bitcoinUri.getLabel();
+						final BigInteger amount = bitcoinUri.getAmount();
+						final String bluetoothMac = (String) bitcoinUri.getParameterByName(Bluetooth.MAC_URI_PARAM);
+
+						bitcoinRequest(address, addressLabel, amount, bluetoothMac);
+					}
+					catch (final BitcoinURIParseException x)
+					{
+						error(R.string.input_parser_invalid_litecoin_uri, input);
+					}
+					break;
+
+				case ADDRESS:
+					try
+					{
+						final Address address = new Address(Constants.NETWORK_PARAMETERS, input);
+
+						bitcoinRequest(address, null, null, null);
+					}
+					catch (final AddressFormatException x)
+					{
+						error(R.string.input_parser_invalid_address);
+					}
+					break;
+
+				case PRIVATE_KEY:
+					// Scan of a private key
+					// Add it to the wallet
+					// TODO: In the future, give a sweep option as well
+					// See issue #11
+					try
+					{
+						final ECKey key = new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, input).getKey();
+						handlePrivateKey(key);
+					}
+					catch (final AddressFormatException x)
+					{
+						error(R.string.input_parser_invalid_address);
+					}
+					break;
+
+				case TRANSACTION:
+					try
+					{
+						final Transaction tx = new Transaction(Constants.NETWORK_PARAMETERS, Qr.decodeBinary(input));
+
+						directTransaction(tx);
+					}
+					catch (final IOException x)
+					{
+						error(R.string.input_parser_invalid_transaction, x.getMessage());
+					}
+					catch (final ProtocolException x)
+					{
+						error(R.string.input_parser_invalid_transaction, x.getMessage());
+					}
+					break;
+
+				case INVALID_ADDRESS:
 					error(R.string.input_parser_invalid_address);
-				}
-			}
-			else if (PATTERN_TRANSACTION.matcher(input).matches())
-			{
-				try
-				{
-					final Transaction tx = new Transaction(Constants.NETWORK_PARAMETERS, Qr.decodeBinary(input));
+					break;
 
-					directTransaction(tx);
-				}
-				catch (final IOException x)
-				{
-					error(R.string.input_parser_invalid_transaction, x.getMessage());
-				}
-				catch (final ProtocolException x)
-				{
-					error(R.string.input_parser_invalid_transaction, x.getMessage());
-				}
-			}
-			else
-			{
-				cannotClassify(input);
+				default:
+					cannotClassify(input);
 			}
 		}
 	}
@@ -192,7 +196,5 @@ public abstract class InputParser
 		dialog.show();
 	}
 
-	private static final Pattern PATTERN_BITCOIN_ADDRESS = Pattern.compile("[" + new String(Base58.ALPHABET) + "]{20,40}");
-	private static final Pattern PATTERN_PRIVATE_KEY = Pattern.compile("[T6][" + new String(Base58.ALPHABET) + "]{50,51}");
-	private static final Pattern PATTERN_TRANSACTION = Pattern.compile("[0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ$\\*\\+\\-\\.\\/\\:]{100,}");
+	private static final InputClassifier CLASSIFIER = new InputClassifier(Constants.NETWORK_PARAMETERS);
 }
@@ -19,17 +19,13 @@ package de.schildbach.wallet.ui;
 
 import java.net.InetAddress;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 import javax.annotation.Nonnull;
 
 import android.app.Activity;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.graphics.Typeface;
 import android.os.Bundle;
@@ -49,8 +45,12 @@ import com.actionbarsherlock.app.SherlockListFragment;
 import com.google.bitcoin.core.Peer;
 import com.google.bitcoin.core.VersionMessage;
 
+import de.schildbach.wallet.ReverseDnsResolver;
 import de.schildbach.wallet.service.BlockchainService;
 import de.schildbach.wallet.service.BlockchainServiceImpl;
+import de.schildbach.wallet.service.PeerMetrics;
+import de.schildbach.wallet.util.HandlerExecutor;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet_ltc.R;
 
 /**
@@ -69,9 +69,8 @@ public final class PeerListFragment extends SherlockListFragment
 	private static final long REFRESH_MS = DateUtils.SECOND_IN_MILLIS;
 
 	private static final int ID_PEER_LOADER = 0;
-	private static final int ID_REVERSE_DNS_LOADER = 1;
 
-	private final Map<InetAddress, String> hostnames = new WeakHashMap<InetAddress, String>();
+	private ReverseDnsResolver reverseDnsResolver;
 
 	@Override
 	public void onAttach(final Activity activity)
@@ -80,6 +79,7 @@ public final class PeerListFragment extends SherlockListFragment
 
 		this.activity = (AbstractWalletActivity) activity;
 		this.loaderManager = getLoaderManager();
+		this.reverseDnsResolver = this.activity.getWalletApplication().getReverseDnsResolver();
 	}
 
 	@Override
@@ -117,7 +117,7 @@ public final class PeerListFragment extends SherlockListFragment
 
 				final TextView rowIp = (TextView) row.findViewById(R.id.peer_list_row_ip);
 				final InetAddress address = peer.getAddress().getAddr();
-				final String hostname = hostnames.get(address);
+				final String hostname = reverseDnsResolver.getHostname(address);
 				rowIp.setText(hostname != null ? hostname : address.getHostAddress());
 
 				final TextView rowHeight = (TextView) row.findViewById(R.id.peer_list_row_height);
@@ -138,6 +138,16 @@ public final class PeerListFragment extends SherlockListFragment
 				rowPing.setText(pingTime < Long.MAX_VALUE ? getString(R.string.peer_list_row_ping_time, pingTime) : null);
 				rowPing.setTypeface(isDownloading ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT);
 
+				final TextView rowMetrics = (TextView) row.findViewById(R.id.peer_list_row_metrics);
+				final PeerMetrics metrics = service != null ? service.getPeerMetrics().getMetrics(peer) : null;
+				if (metrics != null)
+					rowMetrics.setText(getString(R.string.peer_list_row_metrics, metrics.getBytesReceived() / 1024,
+							metrics.getMessagesPerSecond(System.currentTimeMillis()), metrics.getNumBlocks() + metrics.getNumFilteredBlocks(),
+							metrics.getNumBloomMatches(), metrics.getNumTransactionsAnnounced()));
+				else
+					rowMetrics.setText(null);
+				rowMetrics.setTypeface(isDownloading ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT);
+
 				return row;
 			}
 
@@ -160,29 +170,9 @@ public final class PeerListFragment extends SherlockListFragment
 			@Override
 			public void run()
 			{
+				// also picks up host names resolved in the meantime
 				adapter.notifyDataSetChanged();
 
-				final Loader<String> loader = loaderManager.getLoader(ID_REVERSE_DNS_LOADER);
-				final boolean loaderRunning = loader != null && loader.isStarted();
-
-				if (!loaderRunning)
-				{
-					for (int i = 0; i < adapter.getCount(); i++)
-					{
-						final Peer peer = adapter.getItem(i);
-						final InetAddress address = peer.getAddress().getAddr();
-
-						if (!hostnames.containsKey(address))
-						{
-							final Bundle args = new Bundle();
-							args.putSerializable("address", address);
-							loaderManager.initLoader(ID_REVERSE_DNS_LOADER, args, reverseDnsLoaderCallbacks).forceLoad();
-
-							break;
-						}
-					}
-				}
-
 				handler.postDelayed(this, REFRESH_MS);
 			}
 		}, REFRESH_MS);
@@ -201,8 +191,6 @@ public final class PeerListFragment extends SherlockListFragment
 	{
 		activity.unbindService(serviceConnection);
 
-		loaderManager.destroyLoader(ID_REVERSE_DNS_LOADER);
-
 		super.onDestroy();
 	}
 
@@ -227,14 +215,12 @@ public final class PeerListFragment extends SherlockListFragment
 
 	private static class PeerLoader extends AsyncTaskLoader<List<Peer>>
 	{
-		private Context context;
 		private BlockchainService service;
 
 		private PeerLoader(final Context context, @Nonnull final BlockchainService service)
 		{
 			super(context);
 
-			this.context = context.getApplicationContext();
 			this.service = service;
 		}
 
@@ -243,13 +229,13 @@ public final class PeerListFragment extends SherlockListFragment
 		{
 			super.onStartLoading();
 
-			context.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_PEER_STATE));
+			service.getPeerState().addListener(peerStateListener, new HandlerExecutor(new Handler()));
 		}
 
 		@Override
 		protected void onStopLoading()
 		{
-			context.unregisterReceiver(broadcastReceiver);
+			service.getPeerState().removeListener(peerStateListener);
 
 			super.onStopLoading();
 		}
@@ -260,10 +246,10 @@ public final class PeerListFragment extends SherlockListFragment
 			return service.getConnectedPeers();
 		}
 
-		private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+		private final StateObservable.Listener<Integer> peerStateListener = new StateObservable.Listener<Integer>()
 		{
 			@Override
-			public void onReceive(final Context context, final Intent intent)
+			public void onStateChanged(@Nonnull final Integer numPeers)
 			{
 				forceLoad();
 			}
@@ -294,47 +280,4 @@ public final class PeerListFragment extends SherlockListFragment
 			adapter.clear();
 		}
 	};
-
-	private static class ReverseDnsLoader extends AsyncTaskLoader<String>
-	{
-		public final InetAddress address;
-
-		public ReverseDnsLoader(final Context context, @Nonnull final InetAddress address)
-		{
-			super(context);
-
-			this.address = address;
-		}
-
-		@Override
-		public String loadInBackground()
-		{
-			return address.getCanonicalHostName();
-		}
-	}
-
-	private final LoaderCallbacks<String> reverseDnsLoaderCallbacks = new LoaderCallbacks<String>()
-	{
-		@Override
-		public Loader<String> onCreateLoader(final int id, final Bundle args)
-		{
-			final InetAddress address = (InetAddress) args.getSerializable("address");
-
-			return new ReverseDnsLoader(activity, address);
-		}
-
-		@Override
-		public void onLoadFinished(final Loader<String> loader, final String hostname)
-		{
-			final InetAddress address = ((ReverseDnsLoader) loader).address;
-			hostnames.put(address, hostname);
-
-			loaderManager.destroyLoader(ID_REVERSE_DNS_LOADER);
-		}
-
-		@Override
-		public void onLoaderReset(final Loader<String> loader)
-		{
-		}
-	};
 }
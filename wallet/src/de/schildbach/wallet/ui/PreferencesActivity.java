@@ -32,6 +32,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
+import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.Preference.OnPreferenceChangeListener;
 import android.preference.PreferenceScreen;
@@ -53,6 +54,7 @@ public final class PreferencesActivity extends SherlockPreferenceActivity implem
 	private WalletApplication application;
 	private Preference trustedPeerPreference;
 	private Preference trustedPeerOnlyPreference;
+	private Preference consolidateOutputsPreference;
 
 	private static final String PREFS_KEY_REPORT_ISSUE = "report_issue";
 	private static final String PREFS_KEY_INITIATE_RESET = "initiate_reset";
@@ -81,6 +83,9 @@ public final class PreferencesActivity extends SherlockPreferenceActivity implem
 		trustedPeerOnlyPreference = findPreference(Constants.PREFS_KEY_TRUSTED_PEER_ONLY);
 		trustedPeerOnlyPreference.setOnPreferenceChangeListener(this);
 
+		consolidateOutputsPreference = findPreference(Constants.PREFS_KEY_LABS_CONSOLIDATE_OUTPUTS);
+		consolidateOutputsPreference.setOnPreferenceChangeListener(this);
+
 		final Preference dataUsagePreference = findPreference(PREFS_KEY_DATA_USAGE);
 		dataUsagePreference.setEnabled(getPackageManager().resolveActivity(dataUsageIntent, 0) != null);
 
@@ -99,6 +104,7 @@ public final class PreferencesActivity extends SherlockPreferenceActivity implem
 	protected void onDestroy()
 	{
 		trustedPeerPreference.setOnPreferenceChangeListener(null);
+		consolidateOutputsPreference.setOnPreferenceChangeListener(null);
 
 		super.onDestroy();
 	}
@@ -207,10 +213,35 @@ public final class PreferencesActivity extends SherlockPreferenceActivity implem
 		{
 			application.stopBlockchainService();
 		}
+		else if (preference.equals(consolidateOutputsPreference) && "on".equals(newValue))
+		{
+			// sweeps are signed and sent without asking, so make sure the user wants that
+			confirmConsolidateOutputs((ListPreference) preference);
+			return false;
+		}
 
 		return true;
 	}
 
+	private void confirmConsolidateOutputs(@Nonnull final ListPreference preference)
+	{
+		final AlertDialog.Builder dialog = new AlertDialog.Builder(this);
+		dialog.setTitle(R.string.preferences_consolidate_outputs_dialog_title);
+		dialog.setMessage(R.string.preferences_consolidate_outputs_dialog_message);
+		dialog.setPositiveButton(R.string.preferences_consolidate_outputs_dialog_positive, new OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int which)
+			{
+				log.info("automatic consolidation of outputs enabled");
+
+				preference.setValue("on");
+			}
+		});
+		dialog.setNegativeButton(R.string.button_cancel, null);
+		dialog.show();
+	}
+
 	private void updateTrustedPeer(@Nonnull final String trustedPeer)
 	{
 		if (trustedPeer.isEmpty())
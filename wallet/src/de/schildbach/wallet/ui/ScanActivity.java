@@ -48,17 +48,14 @@ import android.view.KeyEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
-import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
 
 import de.schildbach.wallet.camera.CameraManager;
+import de.schildbach.wallet.camera.FrameDecoder;
 import de.schildbach.wallet_ltc.R;
 
 /**
@@ -77,6 +74,7 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 	private Vibrator vibrator;
 	private HandlerThread cameraThread;
 	private Handler cameraHandler;
+	private FrameDecoder frameDecoder; // only accessed on camera thread
 
 	private static final int DIALOG_CAMERA_PROBLEM = 0;
 
@@ -237,7 +235,7 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 				if (nonContinuousAutoFocus)
 					cameraHandler.post(new AutoFocusRunnable(camera));
 
-				cameraHandler.post(fetchAndDecodeRunnable);
+				startDecoding();
 			}
 			catch (final IOException x)
 			{
@@ -257,6 +255,13 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 		@Override
 		public void run()
 		{
+			if (frameDecoder != null)
+			{
+				frameDecoder.stop();
+				log.info("decoder stats: " + frameDecoder);
+				frameDecoder = null;
+			}
+
 			cameraManager.close();
 
 			// cancel background thread
@@ -289,75 +294,78 @@ public final class ScanActivity extends Activity implements SurfaceHolder.Callba
 		}
 	}
 
-	private final Runnable fetchAndDecodeRunnable = new Runnable()
+	private void startDecoding()
 	{
-		private final QRCodeReader reader = new QRCodeReader();
-		private final Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
-
-		@Override
-		public void run()
+		final Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+		hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback()
 		{
-			cameraManager.requestPreviewFrame(new PreviewCallback()
+			@Override
+			public void foundPossibleResultPoint(final ResultPoint dot)
 			{
-				@Override
-				public void onPreviewFrame(final byte[] data, final Camera camera)
+				runOnUiThread(new Runnable()
 				{
-					decode(data);
-				}
-			});
-		}
+					@Override
+					public void run()
+					{
+						scannerView.addDot(dot);
+					}
+				});
+			}
+		});
 
-		private void decode(final byte[] data)
-		{
-			final PlanarYUVLuminanceSource source = cameraManager.buildLuminanceSource(data);
-			final BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+		final Camera.Size previewSize = cameraManager.getPreviewSize();
+		final Rect framePreview = cameraManager.getFramePreview();
 
-			try
-			{
-				hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback()
+		frameDecoder = new FrameDecoder(previewSize.width, previewSize.height, framePreview.left, framePreview.top, framePreview.width(),
+				framePreview.height(), true, hints, new FrameDecoder.Listener()
 				{
 					@Override
-					public void foundPossibleResultPoint(final ResultPoint dot)
+					public void onResult(final Result scanResult, final byte[] frame)
 					{
+						final PlanarYUVLuminanceSource source = cameraManager.buildLuminanceSource(frame);
+
+						final int thumbnailWidth = source.getThumbnailWidth();
+						final int thumbnailHeight = source.getThumbnailHeight();
+						final float thumbnailScaleFactor = (float) thumbnailWidth / source.getWidth();
+
+						final Bitmap thumbnailImage = Bitmap.createBitmap(thumbnailWidth, thumbnailHeight, Bitmap.Config.ARGB_8888);
+						thumbnailImage.setPixels(source.renderThumbnail(), 0, thumbnailWidth, 0, 0, thumbnailWidth, thumbnailHeight);
+
 						runOnUiThread(new Runnable()
 						{
 							@Override
 							public void run()
 							{
-								scannerView.addDot(dot);
+								handleResult(scanResult, thumbnailImage, thumbnailScaleFactor);
 							}
 						});
 					}
-				});
-				final Result scanResult = reader.decode(bitmap, hints);
-
-				final int thumbnailWidth = source.getThumbnailWidth();
-				final int thumbnailHeight = source.getThumbnailHeight();
-				final float thumbnailScaleFactor = (float) thumbnailWidth / source.getWidth();
 
-				final Bitmap thumbnailImage = Bitmap.createBitmap(thumbnailWidth, thumbnailHeight, Bitmap.Config.ARGB_8888);
-				thumbnailImage.setPixels(source.renderThumbnail(), 0, thumbnailWidth, 0, 0, thumbnailWidth, thumbnailHeight);
-
-				runOnUiThread(new Runnable()
-				{
 					@Override
-					public void run()
+					public void onFrameDone(final byte[] frame)
 					{
-						handleResult(scanResult, thumbnailImage, thumbnailScaleFactor);
+						// the camera must only be used from its own thread
+						cameraHandler.post(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								cameraManager.addCallbackBuffer(frame);
+							}
+						});
 					}
 				});
-			}
-			catch (final ReaderException x)
-			{
-				// retry
-				cameraHandler.post(fetchAndDecodeRunnable);
-			}
-			finally
+		frameDecoder.start();
+
+		cameraManager.startPreviewCallbacks(new PreviewCallback()
+		{
+			@Override
+			public void onPreviewFrame(final byte[] data, final Camera camera)
 			{
-				reader.reset();
+				frameDecoder.offer(data);
 			}
-		}
-	};
+		});
+	}
 
 	@Override
 	protected Dialog onCreateDialog(final int id)
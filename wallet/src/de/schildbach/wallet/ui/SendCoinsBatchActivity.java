@@ -0,0 +1,311 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.SendRequest;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.integration.android.BitcoinIntegration;
+import de.schildbach.wallet.util.FeeAwareCoinSelector;
+import de.schildbach.wallet.util.GenericUtils;
+import de.schildbach.wallet.util.ParallelInputSigner;
+import de.schildbach.wallet.util.PaymentBatch;
+import de.schildbach.wallet.util.PaymentBatch.Payment;
+import de.schildbach.wallet.util.WalletUtils;
+import de.schildbach.wallet_ltc.R;
+
+/**
+ * Pays a list of recipients, either from a file or from an app using {@link BitcoinIntegration}.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class SendCoinsBatchActivity extends AbstractWalletActivity
+{
+	private WalletApplication application;
+	private Wallet wallet;
+
+	private final Handler handler = new Handler();
+
+	public static void start(@Nonnull final Context context, @Nonnull final Uri paymentsUri)
+	{
+		final Intent intent = new Intent(Intent.ACTION_VIEW, paymentsUri, context, SendCoinsBatchActivity.class);
+		context.startActivity(intent);
+	}
+
+	@Override
+	protected void onCreate(final Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+
+		application = getWalletApplication();
+		wallet = application.getWallet();
+
+		final Intent intent = getIntent();
+		final Uri paymentsUri = intent.getData();
+		final String[] addresses = intent.getStringArrayExtra(BitcoinIntegration.INTENT_EXTRA_ADDRESSES);
+		final long[] amounts = intent.getLongArrayExtra(BitcoinIntegration.INTENT_EXTRA_AMOUNTS);
+
+		setResult(Activity.RESULT_CANCELED);
+
+		new Thread("plan batch payment")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final List<Payment> payments;
+					if (BitcoinIntegration.ACTION_SEND_BATCH.equals(intent.getAction()))
+						payments = readPayments(addresses, amounts);
+					else if (paymentsUri != null)
+						payments = readPayments(paymentsUri);
+					else
+						throw new IOException("nothing to pay");
+
+					if (payments.isEmpty())
+						throw new IOException("nothing to pay");
+
+					// pick inputs for all transactions in one go, so that they cannot conflict
+					final Address changeAddress = WalletUtils.pickOldestKey(wallet).toAddress(Constants.NETWORK_PARAMETERS);
+					final FeeAwareCoinSelector coinSelector = new FeeAwareCoinSelector(wallet, application.getUnspentOutputIndex(),
+							Constants.TX_FEE_PER_KB, Constants.MIN_TX_FEE, Constants.DUST_THRESHOLD);
+					final PaymentBatch.Plan plan = PaymentBatch.plan(payments, coinSelector, changeAddress);
+
+					log.info("planned " + payments.size() + " payments in " + plan.sendRequests.size() + " transactions, amount "
+							+ plan.amount + ", fee " + plan.fee);
+
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							confirm(payments, plan);
+						}
+					});
+				}
+				catch (final IOException x)
+				{
+					log.info("problem reading payments", x);
+					showFailure(getString(R.string.send_coins_batch_msg_failure, x.getMessage()));
+				}
+				catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+				{
+					log.info("insufficient money for payments", x);
+					showFailure(getString(R.string.send_coins_batch_msg_insufficient,
+							GenericUtils.formatValue(x.missing, Constants.BTC_MAX_PRECISION, 0)));
+				}
+				catch (final IllegalStateException x)
+				{
+					log.info("cannot plan payments", x);
+					showFailure(getString(R.string.send_coins_batch_msg_failure, x.getMessage()));
+				}
+			}
+		}.start();
+	}
+
+	private List<Payment> readPayments(final String[] addresses, final long[] amounts) throws IOException
+	{
+		if (addresses == null || amounts == null || addresses.length != amounts.length)
+			throw new IOException("need one amount per address");
+
+		final List<Payment> payments = new ArrayList<Payment>(addresses.length);
+		for (int i = 0; i < addresses.length; i++)
+		{
+			try
+			{
+				if (amounts[i] <= 0)
+					throw new IOException("zero amount for " + addresses[i]);
+
+				payments.add(new Payment(new Address(Constants.NETWORK_PARAMETERS, addresses[i]), BigInteger.valueOf(amounts[i]), null));
+			}
+			catch (final AddressFormatException x)
+			{
+				throw new IOException(addresses[i] + ": " + x.getMessage());
+			}
+		}
+
+		return payments;
+	}
+
+	private List<Payment> readPayments(@Nonnull final Uri paymentsUri) throws IOException
+	{
+		final Reader reader = new InputStreamReader(getContentResolver().openInputStream(paymentsUri), Constants.UTF_8);
+		try
+		{
+			return PaymentBatch.read(reader, Constants.NETWORK_PARAMETERS);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private void confirm(@Nonnull final List<Payment> payments, @Nonnull final PaymentBatch.Plan plan)
+	{
+		// the batch may come from another app, so show every recipient before anything is signed
+		final StringBuilder message = new StringBuilder(getString(R.string.send_coins_batch_confirm, payments.size(),
+				GenericUtils.formatValue(plan.amount, Constants.BTC_MAX_PRECISION, 0), plan.sendRequests.size(),
+				GenericUtils.formatValue(plan.fee, Constants.BTC_MAX_PRECISION, 0)));
+		message.append("\n");
+		for (final Payment payment : payments)
+		{
+			message.append("\n");
+			message.append(getString(R.string.send_coins_batch_confirm_payment,
+					GenericUtils.formatValue(payment.amount, Constants.BTC_MAX_PRECISION, 0), payment.address.toString()));
+			if (payment.label != null)
+				message.append(" (").append(payment.label).append(')');
+		}
+
+		new AlertDialog.Builder(this).setInverseBackgroundForced(true).setTitle(R.string.send_coins_batch_activity_title).setMessage(message)
+				.setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						send(plan);
+					}
+				}).setNegativeButton(R.string.button_cancel, finishListener).setOnCancelListener(finishListener).show();
+	}
+
+	private void send(@Nonnull final PaymentBatch.Plan plan)
+	{
+		new Thread("send batch payment")
+		{
+			@Override
+			public void run()
+			{
+				final List<String> txHashes = new ArrayList<String>(plan.sendRequests.size());
+				final ParallelInputSigner signer = new ParallelInputSigner(wallet);
+				String failure = null;
+
+				for (int i = 0; i < plan.sendRequests.size(); i++)
+				{
+					final FeeAwareCoinSelector.Selection selection = plan.selections.get(i);
+					final SendRequest sendRequest = plan.sendRequests.get(i);
+					final Transaction tx = sendRequest.tx;
+
+					try
+					{
+						// inputs were picked when the batch was planned, so this fails if other sends have spent them since
+						selection.complete(wallet, sendRequest, signer);
+						selection.commit(wallet, sendRequest);
+					}
+					catch (final RuntimeException x)
+					{
+						log.warn("problem sending batch transaction " + (i + 1) + " of " + plan.sendRequests.size() + ", stopping", x);
+						failure = x.getMessage() != null ? x.getMessage() : x.toString();
+						break;
+					}
+
+					application.broadcastTransaction(tx);
+					txHashes.add(tx.getHashAsString());
+
+					log.info("sent batch transaction " + tx.getHashAsString() + ", " + tx.getOutputs().size() + " outputs, "
+							+ tx.bitcoinSerialize().length + " bytes");
+				}
+
+				final String finalFailure = failure;
+
+				handler.post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (!txHashes.isEmpty())
+						{
+							final Intent result = new Intent();
+							BitcoinIntegration.transactionHashesToResult(result, txHashes.toArray(new String[txHashes.size()]));
+							if (txHashes.size() == 1)
+								BitcoinIntegration.transactionHashToResult(result, txHashes.get(0));
+							setResult(Activity.RESULT_OK, result);
+						}
+
+						if (finalFailure == null)
+						{
+							longToast(R.string.send_coins_batch_msg_sent, txHashes.size(), plan.sendRequests.size());
+							finish();
+						}
+						else
+						{
+							final StringBuilder sentHashes = new StringBuilder();
+							for (final String txHash : txHashes)
+								sentHashes.append(txHash).append('\n');
+
+							showFailure(getString(R.string.send_coins_batch_msg_stopped, txHashes.size(), plan.sendRequests.size(),
+									finalFailure, sentHashes));
+						}
+					}
+				});
+			}
+		}.start();
+	}
+
+	private void showFailure(@Nonnull final String message)
+	{
+		handler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				new AlertDialog.Builder(SendCoinsBatchActivity.this).setInverseBackgroundForced(true).setIcon(android.R.drawable.ic_dialog_alert)
+						.setTitle(R.string.send_coins_batch_activity_title).setMessage(message)
+						.setNeutralButton(R.string.button_dismiss, finishListener).setOnCancelListener(finishListener).show();
+			}
+		});
+	}
+
+	private class FinishListener implements DialogInterface.OnClickListener, DialogInterface.OnCancelListener
+	{
+		@Override
+		public void onClick(final DialogInterface dialog, final int which)
+		{
+			finish();
+		}
+
+		@Override
+		public void onCancel(final DialogInterface dialog)
+		{
+			finish();
+		}
+	}
+
+	private final FinishListener finishListener = new FinishListener();
+}
@@ -17,7 +17,12 @@
 
 package de.schildbach.wallet.ui;
 
+import java.io.File;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -25,10 +30,7 @@ import javax.annotation.Nullable;
 
 import android.app.AlertDialog;
 import android.util.Log;
-import android.widget.Toast;
 import com.google.bitcoin.core.ECKey;
-import com.google.bitcoin.core.InsufficientMoneyException;
-import com.google.bitcoin.core.TransactionOutput;
 import de.schildbach.wallet.util.IntentIntegratorSupportV4;
 import de.schildbach.wallet.util.IntentResult;
 import org.slf4j.Logger;
@@ -97,7 +99,10 @@ import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.integration.android.BitcoinIntegration;
 import de.schildbach.wallet.offline.SendBluetoothTask;
 import de.schildbach.wallet.ui.InputParser.StringInputParser;
+import de.schildbach.wallet.util.FeeAwareCoinSelector;
 import de.schildbach.wallet.util.GenericUtils;
+import de.schildbach.wallet.util.LabelCsv;
+import de.schildbach.wallet.util.ParallelInputSigner;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -716,6 +721,10 @@ public final class SendCoinsFragment extends SherlockFragment
 			case R.id.send_coins_options_empty:
 				handleEmpty();
 				return true;
+
+			case R.id.send_coins_options_batch:
+				handleBatch();
+				return true;
 		}
 
 		return super.onOptionsItemSelected(item);
@@ -775,8 +784,8 @@ public final class SendCoinsFragment extends SherlockFragment
 		}
 		else if (amount.signum() > 0)
 		{
-			final BigInteger estimated = wallet.getBalance(BalanceType.ESTIMATED);
-			final BigInteger available = wallet.getBalance(BalanceType.AVAILABLE);
+			final BigInteger estimated = application.getBalanceTracker().getBalance(BalanceType.ESTIMATED);
+			final BigInteger available = application.getBalanceTracker().getBalance(BalanceType.AVAILABLE);
 			final BigInteger pending = estimated.subtract(available);
 			// TODO subscribe to wallet changes
 
@@ -857,180 +866,140 @@ public final class SendCoinsFragment extends SherlockFragment
 		state = State.PREPARATION;
 		updateView();
 
-		// create spend
-		BigInteger amount = amountCalculatorLink.getAmount();
-        BigInteger origAmount = amount;
-		SendRequest baseSendRequest = SendRequest.to(validatedAddress.address, amount);
-        baseSendRequest.changeAddress = WalletUtils.pickOldestKey(wallet).toAddress(Constants.NETWORK_PARAMETERS);
-        baseSendRequest.emptyWallet = amount.equals(wallet.getBalance(BalanceType.AVAILABLE));
-
-        // Multi-part transaction creation to properly calculate fee
-        Log.i(TAG, "Initial outputs: ");
-        for(TransactionOutput o : baseSendRequest.tx.getOutputs()) {
-            Log.i(TAG, "\t" + o.getValue().toString());
-        }
-        // First, check if we're emptying the wallet
-        if(baseSendRequest.emptyWallet) {
-            // HACK to fix zero fee calculated by bitcoinj in this case
-            // We subtract the minimum TX fee to allow completeTx to correctly
-            // calculate the fee based on the TX size.
-            // NOTE: Emptying is the ONLY case where it is OK to subtract a
-            // higher fee from the
-            Log.i(TAG, "Wallet empty: ");
-            for(TransactionOutput o : baseSendRequest.tx.getOutputs()) {
-                Log.i(TAG, "\t" + o.getValue().toString());
-            }
-            amount = amount.subtract(Constants.MIN_TX_FEE);
-            baseSendRequest = SendRequest.to(validatedAddress.address, amount);
-            Log.i(TAG, "After refactoring: ");
-            for(TransactionOutput o : baseSendRequest.tx.getOutputs()) {
-                Log.i(TAG, "\t" + o.getValue().toString());
-            }
-            // Complete the transaction in order to get the final size
-            try {
-                wallet.completeTx(baseSendRequest);
-            } catch (InsufficientMoneyException e) {
-                // This will happen if the fee needs to be larger than the minimum.
-                // Recalculate and try again.
-                amount = amount.subtract(e.missing);
-                baseSendRequest = SendRequest.to(validatedAddress.address, amount);
-                Log.e(TAG, "Trying tx: ");
-                for(TransactionOutput o : baseSendRequest.tx.getOutputs()) {
-                    Log.i(TAG, "\t" + o.getValue().toString());
-                }
-                try {
-                    wallet.completeTx(baseSendRequest);
-                } catch(InsufficientMoneyException f) {
-                    // We tried - it didn't work.
-                    Log.i(TAG, "Insufficient funds when completing tx: ");
-                    for(TransactionOutput o : baseSendRequest.tx.getOutputs()) {
-                        Log.i(TAG, "\t" + o.getValue().toString());
-                    }
-                    Toast
-                      .makeText(getActivity(), "Unexpected Error: Insufficient Funds when recreating emptying tx. " +
-                                    "Please report this as a bug!", Toast.LENGTH_LONG)
-                      .show();
-                    state = State.INPUT;
-                    updateView();
-                    return;
-                }
-            }
-            final SendRequest dialogSendRequest = baseSendRequest;
-            new AlertDialog.Builder(SendCoinsFragment.this.getActivity())
-                    .setTitle(activity.getString(R.string.sendcoins_fee_required))
-                    .setMessage("A fee of " +
-                            GenericUtils.formatValue(origAmount.subtract(amount), Constants.BTC_MAX_PRECISION, 0) +
-                            " is required to complete this transaction.")
-                    .setCancelable(true)
-                    .setNeutralButton(android.R.string.cancel,
-                            new DialogInterface.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int whichButton) {
-                                    state = State.INPUT;
-                                    updateView();
-                                }
-                            })
-                    .setPositiveButton(android.R.string.ok,
-                            new DialogInterface.OnClickListener() {
-                                public void onClick(DialogInterface dialogInterface, int i) {
-                                    finalizeSend(dialogSendRequest);
-                                }
-                            })
-                    .show();
-        }
-        else {
-            // We're not emptying.
-            try {
-                wallet.completeTx(baseSendRequest);
-            } catch (InsufficientMoneyException e) {
-                Log.i(TAG, "Current TX: " + baseSendRequest.tx.toString());
-                Log.i(TAG, "Insufficient funds when completing tx: ");
-                for(TransactionOutput o : baseSendRequest.tx.getOutputs()) {
-                    Log.i(TAG, "\t" + o.getValue().toString());
-                }
-                // This is likely due to fees, since the wallet checks the value against the wallet
-                // on input field change.  Here's the rub: obviously our wallet doesn't have enough to
-                // pay the whole fee.  We should just let the user know so they can manually adjust
-                // their transaction.
-                BigInteger missing = e.missing == null ? new BigInteger("0") : e.missing;
-                new AlertDialog.Builder(SendCoinsFragment.this.getActivity())
-                        .setTitle(activity.getString(R.string.sendcoins_title_insufficientfunds))
-                        .setMessage(activity.getString(R.string.sendcoins_insufficient_preamble) + " " +
-                                activity.getString(R.string.sendcoins_insufficient_amount_prefix) + " " +
-                                GenericUtils.formatValue(missing, Constants.BTC_MAX_PRECISION, 0) + " " +
-                                activity.getString(R.string.sendcoins_insufficient_amount_suffix) + " " +
-                                activity.getString(R.string.sendcoins_insufficient_instructions))
-                        .setPositiveButton(android.R.string.ok,
-                                new DialogInterface.OnClickListener() {
-                                    public void onClick(DialogInterface dialogInterface, int i) {
-                                        state = State.INPUT;
-                                        updateView();
-                                    }
-                                })
-                        .show();
-                return;
-            }
-            // We have enough money to complete the transaction
-            // Now that the transaction is complete, adjust the outputs so change goes to fee
-            // if < 0.001 LTC.  Otherwise, we would need to add a penalty for the output that is
-            // larger than the output itself, so it costs LESS to just throw it into the fee.
-            for(TransactionOutput o: baseSendRequest.tx.getOutputs()) {
-                if(o.isMine(wallet) &&
-                        o.getValue().compareTo(Constants.CENT.divide(new BigInteger("10"))) < 0) {
-                    Log.i(TAG, "Found a small change output of " + o.getValue() + "; putting in fee.");
-                    // Removing the output means the value will go to fee
-                    baseSendRequest.tx.removeOutput(o);
-                    try {
-                        baseSendRequest.setCompleted(false);
-                        wallet.completeTx(baseSendRequest);
-                    } catch (InsufficientMoneyException e) {
-                        // This should never happen because we're only changing where outputs go
-                        Log.e(TAG, "UNEXPECTED ERROR: InsufficientMoneyException when redirecting outputs!");
-                        Toast
-                                .makeText(getActivity(), "Unexpected Error: Insufficient Funds when moving change to fee.  " +
-                                        "Please report this as a bug!", Toast.LENGTH_LONG)
-                                .show();
-                        state = State.INPUT;
-                        updateView();
-                        return;
-                    }
-                }
-            }
-            Log.i(TAG, "Current TX: " + baseSendRequest.tx.toString());
-            // Inform the user of any extra fees if necessary
-            if(baseSendRequest.fee.compareTo(Constants.MIN_TX_FEE) > 0) {
-                // User can continue or cancel, go to finalizeSend on continue
-                BigInteger difference = baseSendRequest.fee.subtract(Constants.MIN_TX_FEE);
-                final SendRequest dialogSendRequest = baseSendRequest;
-                new AlertDialog.Builder(SendCoinsFragment.this.getActivity())
-                    .setTitle(activity.getString(R.string.sendcoins_fee_required))
-                    .setMessage("An extra fee of " +
-                            GenericUtils.formatValue(difference, Constants.BTC_MAX_PRECISION, 0) +
-                            " is required to complete this transaction.")
-                    .setCancelable(true)
-                    .setNeutralButton(android.R.string.cancel,
-                            new DialogInterface.OnClickListener() {
-                                public void onClick(DialogInterface dialog, int whichButton) {
-                                    state = State.INPUT;
-                                    updateView();
-                                }
-                            })
-                    .setPositiveButton(android.R.string.ok,
-                            new DialogInterface.OnClickListener() {
-                                public void onClick(DialogInterface dialogInterface, int i) {
-                                    finalizeSend(dialogSendRequest);
-                                }
-                            })
-                    .show();
-            }
-            else {
-                Log.i(TAG, "Current TX: " + baseSendRequest.tx.toString());
-                // Default fee - just continue to the confirmation dialog
-                finalizeSend(baseSendRequest);
-            }
-        }
-    }
+		final BigInteger amount = amountCalculatorLink.getAmount();
+		final boolean emptyWallet = amount.equals(application.getBalanceTracker().getBalance(BalanceType.AVAILABLE));
+		final Address address = validatedAddress.address;
+		final Address changeAddress = WalletUtils.pickOldestKey(wallet).toAddress(Constants.NETWORK_PARAMETERS);
+
+		// pick inputs and fee in one pass, so that completing the transaction only needs to sign it
+		final FeeAwareCoinSelector coinSelector = new FeeAwareCoinSelector(wallet, application.getUnspentOutputIndex(),
+				Constants.TX_FEE_PER_KB, Constants.MIN_TX_FEE, Constants.DUST_THRESHOLD);
+
+		// selecting and signing can take long for wallets with many outputs
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final FeeAwareCoinSelector.Selection selection = coinSelector.select(emptyWallet ? null : amount);
+
+					Log.i(TAG, "Selected " + selection.inputs.size() + " inputs for " + selection.amount + ", fee " + selection.fee
+							+ ", change " + selection.change + ", estimated " + selection.estimatedSize + " bytes");
+
+					// signs inputs on all cores, which matters for transactions with many inputs
+					final SendRequest sendRequest = selection.toSendRequest(address, changeAddress);
+					selection.complete(wallet, sendRequest, new ParallelInputSigner(wallet));
+
+					Log.i(TAG, "Current TX: " + sendRequest.tx.toString());
+
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							if (isAdded() && state == State.PREPARATION)
+								handleCompleted(selection, sendRequest, emptyWallet);
+						}
+					});
+				}
+				catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+				{
+					Log.i(TAG, "Insufficient funds for " + amount + ", missing " + x.missing);
+
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							if (isAdded() && state == State.PREPARATION)
+								handleInsufficientMoney(x.missing);
+						}
+					});
+				}
+				catch (final RuntimeException x)
+				{
+					Log.w(TAG, "Problem completing transaction", x);
 
-    private void finalizeSend(SendRequest baseSendRequest) {
+					handler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							if (!isAdded() || state != State.PREPARATION)
+								return;
+
+							state = State.FAILED;
+							updateView();
+
+							activity.longToast(R.string.send_coins_error_msg);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	private void handleInsufficientMoney(@Nonnull final BigInteger missing)
+	{
+		// The amount was validated against the balance on input, so this is due to the fee. Let the user know so they
+		// can adjust the amount.
+		new AlertDialog.Builder(activity)
+				.setTitle(R.string.sendcoins_title_insufficientfunds)
+				.setMessage(
+						getString(R.string.sendcoins_insufficient_preamble) + " " + getString(R.string.sendcoins_insufficient_amount_prefix)
+								+ " " + GenericUtils.formatValue(missing, Constants.BTC_MAX_PRECISION, 0) + " "
+								+ getString(R.string.sendcoins_insufficient_amount_suffix) + " "
+								+ getString(R.string.sendcoins_insufficient_instructions))
+				.setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						state = State.INPUT;
+						updateView();
+					}
+				}).show();
+	}
+
+	private void handleCompleted(@Nonnull final FeeAwareCoinSelector.Selection selection, @Nonnull final SendRequest sendRequest,
+			final boolean emptyWallet)
+	{
+		// inform the user of any extra fees if necessary
+		if (emptyWallet)
+			confirmFee("A fee of " + GenericUtils.formatValue(selection.fee, Constants.BTC_MAX_PRECISION, 0)
+					+ " is required to complete this transaction.", selection, sendRequest);
+		else if (selection.fee.compareTo(Constants.MIN_TX_FEE) > 0)
+			confirmFee("An extra fee of " + GenericUtils.formatValue(selection.fee.subtract(Constants.MIN_TX_FEE), Constants.BTC_MAX_PRECISION, 0)
+					+ " is required to complete this transaction.", selection, sendRequest);
+		else
+			finalizeSend(selection, sendRequest);
+	}
+
+	private void confirmFee(@Nonnull final String message, @Nonnull final FeeAwareCoinSelector.Selection selection,
+			@Nonnull final SendRequest sendRequest)
+	{
+		new AlertDialog.Builder(activity).setTitle(R.string.sendcoins_fee_required).setMessage(message).setCancelable(true)
+				.setNeutralButton(android.R.string.cancel, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						state = State.INPUT;
+						updateView();
+					}
+				}).setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						finalizeSend(selection, sendRequest);
+					}
+				}).show();
+	}
+
+    private void finalizeSend(final FeeAwareCoinSelector.Selection selection, SendRequest baseSendRequest) {
         // Lock in sendRequest
         final SendRequest sendRequest = baseSendRequest;
 
@@ -1077,7 +1046,7 @@ public final class SendCoinsFragment extends SherlockFragment
                                 // Fees are agreeable
                                 // Process the transaction
                                 // Send Asynchronously
-                                new NormalSendCoinsOfflineTask(wallet, backgroundHandler).commitRequest(sendRequest);
+                                new NormalSendCoinsOfflineTask(wallet, backgroundHandler).commitRequest(selection, sendRequest);
                             }
                         })
                 .show();
@@ -1143,11 +1112,41 @@ public final class SendCoinsFragment extends SherlockFragment
 
 	private void handleEmpty()
 	{
-		final BigInteger available = wallet.getBalance(BalanceType.AVAILABLE);
+		final BigInteger available = application.getBalanceTracker().getBalance(BalanceType.AVAILABLE);
 
 		amountCalculatorLink.setBtcAmount(available);
 	}
 
+	private void handleBatch()
+	{
+		final List<File> files = new ArrayList<File>();
+		final File[] csvFiles = Constants.EXTERNAL_WALLET_BACKUP_DIR.listFiles(LabelCsv.FILE_FILTER);
+		if (csvFiles != null)
+			files.addAll(Arrays.asList(csvFiles));
+
+		if (files.isEmpty())
+		{
+			activity.longToast(R.string.send_coins_batch_msg_no_files, Constants.EXTERNAL_WALLET_BACKUP_DIR);
+			return;
+		}
+
+		Collections.sort(files);
+		final String[] filenames = new String[files.size()];
+		for (int i = 0; i < filenames.length; i++)
+			filenames[i] = files.get(i).getName();
+
+		new AlertDialog.Builder(activity).setTitle(R.string.send_coins_batch_activity_title)
+				.setItems(filenames, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						SendCoinsBatchActivity.start(activity, Uri.fromFile(files.get(which)));
+						activity.finish();
+					}
+				}).setNegativeButton(R.string.button_cancel, null).show();
+	}
+
 	public class AutoCompleteAddressAdapter extends CursorAdapter
 	{
 		public AutoCompleteAddressAdapter(final Context context, final Cursor c)
@@ -19,15 +19,18 @@ package de.schildbach.wallet.ui;
 
 import javax.annotation.Nonnull;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import android.os.Handler;
 import android.os.Looper;
 
-import android.util.Log;
-import com.google.bitcoin.core.InsufficientMoneyException;
 import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.core.Wallet.SendRequest;
 
+import de.schildbach.wallet.util.FeeAwareCoinSelector;
+
 /**
  * @author Andreas Schildbach, Litecoin Dev Team
  */
@@ -37,6 +40,8 @@ public abstract class SendCoinsOfflineTask
 	private final Handler backgroundHandler;
 	private final Handler callbackHandler;
 
+	private static final Logger log = LoggerFactory.getLogger(SendCoinsOfflineTask.class);
+
 	public SendCoinsOfflineTask(@Nonnull final Wallet wallet, @Nonnull final Handler backgroundHandler)
 	{
 		this.wallet = wallet;
@@ -44,56 +49,55 @@ public abstract class SendCoinsOfflineTask
 		this.callbackHandler = new Handler(Looper.myLooper());
 	}
 
-	public final void sendCoinsOffline(@Nonnull final SendRequest sendRequest)
+	/**
+	 * Commits a send request that has already been completed by the selection, under the lock of the wallet.
+	 */
+	public final void commitRequest(@Nonnull final FeeAwareCoinSelector.Selection selection, @Nonnull final SendRequest sendRequest)
 	{
 		backgroundHandler.post(new Runnable()
 		{
 			@Override
 			public void run()
 			{
-                final Transaction transaction; // can take long
-                try {
-                    transaction = wallet.sendCoinsOffline(sendRequest);
-                } catch (InsufficientMoneyException e) {
-                    throw new RuntimeException(e);
-                }
-
-                callbackHandler.post(new Runnable()
+				try
 				{
-					@Override
-					public void run()
-					{
-						if (transaction != null)
-							onSuccess(transaction);
-						else
-							onFailure();
-					}
-				});
+					selection.commit(wallet, sendRequest);
+
+					postSuccess(sendRequest.tx);
+				}
+				catch (final RuntimeException x)
+				{
+					log.info("problem committing transaction", x);
+
+					postFailure();
+				}
 			}
 		});
 	}
 
-    public final void commitRequest(@Nonnull final SendRequest sendRequest)
-    {
-        backgroundHandler.post(new Runnable()
-        {
-            @Override
-            public void run()
-            {
-                final Transaction transaction; // can take long
-                wallet.commitTx(sendRequest.tx);
-
-                callbackHandler.post(new Runnable()
-                {
-                    @Override
-                    public void run()
-                    {
-                            onSuccess(sendRequest.tx);
-                    }
-                });
-            }
-        });
-    }
+	private void postSuccess(@Nonnull final Transaction transaction)
+	{
+		callbackHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				onSuccess(transaction);
+			}
+		});
+	}
+
+	private void postFailure()
+	{
+		callbackHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				onFailure();
+			}
+		});
+	}
 
 	protected abstract void onSuccess(@Nonnull Transaction transaction);
 
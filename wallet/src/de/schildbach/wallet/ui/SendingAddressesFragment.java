@@ -17,18 +17,34 @@
 
 package de.schildbach.wallet.ui;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.RemoteException;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
@@ -56,6 +72,7 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.ui.InputParser.StringInputParser;
 import de.schildbach.wallet.util.AbstractClipboardManager;
 import de.schildbach.wallet.util.BitmapFragment;
+import de.schildbach.wallet.util.LabelCsv;
 import de.schildbach.wallet.util.Qr;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
@@ -74,6 +91,8 @@ public final class SendingAddressesFragment extends SherlockListFragment impleme
 
 	private final Handler handler = new Handler();
 
+	private static final Logger log = LoggerFactory.getLogger(SendingAddressesFragment.class);
+
 	@Override
 	public void onAttach(final Activity activity)
 	{
@@ -191,11 +210,107 @@ public final class SendingAddressesFragment extends SherlockListFragment impleme
 			case R.id.sending_addresses_options_scan:
 				handleScan();
 				return true;
+
+			case R.id.sending_addresses_options_import_labels:
+				handleImportLabels();
+				return true;
 		}
 
 		return super.onOptionsItemSelected(item);
 	}
 
+	private void handleImportLabels()
+	{
+		final List<File> files = new ArrayList<File>();
+		final File[] csvFiles = Constants.EXTERNAL_WALLET_BACKUP_DIR.listFiles(LabelCsv.FILE_FILTER);
+		if (csvFiles != null)
+			files.addAll(Arrays.asList(csvFiles));
+
+		if (files.isEmpty())
+		{
+			activity.longToast(R.string.address_book_import_labels_msg_no_files, Constants.EXTERNAL_WALLET_BACKUP_DIR);
+			return;
+		}
+
+		Collections.sort(files);
+		final String[] filenames = new String[files.size()];
+		for (int i = 0; i < filenames.length; i++)
+			filenames[i] = files.get(i).getName();
+
+		new AlertDialog.Builder(activity).setTitle(R.string.address_book_options_import_labels_title)
+				.setItems(filenames, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						importLabels(files.get(which));
+					}
+				}).setNegativeButton(R.string.button_cancel, null).show();
+	}
+
+	private void importLabels(@Nonnull final File file)
+	{
+		final Context context = activity.getApplicationContext();
+
+		new Thread("import labels")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					final Reader reader = new InputStreamReader(new FileInputStream(file), Constants.UTF_8);
+					final LabelCsv.Result result;
+					try
+					{
+						result = LabelCsv.readLabels(reader, Constants.NETWORK_PARAMETERS);
+					}
+					finally
+					{
+						reader.close();
+					}
+
+					// few transactions and change notifications, regardless of the number of labels
+					final int numImported = AddressBookProvider.importLabels(context, result.labels);
+
+					log.info("imported " + numImported + " labels from " + file + ", skipped " + result.numBadLines + " bad lines");
+					if (result.numBadLines == 0)
+						showImportLabelsResult(R.string.address_book_import_labels_msg_success, numImported);
+					else
+						showImportLabelsResult(R.string.address_book_import_labels_msg_success_skipped, numImported, result.numBadLines);
+				}
+				catch (final IOException x)
+				{
+					log.info("problem importing labels from " + file, x);
+					showImportLabelsResult(R.string.address_book_import_labels_msg_failure, x.getMessage());
+				}
+				catch (final RemoteException x)
+				{
+					log.info("problem importing labels from " + file, x);
+					showImportLabelsResult(R.string.address_book_import_labels_msg_failure, x.getMessage());
+				}
+				catch (final OperationApplicationException x)
+				{
+					log.info("problem importing labels from " + file, x);
+					showImportLabelsResult(R.string.address_book_import_labels_msg_failure, x.getMessage());
+				}
+			}
+		}.start();
+	}
+
+	private void showImportLabelsResult(final int messageResId, final Object... messageArgs)
+	{
+		handler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (isAdded())
+					activity.longToast(messageResId, messageArgs);
+			}
+		});
+	}
+
 	private void handlePasteClipboard()
 	{
 		if (clipboardManager.hasText())
@@ -21,9 +21,7 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.annotation.Nonnull;
 
@@ -48,8 +46,9 @@ import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
 import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.wallet.DefaultCoinSelector;
 
-import de.schildbach.wallet.AddressBookProvider;
+import de.schildbach.wallet.AddressLabelCache;
 import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.util.CircularProgressView;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
@@ -77,8 +76,7 @@ public class TransactionsListAdapter extends BaseAdapter
 	private final String textCoinBase;
 	private final String textInternal;
 
-	private final Map<String, String> labelCache = new HashMap<String, String>();
-	private final static String CACHE_NULL_MARKER = "";
+	private final AddressLabelCache labelCache;
 
 	private static final String CONFIDENCE_SYMBOL_DEAD = "\u271D"; // latin cross
 	private static final String CONFIDENCE_SYMBOL_UNKNOWN = "?";
@@ -90,6 +88,7 @@ public class TransactionsListAdapter extends BaseAdapter
 	{
 		this.context = context;
 		inflater = LayoutInflater.from(context);
+		labelCache = ((WalletApplication) context.getApplicationContext()).getAddressLabelCache();
 
 		this.wallet = wallet;
 		this.maxConnectedPeers = maxConnectedPeers;
@@ -317,7 +316,7 @@ public class TransactionsListAdapter extends BaseAdapter
 			else if (isInternal)
 				label = textInternal;
 			else if (address != null)
-				label = resolveLabel(address.toString());
+				label = labelCache.getCachedLabel(address.toString());
 			else
 				label = "?";
 			rowAddress.setTextColor(textColor);
@@ -383,28 +382,28 @@ public class TransactionsListAdapter extends BaseAdapter
 		}
 	}
 
-	private String resolveLabel(@Nonnull final String address)
+	/**
+	 * @return addresses that will be displayed for the given transactions, for prefetching their labels
+	 */
+	public static List<String> displayedAddresses(@Nonnull final Wallet wallet, @Nonnull final Collection<Transaction> transactions)
 	{
-		final String cachedLabel = labelCache.get(address);
-		if (cachedLabel == null)
+		final List<String> addresses = new ArrayList<String>(transactions.size());
+
+		try
 		{
-			final String label = AddressBookProvider.resolveLabel(context, address);
-			if (label != null)
-				labelCache.put(address, label);
-			else
-				labelCache.put(address, CACHE_NULL_MARKER);
-			return label;
+			for (final Transaction tx : transactions)
+			{
+				final boolean sent = tx.getValue(wallet).signum() < 0;
+				final Address address = sent ? WalletUtils.getFirstToAddress(tx) : WalletUtils.getFirstFromAddress(tx);
+				if (address != null)
+					addresses.add(address.toString());
+			}
 		}
-		else
+		catch (final ScriptException x)
 		{
-			return cachedLabel != CACHE_NULL_MARKER ? cachedLabel : null;
+			throw new RuntimeException(x);
 		}
-	}
 
-	public void clearLabelCache()
-	{
-		labelCache.clear();
-
-		notifyDataSetChanged();
+		return addresses;
 	}
 }
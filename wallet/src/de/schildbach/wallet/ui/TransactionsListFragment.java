@@ -31,12 +31,10 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import android.app.Activity;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
-import android.database.ContentObserver;
 import android.graphics.Bitmap;
 import android.graphics.Typeface;
 import android.net.Uri;
@@ -61,19 +59,20 @@ import com.actionbarsherlock.view.MenuInflater;
 import com.actionbarsherlock.view.MenuItem;
 import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.ScriptException;
+import com.google.bitcoin.core.Sha256Hash;
 import com.google.bitcoin.core.Transaction;
 import com.google.bitcoin.core.Transaction.Purpose;
 import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
 import com.google.bitcoin.core.Wallet;
-
-import com.google.bitcoin.script.Script;
-import de.schildbach.wallet.AddressBookProvider;
+import de.schildbach.wallet.AddressLabelCache;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.WalletDiff;
+import de.schildbach.wallet.WalletEventDispatcher;
 import de.schildbach.wallet.util.BitmapFragment;
+import de.schildbach.wallet.util.HandlerExecutor;
 import de.schildbach.wallet.util.Nfc;
 import de.schildbach.wallet.util.Qr;
-import de.schildbach.wallet.util.ThrottlingWalletChangeListener;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -92,7 +91,6 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	private Wallet wallet;
 	private SharedPreferences prefs;
 	private NfcManager nfcManager;
-	private ContentResolver resolver;
 	private LoaderManager loaderManager;
 
 	private TransactionsListAdapter adapter;
@@ -100,8 +98,6 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	@CheckForNull
 	private Direction direction;
 
-	private final Handler handler = new Handler();
-
 	private static final String KEY_DIRECTION = "direction";
 	private static final long THROTTLE_MS = DateUtils.SECOND_IN_MILLIS;
 	private static final Uri KEY_ROTATION_URI = Uri.parse("http://bitcoin.org/en/alert/2013-08-11-android");
@@ -117,12 +113,15 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		return fragment;
 	}
 
-	private final ContentObserver addressBookObserver = new ContentObserver(handler)
+	private final AddressLabelCache.OnLabelsChangedListener labelsChangedListener = new AddressLabelCache.OnLabelsChangedListener()
 	{
 		@Override
-		public void onChange(final boolean selfChange)
+		public void onLabelsChanged()
 		{
-			adapter.clearLabelCache();
+			// rows only read cached labels, so have the loader fetch them again in the background
+			final Loader<List<Transaction>> loader = loaderManager.getLoader(0);
+			if (loader != null)
+				loader.forceLoad();
 		}
 	};
 
@@ -136,7 +135,6 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		this.wallet = application.getWallet();
 		this.prefs = PreferenceManager.getDefaultSharedPreferences(activity);
 		this.nfcManager = (NfcManager) activity.getSystemService(Context.NFC_SERVICE);
-		this.resolver = activity.getContentResolver();
 		this.loaderManager = getLoaderManager();
 	}
 
@@ -160,13 +158,13 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	{
 		super.onResume();
 
-		resolver.registerContentObserver(AddressBookProvider.contentUri(activity.getPackageName()), true, addressBookObserver);
+		application.getAddressLabelCache().addOnLabelsChangedListener(labelsChangedListener);
 
 		prefs.registerOnSharedPreferenceChangeListener(this);
 
 		loaderManager.initLoader(0, null, this);
 
-		wallet.addEventListener(transactionChangeListener);
+		application.getWalletEventDispatcher().subscribe(transactionChangeSubscriber, THROTTLE_MS, new HandlerExecutor(new Handler()));
 
 		updateView();
 	}
@@ -189,14 +187,13 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 	@Override
 	public void onPause()
 	{
-		wallet.removeEventListener(transactionChangeListener);
-		transactionChangeListener.removeCallbacks();
+		application.getWalletEventDispatcher().unsubscribe(transactionChangeSubscriber);
 
 		loaderManager.destroyLoader(0);
 
 		prefs.unregisterOnSharedPreferenceChangeListener(this);
 
-		resolver.unregisterContentObserver(addressBookObserver);
+		application.getAddressLabelCache().removeOnLabelsChangedListener(labelsChangedListener);
 
 		super.onPause();
 	}
@@ -253,7 +250,7 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 					if (tx.isCoinBase())
 						label = getString(R.string.wallet_transactions_fragment_coinbase);
 					else if (address != null)
-						label = AddressBookProvider.resolveLabel(activity, address.toString());
+						label = application.getAddressLabelCache().resolveLabel(address.toString());
 					else
 						label = "?";
 
@@ -363,23 +360,50 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		// don't clear the adapter, because it will confuse users
 	}
 
-	private final ThrottlingWalletChangeListener transactionChangeListener = new ThrottlingWalletChangeListener(THROTTLE_MS)
+	private final WalletEventDispatcher.Subscriber transactionChangeSubscriber = new WalletEventDispatcher.Subscriber()
 	{
 		@Override
-		public void onThrottledWalletChanged()
+		public void onWalletChanged(@Nonnull final WalletDiff diff)
 		{
-			adapter.notifyDataSetChanged();
+			// added and removed transactions are picked up by the loader
+			if (diff.reorganized)
+				adapter.notifyDataSetChanged();
+			else
+				updateRows(diff.changed);
 		}
+	};
 
-        @Override
-        public void onScriptsAdded(Wallet wallet, List<Script> scripts) { }
-    };
+	/**
+	 * Rebinds the visible rows of the given transactions, leaving the others alone. Rows scrolled into view later are
+	 * bound fresh anyway.
+	 */
+	private void updateRows(@Nonnull final Set<Sha256Hash> hashes)
+	{
+		if (getView() == null)
+			return;
+
+		final ListView listView = getListView();
+		final int firstPosition = listView.getFirstVisiblePosition();
+
+		for (int i = 0; i < listView.getChildCount(); i++)
+		{
+			final int position = firstPosition + i;
+			if (position >= adapter.getCount())
+				break;
+
+			final Transaction tx = adapter.getItem(position);
+			if (tx != null && hashes.contains(tx.getHash()))
+				adapter.getView(position, listView.getChildAt(i), listView);
+		}
+	}
 
 	private static class TransactionsLoader extends AsyncTaskLoader<List<Transaction>>
 	{
 		private final Wallet wallet;
 		@CheckForNull
 		private final Direction direction;
+		private final AddressLabelCache labelCache;
+		private final WalletEventDispatcher walletEventDispatcher;
 
 		private TransactionsLoader(final Context context, @Nonnull final Wallet wallet, @Nullable final Direction direction)
 		{
@@ -387,6 +411,9 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 			this.wallet = wallet;
 			this.direction = direction;
+			final WalletApplication application = (WalletApplication) context.getApplicationContext();
+			this.labelCache = application.getAddressLabelCache();
+			this.walletEventDispatcher = application.getWalletEventDispatcher();
 		}
 
 		@Override
@@ -394,8 +421,7 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		{
 			super.onStartLoading();
 
-			wallet.addEventListener(transactionAddRemoveListener);
-			transactionAddRemoveListener.onReorganize(null); // trigger at least one reload
+			walletEventDispatcher.subscribe(transactionAddRemoveSubscriber, THROTTLE_MS, new HandlerExecutor(new Handler()));
 
 			forceLoad();
 		}
@@ -403,8 +429,7 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		@Override
 		protected void onStopLoading()
 		{
-			wallet.removeEventListener(transactionAddRemoveListener);
-			transactionAddRemoveListener.removeCallbacks();
+			walletEventDispatcher.unsubscribe(transactionAddRemoveSubscriber);
 
 			super.onStopLoading();
 		}
@@ -431,21 +456,21 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 
 			Collections.sort(filteredTransactions, TRANSACTION_COMPARATOR);
 
+			// resolve labels in one go, rather than one query per row on the main thread
+			labelCache.prefetch(TransactionsListAdapter.displayedAddresses(wallet, filteredTransactions));
+
 			return filteredTransactions;
 		}
 
-		private final ThrottlingWalletChangeListener transactionAddRemoveListener = new ThrottlingWalletChangeListener(THROTTLE_MS, true, true,
-				false)
+		private final WalletEventDispatcher.Subscriber transactionAddRemoveSubscriber = new WalletEventDispatcher.Subscriber()
 		{
 			@Override
-			public void onThrottledWalletChanged()
+			public void onWalletChanged(@Nonnull final WalletDiff diff)
 			{
-				forceLoad();
+				if (diff.isStructural())
+					forceLoad();
 			}
-
-            @Override
-            public void onScriptsAdded(Wallet wallet, List<Script> scripts) { }
-        };
+		};
 
 		private static final Comparator<Transaction> TRANSACTION_COMPARATOR = new Comparator<Transaction>()
 		{
@@ -487,6 +512,5 @@ public class TransactionsListFragment extends SherlockListFragment implements Lo
 		final int btcShift = precision.length() == 3 ? precision.charAt(2) - '0' : 0;
 
 		adapter.setPrecision(btcPrecision, btcShift);
-		adapter.clearLabelCache();
 	}
 }
@@ -230,6 +230,7 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
                                     new DialogInterface.OnClickListener() {
                                         public void onClick(DialogInterface dialogInterface, int i) {
                                             wallet.addKey(key);
+                                            application.backupKeys();
                                         }
                                     })
                             .show();
@@ -291,6 +292,14 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 				startActivity(new Intent(this, ExchangeRatesActivity.class));
 				return true;
 
+			case R.id.wallet_options_wallets:
+				startActivity(new Intent(this, WalletsActivity.class));
+				return true;
+
+			case R.id.wallet_options_watched_addresses:
+				startActivity(new Intent(this, WatchedAddressesActivity.class));
+				return true;
+
 			case R.id.wallet_options_network_monitor:
 				startActivity(new Intent(this, NetworkMonitorActivity.class));
 				return true;
@@ -843,6 +852,8 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 
 			final int numKeysToImport = importedKeys.size();
 			final int numKeysImported = wallet.addKeys(importedKeys);
+			if (numKeysImported > 0)
+				application.backupKeys();
 
 			final AlertDialog.Builder dialog = new AlertDialog.Builder(this);
 			dialog.setInverseBackgroundForced(true);
@@ -910,6 +921,7 @@ public final class WalletActivity extends AbstractOnDemandServiceActivity
 			for (final ECKey key : wallet.getKeys())
 				if (!wallet.isKeyRotating(key))
 					keys.add(key);
+			keys.addAll(application.getWalletRegistry().getPrivateKeys());
 
 			final StringWriter plainOut = new StringWriter();
 			WalletUtils.writeKeys(plainOut, keys);
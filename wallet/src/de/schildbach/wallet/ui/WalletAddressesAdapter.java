@@ -38,8 +38,9 @@ import com.google.bitcoin.core.Address;
 import com.google.bitcoin.core.ECKey;
 import com.google.bitcoin.core.Wallet;
 
-import de.schildbach.wallet.AddressBookProvider;
+import de.schildbach.wallet.AddressLabelCache;
 import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -52,6 +53,7 @@ public class WalletAddressesAdapter extends BaseAdapter
 	private final int colorInsignificant;
 	private final int colorLessSignificant;
 	private final LayoutInflater inflater;
+	private final AddressLabelCache labelCache;
 
 	private final List<ECKey> keys = new ArrayList<ECKey>();
 	private final boolean showKeyCreationTime;
@@ -68,6 +70,7 @@ public class WalletAddressesAdapter extends BaseAdapter
 		colorInsignificant = res.getColor(R.color.fg_insignificant);
 		colorLessSignificant = res.getColor(R.color.fg_less_significant);
 		inflater = LayoutInflater.from(context);
+		labelCache = ((WalletApplication) context.getApplicationContext()).getAddressLabelCache();
 
 		this.showKeyCreationTime = showKeyCreationTime;
 	}
@@ -80,6 +83,14 @@ public class WalletAddressesAdapter extends BaseAdapter
 		notifyDataSetChanged();
 	}
 
+	public List<String> getAddresses()
+	{
+		final List<String> addresses = new ArrayList<String>(keys.size());
+		for (final ECKey key : keys)
+			addresses.add(key.toAddress(Constants.NETWORK_PARAMETERS).toString());
+		return addresses;
+	}
+
 	public void setSelectedAddress(final String selectedAddress)
 	{
 		this.selectedAddress = selectedAddress;
@@ -130,7 +141,7 @@ public class WalletAddressesAdapter extends BaseAdapter
 		addressView.setTextColor(isRotateKey ? colorInsignificant : colorSignificant);
 
 		final TextView labelView = (TextView) row.findViewById(R.id.address_book_row_label);
-		final String label = AddressBookProvider.resolveLabel(context, address.toString());
+		final String label = labelCache.getCachedLabel(address.toString());
 		if (label != null)
 		{
 			labelView.setText(label);
@@ -17,6 +17,8 @@
 
 package de.schildbach.wallet.ui;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -25,15 +27,12 @@ import javax.annotation.Nonnull;
 
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.view.View;
 import android.widget.BaseAdapter;
@@ -52,7 +51,7 @@ import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.core.WalletEventListener;
 import com.google.bitcoin.uri.BitcoinURI;
 
-import de.schildbach.wallet.AddressBookProvider;
+import de.schildbach.wallet.AddressLabelCache;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.util.AbstractClipboardManager;
@@ -69,7 +68,6 @@ public final class WalletAddressesFragment extends SherlockListFragment
 	private AddressBookActivity activity;
 	private WalletApplication application;
 	private Wallet wallet;
-	private ContentResolver contentResolver;
 	private SharedPreferences prefs;
 
 	private WalletAddressesAdapter adapter;
@@ -82,7 +80,6 @@ public final class WalletAddressesFragment extends SherlockListFragment
 		this.activity = (AddressBookActivity) activity;
 		this.application = (WalletApplication) activity.getApplication();
 		this.wallet = application.getWallet();
-		this.contentResolver = activity.getContentResolver();
 		this.prefs = PreferenceManager.getDefaultSharedPreferences(activity);
 	}
 
@@ -106,7 +103,7 @@ public final class WalletAddressesFragment extends SherlockListFragment
 	{
 		super.onResume();
 
-		contentResolver.registerContentObserver(AddressBookProvider.contentUri(activity.getPackageName()), true, contentObserver);
+		application.getAddressLabelCache().addOnLabelsChangedListener(labelsChangedListener);
 
 		wallet.addEventListener(walletListener);
 		walletListener.onKeysAdded(null, null); // trigger initial load of keys
@@ -119,7 +116,7 @@ public final class WalletAddressesFragment extends SherlockListFragment
 	{
 		wallet.removeEventListener(walletListener);
 
-		contentResolver.unregisterContentObserver(contentObserver);
+		application.getAddressLabelCache().removeOnLabelsChangedListener(labelsChangedListener);
 
 		super.onPause();
 	}
@@ -154,9 +151,16 @@ public final class WalletAddressesFragment extends SherlockListFragment
 					@Override
 					public void onClick(final DialogInterface dialog, final int which)
 					{
-						application.addNewKeyToWallet();
-
-						activity.updateFragments();
+						try
+						{
+							application.addNewKeyToWallet();
+
+							activity.updateFragments();
+						}
+						catch (final IOException x)
+						{
+							activity.longToast(R.string.wallet_addresses_fragment_add_failed, x.getMessage());
+						}
 					}
 				}).setNegativeButton(R.string.button_cancel, null).show();
 	}
@@ -180,7 +184,7 @@ public final class WalletAddressesFragment extends SherlockListFragment
 				final ECKey key = getKey(position);
 
 				final String address = key.toAddress(Constants.NETWORK_PARAMETERS).toString();
-				final String label = AddressBookProvider.resolveLabel(activity, address);
+				final String label = application.getAddressLabelCache().resolveLabel(address);
 				mode.setTitle(label != null ? label : WalletUtils.formatHash(address, Constants.ADDRESS_FORMAT_GROUP_SIZE, 0));
 
 				return true;
@@ -275,14 +279,20 @@ public final class WalletAddressesFragment extends SherlockListFragment
 			((BaseAdapter) adapter).notifyDataSetChanged();
 	}
 
-	private final Handler handler = new Handler();
-
-	private final ContentObserver contentObserver = new ContentObserver(handler)
+	private final AddressLabelCache.OnLabelsChangedListener labelsChangedListener = new AddressLabelCache.OnLabelsChangedListener()
 	{
 		@Override
-		public void onChange(final boolean selfChange)
+		public void onLabelsChanged()
 		{
-			updateView();
+			// rows only read cached labels, so fetch them again in the background
+			application.getAddressLabelCache().prefetchInBackground(adapter.getAddresses(), new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					updateView();
+				}
+			});
 		}
 	};
 
@@ -311,7 +321,11 @@ public final class WalletAddressesFragment extends SherlockListFragment
 				}
 			});
 
-			handler.post(new Runnable()
+			// resolve labels in one go on a background thread, rather than one query per row on the main thread
+			final List<String> addresses = new ArrayList<String>(keys.size());
+			for (final ECKey key : keys)
+				addresses.add(key.toAddress(Constants.NETWORK_PARAMETERS).toString());
+			application.getAddressLabelCache().prefetchInBackground(addresses, new Runnable()
 			{
 				@Override
 				public void run()
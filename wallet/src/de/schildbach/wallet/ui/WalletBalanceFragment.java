@@ -21,15 +21,14 @@ import java.math.BigInteger;
 import java.util.Date;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
 
 import android.app.Activity;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
@@ -43,13 +42,14 @@ import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 
-import com.google.bitcoin.core.Wallet;
-
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.ExchangeRatesProvider;
 import de.schildbach.wallet.ExchangeRatesProvider.ExchangeRate;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.service.BlockchainService;
+import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.util.HandlerExecutor;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_ltc.R;
 
@@ -60,7 +60,6 @@ public final class WalletBalanceFragment extends Fragment
 {
 	private WalletApplication application;
 	private AbstractWalletActivity activity;
-	private Wallet wallet;
 	private SharedPreferences prefs;
 	private LoaderManager loaderManager;
 
@@ -92,7 +91,6 @@ public final class WalletBalanceFragment extends Fragment
 
 		this.activity = (AbstractWalletActivity) activity;
 		this.application = (WalletApplication) activity.getApplication();
-		this.wallet = application.getWallet();
 		this.prefs = PreferenceManager.getDefaultSharedPreferences(activity);
 		this.loaderManager = getLoaderManager();
 
@@ -148,7 +146,7 @@ public final class WalletBalanceFragment extends Fragment
 	{
 		super.onResume();
 
-		activity.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+		application.getBlockchainState().addListener(blockchainStateListener, new HandlerExecutor(new Handler()));
 
 		loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
 		loaderManager.initLoader(ID_RATE_LOADER, null, rateLoaderCallbacks);
@@ -162,7 +160,7 @@ public final class WalletBalanceFragment extends Fragment
 		loaderManager.destroyLoader(ID_RATE_LOADER);
 		loaderManager.destroyLoader(ID_BALANCE_LOADER);
 
-		activity.unregisterReceiver(broadcastReceiver);
+		application.getBlockchainState().removeListener(blockchainStateListener);
 
 		super.onPause();
 	}
@@ -260,27 +258,25 @@ public final class WalletBalanceFragment extends Fragment
 		}
 	}
 
-	private final BlockchainBroadcastReceiver broadcastReceiver = new BlockchainBroadcastReceiver();
-
-	private final class BlockchainBroadcastReceiver extends BroadcastReceiver
+	private final StateObservable.Listener<BlockchainState> blockchainStateListener = new StateObservable.Listener<BlockchainState>()
 	{
 		@Override
-		public void onReceive(final Context context, final Intent intent)
+		public void onStateChanged(@Nonnull final BlockchainState state)
 		{
-			download = intent.getIntExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_DOWNLOAD, BlockchainService.ACTION_BLOCKCHAIN_STATE_DOWNLOAD_OK);
-			bestChainDate = (Date) intent.getSerializableExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_BEST_CHAIN_DATE);
-			replaying = intent.getBooleanExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_REPLAYING, false);
+			download = state.download;
+			bestChainDate = state.bestChainDate;
+			replaying = state.replaying;
 
 			updateView();
 		}
-	}
+	};
 
 	private final LoaderCallbacks<BigInteger> balanceLoaderCallbacks = new LoaderManager.LoaderCallbacks<BigInteger>()
 	{
 		@Override
 		public Loader<BigInteger> onCreateLoader(final int id, final Bundle args)
 		{
-			return new WalletBalanceLoader(activity, wallet);
+			return new WalletBalanceLoader(activity);
 		}
 
 		@Override
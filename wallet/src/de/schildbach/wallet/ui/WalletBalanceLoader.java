@@ -18,31 +18,38 @@
 package de.schildbach.wallet.ui;
 
 import java.math.BigInteger;
-import java.util.List;
 
 import javax.annotation.Nonnull;
 
 import android.content.Context;
+import android.os.Handler;
 import android.support.v4.content.AsyncTaskLoader;
 
-import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.core.Wallet.BalanceType;
 
-import com.google.bitcoin.script.Script;
-import de.schildbach.wallet.util.ThrottlingWalletChangeListener;
+import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.WalletBalanceTracker;
+import de.schildbach.wallet.WalletDiff;
+import de.schildbach.wallet.WalletEventDispatcher;
+import de.schildbach.wallet.util.HandlerExecutor;
 
 /**
  * @author Andreas Schildbach, Litecoin Dev Team
  */
 public final class WalletBalanceLoader extends AsyncTaskLoader<BigInteger>
 {
-	private final Wallet wallet;
+	private final WalletBalanceTracker balanceTracker;
+	private final WalletEventDispatcher walletEventDispatcher;
 
-	public WalletBalanceLoader(final Context context, @Nonnull final Wallet wallet)
+	private static final long THROTTLE_MS = 500;
+
+	public WalletBalanceLoader(final Context context)
 	{
 		super(context);
 
-		this.wallet = wallet;
+		final WalletApplication application = (WalletApplication) context.getApplicationContext();
+		this.balanceTracker = application.getBalanceTracker();
+		this.walletEventDispatcher = application.getWalletEventDispatcher();
 	}
 
 	@Override
@@ -50,7 +57,7 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<BigInteger>
 	{
 		super.onStartLoading();
 
-		wallet.addEventListener(walletChangeListener);
+		walletEventDispatcher.subscribe(walletChangeSubscriber, THROTTLE_MS, new HandlerExecutor(new Handler()));
 
 		forceLoad();
 	}
@@ -58,8 +65,7 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<BigInteger>
 	@Override
 	protected void onStopLoading()
 	{
-		wallet.removeEventListener(walletChangeListener);
-		walletChangeListener.removeCallbacks();
+		walletEventDispatcher.unsubscribe(walletChangeSubscriber);
 
 		super.onStopLoading();
 	}
@@ -67,18 +73,16 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<BigInteger>
 	@Override
 	public BigInteger loadInBackground()
 	{
-		return wallet.getBalance(BalanceType.ESTIMATED);
+		return balanceTracker.getBalance(BalanceType.ESTIMATED);
 	}
 
-	private final ThrottlingWalletChangeListener walletChangeListener = new ThrottlingWalletChangeListener()
+	private final WalletEventDispatcher.Subscriber walletChangeSubscriber = new WalletEventDispatcher.Subscriber()
 	{
 		@Override
-		public void onThrottledWalletChanged()
+		public void onWalletChanged(@Nonnull final WalletDiff diff)
 		{
-			forceLoad();
+			if (diff.balanceDelta.signum() != 0 || diff.reorganized)
+				forceLoad();
 		}
-
-        @Override
-        public void onScriptsAdded(Wallet wallet, List<Script> scripts) { }
-    };
+	};
 }
@@ -17,14 +17,13 @@
 
 package de.schildbach.wallet.ui;
 
+import javax.annotation.Nonnull;
+
 import android.app.Activity;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
 import android.text.Html;
@@ -37,7 +36,11 @@ import android.view.ViewParent;
 import android.widget.FrameLayout;
 import android.widget.TextView;
 import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.service.BlockchainService;
+import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.util.HandlerExecutor;
+import de.schildbach.wallet.util.StateObservable;
 import de.schildbach.wallet_ltc.R;
 
 /**
@@ -46,6 +49,7 @@ import de.schildbach.wallet_ltc.R;
 public final class WalletDisclaimerFragment extends Fragment implements OnSharedPreferenceChangeListener
 {
 	private Activity activity;
+	private WalletApplication application;
 	private SharedPreferences prefs;
 
 	private int download;
@@ -58,6 +62,7 @@ public final class WalletDisclaimerFragment extends Fragment implements OnShared
 		super.onAttach(activity);
 
 		this.activity = (WalletActivity) activity;
+		this.application = (WalletApplication) activity.getApplication();
 		this.prefs = PreferenceManager.getDefaultSharedPreferences(activity);
 	}
 
@@ -89,7 +94,7 @@ public final class WalletDisclaimerFragment extends Fragment implements OnShared
 
 		prefs.registerOnSharedPreferenceChangeListener(this);
 
-		activity.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+		application.getBlockchainState().addListener(blockchainStateListener, new HandlerExecutor(new Handler()));
 
 		updateView();
 	}
@@ -97,7 +102,7 @@ public final class WalletDisclaimerFragment extends Fragment implements OnShared
 	@Override
 	public void onPause()
 	{
-		activity.unregisterReceiver(broadcastReceiver);
+		application.getBlockchainState().removeListener(blockchainStateListener);
 
 		prefs.unregisterOnSharedPreferenceChangeListener(this);
 
@@ -148,16 +153,14 @@ public final class WalletDisclaimerFragment extends Fragment implements OnShared
 		fragment.setVisibility(text.length() > 0 ? View.VISIBLE : View.GONE);
 	}
 
-	private final BlockchainBroadcastReceiver broadcastReceiver = new BlockchainBroadcastReceiver();
-
-	private final class BlockchainBroadcastReceiver extends BroadcastReceiver
+	private final StateObservable.Listener<BlockchainState> blockchainStateListener = new StateObservable.Listener<BlockchainState>()
 	{
 		@Override
-		public void onReceive(final Context context, final Intent intent)
+		public void onStateChanged(@Nonnull final BlockchainState state)
 		{
-			download = intent.getIntExtra(BlockchainService.ACTION_BLOCKCHAIN_STATE_DOWNLOAD, BlockchainService.ACTION_BLOCKCHAIN_STATE_DOWNLOAD_OK);
+			download = state.download;
 
 			updateView();
 		}
-	}
+	};
 }
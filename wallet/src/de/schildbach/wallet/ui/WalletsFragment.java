@@ -0,0 +1,282 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.actionbarsherlock.app.SherlockListFragment;
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuInflater;
+import com.actionbarsherlock.view.MenuItem;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.WalletRegistry;
+import de.schildbach.wallet.util.AbstractClipboardManager;
+import de.schildbach.wallet.util.GenericUtils;
+import de.schildbach.wallet_ltc.R;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public final class WalletsFragment extends SherlockListFragment
+{
+	private AbstractWalletActivity activity;
+	private WalletRegistry walletRegistry;
+
+	private ArrayAdapter<String> adapter;
+
+	private final Handler handler = new Handler();
+	private HandlerThread backgroundThread;
+	private Handler backgroundHandler;
+
+	@Override
+	public void onAttach(final Activity activity)
+	{
+		super.onAttach(activity);
+
+		this.activity = (AbstractWalletActivity) activity;
+		this.walletRegistry = ((WalletApplication) activity.getApplication()).getWalletRegistry();
+	}
+
+	@Override
+	public void onCreate(final Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+
+		setHasOptionsMenu(true);
+
+		backgroundThread = new HandlerThread("backgroundThread", Process.THREAD_PRIORITY_BACKGROUND);
+		backgroundThread.start();
+		backgroundHandler = new Handler(backgroundThread.getLooper());
+
+		adapter = new ArrayAdapter<String>(activity, android.R.layout.simple_list_item_2, android.R.id.text1)
+		{
+			@Override
+			public View getView(final int position, final View convertView, final ViewGroup parent)
+			{
+				final View row = super.getView(position, convertView, parent);
+
+				final String name = getItem(position);
+				final Wallet wallet = walletRegistry.get(name);
+
+				final TextView nameView = (TextView) row.findViewById(android.R.id.text1);
+				nameView.setText(WalletRegistry.isWatching(wallet) ? getString(R.string.wallets_fragment_watching, name) : name);
+
+				final TextView balanceView = (TextView) row.findViewById(android.R.id.text2);
+				balanceView.setText(formatBalance(wallet));
+
+				return row;
+			}
+		};
+		setListAdapter(adapter);
+	}
+
+	@Override
+	public void onViewCreated(final View view, final Bundle savedInstanceState)
+	{
+		super.onViewCreated(view, savedInstanceState);
+
+		setEmptyText(getString(R.string.wallets_fragment_empty_text));
+	}
+
+	@Override
+	public void onResume()
+	{
+		super.onResume();
+
+		walletRegistry.addOnWalletAddedListener(walletAddedListener);
+
+		updateView();
+	}
+
+	@Override
+	public void onPause()
+	{
+		walletRegistry.removeOnWalletAddedListener(walletAddedListener);
+
+		super.onPause();
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		backgroundThread.getLooper().quit();
+
+		super.onDestroy();
+	}
+
+	@Override
+	public void onCreateOptionsMenu(final Menu menu, final MenuInflater inflater)
+	{
+		inflater.inflate(R.menu.wallets_fragment_options, menu);
+
+		super.onCreateOptionsMenu(menu, inflater);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(final MenuItem item)
+	{
+		switch (item.getItemId())
+		{
+			case R.id.wallets_options_create:
+				handleCreate(false);
+				return true;
+
+			case R.id.wallets_options_watch:
+				handleCreate(true);
+				return true;
+		}
+
+		return super.onOptionsItemSelected(item);
+	}
+
+	@Override
+	public void onListItemClick(final ListView l, final View v, final int position, final long id)
+	{
+		final String name = adapter.getItem(position);
+		final Wallet wallet = walletRegistry.get(name);
+		final List<ECKey> keys = wallet.getKeys();
+		final Address address = keys.get(keys.size() - 1).toAddress(Constants.NETWORK_PARAMETERS);
+
+		new AlertDialog.Builder(activity).setTitle(name)
+				.setMessage(getString(R.string.wallets_fragment_select_dialog_message, formatBalance(wallet), address.toString()))
+				.setPositiveButton(R.string.button_copy, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						final AbstractClipboardManager clipboardManager = new AbstractClipboardManager(activity);
+						clipboardManager.setText("address", address.toString());
+						activity.toast(R.string.wallet_address_fragment_clipboard_msg);
+					}
+				}).setNegativeButton(R.string.button_dismiss, null).show();
+	}
+
+	private void handleCreate(final boolean watching)
+	{
+		final View view = LayoutInflater.from(activity).inflate(R.layout.create_wallet_dialog, null);
+		final EditText nameView = (EditText) view.findViewById(R.id.create_wallet_name);
+		final EditText publicKeysView = (EditText) view.findViewById(R.id.create_wallet_public_keys);
+		view.findViewById(R.id.create_wallet_public_keys_group).setVisibility(watching ? View.VISIBLE : View.GONE);
+
+		new AlertDialog.Builder(activity)
+				.setTitle(watching ? R.string.wallets_fragment_watch_dialog_title : R.string.wallets_fragment_create_dialog_title).setView(view)
+				.setPositiveButton(R.string.button_add, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						final String name = nameView.getText().toString().trim();
+						final String publicKeys = publicKeysView.getText().toString();
+
+						// saving, backing up and registering with the block chain can take a while
+						backgroundHandler.post(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								try
+								{
+									if (watching)
+										walletRegistry.createWatching(name, WalletRegistry.parsePublicKeys(publicKeys));
+									else
+										walletRegistry.create(name);
+								}
+								catch (final IllegalArgumentException x)
+								{
+									postCreateFailed(x.getMessage());
+								}
+								catch (final IOException x)
+								{
+									postCreateFailed(x.getMessage());
+								}
+							}
+						});
+					}
+				}).setNegativeButton(R.string.button_cancel, null).show();
+	}
+
+	private void postCreateFailed(final String message)
+	{
+		handler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				activity.longToast(R.string.wallets_fragment_create_failed, message);
+			}
+		});
+	}
+
+	private void updateView()
+	{
+		adapter.setNotifyOnChange(false);
+		adapter.clear();
+		for (final String name : walletRegistry.getNames())
+			adapter.add(name);
+		adapter.notifyDataSetChanged();
+	}
+
+	private static String formatBalance(@Nonnull final Wallet wallet)
+	{
+		final BigInteger balance = wallet.getBalance(BalanceType.ESTIMATED);
+
+		return GenericUtils.formatValue(balance, Constants.BTC_MAX_PRECISION, 0) + " " + Constants.CURRENCY_CODE_BTC;
+	}
+
+	private final WalletRegistry.OnWalletAddedListener walletAddedListener = new WalletRegistry.OnWalletAddedListener()
+	{
+		@Override
+		public void onWalletAdded(final String name, final Wallet wallet)
+		{
+			activity.runOnUiThread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if (isAdded())
+						updateView();
+				}
+			});
+		}
+	};
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.text.format.DateUtils;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.actionbarsherlock.app.SherlockFragmentActivity;
+import com.actionbarsherlock.app.SherlockListFragment;
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuInflater;
+import com.actionbarsherlock.view.MenuItem;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.WatchedAddresses;
+import de.schildbach.wallet.util.GenericUtils;
+import de.schildbach.wallet_ltc.R;
+
+/**
+ * Lists the watched addresses along with what they received, and the totals over all of them.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class WatchedAddressesFragment extends SherlockListFragment
+{
+	private AbstractWalletActivity activity;
+	private WalletApplication application;
+	private WatchedAddresses watchedAddresses;
+
+	private final Handler handler = new Handler();
+
+	private WatchedAddressesAdapter adapter;
+
+	@Override
+	public void onAttach(final Activity activity)
+	{
+		super.onAttach(activity);
+
+		this.activity = (AbstractWalletActivity) activity;
+		this.application = (WalletApplication) activity.getApplication();
+		this.watchedAddresses = application.getWatchedAddresses();
+	}
+
+	@Override
+	public void onCreate(final Bundle savedInstanceState)
+	{
+		super.onCreate(savedInstanceState);
+
+		setHasOptionsMenu(true);
+
+		adapter = new WatchedAddressesAdapter();
+		setListAdapter(adapter);
+	}
+
+	@Override
+	public void onViewCreated(final View view, final Bundle savedInstanceState)
+	{
+		super.onViewCreated(view, savedInstanceState);
+
+		setEmptyText(getString(R.string.watched_addresses_fragment_empty_text, Constants.EXTERNAL_WALLET_BACKUP_DIR));
+	}
+
+	@Override
+	public void onResume()
+	{
+		super.onResume();
+
+		watchedAddresses.addOnChangedListener(changedListener);
+
+		updateView();
+	}
+
+	@Override
+	public void onPause()
+	{
+		watchedAddresses.removeOnChangedListener(changedListener);
+		handler.removeCallbacksAndMessages(null);
+
+		super.onPause();
+	}
+
+	@Override
+	public void onCreateOptionsMenu(final Menu menu, final MenuInflater inflater)
+	{
+		inflater.inflate(R.menu.watched_addresses_fragment_options, menu);
+
+		super.onCreateOptionsMenu(menu, inflater);
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(final MenuItem item)
+	{
+		switch (item.getItemId())
+		{
+			case R.id.watched_addresses_options_import:
+				handleImport();
+				return true;
+		}
+
+		return super.onOptionsItemSelected(item);
+	}
+
+	private void handleImport()
+	{
+		final List<File> files = new ArrayList<File>();
+		final File[] txtFiles = Constants.EXTERNAL_WALLET_BACKUP_DIR.listFiles(WatchedAddresses.FILE_FILTER);
+		if (txtFiles != null)
+			files.addAll(Arrays.asList(txtFiles));
+
+		if (files.isEmpty())
+		{
+			activity.longToast(R.string.watched_addresses_import_msg_no_files, Constants.EXTERNAL_WALLET_BACKUP_DIR);
+			return;
+		}
+
+		Collections.sort(files);
+		final String[] filenames = new String[files.size()];
+		for (int i = 0; i < filenames.length; i++)
+			filenames[i] = files.get(i).getName();
+
+		new AlertDialog.Builder(activity).setTitle(R.string.watched_addresses_options_import_title)
+				.setItems(filenames, new DialogInterface.OnClickListener()
+				{
+					@Override
+					public void onClick(final DialogInterface dialog, final int which)
+					{
+						// runs in the blockchain service, which reports the result
+						application.importWatchedAddresses(Uri.fromFile(files.get(which)));
+					}
+				}).setNegativeButton(R.string.button_cancel, null).show();
+	}
+
+	private void updateView()
+	{
+		final WatchedAddresses.Totals totals = watchedAddresses.getTotals();
+
+		((SherlockFragmentActivity) activity).getSupportActionBar().setSubtitle(
+				totals.numAddresses > 0 ? getString(R.string.watched_addresses_fragment_totals, totals.numAddresses, totals.numPaid,
+						formatValue(totals.received)) : null);
+
+		adapter.setCount(totals.numAddresses);
+	}
+
+	private static String formatValue(final long value)
+	{
+		return GenericUtils.formatValue(BigInteger.valueOf(value), Constants.BTC_MAX_PRECISION, 0) + " " + Constants.CURRENCY_CODE_BTC;
+	}
+
+	private final WatchedAddresses.OnChangedListener changedListener = new WatchedAddresses.OnChangedListener()
+	{
+		@Override
+		public void onChanged()
+		{
+			// totals change once per relevant transaction, so coalesce
+			handler.removeCallbacksAndMessages(null);
+			handler.postDelayed(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if (isResumed())
+						updateView();
+				}
+			}, DateUtils.SECOND_IN_MILLIS);
+		}
+	};
+
+	private final class WatchedAddressesAdapter extends BaseAdapter
+	{
+		private int count = 0;
+
+		public void setCount(final int count)
+		{
+			this.count = count;
+			notifyDataSetChanged();
+		}
+
+		@Override
+		public int getCount()
+		{
+			return count;
+		}
+
+		@Override
+		public Object getItem(final int position)
+		{
+			return watchedAddresses.getAddress(position);
+		}
+
+		@Override
+		public long getItemId(final int position)
+		{
+			return position;
+		}
+
+		@Override
+		public View getView(final int position, final View convertView, final ViewGroup parent)
+		{
+			final View row = convertView != null ? convertView : activity.getLayoutInflater().inflate(android.R.layout.simple_list_item_2,
+					parent, false);
+
+			// addresses are only ever added, so a position stays valid even if the list is outdated
+			((TextView) row.findViewById(android.R.id.text1)).setText(watchedAddresses.getAddress(position).toString());
+			((TextView) row.findViewById(android.R.id.text2)).setText(formatReceived(watchedAddresses.getReceived(position)));
+
+			return row;
+		}
+
+		private String formatReceived(final long received)
+		{
+			return received > 0 ? getString(R.string.watched_addresses_fragment_received, formatValue(received))
+					: getString(R.string.watched_addresses_fragment_nothing_received);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+
+/**
+ * Hands logging events to a worker thread, which writes them to a file appender in batches. Logging threads only pay
+ * for putting the event on a lock-free queue. The file is flushed once per batch rather than once per event.
+ *
+ * The queue is bounded: if it is full, events below {@link Level#WARN} are dropped and the number dropped is logged
+ * later. Warnings and errors are always kept.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class AsyncBatchingAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+{
+	private static final int DEFAULT_QUEUE_SIZE = 1024;
+	private static final int MAX_BATCH_SIZE = 128;
+	private static final long MAX_STOP_WAIT_MS = 2000;
+
+	private final OutputStreamAppender<ILoggingEvent> delegate;
+	private final LayoutWrappingEncoder<ILoggingEvent> encoder;
+	private final int queueSize;
+
+	private final ConcurrentLinkedQueue<ILoggingEvent> queue = new ConcurrentLinkedQueue<ILoggingEvent>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger dropped = new AtomicInteger();
+	private volatile boolean running = false;
+	private Thread worker;
+
+	public AsyncBatchingAppender(@Nonnull final OutputStreamAppender<ILoggingEvent> delegate,
+			@Nonnull final LayoutWrappingEncoder<ILoggingEvent> encoder)
+	{
+		this(delegate, encoder, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * @param delegate
+	 *            started appender to write to
+	 * @param encoder
+	 *            encoder of the delegate, used to flush at the end of each batch
+	 */
+	public AsyncBatchingAppender(@Nonnull final OutputStreamAppender<ILoggingEvent> delegate,
+			@Nonnull final LayoutWrappingEncoder<ILoggingEvent> encoder, final int queueSize)
+	{
+		this.delegate = delegate;
+		this.encoder = encoder;
+		this.queueSize = queueSize;
+	}
+
+	@Override
+	public void start()
+	{
+		encoder.setImmediateFlush(false);
+
+		running = true;
+		worker = new Thread("logging")
+		{
+			@Override
+			public void run()
+			{
+				while (running)
+				{
+					if (!drain())
+						LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+				}
+
+				drain();
+			}
+		};
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+
+		super.start();
+	}
+
+	@Override
+	public void stop()
+	{
+		if (!isStarted())
+			return;
+
+		super.stop();
+
+		running = false;
+		LockSupport.unpark(worker);
+		try
+		{
+			worker.join(MAX_STOP_WAIT_MS);
+		}
+		catch (final InterruptedException x)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		delegate.stop();
+	}
+
+	@Override
+	protected void append(final ILoggingEvent event)
+	{
+		if (queued.get() >= queueSize && !event.getLevel().isGreaterOrEqual(Level.WARN))
+		{
+			dropped.incrementAndGet();
+			return;
+		}
+
+		// capture thread name, formatted message and MDC while still on the logging thread
+		event.prepareForDeferredProcessing();
+
+		queue.offer(event);
+		if (queued.getAndIncrement() == 0)
+			LockSupport.unpark(worker);
+	}
+
+	/**
+	 * @return true if there was anything to write
+	 */
+	private boolean drain()
+	{
+		boolean wrote = false;
+		int batchSize = 0;
+
+		ILoggingEvent event = queue.poll();
+		while (event != null)
+		{
+			queued.decrementAndGet();
+			final ILoggingEvent nextEvent = queue.poll();
+
+			// flush along with the last event queued, or every so many events
+			final boolean flush = nextEvent == null || ++batchSize >= MAX_BATCH_SIZE;
+			if (flush)
+			{
+				encoder.setImmediateFlush(true);
+				batchSize = 0;
+			}
+			delegate.doAppend(event);
+			if (flush)
+				encoder.setImmediateFlush(false);
+
+			event = nextEvent;
+			wrote = true;
+		}
+
+		final int numDropped = dropped.getAndSet(0);
+		if (numDropped > 0)
+		{
+			final Logger logger = ((LoggerContext) getContext()).getLogger(AsyncBatchingAppender.class);
+			encoder.setImmediateFlush(true);
+			delegate.doAppend(new LoggingEvent(AsyncBatchingAppender.class.getName(), logger, Level.WARN, "logging queue full, dropped "
+					+ numDropped + " events", null, null));
+			encoder.setImmediateFlush(false);
+		}
+
+		return wrote;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
+import com.google.bitcoin.core.TransactionOutput;
+
+import de.schildbach.wallet.UnspentOutputIndex;
+
+/**
+ * Plans sweep transactions that merge many small outputs into few larger ones, so later payments need fewer inputs.
+ * Outputs that would cost more in fee to spend than they are worth are left alone, as are unconfirmed outputs.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class ConsolidationPlanner
+{
+	private final UnspentOutputIndex unspentOutputIndex;
+	private final FeeAwareCoinSelector coinSelector;
+	private final BigInteger feePerKb;
+	private final BigInteger smallOutputThreshold;
+	private final int minSmallOutputs;
+	private final int maxInputsPerSweep;
+
+	public static final class Plan
+	{
+		public final List<FeeAwareCoinSelector.Selection> sweeps;
+		public final int numOutputs;
+		public final int numSmallOutputs;
+		public final BigInteger sweptValue;
+		public final BigInteger fee;
+		public final int numInputsToSpendAllBefore;
+		public final int numInputsToSpendAllAfter;
+		public final BigInteger feeToSpendAllBefore;
+		public final BigInteger feeToSpendAllAfter;
+
+		private Plan(@Nonnull final List<FeeAwareCoinSelector.Selection> sweeps, final int numOutputs, final int numSmallOutputs,
+				@Nonnull final BigInteger sweptValue, @Nonnull final BigInteger fee, final int numInputsToSpendAllBefore,
+				final int numInputsToSpendAllAfter, @Nonnull final BigInteger feeToSpendAllBefore, @Nonnull final BigInteger feeToSpendAllAfter)
+		{
+			this.sweeps = sweeps;
+			this.numOutputs = numOutputs;
+			this.numSmallOutputs = numSmallOutputs;
+			this.sweptValue = sweptValue;
+			this.fee = fee;
+			this.numInputsToSpendAllBefore = numInputsToSpendAllBefore;
+			this.numInputsToSpendAllAfter = numInputsToSpendAllAfter;
+			this.feeToSpendAllBefore = feeToSpendAllBefore;
+			this.feeToSpendAllAfter = feeToSpendAllAfter;
+		}
+
+		@Override
+		public String toString()
+		{
+			return numSmallOutputs + " of " + numOutputs + " outputs are small, " + sweeps.size() + " sweeps would merge "
+					+ sweptValue + " for a fee of " + fee + "; spending everything would take " + numInputsToSpendAllBefore
+					+ " inputs for a fee of " + feeToSpendAllBefore + " before, and " + numInputsToSpendAllAfter + " inputs for a fee of "
+					+ feeToSpendAllAfter + " after";
+		}
+	}
+
+	public ConsolidationPlanner(@Nonnull final UnspentOutputIndex unspentOutputIndex, @Nonnull final FeeAwareCoinSelector coinSelector,
+			@Nonnull final BigInteger feePerKb, @Nonnull final BigInteger smallOutputThreshold, final int minSmallOutputs,
+			final int maxInputsPerSweep)
+	{
+		this.unspentOutputIndex = unspentOutputIndex;
+		this.coinSelector = coinSelector;
+		this.feePerKb = feePerKb;
+		this.smallOutputThreshold = smallOutputThreshold;
+		this.minSmallOutputs = minSmallOutputs;
+		this.maxInputsPerSweep = maxInputsPerSweep;
+	}
+
+	/**
+	 * Waits for the index to be rebuilt if needed, so do not call this on the main thread.
+	 */
+	public Plan plan()
+	{
+		unspentOutputIndex.awaitReady();
+
+		final List<TransactionOutput> outputs = unspentOutputIndex.getOutputs();
+		final List<TransactionOutput> small = new ArrayList<TransactionOutput>();
+		final List<TransactionOutput> kept = new ArrayList<TransactionOutput>();
+		int sizeOfAllInputs = 0;
+
+		for (final TransactionOutput output : outputs)
+		{
+			final int inputSize = coinSelector.estimateInputSize(output);
+			sizeOfAllInputs += inputSize;
+
+			// what it costs to spend the output as one more input
+			final BigInteger inputFee = feePerKb.multiply(BigInteger.valueOf(inputSize)).divide(BigInteger.valueOf(1000));
+
+			if (output.getValue().compareTo(smallOutputThreshold) < 0 && output.getValue().compareTo(inputFee) > 0
+					&& output.getParentTransaction().getConfidence().getConfidenceType() == ConfidenceType.BUILDING
+					&& unspentOutputIndex.isSpendable(output))
+				small.add(output);
+			else
+				kept.add(output);
+		}
+
+		final List<FeeAwareCoinSelector.Selection> sweeps = new ArrayList<FeeAwareCoinSelector.Selection>();
+		BigInteger sweptValue = BigInteger.ZERO;
+		BigInteger fee = BigInteger.ZERO;
+		int sizeOfInputsAfter = sizeOfAllInputs;
+		int numInputsAfter = outputs.size();
+
+		if (small.size() >= minSmallOutputs)
+		{
+			// smallest first, so the least useful outputs are merged even if a sweep fails
+			Collections.reverse(small);
+
+			for (int start = 0; start < small.size(); start += maxInputsPerSweep)
+			{
+				final List<TransactionOutput> inputs = small.subList(start, Math.min(start + maxInputsPerSweep, small.size()));
+
+				try
+				{
+					final FeeAwareCoinSelector.Selection sweep = coinSelector.sweep(new ArrayList<TransactionOutput>(inputs));
+					sweeps.add(sweep);
+					sweptValue = sweptValue.add(sweep.amount).add(sweep.fee);
+					fee = fee.add(sweep.fee);
+
+					// the sweep replaces its inputs by a single one
+					for (final TransactionOutput input : inputs)
+						sizeOfInputsAfter -= coinSelector.estimateInputSize(input);
+					sizeOfInputsAfter += coinSelector.estimateInputSize(inputs.get(0));
+					numInputsAfter -= inputs.size() - 1;
+				}
+				catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+				{
+					// not worth it
+				}
+			}
+		}
+
+		return new Plan(sweeps, outputs.size(), small.size(), sweptValue, fee, outputs.size(), numInputsAfter, spendAllFee(
+				outputs.size(), sizeOfAllInputs), spendAllFee(numInputsAfter, sizeOfInputsAfter));
+	}
+
+	private BigInteger spendAllFee(final int numInputs, final int sizeOfInputs)
+	{
+		final int size = FeeAwareCoinSelector.TX_OVERHEAD_SIZE + (numInputs < 0xfd ? 0 : 2) + sizeOfInputs
+				+ FeeAwareCoinSelector.outputsSize(1);
+		return coinSelector.feeForSize(size, 0);
+	}
+}
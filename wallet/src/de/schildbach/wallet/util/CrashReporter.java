@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Formatter;
@@ -57,19 +58,24 @@ import de.schildbach.wallet.WalletApplication;
  */
 public class CrashReporter
 {
-	private static final String BACKGROUND_TRACES_FILENAME = "background.trace";
+	private static final String BACKGROUND_TRACES_FILENAME = "background.traces";
+	private static final String LEGACY_BACKGROUND_TRACES_FILENAME = "background.trace";
+	private static final int BACKGROUND_TRACES_SLOTS = 32;
+	private static final int BACKGROUND_TRACES_SLOT_SIZE = 4096;
 	private static final String CRASH_TRACE_FILENAME = "crash.trace";
 
 	private static final long TIME_CREATE_APPLICATION = System.currentTimeMillis();
 
-	private static File backgroundTracesFile;
+	private static TraceRing backgroundTraces;
 	private static File crashTraceFile;
 
 	private static final Logger log = LoggerFactory.getLogger(CrashReporter.class);
 
 	public static void init(@Nonnull final File cacheDir)
 	{
-		backgroundTracesFile = new File(cacheDir, BACKGROUND_TRACES_FILENAME);
+		backgroundTraces = new TraceRing(new File(cacheDir, BACKGROUND_TRACES_FILENAME), BACKGROUND_TRACES_SLOTS,
+				BACKGROUND_TRACES_SLOT_SIZE);
+		new File(cacheDir, LEGACY_BACKGROUND_TRACES_FILENAME).delete();
 		crashTraceFile = new File(cacheDir, CRASH_TRACE_FILENAME);
 
 		Thread.setDefaultUncaughtExceptionHandler(new ExceptionHandler(Thread.getDefaultUncaughtExceptionHandler()));
@@ -77,24 +83,18 @@ public class CrashReporter
 
 	public static boolean hasSavedBackgroundTraces()
 	{
-		return backgroundTracesFile.exists();
+		return !backgroundTraces.isEmpty();
 	}
 
 	public static void appendSavedBackgroundTraces(@Nonnull final Appendable report) throws IOException
 	{
-		BufferedReader reader = null;
-
 		try
 		{
-			reader = new BufferedReader(new InputStreamReader(new FileInputStream(backgroundTracesFile), Constants.UTF_8));
-			copy(reader, report);
+			backgroundTraces.copyTo(report);
 		}
 		finally
 		{
-			if (reader != null)
-				reader.close();
-
-			backgroundTracesFile.delete();
+			backgroundTraces.clear();
 		}
 	}
 
@@ -245,6 +245,18 @@ public class CrashReporter
 			final File logDir = application.getDir("log", Context.MODE_PRIVATE);
 			report.append("\nContents of LogDir " + logDir + ":\n");
 			appendDir(report, logDir, 0);
+
+			report.append("\nPeers:\n");
+			application.getPeerMetrics().appendReport(report);
+
+			report.append("\nBroadcast outbox:\n");
+			application.getBroadcastOutbox().appendReport(report);
+
+			report.append("\nWatched addresses:\n");
+			application.getWatchedAddresses().appendReport(report);
+
+			report.append("\nKey pool:\n");
+			application.getKeyPool().appendReport(report);
 		}
 		catch (final NameNotFoundException x)
 		{
@@ -268,28 +280,18 @@ public class CrashReporter
 
 	public static void saveBackgroundTrace(@Nonnull final Throwable throwable, @Nonnull final PackageInfo packageInfo)
 	{
-		synchronized (backgroundTracesFile)
-		{
-			PrintWriter writer = null;
-
-			try
-			{
-				writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(backgroundTracesFile, true), Constants.UTF_8));
+		final StringWriter trace = new StringWriter();
+		final PrintWriter writer = new PrintWriter(trace);
+		appendTrace(writer, throwable);
+		writer.close();
 
-				final long now = System.currentTimeMillis();
-				writer.println(String.format("\n--- collected at %tF %tT %tz on version %s (%d)", now, now, now, packageInfo.versionName,
-						packageInfo.versionCode));
-				appendTrace(writer, throwable);
-			}
-			catch (final IOException x)
-			{
-				log.error("problem writing background trace", x);
-			}
-			finally
-			{
-				if (writer != null)
-					writer.close();
-			}
+		try
+		{
+			backgroundTraces.add(trace.toString(), System.currentTimeMillis(), packageInfo.versionName, packageInfo.versionCode);
+		}
+		catch (final IOException x)
+		{
+			log.error("problem writing background trace", x);
 		}
 	}
 
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionConfidence;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.WalletLock;
+import com.google.bitcoin.core.Wallet.SendRequest;
+import com.google.bitcoin.script.Script;
+import com.google.bitcoin.wallet.CoinSelection;
+import com.google.bitcoin.wallet.CoinSelector;
+
+import de.schildbach.wallet.UnspentOutputIndex;
+
+/**
+ * Selects the inputs and the fee of a payment in a single pass over the spendable outputs, by estimating the serialized
+ * size of the transaction as inputs are added. Change that would be smaller than the dust threshold is given to the
+ * fee rather than creating an output for it.
+ *
+ * The resulting {@link SendRequest} pins both inputs and fee, so {@link Wallet#completeTx(SendRequest)} does not need to
+ * search for coins or iterate on the fee any more, and signs exactly once.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class FeeAwareCoinSelector
+{
+	// version, input count, output count, lock time
+	public static final int TX_OVERHEAD_SIZE = 4 + 1 + 1 + 4;
+	// value, script length, pay-to-address script
+	public static final int OUTPUT_SIZE = 8 + 1 + 25;
+	// outpoint, script length, sequence, plus a signature and a public key of the given length
+	private static final int INPUT_OVERHEAD_SIZE = 36 + 1 + 4;
+	private static final int SIGNATURE_SIZE = 1 + 73;
+	private static final int PUBKEY_COMPRESSED_SIZE = 1 + 33;
+	private static final int PUBKEY_UNCOMPRESSED_SIZE = 1 + 65;
+
+	private final Wallet wallet;
+	private final UnspentOutputIndex unspentOutputIndex;
+	private final BigInteger feePerKb;
+	private final BigInteger minFee;
+	private final BigInteger dustThreshold;
+
+	public static final class Selection
+	{
+		public final List<TransactionOutput> inputs;
+		public final BigInteger amount;
+		public final BigInteger fee;
+		public final BigInteger change;
+		public final int estimatedSize;
+
+		private Selection(@Nonnull final List<TransactionOutput> inputs, @Nonnull final BigInteger amount, @Nonnull final BigInteger fee,
+				@Nonnull final BigInteger change, final int estimatedSize)
+		{
+			this.inputs = inputs;
+			this.amount = amount;
+			this.fee = fee;
+			this.change = change;
+			this.estimatedSize = estimatedSize;
+		}
+
+		/**
+		 * @return send request with inputs and fee pinned to this selection
+		 */
+		public SendRequest toSendRequest(@Nonnull final Address to, @Nonnull final Address changeAddress)
+		{
+			return toSendRequest(SendRequest.to(to, amount), changeAddress);
+		}
+
+		/**
+		 * @param tx
+		 *            transaction that already has the outputs to pay to, adding up to the amount of this selection
+		 * @return send request with inputs and fee pinned to this selection
+		 */
+		public SendRequest toSendRequest(@Nonnull final Transaction tx, @Nonnull final Address changeAddress)
+		{
+			return toSendRequest(SendRequest.forTx(tx), changeAddress);
+		}
+
+		/**
+		 * Whether all inputs of this selection are still unspent outputs of the wallet. Selections can be kept for a while
+		 * before they are completed, and the wallet may have spent or dropped some of their inputs since.
+		 */
+		public boolean isUnspent(@Nonnull final Wallet wallet)
+		{
+			for (final TransactionOutput input : inputs)
+			{
+				final Transaction parent = input.getParentTransaction();
+				if (parent == null || !input.isAvailableForSpending() || wallet.getTransaction(parent.getHash()) == null)
+					return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Adds change and inputs of this selection to the transaction of a send request created by this selection, and
+		 * signs it. This replaces {@link Wallet#completeTx(SendRequest)}, which would sign input after input, and keeps
+		 * its checks: the inputs must still be unspent and the transaction must not exceed the standard size. Signing is
+		 * done without holding the wallet lock, so inputs can still be spent before {@link #commit(Wallet, SendRequest)},
+		 * which checks them again.
+		 * 
+		 * Signing can take long, so do not call this on the main thread.
+		 * 
+		 * @throws IllegalStateException
+		 *             if inputs of this selection were spent in the meantime
+		 * @throws IllegalArgumentException
+		 *             if the send request has already been completed, or the transaction would be too large
+		 */
+		public void complete(@Nonnull final Wallet wallet, @Nonnull final SendRequest sendRequest, @Nonnull final ParallelInputSigner signer)
+		{
+			if (sendRequest.completed)
+				throw new IllegalArgumentException("send request has already been completed");
+			if (!isUnspent(wallet))
+				throw new IllegalStateException("inputs were spent in the meantime");
+			// the estimate assumes the largest signatures, so this is what the transaction will be at most
+			if (estimatedSize > Transaction.MAX_STANDARD_TX_SIZE)
+				throw new IllegalArgumentException("transaction of " + estimatedSize + " bytes exceeds max size");
+
+			final Transaction tx = sendRequest.tx;
+
+			if (change.signum() > 0)
+				tx.addOutput(change, sendRequest.changeAddress);
+			for (final TransactionOutput input : inputs)
+				tx.addInput(input);
+
+			signer.signInputs(tx, sendRequest.aesKey);
+
+			tx.getConfidence().setSource(TransactionConfidence.Source.SELF);
+			sendRequest.completed = true;
+		}
+
+		/**
+		 * Commits the transaction of a send request completed by this selection, unless its inputs were spent since. The
+		 * check and the commit happen under the lock of the wallet, so no block or transaction spending the inputs can be
+		 * processed in between.
+		 * 
+		 * @throws IllegalStateException
+		 *             if inputs of this selection were spent in the meantime
+		 */
+		public void commit(@Nonnull final Wallet wallet, @Nonnull final SendRequest sendRequest)
+		{
+			if (!sendRequest.completed)
+				throw new IllegalArgumentException("send request has not been completed");
+
+			final ReentrantLock lock = WalletLock.of(wallet);
+			lock.lock();
+			try
+			{
+				if (!isUnspent(wallet))
+					throw new IllegalStateException("inputs were spent in the meantime");
+
+				wallet.commitTx(sendRequest.tx);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		private SendRequest toSendRequest(@Nonnull final SendRequest sendRequest, @Nonnull final Address changeAddress)
+		{
+			sendRequest.changeAddress = changeAddress;
+			sendRequest.coinSelector = fixedSelector(inputs);
+			sendRequest.fee = fee;
+			sendRequest.feePerKb = BigInteger.ZERO;
+			sendRequest.ensureMinRequiredFee = false;
+			sendRequest.emptyWallet = false; // the amount already has the fee subtracted
+			return sendRequest;
+		}
+	}
+
+	public static final class InsufficientMoneyException extends Exception
+	{
+		public final BigInteger missing;
+
+		public InsufficientMoneyException(@Nonnull final BigInteger missing)
+		{
+			super("missing " + missing);
+
+			this.missing = missing;
+		}
+	}
+
+	public FeeAwareCoinSelector(@Nonnull final Wallet wallet, @Nonnull final UnspentOutputIndex unspentOutputIndex,
+			@Nonnull final BigInteger feePerKb, @Nonnull final BigInteger minFee, @Nonnull final BigInteger dustThreshold)
+	{
+		this.wallet = wallet;
+		this.unspentOutputIndex = unspentOutputIndex;
+		this.feePerKb = feePerKb;
+		this.minFee = minFee;
+		this.dustThreshold = dustThreshold;
+	}
+
+	/**
+	 * @param amount
+	 *            value to send, or null to send everything that is spendable minus the fee
+	 */
+	public Selection select(@CheckForNull final BigInteger amount) throws InsufficientMoneyException
+	{
+		final Iterator<TransactionOutput> candidates = spendCandidates(Collections.<TransactionOutput> emptySet());
+
+		if (amount == null)
+		{
+			final List<TransactionOutput> all = new ArrayList<TransactionOutput>();
+			while (candidates.hasNext())
+				all.add(candidates.next());
+			return selectAll(all);
+		}
+
+		return select(candidates, Collections.singletonList(amount), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Select for a payment to several recipients at once. Outputs in exclude are not used, so that the transactions of a
+	 * batch can all be selected before any of them is committed to the wallet.
+	 * 
+	 * @return selection, or null if the inputs needed would make the transaction larger than maxSize
+	 */
+	@CheckForNull
+	public Selection select(@Nonnull final List<BigInteger> amounts, @Nonnull final Set<TransactionOutput> exclude, final int maxSize)
+			throws InsufficientMoneyException
+	{
+		return select(spendCandidates(exclude), amounts, maxSize);
+	}
+
+	@CheckForNull
+	Selection select(@Nonnull final Iterator<TransactionOutput> candidates, @Nonnull final List<BigInteger> amounts, final int maxSize)
+			throws InsufficientMoneyException
+	{
+		BigInteger amount = BigInteger.ZERO;
+		int numDustOutputs = 0;
+		for (final BigInteger value : amounts)
+		{
+			amount = amount.add(value);
+			if (isDust(value))
+				numDustOutputs++;
+		}
+
+		final List<TransactionOutput> inputs = new ArrayList<TransactionOutput>();
+		BigInteger gathered = BigInteger.ZERO;
+		int inputsSize = 0;
+		BigInteger lastMissing = null;
+
+		while (candidates.hasNext())
+		{
+			final TransactionOutput candidate = candidates.next();
+			inputs.add(candidate);
+			gathered = gathered.add(candidate.getValue());
+			inputsSize += estimateInputSize(candidate);
+
+			// first try without change, which also covers the case of change being given to the fee
+			final int sizeWithoutChange = TX_OVERHEAD_SIZE + varIntExtraSize(inputs.size()) + inputsSize + outputsSize(amounts.size());
+			if (sizeWithoutChange > maxSize)
+				return null;
+
+			final BigInteger feeWithoutChange = feeForSize(sizeWithoutChange, numDustOutputs);
+			final BigInteger remainder = gathered.subtract(amount).subtract(feeWithoutChange);
+
+			if (remainder.signum() < 0)
+			{
+				lastMissing = remainder.negate();
+				continue;
+			}
+
+			if (remainder.compareTo(dustThreshold) < 0)
+				return new Selection(inputs, amount, gathered.subtract(amount), BigInteger.ZERO, sizeWithoutChange);
+
+			final int sizeWithChange = sizeWithoutChange - outputsSize(amounts.size()) + outputsSize(amounts.size() + 1);
+			if (sizeWithChange > maxSize)
+				return null;
+
+			final BigInteger feeWithChange = feeForSize(sizeWithChange, numDustOutputs);
+			final BigInteger change = gathered.subtract(amount).subtract(feeWithChange);
+
+			if (change.compareTo(dustThreshold) >= 0)
+				return new Selection(inputs, amount, feeWithChange, change, sizeWithChange);
+
+			// the change output made the fee jump, so change ended up as dust after all
+			return new Selection(inputs, amount, gathered.subtract(amount), BigInteger.ZERO, sizeWithoutChange);
+		}
+
+		if (lastMissing == null)
+			lastMissing = amount.add(feeForSize(TX_OVERHEAD_SIZE + outputsSize(amounts.size()), numDustOutputs));
+
+		throw new InsufficientMoneyException(lastMissing);
+	}
+
+	/**
+	 * Select exactly the given outputs, sending their value minus the fee to a single output.
+	 */
+	public Selection sweep(@Nonnull final List<TransactionOutput> outputs) throws InsufficientMoneyException
+	{
+		return selectAll(outputs);
+	}
+
+	private Selection selectAll(@Nonnull final List<TransactionOutput> candidates) throws InsufficientMoneyException
+	{
+		BigInteger gathered = BigInteger.ZERO;
+		int size = TX_OVERHEAD_SIZE + varIntExtraSize(candidates.size()) + OUTPUT_SIZE;
+
+		for (final TransactionOutput candidate : candidates)
+		{
+			gathered = gathered.add(candidate.getValue());
+			size += estimateInputSize(candidate);
+		}
+
+		BigInteger fee = feeForSize(size, 0);
+		BigInteger amount = gathered.subtract(fee);
+		if (isDust(amount))
+		{
+			fee = feeForSize(size, 1);
+			amount = gathered.subtract(fee);
+		}
+
+		if (amount.signum() <= 0)
+			throw new InsufficientMoneyException(amount.negate().add(BigInteger.ONE));
+
+		return new Selection(candidates, amount, fee, BigInteger.ZERO, size);
+	}
+
+	/**
+	 * Spendable outputs, largest first so that as few inputs as possible are needed. They are read from the index one by
+	 * one, and only the outputs actually looked at are checked once more, as the index might lag behind a wallet change
+	 * that is happening right now.
+	 */
+	private Iterator<TransactionOutput> spendCandidates(@Nonnull final Set<TransactionOutput> exclude)
+	{
+		unspentOutputIndex.awaitReady();
+
+		final Iterator<TransactionOutput> outputs = unspentOutputIndex.largestFirst();
+
+		return new Iterator<TransactionOutput>()
+		{
+			private TransactionOutput next = null;
+
+			@Override
+			public boolean hasNext()
+			{
+				while (next == null && outputs.hasNext())
+				{
+					final TransactionOutput output = outputs.next();
+					if (!exclude.contains(output) && unspentOutputIndex.isSpendable(output))
+						next = output;
+				}
+
+				return next != null;
+			}
+
+			@Override
+			public TransactionOutput next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				final TransactionOutput output = next;
+				next = null;
+				return output;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Estimate the size of the input that spends the given output, depending on the kind of script and key.
+	 */
+	public int estimateInputSize(@Nonnull final TransactionOutput output)
+	{
+		final Script script = output.getScriptPubKey();
+
+		if (script.isSentToRawPubKey())
+			return INPUT_OVERHEAD_SIZE + SIGNATURE_SIZE;
+
+		final ECKey key = script.isSentToAddress() ? wallet.findKeyFromPubHash(script.getPubKeyHash()) : null;
+		if (key != null && !key.isCompressed())
+			return INPUT_OVERHEAD_SIZE + SIGNATURE_SIZE + PUBKEY_UNCOMPRESSED_SIZE;
+		else
+			return INPUT_OVERHEAD_SIZE + SIGNATURE_SIZE + PUBKEY_COMPRESSED_SIZE;
+	}
+
+	/**
+	 * Fee for a transaction of the given size, following the reference client: the fee per kilobyte for every started
+	 * kilobyte, but at least the minimum fee, plus the minimum fee for every output below the dust threshold.
+	 */
+	public BigInteger feeForSize(final int size, final int numDustOutputs)
+	{
+		final BigInteger fee = feePerKb.multiply(BigInteger.valueOf(1 + size / 1000)).max(minFee);
+		return fee.add(minFee.multiply(BigInteger.valueOf(numDustOutputs)));
+	}
+
+	public static int outputsSize(final int numOutputs)
+	{
+		return varIntExtraSize(numOutputs) + OUTPUT_SIZE * numOutputs;
+	}
+
+	private static int varIntExtraSize(final int count)
+	{
+		return count < 0xfd ? 0 : 2;
+	}
+
+	private boolean isDust(@Nonnull final BigInteger value)
+	{
+		return value.compareTo(dustThreshold) < 0;
+	}
+
+	private static CoinSelector fixedSelector(@Nonnull final List<TransactionOutput> inputs)
+	{
+		return new CoinSelector()
+		{
+			@Override
+			public CoinSelection select(final BigInteger target, final LinkedList<TransactionOutput> candidates)
+			{
+				BigInteger gathered = BigInteger.ZERO;
+				for (final TransactionOutput input : inputs)
+					gathered = gathered.add(input.getValue());
+
+				return new CoinSelection(gathered, inputs);
+			}
+		};
+	}
+}
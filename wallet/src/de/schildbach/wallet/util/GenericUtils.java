@@ -23,6 +23,7 @@ import java.util.Locale;
 
 import javax.annotation.Nonnull;
 
+import com.google.bitcoin.core.NetworkParameters;
 import com.google.bitcoin.core.Utils;
 import de.schildbach.wallet.Constants;
 
@@ -104,12 +105,17 @@ public class GenericUtils
 	}
 
 	public static BigInteger toNanoCoins(final String value, final int shift)
+	{
+		return toNanoCoins(value, shift, Constants.NETWORK_PARAMETERS);
+	}
+
+	public static BigInteger toNanoCoins(final String value, final int shift, @Nonnull final NetworkParameters params)
 	{
 		final BigInteger nanoCoins = new BigDecimal(value).movePointRight(8 - shift).toBigIntegerExact();
 
 		if (nanoCoins.signum() < 0)
 			throw new IllegalArgumentException("negative amount: " + value);
-		if (nanoCoins.compareTo(Constants.NETWORK_PARAMETERS.getMaxMoney()) > 0)
+		if (nanoCoins.compareTo(params.getMaxMoney()) > 0)
 			throw new IllegalArgumentException("amount too large: " + value);
 
 		return nanoCoins;
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import android.os.Handler;
+
+/**
+ * Runs tasks on the thread of a {@link Handler}, usually the main thread.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class HandlerExecutor implements Executor
+{
+	private final Handler handler;
+
+	public HandlerExecutor(@Nonnull final Handler handler)
+	{
+		this.handler = handler;
+	}
+
+	@Override
+	public void execute(final Runnable command)
+	{
+		handler.post(command);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Compact set of 20 byte hashes, each with a long value attached. The hashes are kept sorted in one flat array, so that
+ * 100k entries take about 3 MB including their values, and a lookup is a binary search without allocating. Adding is a
+ * merge of the whole array, so hashes should be added in batches. Not thread safe.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class Hash160Index
+{
+	public static final int HASH_LENGTH = 20;
+
+	private byte[] hashes = new byte[0];
+	private long[] values = new long[0];
+	private int size = 0;
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return index of the hash starting at the given offset, or -1 if it is not contained
+	 */
+	public int indexOf(@Nonnull final byte[] buf, final int offset)
+	{
+		int low = 0;
+		int high = size - 1;
+
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int cmp = compare(hashes, mid * HASH_LENGTH, buf, offset);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+	public int indexOf(@Nonnull final byte[] hash)
+	{
+		checkLength(hash);
+		return indexOf(hash, 0);
+	}
+
+	/**
+	 * Adds hashes that are not yet contained, with a value of zero. Indices of existing hashes change.
+	 *
+	 * @return number of hashes actually added
+	 */
+	public int addAll(@Nonnull final Collection<byte[]> newHashes)
+	{
+		final byte[][] sorted = newHashes.toArray(new byte[newHashes.size()][]);
+		for (final byte[] hash : sorted)
+			checkLength(hash);
+		Arrays.sort(sorted, HASH_COMPARATOR);
+
+		final byte[] mergedHashes = new byte[(size + sorted.length) * HASH_LENGTH];
+		final long[] mergedValues = new long[size + sorted.length];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+
+		while (i < size || j < sorted.length)
+		{
+			final int cmp;
+			if (i == size)
+				cmp = 1;
+			else if (j == sorted.length)
+				cmp = -1;
+			else
+				cmp = compare(hashes, i * HASH_LENGTH, sorted[j], 0);
+
+			if (cmp <= 0)
+			{
+				System.arraycopy(hashes, i * HASH_LENGTH, mergedHashes, n * HASH_LENGTH, HASH_LENGTH);
+				mergedValues[n++] = values[i++];
+				if (cmp == 0)
+					j++;
+			}
+			else if (n > 0 && compare(mergedHashes, (n - 1) * HASH_LENGTH, sorted[j], 0) == 0)
+			{
+				j++; // duplicate within the batch
+			}
+			else
+			{
+				System.arraycopy(sorted[j++], 0, mergedHashes, n * HASH_LENGTH, HASH_LENGTH);
+				mergedValues[n++] = 0;
+			}
+		}
+
+		final int added = n - size;
+		hashes = n * HASH_LENGTH == mergedHashes.length ? mergedHashes : Arrays.copyOf(mergedHashes, n * HASH_LENGTH);
+		values = n == mergedValues.length ? mergedValues : Arrays.copyOf(mergedValues, n);
+		size = n;
+
+		return added;
+	}
+
+	/**
+	 * @return independent copy, e.g. for writing the entries out without holding a lock
+	 */
+	public Hash160Index copy()
+	{
+		final Hash160Index copy = new Hash160Index();
+		copy.hashes = Arrays.copyOf(hashes, size * HASH_LENGTH);
+		copy.values = Arrays.copyOf(values, size);
+		copy.size = size;
+		return copy;
+	}
+
+	public byte[] get(final int index)
+	{
+		checkIndex(index);
+		return Arrays.copyOfRange(hashes, index * HASH_LENGTH, (index + 1) * HASH_LENGTH);
+	}
+
+	public long getValue(final int index)
+	{
+		checkIndex(index);
+		return values[index];
+	}
+
+	public void setValue(final int index, final long value)
+	{
+		checkIndex(index);
+		values[index] = value;
+	}
+
+	private void checkIndex(final int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+	}
+
+	private static void checkLength(@Nonnull final byte[] hash)
+	{
+		if (hash.length != HASH_LENGTH)
+			throw new IllegalArgumentException("hash must be " + HASH_LENGTH + " bytes: " + hash.length);
+	}
+
+	private static int compare(@Nonnull final byte[] a, final int aOffset, @Nonnull final byte[] b, final int bOffset)
+	{
+		for (int i = 0; i < HASH_LENGTH; i++)
+		{
+			final int cmp = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+
+		return 0;
+	}
+
+	private static final Comparator<byte[]> HASH_COMPARATOR = new Comparator<byte[]>()
+	{
+		@Override
+		public int compare(final byte[] lhs, final byte[] rhs)
+		{
+			return Hash160Index.compare(lhs, 0, rhs, 0);
+		}
+	};
+}
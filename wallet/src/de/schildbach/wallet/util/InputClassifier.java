@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.Base58;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Utils;
+
+/**
+ * Tells what kind of input a scanned or pasted string is by looking at its prefix, charset and length, and for Base58
+ * input its version byte and checksum. Malformed input is rejected without any exception being constructed, and exactly
+ * one decoder needs to run on the input afterwards. For addresses and private keys that decoder will succeed.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class InputClassifier
+{
+	public enum Type
+	{
+		BITCOIN_URI, ADDRESS, PRIVATE_KEY, TRANSACTION, INVALID_ADDRESS, UNKNOWN
+	}
+
+	private static final String URI_PREFIX = "litecoin:";
+	private static final int MIN_ADDRESS_LENGTH = 20;
+	private static final int MAX_ADDRESS_LENGTH = 40;
+	private static final int MIN_PRIVATE_KEY_LENGTH = 51;
+	private static final int MAX_PRIVATE_KEY_LENGTH = 52;
+	private static final int MIN_TRANSACTION_LENGTH = 100;
+	private static final int CHECKSUM_LENGTH = 4;
+
+	private static final boolean[] BASE58 = charset(new String(Base58.ALPHABET));
+	private static final boolean[] BASE43 = charset("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ$*+-./:");
+
+	private final int[] acceptableAddressCodes;
+	private final int dumpedPrivateKeyHeader;
+
+	public InputClassifier(@Nonnull final NetworkParameters params)
+	{
+		this.acceptableAddressCodes = params.getAcceptableAddressCodes();
+		this.dumpedPrivateKeyHeader = params.getDumpedPrivateKeyHeader();
+	}
+
+	public Type classify(@Nonnull final String input)
+	{
+		final int length = input.length();
+
+		if (input.startsWith(URI_PREFIX))
+			return Type.BITCOIN_URI;
+
+		// a transaction is recognized by the marker Qr.encodeBinary() puts in front
+		if (length >= MIN_TRANSACTION_LENGTH && (input.charAt(0) == 'Z' || input.charAt(0) == '-') && allOf(input, BASE43))
+			return Type.TRANSACTION;
+
+		final boolean addressLength = length >= MIN_ADDRESS_LENGTH && length <= MAX_ADDRESS_LENGTH;
+		final boolean privateKeyLength = length >= MIN_PRIVATE_KEY_LENGTH && length <= MAX_PRIVATE_KEY_LENGTH;
+		if ((!addressLength && !privateKeyLength) || !allOf(input, BASE58))
+			return Type.UNKNOWN;
+
+		final byte[] bytes;
+		try
+		{
+			bytes = Base58.decode(input);
+		}
+		catch (final AddressFormatException x)
+		{
+			throw new RuntimeException(x); // cannot happen, charset is checked
+		}
+
+		if (!checksumValid(bytes))
+			return Type.INVALID_ADDRESS;
+
+		final int version = bytes[0] & 0xff;
+		final int payloadLength = bytes.length - 1 - CHECKSUM_LENGTH;
+
+		if (addressLength)
+		{
+			if (payloadLength != 20)
+				return Type.INVALID_ADDRESS;
+			for (final int code : acceptableAddressCodes)
+				if (version == code)
+					return Type.ADDRESS;
+			return Type.INVALID_ADDRESS;
+		}
+		else
+		{
+			// optionally followed by a marker byte for compressed public keys
+			if (version != dumpedPrivateKeyHeader || (payloadLength != 32 && !(payloadLength == 33 && bytes[33] == 1)))
+				return Type.INVALID_ADDRESS;
+			return Type.PRIVATE_KEY;
+		}
+	}
+
+	private static boolean checksumValid(@Nonnull final byte[] bytes)
+	{
+		if (bytes.length <= CHECKSUM_LENGTH)
+			return false;
+
+		final int dataLength = bytes.length - CHECKSUM_LENGTH;
+		final byte[] hash = Utils.doubleDigest(bytes, 0, dataLength);
+		for (int i = 0; i < CHECKSUM_LENGTH; i++)
+			if (hash[i] != bytes[dataLength + i])
+				return false;
+		return true;
+	}
+
+	private static boolean allOf(@Nonnull final String input, @Nonnull final boolean[] charset)
+	{
+		for (int i = 0; i < input.length(); i++)
+		{
+			final char c = input.charAt(i);
+			if (c >= charset.length || !charset[c])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean[] charset(@Nonnull final String alphabet)
+	{
+		final boolean[] charset = new boolean[128];
+		for (int i = 0; i < alphabet.length(); i++)
+			charset[alphabet.charAt(i)] = true;
+		return charset;
+	}
+}
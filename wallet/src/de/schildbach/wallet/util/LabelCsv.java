@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.NetworkParameters;
+
+/**
+ * Reads address labels from comma separated values, one "address,label" pair per line. Fields may be quoted. Lines
+ * that cannot be parsed, lack a label or do not start with a valid address are skipped and counted, except for a header
+ * line.
+ *
+ * @author Litecoin Dev Team
+ */
+public class LabelCsv
+{
+	public static final class Result
+	{
+		public final Map<String, String> labels;
+		public final int numBadLines;
+
+		private Result(@Nonnull final Map<String, String> labels, final int numBadLines)
+		{
+			this.labels = labels;
+			this.numBadLines = numBadLines;
+		}
+	}
+
+	public static Result readLabels(@Nonnull final Reader in, @Nonnull final NetworkParameters params) throws IOException
+	{
+		final BufferedReader reader = new BufferedReader(in);
+		final Map<String, String> labels = new LinkedHashMap<String, String>();
+		int numLines = 0;
+		int numBadLines = 0;
+
+		while (true)
+		{
+			final String line = reader.readLine();
+			if (line == null)
+				break; // eof
+			if (line.trim().length() == 0)
+				continue;
+			numLines++;
+
+			final List<String> fields;
+			try
+			{
+				fields = parseLine(line);
+			}
+			catch (final IOException x)
+			{
+				numBadLines++;
+				continue;
+			}
+
+			final String address = fields.get(0).trim();
+			final String label = fields.size() >= 2 ? fields.get(1).trim() : "";
+
+			try
+			{
+				new Address(params, address);
+			}
+			catch (final AddressFormatException x)
+			{
+				if (numLines > 1)
+					numBadLines++;
+				continue; // the first line might be a header
+			}
+
+			if (label.length() == 0)
+			{
+				numBadLines++;
+				continue;
+			}
+
+			labels.put(address, label);
+		}
+
+		return new Result(labels, numBadLines);
+	}
+
+	public static List<String> parseLine(@Nonnull final String line) throws IOException
+	{
+		final List<String> fields = new ArrayList<String>();
+		final StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			final char c = line.charAt(i);
+
+			if (quoted)
+			{
+				if (c != '"')
+				{
+					field.append(c);
+				}
+				else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+				{
+					field.append('"');
+					i++;
+				}
+				else
+				{
+					quoted = false;
+				}
+			}
+			else if (c == '"')
+			{
+				quoted = true;
+			}
+			else if (c == ',')
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else
+			{
+				field.append(c);
+			}
+		}
+
+		if (quoted)
+			throw new IOException("unterminated quote: " + line);
+
+		fields.add(field.toString());
+
+		return fields;
+	}
+
+	public static final FileFilter FILE_FILTER = new FileFilter()
+	{
+		@Override
+		public boolean accept(final File file)
+		{
+			return file.isFile() && file.getName().toLowerCase(Locale.US).endsWith(".csv");
+		}
+	};
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.spongycastle.crypto.params.KeyParameter;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.ScriptException;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Transaction.SigHash;
+import com.google.bitcoin.core.TransactionInput;
+import com.google.bitcoin.core.TransactionOutPoint;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.crypto.TransactionSignature;
+import com.google.bitcoin.script.Script;
+import com.google.bitcoin.script.ScriptBuilder;
+
+/**
+ * Signs the inputs of a transaction on all cores. Signature hashes and signatures are computed in parallel, each worker
+ * on its own copy of the transaction, as {@link Transaction#hashForSignature} modifies the transaction while hashing.
+ * Input scripts are then set in input order on the calling thread, so the result is the same as
+ * {@link Transaction#signInputs(SigHash, Wallet)} would give.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class ParallelInputSigner
+{
+	// below this, handing over to another thread costs more than it saves
+	private static final int MIN_INPUTS_PER_TASK = 8;
+
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory()
+	{
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r)
+		{
+			final Thread thread = new Thread(r, "input signer " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Wallet wallet;
+
+	public ParallelInputSigner(@Nonnull final Wallet wallet)
+	{
+		this.wallet = wallet;
+	}
+
+	/**
+	 * Signs all inputs with {@link SigHash#ALL}. All inputs must be connected to outputs of the wallet, and must not be
+	 * signed yet.
+	 */
+	public void signInputs(@Nonnull final Transaction tx, @Nullable final KeyParameter aesKey)
+	{
+		final List<TransactionInput> inputs = tx.getInputs();
+		final int numInputs = inputs.size();
+
+		final ECKey[] keys = new ECKey[numInputs];
+		final byte[][] connectedScripts = new byte[numInputs][];
+		for (int i = 0; i < numInputs; i++)
+		{
+			final TransactionInput input = inputs.get(i);
+			if (input.getScriptBytes().length != 0)
+				throw new IllegalArgumentException("input " + i + " is already signed");
+
+			final TransactionOutPoint outPoint = input.getOutpoint();
+			connectedScripts[i] = outPoint.getConnectedPubKeyScript();
+			keys[i] = outPoint.getConnectedKey(wallet);
+			if (keys[i] == null)
+				throw new IllegalArgumentException("no key for input " + i);
+		}
+
+		final TransactionSignature[] signatures = new TransactionSignature[numInputs];
+		final int numTasks = Math.max(1, Math.min(NUM_THREADS, numInputs / MIN_INPUTS_PER_TASK));
+
+		if (numTasks == 1)
+		{
+			sign(tx, 0, numInputs, connectedScripts, keys, aesKey, signatures);
+		}
+		else
+		{
+			final byte[] unsignedTx = tx.bitcoinSerialize();
+			final List<Future<?>> futures = new ArrayList<Future<?>>(numTasks);
+
+			for (int task = 0; task < numTasks; task++)
+			{
+				final int from = numInputs * task / numTasks;
+				final int to = numInputs * (task + 1) / numTasks;
+
+				futures.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						final Transaction copy = new Transaction(tx.getParams(), unsignedTx);
+						sign(copy, from, to, connectedScripts, keys, aesKey, signatures);
+						return null;
+					}
+				}));
+			}
+
+			try
+			{
+				for (final Future<?> future : futures)
+					future.get(); // also makes the signatures of the task visible to this thread
+			}
+			catch (final InterruptedException x)
+			{
+				for (final Future<?> future : futures)
+					future.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(x);
+			}
+			catch (final ExecutionException x)
+			{
+				for (final Future<?> future : futures)
+					future.cancel(true);
+				if (x.getCause() instanceof RuntimeException)
+					throw (RuntimeException) x.getCause();
+				throw new RuntimeException(x.getCause());
+			}
+		}
+
+		for (int i = 0; i < numInputs; i++)
+		{
+			final TransactionInput input = inputs.get(i);
+			final Script scriptPubKey = new Script(connectedScripts[i]);
+			if (scriptPubKey.isSentToAddress())
+				input.setScriptSig(ScriptBuilder.createInputScript(signatures[i], keys[i]));
+			else if (scriptPubKey.isSentToRawPubKey())
+				input.setScriptSig(ScriptBuilder.createInputScript(signatures[i]));
+			else
+				throw new ScriptException("cannot sign input " + i + " of type " + scriptPubKey);
+		}
+	}
+
+	private static void sign(@Nonnull final Transaction tx, final int from, final int to, @Nonnull final byte[][] connectedScripts,
+			@Nonnull final ECKey[] keys, @Nullable final KeyParameter aesKey, @Nonnull final TransactionSignature[] signatures)
+	{
+		for (int i = from; i < to; i++)
+		{
+			final Sha256Hash hash = tx.hashForSignature(i, connectedScripts[i], SigHash.ALL, false);
+			signatures[i] = new TransactionSignature(keys[i].sign(hash, aesKey), SigHash.ALL, false);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet.SendRequest;
+import com.google.bitcoin.uri.BitcoinURI;
+import com.google.bitcoin.uri.BitcoinURIParseException;
+
+/**
+ * Pays a list of recipients with as few transactions as possible. Recipients are packed into transactions that stay
+ * below the size limit for standard transactions, and inputs are selected for all of them before any is committed.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class PaymentBatch
+{
+	// the reference client does not relay transactions larger than this
+	public static final int MAX_TRANSACTION_SIZE = 100000;
+
+	// leave at least half of a transaction for inputs
+	private static final int MAX_OUTPUTS_SIZE = MAX_TRANSACTION_SIZE / 2;
+
+	public static final class Payment
+	{
+		public final Address address;
+		public final BigInteger amount;
+		@CheckForNull
+		public final String label;
+
+		public Payment(@Nonnull final Address address, @Nonnull final BigInteger amount, @Nullable final String label)
+		{
+			this.address = address;
+			this.amount = amount;
+			this.label = label;
+		}
+	}
+
+	public static final class Plan
+	{
+		public final List<FeeAwareCoinSelector.Selection> selections;
+		public final List<SendRequest> sendRequests;
+		public final BigInteger amount;
+		public final BigInteger fee;
+
+		private Plan(@Nonnull final List<FeeAwareCoinSelector.Selection> selections, @Nonnull final List<SendRequest> sendRequests,
+				@Nonnull final BigInteger amount, @Nonnull final BigInteger fee)
+		{
+			this.selections = selections;
+			this.sendRequests = sendRequests;
+			this.amount = amount;
+			this.fee = fee;
+		}
+	}
+
+	/**
+	 * Reads payments, one per line. A line is either a payment URI with an amount, or comma separated values of address,
+	 * amount in coins and an optional label. A first line that does not start with a valid address is taken as header.
+	 */
+	public static List<Payment> read(@Nonnull final Reader in, @Nonnull final NetworkParameters params) throws IOException
+	{
+		final BufferedReader reader = new BufferedReader(in);
+		final List<Payment> payments = new ArrayList<Payment>();
+		int lineNumber = 0;
+
+		while (true)
+		{
+			final String line = reader.readLine();
+			if (line == null)
+				break; // eof
+			lineNumber++;
+
+			final String trimmedLine = line.trim();
+			if (trimmedLine.length() == 0 || trimmedLine.startsWith("#"))
+				continue;
+
+			try
+			{
+				if (trimmedLine.startsWith("litecoin:"))
+				{
+					final BitcoinURI uri = new BitcoinURI(params, trimmedLine);
+					if (uri.getAddress() == null || uri.getAmount() == null)
+						throw new IOException("line " + lineNumber + ": address and amount required");
+
+					payments.add(new Payment(uri.getAddress(), uri.getAmount(), uri.getLabel()));
+				}
+				else
+				{
+					final List<String> fields = LabelCsv.parseLine(trimmedLine);
+					if (fields.size() < 2)
+						throw new IOException("line " + lineNumber + ": address and amount required");
+
+					final Address address;
+					try
+					{
+						address = new Address(params, fields.get(0).trim());
+					}
+					catch (final AddressFormatException x)
+					{
+						if (payments.isEmpty() && lineNumber == 1)
+							continue; // header
+
+						throw x;
+					}
+
+					final BigInteger amount = GenericUtils.toNanoCoins(fields.get(1).trim(), 0, params);
+					final String label = fields.size() >= 3 && fields.get(2).trim().length() > 0 ? fields.get(2).trim() : null;
+
+					payments.add(new Payment(address, amount, label));
+				}
+			}
+			catch (final BitcoinURIParseException x)
+			{
+				throw new IOException("line " + lineNumber + ": " + x.getMessage());
+			}
+			catch (final AddressFormatException x)
+			{
+				throw new IOException("line " + lineNumber + ": " + x.getMessage());
+			}
+			catch (final IllegalArgumentException x)
+			{
+				// also covers malformed amounts
+				throw new IOException("line " + lineNumber + ": " + x.getMessage());
+			}
+			catch (final ArithmeticException x)
+			{
+				// amounts more precise than the smallest unit
+				throw new IOException("line " + lineNumber + ": " + x.getMessage());
+			}
+		}
+
+		for (final Payment payment : payments)
+			if (payment.amount.signum() <= 0)
+				throw new IOException("zero amount for " + payment.address);
+
+		return payments;
+	}
+
+	/**
+	 * Packs payments into transactions and selects inputs and fee for each. The resulting send requests pin their inputs,
+	 * and do not share any, so they can be completed and committed one after the other, each by its selection.
+	 */
+	public static Plan plan(@Nonnull final List<Payment> payments, @Nonnull final FeeAwareCoinSelector coinSelector,
+			@Nonnull final Address changeAddress) throws FeeAwareCoinSelector.InsufficientMoneyException
+	{
+		final int maxOutputsPerTransaction = (MAX_OUTPUTS_SIZE - FeeAwareCoinSelector.outputsSize(1)) / FeeAwareCoinSelector.OUTPUT_SIZE;
+
+		final List<FeeAwareCoinSelector.Selection> selections = new ArrayList<FeeAwareCoinSelector.Selection>();
+		final List<SendRequest> sendRequests = new ArrayList<SendRequest>();
+		final Set<TransactionOutput> used = new HashSet<TransactionOutput>();
+		BigInteger amount = BigInteger.ZERO;
+		BigInteger fee = BigInteger.ZERO;
+
+		int start = 0;
+		int count = Math.min(payments.size(), maxOutputsPerTransaction);
+		while (start < payments.size())
+		{
+			final List<Payment> chunk = payments.subList(start, start + count);
+			final List<BigInteger> amounts = new ArrayList<BigInteger>(chunk.size());
+			for (final Payment payment : chunk)
+				amounts.add(payment.amount);
+
+			final FeeAwareCoinSelector.Selection selection = coinSelector.select(amounts, used, MAX_TRANSACTION_SIZE);
+			if (selection == null)
+			{
+				// many small inputs, so pay fewer recipients with this transaction
+				if (count == 1)
+					throw new IllegalStateException("cannot fund single payment within " + MAX_TRANSACTION_SIZE + " bytes");
+
+				count = (count + 1) / 2;
+				continue;
+			}
+
+			final Transaction tx = new Transaction(changeAddress.getParameters());
+			for (final Payment payment : chunk)
+				tx.addOutput(payment.amount, payment.address);
+
+			selections.add(selection);
+			sendRequests.add(selection.toSendRequest(tx, changeAddress));
+			used.addAll(selection.inputs);
+			amount = amount.add(selection.amount);
+			fee = fee.add(selection.fee);
+
+			start += count;
+			count = Math.min(payments.size() - start, maxOutputsPerTransaction);
+		}
+
+		return new Plan(selections, sendRequests, amount, fee);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * In-process replacement for a sticky broadcast: holds the latest value of some state and hands it to listeners on
+ * their executor. A listener registering late is given the current value right away. Values set faster than a listener
+ * consumes them are coalesced, so a listener only ever sees the newest one, and never the same one twice in a row.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class StateObservable<T>
+{
+	public interface Listener<T>
+	{
+		void onStateChanged(@Nonnull T state);
+	}
+
+	private final AtomicReference<T> state = new AtomicReference<T>();
+	private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+	/**
+	 * @return the previous state
+	 */
+	@CheckForNull
+	public T set(@Nonnull final T newState)
+	{
+		final T previousState = state.getAndSet(newState);
+
+		for (final Registration registration : registrations)
+			registration.schedule();
+
+		return previousState;
+	}
+
+	/**
+	 * Forgets the state, like removing a sticky broadcast. Listeners are not notified.
+	 */
+	public void clear()
+	{
+		state.set(null);
+	}
+
+	@CheckForNull
+	public T get()
+	{
+		return state.get();
+	}
+
+	public void addListener(@Nonnull final Listener<T> listener, @Nonnull final Executor executor)
+	{
+		final Registration registration = new Registration(listener, executor);
+		registrations.add(registration);
+
+		if (state.get() != null)
+			registration.schedule();
+	}
+
+	public void removeListener(@Nonnull final Listener<T> listener)
+	{
+		for (final Registration registration : registrations)
+		{
+			if (registration.listener == listener)
+			{
+				registration.removed = true;
+				registrations.remove(registration);
+			}
+		}
+	}
+
+	private final class Registration implements Runnable
+	{
+		private final Listener<T> listener;
+		private final Executor executor;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile boolean removed = false;
+		private T lastDelivered; // only accessed from executor
+
+		public Registration(@Nonnull final Listener<T> listener, @Nonnull final Executor executor)
+		{
+			this.listener = listener;
+			this.executor = executor;
+		}
+
+		public void schedule()
+		{
+			if (scheduled.compareAndSet(false, true))
+				executor.execute(this);
+		}
+
+		@Override
+		public void run()
+		{
+			scheduled.set(false);
+
+			final T current = state.get();
+			if (removed || current == null || current.equals(lastDelivered))
+				return;
+
+			lastDelivered = current;
+			listener.onStateChanged(current);
+		}
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Stores stack traces in a file of fixed size. The file is divided into slots, each holding one compressed trace along
+ * with how often and when it occurred. A trace identical to a stored one only bumps its count; otherwise the oldest
+ * slot is overwritten. Traces too large for a slot even when compressed are truncated.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class TraceRing
+{
+	private static final int MAGIC = 0x54524e47; // TRNG
+	private static final int FILE_HEADER_SIZE = 16;
+	private static final int VERSION_NAME_SIZE = 32;
+	private static final int SLOT_HEADER_SIZE = 8 + 4 + 8 + 8 + 4 + VERSION_NAME_SIZE + 4;
+	private static final int MIN_DATA_SIZE = 64;
+	private static final String TRUNCATED = "\n\t... truncated\n";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final int numSlots;
+	private final int slotSize;
+
+	public TraceRing(@Nonnull final File file, final int numSlots, final int slotSize)
+	{
+		if (slotSize < SLOT_HEADER_SIZE + MIN_DATA_SIZE)
+			throw new IllegalArgumentException("slot too small: " + slotSize);
+
+		this.file = file;
+		this.numSlots = numSlots;
+		this.slotSize = slotSize;
+	}
+
+	public synchronized boolean isEmpty()
+	{
+		return !file.exists();
+	}
+
+	public synchronized void add(@Nonnull final String trace, final long time, @Nonnull final String versionName, final int versionCode)
+			throws IOException
+	{
+		final long hash = hash(trace);
+		final RandomAccessFile raf = open();
+
+		try
+		{
+			// identical trace already stored?
+			for (int slot = 0; slot < numSlots; slot++)
+			{
+				raf.seek(slotOffset(slot));
+				final long slotHash = raf.readLong();
+				final int count = raf.readInt();
+				if (count > 0 && slotHash == hash)
+				{
+					raf.seek(slotOffset(slot) + 8);
+					raf.writeInt(count + 1);
+					raf.skipBytes(8); // first time
+					raf.writeLong(time);
+					return;
+				}
+			}
+
+			raf.seek(12);
+			final int next = raf.readInt();
+
+			final byte[] data = compress(trace);
+			final byte[] versionNameBytes = versionName.getBytes(UTF_8);
+
+			raf.seek(slotOffset(next));
+			raf.writeLong(hash);
+			raf.writeInt(1);
+			raf.writeLong(time);
+			raf.writeLong(time);
+			raf.writeInt(versionCode);
+			raf.write(Arrays.copyOf(versionNameBytes, VERSION_NAME_SIZE));
+			raf.writeInt(data.length);
+			raf.write(data);
+
+			raf.seek(12);
+			raf.writeInt((next + 1) % numSlots);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Appends all stored traces, oldest slot first. Only one slot is held in memory at a time.
+	 */
+	public synchronized void copyTo(@Nonnull final Appendable out) throws IOException
+	{
+		if (!file.exists())
+			return;
+
+		final RandomAccessFile raf = open();
+
+		try
+		{
+			raf.seek(12);
+			final int next = raf.readInt();
+			final byte[] versionNameBytes = new byte[VERSION_NAME_SIZE];
+			final byte[] data = new byte[slotSize - SLOT_HEADER_SIZE];
+			final char[] buf = new char[1024];
+
+			for (int i = 0; i < numSlots; i++)
+			{
+				final int slot = (next + i) % numSlots;
+				raf.seek(slotOffset(slot));
+				raf.readLong(); // hash
+				final int count = raf.readInt();
+				if (count <= 0)
+					continue;
+
+				final long firstTime = raf.readLong();
+				final long lastTime = raf.readLong();
+				final int versionCode = raf.readInt();
+				raf.readFully(versionNameBytes);
+				final int dataLength = raf.readInt();
+				if (dataLength < 0 || dataLength > data.length)
+					continue;
+				raf.readFully(data, 0, dataLength);
+
+				int versionNameLength = 0;
+				while (versionNameLength < VERSION_NAME_SIZE && versionNameBytes[versionNameLength] != 0)
+					versionNameLength++;
+				final String versionName = new String(versionNameBytes, 0, versionNameLength, UTF_8);
+
+				out.append(String.format("\n--- collected at %tF %tT %tz on version %s (%d)", lastTime, lastTime, lastTime, versionName,
+						versionCode));
+				if (count > 1)
+					out.append(String.format(", %d times since %tF %tT", count, firstTime, firstTime));
+				out.append('\n');
+
+				final Reader reader = new InputStreamReader(new InflaterInputStream(new ByteArrayInputStream(data, 0, dataLength)), UTF_8);
+				try
+				{
+					int read;
+					while (-1 != (read = reader.read(buf)))
+						out.append(new String(buf, 0, read));
+				}
+				catch (final IOException x)
+				{
+					out.append("(unreadable)\n");
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	public synchronized void clear()
+	{
+		file.delete();
+	}
+
+	private RandomAccessFile open() throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		final long size = FILE_HEADER_SIZE + (long) numSlots * slotSize;
+
+		boolean valid = raf.length() == size;
+		if (valid)
+		{
+			final int magic = raf.readInt();
+			final int fileNumSlots = raf.readInt();
+			final int fileSlotSize = raf.readInt();
+			final int next = raf.readInt();
+			valid = magic == MAGIC && fileNumSlots == numSlots && fileSlotSize == slotSize && next >= 0 && next < numSlots;
+		}
+
+		if (!valid)
+		{
+			// new, damaged or laid out differently: start over
+			raf.setLength(0);
+			raf.setLength(size);
+			raf.seek(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(numSlots);
+			raf.writeInt(slotSize);
+			raf.writeInt(0);
+		}
+
+		return raf;
+	}
+
+	private long slotOffset(final int slot)
+	{
+		return FILE_HEADER_SIZE + (long) slot * slotSize;
+	}
+
+	private byte[] compress(@Nonnull final String trace)
+	{
+		final int capacity = slotSize - SLOT_HEADER_SIZE;
+		String text = trace;
+
+		while (true)
+		{
+			final byte[] bytes = text.getBytes(UTF_8);
+			final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			deflater.setInput(bytes);
+			deflater.finish();
+
+			// one more byte than fits tells if it does not fit
+			final byte[] buf = new byte[capacity + 1];
+			int length = 0;
+			while (!deflater.finished() && length < buf.length)
+				length += deflater.deflate(buf, length, buf.length - length);
+			final boolean fits = deflater.finished() && length <= capacity;
+			deflater.end();
+
+			if (fits)
+				return Arrays.copyOf(buf, length);
+
+			final int keep = text.length() / 2;
+			text = (keep > TRUNCATED.length() ? trace.substring(0, keep) : "") + TRUNCATED;
+		}
+	}
+
+	private static long hash(@Nonnull final String trace)
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(trace.getBytes(UTF_8));
+			long hash = 0;
+			for (int i = 0; i < 8; i++)
+				hash = (hash << 8) | (digest[i] & 0xff);
+			return hash;
+		}
+		catch (final NoSuchAlgorithmException x)
+		{
+			throw new RuntimeException(x);
+		}
+	}
+}
@@ -25,10 +25,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Writer;
 import java.math.BigInteger;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -41,14 +37,11 @@ import android.graphics.Typeface;
 import android.text.Editable;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
-import android.text.format.DateUtils;
 import android.text.style.RelativeSizeSpan;
 import android.text.style.StyleSpan;
 import android.text.style.TypefaceSpan;
 
 import com.google.bitcoin.core.Address;
-import com.google.bitcoin.core.AddressFormatException;
-import com.google.bitcoin.core.DumpedPrivateKey;
 import com.google.bitcoin.core.ECKey;
 import com.google.bitcoin.core.ScriptException;
 import com.google.bitcoin.core.Sha256Hash;
@@ -59,6 +52,7 @@ import com.google.bitcoin.core.Wallet;
 import com.google.bitcoin.script.Script;
 
 import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.core.KeyFiles;
 
 /**
  * @author Andreas Schildbach, Litecoin Dev Team
@@ -210,56 +204,20 @@ public class WalletUtils
 
 	public static void writeKeys(@Nonnull final Writer out, @Nonnull final List<ECKey> keys) throws IOException
 	{
-		final DateFormat format = Iso8601Format.newDateTimeFormatT();
-
-		out.write("# KEEP YOUR PRIVATE KEYS SAFE! Anyone who can read this can spend your Bitcoins.\n");
+		KeyFiles.writeKeys(out, keys, Constants.NETWORK_PARAMETERS);
+	}
 
-		for (final ECKey key : keys)
-		{
-			out.write(key.getPrivateKeyEncoded(Constants.NETWORK_PARAMETERS).toString());
-			if (key.getCreationTimeSeconds() != 0)
-			{
-				out.write(' ');
-				out.write(format.format(new Date(key.getCreationTimeSeconds() * DateUtils.SECOND_IN_MILLIS)));
-			}
-			out.write('\n');
-		}
+	/**
+	 * Writes keys in the format of {@link #writeKeys(Writer, List)}, but without the header, for appending to a file.
+	 */
+	public static void appendKeys(@Nonnull final Writer out, @Nonnull final List<ECKey> keys) throws IOException
+	{
+		KeyFiles.appendKeys(out, keys, Constants.NETWORK_PARAMETERS);
 	}
 
 	public static List<ECKey> readKeys(@Nonnull final BufferedReader in) throws IOException
 	{
-		try
-		{
-			final DateFormat format = Iso8601Format.newDateTimeFormatT();
-
-			final List<ECKey> keys = new LinkedList<ECKey>();
-
-			while (true)
-			{
-				final String line = in.readLine();
-				if (line == null)
-					break; // eof
-				if (line.trim().isEmpty() || line.charAt(0) == '#')
-					continue; // skip comment
-
-				final String[] parts = line.split(" ");
-
-				final ECKey key = new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, parts[0]).getKey();
-				key.setCreationTimeSeconds(parts.length >= 2 ? format.parse(parts[1]).getTime() / DateUtils.SECOND_IN_MILLIS : 0);
-
-				keys.add(key);
-			}
-
-			return keys;
-		}
-		catch (final AddressFormatException x)
-		{
-			throw new IOException("AddressFormatException when reading keys", x);
-		}
-		catch (final ParseException x)
-		{
-			throw new IOException("ParseException when reading keys", x);
-		}
+		return KeyFiles.readKeys(in, Constants.NETWORK_PARAMETERS);
 	}
 
 	public static final FileFilter KEYS_FILE_FILTER = new FileFilter()
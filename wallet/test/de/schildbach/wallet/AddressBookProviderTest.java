@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class AddressBookProviderTest
+{
+	@Test
+	public void matchExpression() throws Exception
+	{
+		assertEquals("LVcY*", AddressBookProvider.matchExpression("LVcY"));
+		assertEquals("bob* shop*", AddressBookProvider.matchExpression("bob shop"));
+		assertEquals("Bob* s* shop*", AddressBookProvider.matchExpression("  Bob's   shop "));
+		assertEquals("caf\u00e9*", AddressBookProvider.matchExpression("caf\u00e9"));
+	}
+
+	@Test
+	public void matchExpressionStripsSyntax() throws Exception
+	{
+		assertEquals("a* or* b*", AddressBookProvider.matchExpression("\"a\" OR -b*"));
+		assertNull(AddressBookProvider.matchExpression(""));
+		assertNull(AddressBookProvider.matchExpression(" *:-() "));
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class AddressLabelCacheTest
+{
+	private final Map<String, String> addressBook = new HashMap<String, String>();
+	private final List<List<String>> queries = new ArrayList<List<String>>();
+	private final QueueExecutor backgroundExecutor = new QueueExecutor();
+	private final QueueExecutor mainExecutor = new QueueExecutor();
+	private AddressLabelCache cache;
+
+	@Before
+	public void setUp()
+	{
+		addressBook.put("a", "Alice");
+		addressBook.put("b", "Bob");
+
+		cache = new AddressLabelCache(new AddressLabelCache.LabelSource()
+		{
+			@Override
+			public Map<String, String> queryLabels(final List<String> addresses)
+			{
+				queries.add(new ArrayList<String>(addresses));
+				final Map<String, String> result = new HashMap<String, String>();
+				for (final String address : addresses)
+					if (addressBook.containsKey(address))
+						result.put(address, addressBook.get(address));
+				return result;
+			}
+		}, backgroundExecutor, mainExecutor);
+	}
+
+	@Test
+	public void cachedLabelNeverQueries()
+	{
+		assertNull(cache.getCachedLabel("a"));
+		assertEquals(0, queries.size());
+	}
+
+	@Test
+	public void prefetchBatchesMisses()
+	{
+		final List<String> addresses = new ArrayList<String>();
+		for (int i = 0; i < 450; i++)
+			addresses.add("x" + i);
+		addresses.add("a");
+		addresses.add("a");
+
+		cache.prefetch(addresses);
+		assertEquals(3, queries.size());
+		assertEquals("Alice", cache.getCachedLabel("a"));
+		assertNull(cache.getCachedLabel("x0"));
+
+		// addresses without label are cached as well
+		cache.prefetch(addresses);
+		assertEquals(3, queries.size());
+		assertNull(cache.resolveLabel("x1"));
+		assertEquals(3, queries.size());
+	}
+
+	@Test
+	public void prefetchInBackground()
+	{
+		final boolean[] called = new boolean[1];
+		cache.prefetchInBackground(Arrays.asList("a", "b"), new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				called[0] = true;
+			}
+		});
+
+		assertEquals(0, queries.size());
+		backgroundExecutor.runAll();
+		assertEquals(1, queries.size());
+		assertEquals("Bob", cache.getCachedLabel("b"));
+		assertTrue(!called[0]);
+		mainExecutor.runAll();
+		assertTrue(called[0]);
+	}
+
+	@Test
+	public void invalidateClearsAndNotifies()
+	{
+		final int[] notified = new int[1];
+		cache.addOnLabelsChangedListener(new AddressLabelCache.OnLabelsChangedListener()
+		{
+			@Override
+			public void onLabelsChanged()
+			{
+				notified[0]++;
+			}
+		});
+
+		cache.prefetch(Arrays.asList("a"));
+		addressBook.put("a", "Anna");
+		cache.invalidate();
+		assertNull(cache.getCachedLabel("a"));
+		mainExecutor.runAll();
+		assertEquals(1, notified[0]);
+
+		assertEquals("Anna", cache.resolveLabel("a"));
+		assertEquals("Anna", cache.getCachedLabel("a"));
+	}
+
+	@Test
+	public void staleResultIsDropped()
+	{
+		cache = new AddressLabelCache(new AddressLabelCache.LabelSource()
+		{
+			@Override
+			public Map<String, String> queryLabels(final List<String> addresses)
+			{
+				// a change arrives while the query is running
+				cache.invalidate();
+				final Map<String, String> result = new HashMap<String, String>();
+				result.put("a", "Alice");
+				return result;
+			}
+		}, backgroundExecutor, mainExecutor);
+
+		cache.prefetch(Arrays.asList("a"));
+		assertNull(cache.getCachedLabel("a"));
+	}
+
+	private static final class QueueExecutor implements Executor
+	{
+		private final List<Runnable> queue = new LinkedList<Runnable>();
+
+		@Override
+		public void execute(final Runnable command)
+		{
+			queue.add(command);
+		}
+
+		public void runAll()
+		{
+			while (!queue.isEmpty())
+				queue.remove(0).run();
+		}
+	}
+}
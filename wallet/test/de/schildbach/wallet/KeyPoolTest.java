@@ -0,0 +1,302 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Wallet;
+
+import de.schildbach.wallet.core.KeyFiles;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class KeyPoolTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+	private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private File dir;
+	private File poolFile;
+	private Wallet wallet;
+	private KeyBackup keyBackup;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("keypool", "");
+		dir.delete();
+		dir.mkdir();
+		poolFile = new File(dir, "key.pool");
+
+		wallet = new Wallet(PARAMS);
+		wallet.addKey(new ECKey());
+
+		keyBackup = new KeyBackup(PARAMS, dir, "key-backup", new KeyBackup.KeySource()
+		{
+			@Override
+			public List<ECKey> getKeys()
+			{
+				return wallet.getKeys();
+			}
+		});
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void loadDropsKeysAlreadyInWallet() throws Exception
+	{
+		final List<ECKey> keys = Arrays.asList(new ECKey(), new ECKey(), new ECKey());
+		write(poolFile, keys);
+		// handed out, but the pool was not saved afterwards
+		wallet.addKey(keys.get(0));
+
+		final RecordingBackup backup = new RecordingBackup();
+		final KeyPool pool = new KeyPool(poolFile, 2, backup, wallet);
+		pool.awaitRefill();
+
+		assertEquals(addresses(keys.subList(1, 3)), addresses(pool.getKeys()));
+		assertTrue(backup.newKeys.isEmpty());
+		assertEquals(addresses(keys.subList(1, 3)), addresses(read(poolFile)));
+	}
+
+	@Test
+	public void refillWritesThenAppendsToTodaysBackup() throws Exception
+	{
+		final KeyPool pool = new KeyPool(poolFile, 3, keyBackup, wallet);
+		pool.awaitRefill();
+
+		final List<ECKey> expected = new ArrayList<ECKey>(wallet.getKeys());
+		expected.addAll(pool.getKeys());
+		assertEquals(addresses(expected), addresses(read(todaysBackup())));
+
+		final ECKey key = pool.take();
+		pool.awaitRefill();
+
+		// the taken key stays in the backup, the new pooled key is appended
+		final List<ECKey> pooledKeys = pool.getKeys();
+		assertEquals(3, pooledKeys.size());
+		expected.add(pooledKeys.get(2));
+		assertEquals(addresses(expected), addresses(read(todaysBackup())));
+		assertTrue(addresses(read(todaysBackup())).contains(address(key)));
+	}
+
+	@Test
+	public void staleBackupIsRewritten() throws Exception
+	{
+		// file names repeat every 100 days
+		final File file = todaysBackup();
+		write(file, Arrays.asList(new ECKey()));
+		assertTrue(file.setLastModified(System.currentTimeMillis() - 100 * DAY_IN_MILLIS));
+
+		final KeyPool pool = new KeyPool(poolFile, 2, keyBackup, wallet);
+		pool.awaitRefill();
+
+		final List<ECKey> expected = new ArrayList<ECKey>(wallet.getKeys());
+		expected.addAll(pool.getKeys());
+		assertEquals(addresses(expected), addresses(read(file)));
+	}
+
+	@Test
+	public void rewriteAddsImportedKeys() throws Exception
+	{
+		final KeyPool pool = new KeyPool(poolFile, 2, keyBackup, wallet);
+		pool.awaitRefill();
+
+		final ECKey imported = new ECKey();
+		wallet.addKey(imported);
+		keyBackup.rewrite(pool.getKeys());
+
+		final List<String> backedUp = addresses(read(todaysBackup()));
+		assertEquals(wallet.getKeychainSize() + pool.size(), backedUp.size());
+		assertTrue(backedUp.contains(address(imported)));
+	}
+
+	@Test
+	public void emptyPoolBacksUpOnPoolThread() throws Exception
+	{
+		final RecordingBackup backup = new RecordingBackup();
+		final KeyPool pool = new KeyPool(poolFile, 0, backup, wallet);
+		pool.awaitRefill();
+
+		final ECKey key = pool.take();
+		pool.awaitRefill();
+
+		assertEquals(1, backup.newKeys.size());
+		assertEquals(Collections.singletonList(address(key)), addresses(backup.newKeys.get(0)));
+		assertNotSame(Thread.currentThread(), backup.threads.get(0));
+		assertEquals("key pool", backup.threads.get(0).getName());
+		assertEquals(0, pool.size());
+	}
+
+	@Test(expected = IOException.class)
+	public void emptyPoolHandsOutNoKeyIfBackupFails() throws Exception
+	{
+		final KeyPool pool = new KeyPool(poolFile, 0, new KeyPool.Backup()
+		{
+			@Override
+			public void append(final List<ECKey> newKeys, final List<ECKey> pooledKeys) throws IOException
+			{
+				throw new IOException("disk full");
+			}
+		}, wallet);
+
+		pool.take();
+	}
+
+	@Test
+	public void failedBackupKeepsKeysOutOfPool() throws Exception
+	{
+		final KeyPool pool = new KeyPool(poolFile, 2, new KeyPool.Backup()
+		{
+			@Override
+			public void append(final List<ECKey> newKeys, final List<ECKey> pooledKeys) throws IOException
+			{
+				throw new IOException("disk full");
+			}
+		}, wallet);
+		pool.awaitRefill();
+
+		assertEquals(0, pool.size());
+		// nothing to save either
+		assertFalse(poolFile.exists());
+	}
+
+	@Test
+	public void concurrentAppendsLoseNoKeys() throws Exception
+	{
+		keyBackup.rewrite(Collections.<ECKey> emptyList());
+
+		final List<ECKey> appended = Collections.synchronizedList(new LinkedList<ECKey>());
+		final List<Thread> threads = new LinkedList<Thread>();
+		for (int t = 0; t < 4; t++)
+		{
+			final Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						for (int i = 0; i < 25; i++)
+						{
+							final List<ECKey> newKeys = Collections.singletonList(new ECKey());
+							keyBackup.append(newKeys, newKeys);
+							appended.addAll(newKeys);
+						}
+					}
+					catch (final IOException x)
+					{
+						throw new RuntimeException(x);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : threads)
+			thread.join();
+
+		final List<String> backedUp = addresses(read(todaysBackup()));
+		assertEquals(wallet.getKeychainSize() + 100, backedUp.size());
+		assertTrue(backedUp.containsAll(addresses(appended)));
+	}
+
+	private File todaysBackup()
+	{
+		return keyBackup.getFile(System.currentTimeMillis() / DAY_IN_MILLIS);
+	}
+
+	private static void write(final File file, final List<ECKey> keys) throws IOException
+	{
+		final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		KeyFiles.writeKeys(out, keys, PARAMS);
+		out.close();
+	}
+
+	private static List<ECKey> read(final File file) throws IOException
+	{
+		final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try
+		{
+			return KeyFiles.readKeys(in, PARAMS);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static List<String> addresses(final List<ECKey> keys)
+	{
+		final List<String> addresses = new ArrayList<String>(keys.size());
+		for (final ECKey key : keys)
+			addresses.add(address(key));
+		return addresses;
+	}
+
+	private static String address(final ECKey key)
+	{
+		return key.toAddress(PARAMS).toString();
+	}
+
+	private static final class RecordingBackup implements KeyPool.Backup
+	{
+		private final List<List<ECKey>> newKeys = new LinkedList<List<ECKey>>();
+		private final List<Thread> threads = new LinkedList<Thread>();
+
+		@Override
+		public synchronized void append(final List<ECKey> newKeys, final List<ECKey> pooledKeys)
+		{
+			this.newKeys.add(new ArrayList<ECKey>(newKeys));
+			this.threads.add(Thread.currentThread());
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class ReverseDnsResolverTest
+{
+	private File cacheFile;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		cacheFile = File.createTempFile("reverse-dns", ".cache");
+		cacheFile.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		cacheFile.delete();
+	}
+
+	@Test
+	public void resolveOnceAndPersist() throws Exception
+	{
+		final InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+		final CountingResolver resolver = new CountingResolver(cacheFile, 0);
+
+		// asked repeatedly while the lookup is running
+		for (int i = 0; i < 100; i++)
+			resolver.getHostname(address);
+
+		final String hostname = await(resolver, address);
+		assertEquals("host-10.0.0.1.example.com", hostname);
+		assertEquals(1, resolver.numLookups.get());
+
+		// a new resolver, like after a restart, answers from the file
+		for (int i = 0; i < 1000 && !cacheFile.exists(); i++)
+			Thread.sleep(10);
+		final CountingResolver restarted = new CountingResolver(cacheFile, 0);
+		assertEquals(hostname, restarted.getHostname(address));
+		assertEquals(0, restarted.numLookups.get());
+	}
+
+	@Test
+	public void rememberMissingNames() throws Exception
+	{
+		final InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		final CountingResolver resolver = new CountingResolver(cacheFile, 0)
+		{
+			@Override
+			protected String lookup(final InetAddress address)
+			{
+				super.lookup(address);
+				return null;
+			}
+		};
+
+		assertNull(resolver.getHostname(address));
+		assertTrue(resolver.done.await(10, TimeUnit.SECONDS));
+		Thread.sleep(100); // let the result be stored
+
+		assertNull(resolver.getHostname(address));
+		assertNull(resolver.getHostname(address));
+		assertEquals(1, resolver.numLookups.get());
+	}
+
+	@Test
+	public void resolveConcurrently() throws Exception
+	{
+		final int numAddresses = 8;
+		final long lookupMs = 300;
+		final CountingResolver resolver = new CountingResolver(cacheFile, lookupMs);
+
+		final long start = System.currentTimeMillis();
+		for (int i = 0; i < numAddresses; i++)
+			resolver.getHostname(InetAddress.getByAddress(new byte[] { 10, 0, 1, (byte) i }));
+		for (int i = 0; i < numAddresses; i++)
+			await(resolver, InetAddress.getByAddress(new byte[] { 10, 0, 1, (byte) i }));
+		final long time = System.currentTimeMillis() - start;
+
+		assertEquals(numAddresses, resolver.numLookups.get());
+		assertTrue("took " + time + " ms", time < numAddresses * lookupMs);
+	}
+
+	private static String await(final ReverseDnsResolver resolver, final InetAddress address) throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline)
+		{
+			final String hostname = resolver.getHostname(address);
+			if (hostname != null)
+				return hostname;
+			Thread.sleep(10);
+		}
+		throw new AssertionError("not resolved: " + address);
+	}
+
+	private static class CountingResolver extends ReverseDnsResolver
+	{
+		public final AtomicInteger numLookups = new AtomicInteger();
+		public final CountDownLatch done = new CountDownLatch(1);
+		private final long lookupMs;
+
+		public CountingResolver(final File cacheFile, final long lookupMs)
+		{
+			super(cacheFile);
+			this.lookupMs = lookupMs;
+		}
+
+		@Override
+		protected String lookup(final InetAddress address)
+		{
+			numLookups.incrementAndGet();
+			try
+			{
+				Thread.sleep(lookupMs);
+			}
+			catch (final InterruptedException x)
+			{
+				Thread.currentThread().interrupt();
+			}
+			done.countDown();
+			return "host-" + address.getHostAddress() + ".example.com";
+		}
+	}
+}
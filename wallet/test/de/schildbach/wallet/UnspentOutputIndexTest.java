@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.AbstractBlockChain.NewBlockType;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class UnspentOutputIndexTest
+{
+	private final NetworkParameters params = LitecoinParams.get();
+	private Wallet wallet;
+	private Address address;
+	private UnspentOutputIndex index;
+
+	@Before
+	public void setUp()
+	{
+		wallet = new Wallet(params);
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+		address = key.toAddress(params);
+
+		index = new UnspentOutputIndex(wallet);
+		index.awaitReady();
+	}
+
+	@Test
+	public void largestFirst() throws Exception
+	{
+		receive(2, 3, 1);
+
+		final List<BigInteger> values = new ArrayList<BigInteger>();
+		for (final Iterator<TransactionOutput> i = index.largestFirst(); i.hasNext();)
+			values.add(i.next().getValue());
+
+		assertEquals(3, values.size());
+		assertEquals(BigInteger.valueOf(3000000), values.get(0));
+		assertEquals(BigInteger.valueOf(2000000), values.get(1));
+		assertEquals(BigInteger.valueOf(1000000), values.get(2));
+		assertEquals(BigInteger.valueOf(6000000), index.getBalance());
+		assertEquals(BigInteger.valueOf(6000000), index.getBalance(address));
+	}
+
+	@Test
+	public void equalValuesAreKeptApart() throws Exception
+	{
+		receive(1, 1, 1);
+
+		assertEquals(3, index.size());
+		assertEquals(3, index.getOutputs().size());
+	}
+
+	@Test
+	public void iteratorSurvivesRemoval() throws Exception
+	{
+		receive(3, 2, 1);
+
+		final Iterator<TransactionOutput> i = index.largestFirst();
+		assertEquals(BigInteger.valueOf(3000000), i.next().getValue());
+
+		wallet.clearTransactions(0);
+		index.rebuild();
+		index.awaitReady();
+
+		assertFalse(i.hasNext());
+	}
+
+	@Test
+	public void rebuildAfterClear() throws Exception
+	{
+		receive(1, 2);
+		assertEquals(2, index.size());
+
+		// clearing fires no event, so the index only notices on rebuild
+		wallet.clearTransactions(0);
+		index.rebuild();
+		index.awaitReady();
+
+		assertTrue(index.isReady());
+		assertEquals(0, index.size());
+		assertEquals(BigInteger.ZERO, index.getBalance());
+		assertEquals(BigInteger.ZERO, index.getBalance(address));
+	}
+
+	@Test
+	public void rebuildPicksUpExistingOutputs() throws Exception
+	{
+		receive(1, 2);
+
+		final UnspentOutputIndex newIndex = new UnspentOutputIndex(wallet);
+		newIndex.awaitReady();
+
+		assertEquals(2, newIndex.size());
+		assertEquals(BigInteger.valueOf(3000000), newIndex.getBalance());
+	}
+
+	private void receive(final long... millis) throws Exception
+	{
+		final StoredBlock block = new StoredBlock(params.getGenesisBlock().cloneAsHeader(), BigInteger.ONE, 1);
+
+		for (final long value : millis)
+		{
+			final Transaction tx = new Transaction(params);
+			tx.addInput(new Transaction(params).addOutput(BigInteger.valueOf(value * 1000000), new ECKey().toAddress(params)));
+			tx.addOutput(BigInteger.valueOf(value * 1000000), address);
+			wallet.receiveFromBlock(tx, block, NewBlockType.BEST_CHAIN, 0);
+		}
+	}
+}
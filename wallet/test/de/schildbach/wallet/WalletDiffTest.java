@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.bitcoin.core.Sha256Hash;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class WalletDiffTest
+{
+	private static final Sha256Hash TX1 = Sha256Hash.create(new byte[] { 1 });
+	private static final Sha256Hash TX2 = Sha256Hash.create(new byte[] { 2 });
+	private static final Sha256Hash TX3 = Sha256Hash.create(new byte[] { 3 });
+
+	@Test
+	public void addedThenRemovedCancelsOut()
+	{
+		final WalletDiff diff = diff(set(TX1), set(), set(), 5, false).merge(diff(set(), set(TX1), set(), -5, false));
+
+		assertTrue(diff.added.isEmpty());
+		assertTrue(diff.removed.isEmpty());
+		assertTrue(diff.isEmpty());
+	}
+
+	@Test
+	public void removedThenAddedIsAdded()
+	{
+		final WalletDiff diff = diff(set(), set(TX1), set(), 0, true).merge(diff(set(TX1), set(), set(), 0, false));
+
+		assertEquals(set(TX1), diff.added);
+		assertTrue(diff.removed.isEmpty());
+		assertTrue(diff.reorganized);
+	}
+
+	@Test
+	public void changedExcludesAddedAndRemoved()
+	{
+		final WalletDiff diff = diff(set(TX1), set(), set(TX2, TX3), 0, false).merge(diff(set(), set(TX3), set(TX1, TX2), 0, false));
+
+		assertEquals(set(TX1), diff.added);
+		assertEquals(set(TX3), diff.removed);
+		assertEquals(set(TX2), diff.changed);
+		assertTrue(diff.isStructural());
+	}
+
+	@Test
+	public void confidenceOnly()
+	{
+		final WalletDiff diff = diff(set(), set(), set(TX1), 0, false).merge(diff(set(), set(), set(TX2), 3, false));
+
+		assertEquals(set(TX1, TX2), diff.changed);
+		assertEquals(BigInteger.valueOf(3), diff.balanceDelta);
+		assertFalse(diff.isStructural());
+		assertFalse(diff.isEmpty());
+	}
+
+	private static WalletDiff diff(final Set<Sha256Hash> added, final Set<Sha256Hash> removed, final Set<Sha256Hash> changed,
+			final long balanceDelta, final boolean reorganized)
+	{
+		return new WalletDiff(added, removed, changed, BigInteger.valueOf(balanceDelta), reorganized);
+	}
+
+	private static Set<Sha256Hash> set(final Sha256Hash... hashes)
+	{
+		return hashes.length == 0 ? Collections.<Sha256Hash> emptySet() : new HashSet<Sha256Hash>(Arrays.asList(hashes));
+	}
+}
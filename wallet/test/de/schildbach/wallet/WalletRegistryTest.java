@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.Wallet;
+
+import de.schildbach.wallet.core.KeyFiles;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class WalletRegistryTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("wallets", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void createAndReload() throws Exception
+	{
+		final WalletRegistry registry = new WalletRegistry(PARAMS, dir, null);
+		final List<String> added = new LinkedList<String>();
+		registry.addOnWalletAddedListener(new WalletRegistry.OnWalletAddedListener()
+		{
+			@Override
+			public void onWalletAdded(final String name, final Wallet wallet)
+			{
+				added.add(name);
+			}
+		});
+
+		final Wallet hot = registry.create("hot");
+		registry.create("escrow");
+		assertEquals(Arrays.asList("hot", "escrow"), added);
+		assertEquals(Arrays.asList("escrow", "hot"), registry.getNames());
+		assertSame(hot, registry.get("hot"));
+		assertNull(registry.get("cold"));
+		registry.saveAll();
+
+		final WalletRegistry reloaded = new WalletRegistry(PARAMS, dir, null);
+		assertEquals(Arrays.asList("escrow", "hot"), reloaded.getNames());
+		assertEquals(hot.getKeys().get(0).toAddress(PARAMS), reloaded.get("hot").getKeys().get(0).toAddress(PARAMS));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectDuplicateName() throws Exception
+	{
+		final WalletRegistry registry = new WalletRegistry(PARAMS, dir, null);
+		registry.create("hot");
+		registry.create("hot");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectBadName() throws Exception
+	{
+		new WalletRegistry(PARAMS, dir, null).create("../hot");
+	}
+
+	@Test
+	public void createWatchingAndReload() throws Exception
+	{
+		final ECKey coldKey = new ECKey();
+		final WalletRegistry registry = new WalletRegistry(PARAMS, dir, null);
+		final Wallet hot = registry.create("hot");
+		final Wallet cold = registry.createWatching("cold", WalletRegistry.parsePublicKeys(Utils.bytesToHexString(coldKey.getPubKey())));
+
+		assertFalse(WalletRegistry.isWatching(hot));
+		assertTrue(WalletRegistry.isWatching(cold));
+		assertTrue(cold.isPubKeyMine(coldKey.getPubKey()));
+
+		// only keys that can spend need exporting
+		final List<ECKey> privateKeys = registry.getPrivateKeys();
+		assertEquals(1, privateKeys.size());
+		assertArrayEquals(hot.getKeys().get(0).getPubKey(), privateKeys.get(0).getPubKey());
+
+		registry.saveAll();
+
+		final WalletRegistry reloaded = new WalletRegistry(PARAMS, dir, null);
+		assertTrue(WalletRegistry.isWatching(reloaded.get("cold")));
+		assertEquals(coldKey.toAddress(PARAMS), reloaded.get("cold").getKeys().get(0).toAddress(PARAMS));
+	}
+
+	@Test
+	public void backupKeysPerWallet() throws Exception
+	{
+		final WalletRegistry registry = new WalletRegistry(PARAMS, dir, null);
+		final Wallet hot = registry.create("hot");
+		registry.createWatching("cold", WalletRegistry.parsePublicKeys(Utils.bytesToHexString(new ECKey().getPubKey())));
+
+		final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, "hot.keys")),
+				Charset.forName("UTF-8")));
+		final List<ECKey> backedUp;
+		try
+		{
+			backedUp = KeyFiles.readKeys(in, PARAMS);
+		}
+		finally
+		{
+			in.close();
+		}
+		assertEquals(1, backedUp.size());
+		assertArrayEquals(hot.getKeys().get(0).getPubKey(), backedUp.get(0).getPubKey());
+
+		// nothing to back up for a watching wallet
+		assertFalse(new File(dir, "cold.keys").exists());
+	}
+
+	@Test
+	public void parsePublicKeys() throws Exception
+	{
+		final ECKey key1 = new ECKey();
+		final ECKey key2 = new ECKey();
+		final String hex1 = Utils.bytesToHexString(key1.getPubKey());
+		final String hex2 = Utils.bytesToHexString(key2.getPubKey());
+
+		final List<ECKey> keys = WalletRegistry.parsePublicKeys(" " + hex1 + ",\n" + hex2 + " ");
+		assertEquals(2, keys.size());
+		assertArrayEquals(key1.getPubKey(), keys.get(0).getPubKey());
+		assertFalse(keys.get(1).hasPrivKey());
+
+		assertEquals(0, WalletRegistry.parsePublicKeys("  ").size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectAddressAsPublicKey() throws Exception
+	{
+		WalletRegistry.parsePublicKeys("LKDxGDJq5fF4FohAB8zJH24mDDNHDNtqsE");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectTruncatedPublicKey() throws Exception
+	{
+		WalletRegistry.parsePublicKeys(Utils.bytesToHexString(new ECKey().getPubKey()).substring(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectWatchingWithoutKeys() throws Exception
+	{
+		new WalletRegistry(PARAMS, dir, null).createWatching("cold", Collections.<ECKey> emptyList());
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.BloomFilter;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+
+/**
+ * Measures what watching 100k addresses costs: import, saving, building the bloom filter, and matching transactions
+ * against the watched set. The false positive rate of the filter is measured as well, as it determines how many
+ * unrelated transactions peers will send. Only correctness is asserted, so the report can be used to compare changes
+ * without failing the build.
+ *
+ * @author Litecoin Dev Team
+ */
+public class WatchedAddressesBenchmarkTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+	private static final int NUM_ADDRESSES = 100000;
+	private static final int NUM_TRANSACTIONS = 20000;
+	private static final double FALSE_POSITIVE_RATE = 0.0005; // as used by the peer group
+
+	private static final Logger log = LoggerFactory.getLogger(WatchedAddressesBenchmarkTest.class);
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile("watched", ".addresses");
+		file.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void watch100k()
+	{
+		final List<Address> addresses = randomAddresses(NUM_ADDRESSES, 1);
+		final List<Address> otherAddresses = randomAddresses(NUM_TRANSACTIONS, 2);
+
+		final WatchedAddresses watched = new WatchedAddresses(PARAMS, file);
+		watched.load();
+
+		long start = System.nanoTime();
+		assertEquals(NUM_ADDRESSES, watched.add(addresses));
+		final long importTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		watched.saveIfDirty();
+		final long saveTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final BloomFilter filter = watched.getBloomFilter(watched.getBloomFilterElementCount(), FALSE_POSITIVE_RATE, 0);
+		final long filterTime = System.nanoTime() - start;
+
+		int numFalsePositives = 0;
+		for (final Address address : otherAddresses)
+			if (filter.contains(address.getHash160()))
+				numFalsePositives++;
+
+		// half of the transactions pay to a watched address, all of them have a change output
+		final List<Transaction> transactions = new ArrayList<Transaction>(NUM_TRANSACTIONS);
+		for (int i = 0; i < NUM_TRANSACTIONS; i++)
+		{
+			final Transaction tx = new Transaction(PARAMS);
+			tx.addOutput(BigInteger.valueOf(100000), i % 2 == 0 ? addresses.get(i) : otherAddresses.get(i));
+			tx.addOutput(BigInteger.valueOf(50000), otherAddresses.get(NUM_TRANSACTIONS - 1 - i));
+			transactions.add(tx);
+		}
+
+		// warm up
+		for (final Transaction tx : transactions)
+			watched.matches(tx);
+
+		start = System.nanoTime();
+		int numMatches = 0;
+		for (final Transaction tx : transactions)
+			if (watched.matches(tx))
+				numMatches++;
+		final long matchTime = System.nanoTime() - start;
+
+		assertEquals(NUM_TRANSACTIONS / 2, numMatches);
+		assertTrue(watched.isWatched(addresses.get(NUM_ADDRESSES - 1)));
+
+		final WatchedAddresses reloaded = new WatchedAddresses(PARAMS, file);
+		start = System.nanoTime();
+		reloaded.load();
+		final long loadTime = System.nanoTime() - start;
+		assertEquals(NUM_ADDRESSES, reloaded.size());
+
+		log.info("watched addresses benchmark, {} addresses:", NUM_ADDRESSES);
+		log.info(String.format("  import                %7.1f ms", importTime / 1000000.0));
+		log.info(String.format("  save                  %7.1f ms, %d bytes", saveTime / 1000000.0, file.length()));
+		log.info(String.format("  load                  %7.1f ms", loadTime / 1000000.0));
+		log.info(String.format("  bloom filter build    %7.1f ms, %d bytes", filterTime / 1000000.0, filter.bitcoinSerialize().length));
+		log.info(String.format("  filter false pos.     %7.3f %%", numFalsePositives * 100.0 / otherAddresses.size()));
+		log.info(String.format("  match per transaction %7.0f ns", (double) matchTime / NUM_TRANSACTIONS));
+	}
+
+	private static List<Address> randomAddresses(final int count, final long seed)
+	{
+		final Random random = new Random(seed);
+		final List<Address> addresses = new ArrayList<Address>(count);
+		for (int i = 0; i < count; i++)
+		{
+			final byte[] hash160 = new byte[20];
+			random.nextBytes(hash160);
+			addresses.add(new Address(PARAMS, hash160));
+		}
+		return addresses;
+	}
+}
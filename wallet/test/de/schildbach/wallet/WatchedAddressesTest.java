@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.AbstractBlockChain.NewBlockType;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Transaction;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class WatchedAddressesTest
+{
+	private static final NetworkParameters PARAMS = LitecoinParams.get();
+
+	private File file;
+	private WatchedAddresses watched;
+	private Address address1;
+	private Address address2;
+	private int numChanges;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile("watched", ".addresses");
+		file.delete();
+
+		watched = new WatchedAddresses(PARAMS, file);
+		watched.addOnChangedListener(new WatchedAddresses.OnChangedListener()
+		{
+			@Override
+			public void onChanged()
+			{
+				numChanges++;
+			}
+		});
+
+		address1 = new ECKey().toAddress(PARAMS);
+		address2 = new ECKey().toAddress(PARAMS);
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void addNotifiesOnce() throws Exception
+	{
+		assertEquals(2, watched.add(Arrays.asList(address1, address2)));
+		assertEquals(1, numChanges);
+
+		// nothing new
+		assertEquals(0, watched.add(Arrays.asList(address1)));
+		assertEquals(1, numChanges);
+
+		assertEquals(2, watched.size());
+		assertEquals(address1, watched.getAddress(indexOf(address1)));
+		assertEquals(0, watched.getReceived(indexOf(address1)));
+	}
+
+	@Test
+	public void totals() throws Exception
+	{
+		watched.add(Arrays.asList(address1, address2));
+		numChanges = 0;
+
+		final StoredBlock block = block(1);
+		watched.getBlockChainListener().receiveFromBlock(payment(address1, 300), block, NewBlockType.BEST_CHAIN, 0);
+		watched.getBlockChainListener().receiveFromBlock(payment(address1, 200), block, NewBlockType.BEST_CHAIN, 1);
+
+		assertEquals(2, numChanges);
+		assertEquals(500, watched.getReceived(indexOf(address1)));
+		assertEquals(Long.valueOf(500), watched.getReceived(address1));
+		assertEquals(Long.valueOf(0), watched.getReceived(address2));
+
+		final WatchedAddresses.Totals totals = watched.getTotals();
+		assertEquals(2, totals.numAddresses);
+		assertEquals(1, totals.numPaid);
+		assertEquals(500, totals.received);
+	}
+
+	@Test
+	public void sideChainCountsAfterReorganize() throws Exception
+	{
+		watched.add(Arrays.asList(address1));
+		numChanges = 0;
+
+		final StoredBlock bestBlock = block(1);
+		final StoredBlock sideBlock = block(2);
+		watched.getBlockChainListener().receiveFromBlock(payment(address1, 300), bestBlock, NewBlockType.BEST_CHAIN, 0);
+		watched.getBlockChainListener().receiveFromBlock(payment(address1, 100), sideBlock, NewBlockType.SIDE_CHAIN, 0);
+
+		assertEquals(1, numChanges);
+		assertEquals(300, watched.getTotals().received);
+
+		watched.getBlockChainListener().reorganize(block(0), Collections.singletonList(bestBlock), Collections.singletonList(sideBlock));
+
+		assertEquals(2, numChanges);
+		assertEquals(100, watched.getTotals().received);
+	}
+
+	@Test
+	public void unwatchedAddress() throws Exception
+	{
+		assertNull(watched.getReceived(address1));
+		assertEquals(0, watched.getTotals().numAddresses);
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception
+	{
+		watched.load();
+		watched.add(Arrays.asList(address1, address2));
+		watched.getBlockChainListener().receiveFromBlock(payment(address1, 300), block(1), NewBlockType.BEST_CHAIN, 0);
+		watched.saveIfDirty();
+
+		// one hash160 in hex per line
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		final String line = reader.readLine();
+		reader.close();
+		assertTrue(line.matches("[0-9a-f]{40}\\t\\d+"));
+
+		final WatchedAddresses reloaded = new WatchedAddresses(PARAMS, file);
+		reloaded.load();
+		assertEquals(2, reloaded.size());
+		assertEquals(Long.valueOf(300), reloaded.getReceived(address1));
+		assertEquals(Long.valueOf(0), reloaded.getReceived(address2));
+	}
+
+	@Test
+	public void notSavedBeforeLoad() throws Exception
+	{
+		watched.add(Arrays.asList(address1));
+		watched.saveIfDirty();
+
+		assertFalse(file.exists());
+
+		watched.load();
+		watched.saveIfDirty();
+
+		assertTrue(file.exists());
+	}
+
+	@Test
+	public void loadMergesOldFormat() throws Exception
+	{
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		writer.write(address1 + "\t100\n");
+		writer.write("garbage\n");
+		writer.close();
+
+		// added and paid before loading finished
+		watched.add(Arrays.asList(address1, address2));
+		watched.getBlockChainListener().receiveFromBlock(payment(address1, 50), block(1), NewBlockType.BEST_CHAIN, 0);
+		numChanges = 0;
+
+		watched.load();
+
+		assertEquals(1, numChanges);
+		assertEquals(2, watched.size());
+		assertEquals(Long.valueOf(150), watched.getReceived(address1));
+	}
+
+	private int indexOf(final Address address)
+	{
+		for (int i = 0; i < watched.size(); i++)
+			if (watched.getAddress(i).equals(address))
+				return i;
+		return -1;
+	}
+
+	private Transaction payment(final Address address, final long value)
+	{
+		final Transaction tx = new Transaction(PARAMS);
+		tx.addInput(new Transaction(PARAMS).addOutput(BigInteger.valueOf(value), new ECKey().toAddress(PARAMS)));
+		tx.addOutput(BigInteger.valueOf(value), address);
+		return tx;
+	}
+
+	private StoredBlock block(final int nonce)
+	{
+		final Block header = PARAMS.getGenesisBlock().cloneAsHeader();
+		header.setNonce(nonce);
+		return new StoredBlock(header, BigInteger.ONE, 1);
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class FrameDecoderTest
+{
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int FRAME_SIZE = 360;
+	private static final int LEFT = (WIDTH - FRAME_SIZE) / 2;
+	private static final int TOP = (HEIGHT - FRAME_SIZE) / 2;
+	private static final String TEXT = "litecoin:LQ4i7FHbXVrx4uk6Ae4YqJWGmJ9GoxNGYf?amount=1.5";
+
+	@Test
+	public void decodeFrame() throws Exception
+	{
+		final Collector collector = new Collector();
+		final FrameDecoder decoder = decoder(true, collector);
+		decoder.start();
+		decoder.offer(frame(TEXT, 300));
+
+		assertTrue(collector.resultLatch.await(10, TimeUnit.SECONDS));
+		assertEquals(TEXT, collector.result.get().getText());
+		decoder.stop();
+	}
+
+	@Test
+	public void decodeFrameAtFullResolution() throws Exception
+	{
+		final Collector collector = new Collector();
+		final FrameDecoder decoder = decoder(false, collector);
+		decoder.start();
+		decoder.offer(frame(TEXT, 300));
+
+		assertTrue(collector.resultLatch.await(10, TimeUnit.SECONDS));
+		assertEquals(TEXT, collector.result.get().getText());
+		decoder.stop();
+	}
+
+	@Test
+	public void dropStaleFrames() throws Exception
+	{
+		final Collector collector = new Collector();
+		final FrameDecoder decoder = decoder(true, collector);
+
+		// offered before the decoder runs, so all but the newest are stale
+		final byte[] blank1 = new byte[WIDTH * HEIGHT * 3 / 2];
+		final byte[] blank2 = new byte[WIDTH * HEIGHT * 3 / 2];
+		final byte[] code = frame(TEXT, 300);
+		decoder.offer(blank1);
+		decoder.offer(blank2);
+		decoder.offer(code);
+		decoder.start();
+
+		assertTrue(collector.resultLatch.await(10, TimeUnit.SECONDS));
+		assertEquals(TEXT, collector.result.get().getText());
+		assertEquals(2, decoder.getNumFramesDropped());
+		assertEquals(1, decoder.getNumFramesDecoded());
+		assertEquals(2, collector.doneFrames.size());
+		assertTrue(collector.doneFrames.get(0) == blank1);
+		assertTrue(collector.doneFrames.get(1) == blank2);
+		decoder.stop();
+	}
+
+	@Test
+	public void handBackUndecodableFrames() throws Exception
+	{
+		final Collector collector = new Collector();
+		final FrameDecoder decoder = decoder(true, collector);
+		decoder.start();
+
+		final byte[] blank = new byte[WIDTH * HEIGHT * 3 / 2];
+		decoder.offer(blank);
+
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (collector.doneFrames.isEmpty() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		assertEquals(Collections.singletonList(blank), collector.doneFrames);
+		assertEquals(1, collector.resultLatch.getCount());
+		decoder.stop();
+	}
+
+	@Test
+	public void scaleResultPointsOfDownscaledPass() throws Exception
+	{
+		final byte[] frame = frame(TEXT, 300);
+
+		final List<ResultPoint> points = new CopyOnWriteArrayList<ResultPoint>();
+		final FrameDecoder decoder = decoder(true, new Collector(), points);
+		assertEquals(TEXT, decoder.decode(frame).getText());
+		assertEquals(1, decoder.getNumDownscaledHits());
+
+		final List<ResultPoint> fullResolutionPoints = new CopyOnWriteArrayList<ResultPoint>();
+		assertEquals(TEXT, decoder(false, new Collector(), fullResolutionPoints).decode(frame).getText());
+
+		// within the rounding of the half resolution pass
+		assertEquals(maxX(fullResolutionPoints), maxX(points), 4);
+	}
+
+	private static FrameDecoder decoder(final boolean tryDownscaled, @Nonnull final FrameDecoder.Listener listener)
+	{
+		return new FrameDecoder(WIDTH, HEIGHT, LEFT, TOP, FRAME_SIZE, FRAME_SIZE, tryDownscaled, new EnumMap<DecodeHintType, Object>(
+				DecodeHintType.class), listener);
+	}
+
+	private static FrameDecoder decoder(final boolean tryDownscaled, @Nonnull final FrameDecoder.Listener listener,
+			@Nonnull final List<ResultPoint> points)
+	{
+		final EnumMap<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+		hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback()
+		{
+			@Override
+			public void foundPossibleResultPoint(final ResultPoint point)
+			{
+				points.add(point);
+			}
+		});
+		return new FrameDecoder(WIDTH, HEIGHT, LEFT, TOP, FRAME_SIZE, FRAME_SIZE, tryDownscaled, hints, listener);
+	}
+
+	private static float maxX(@Nonnull final List<ResultPoint> points)
+	{
+		assertTrue(!points.isEmpty());
+
+		float maxX = 0;
+		for (final ResultPoint point : points)
+			maxX = Math.max(maxX, point.getX());
+		return maxX;
+	}
+
+	/**
+	 * Renders a QR code into the luminance plane of an NV21 frame, centered in the framed region.
+	 */
+	static byte[] frame(@Nonnull final String text, final int size) throws Exception
+	{
+		final BitMatrix matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size);
+		final byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+
+		final int offsetX = (WIDTH - matrix.getWidth()) / 2;
+		final int offsetY = (HEIGHT - matrix.getHeight()) / 2;
+
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++)
+			{
+				final int mx = x - offsetX;
+				final int my = y - offsetY;
+				final boolean black = mx >= 0 && my >= 0 && mx < matrix.getWidth() && my < matrix.getHeight() && matrix.get(mx, my);
+				frame[y * WIDTH + x] = (byte) (black ? 16 : 235);
+			}
+
+		// neutral chroma
+		for (int i = WIDTH * HEIGHT; i < frame.length; i++)
+			frame[i] = (byte) 128;
+
+		return frame;
+	}
+
+	private static final class Collector implements FrameDecoder.Listener
+	{
+		public final CountDownLatch resultLatch = new CountDownLatch(1);
+		public final AtomicReference<Result> result = new AtomicReference<Result>();
+		public final List<byte[]> doneFrames = new CopyOnWriteArrayList<byte[]>();
+
+		@Override
+		public void onResult(final Result result, final byte[] frame)
+		{
+			this.result.set(result);
+			resultLatch.countDown();
+		}
+
+		@Override
+		public void onFrameDone(final byte[] frame)
+		{
+			doneFrames.add(frame);
+		}
+	}
+}
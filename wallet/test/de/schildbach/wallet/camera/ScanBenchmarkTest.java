@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+
+/**
+ * Runs the {@link ScanCorpus} through the decoding path of the scanner and logs success rate, time-to-decode and how
+ * many frames were decoded at half resolution per category, once with and once without the half resolution attempt.
+ * Only clean frames are required to decode, so that the report can be used to compare scanner changes without failing
+ * the build.
+ *
+ * @author Litecoin Dev Team
+ */
+public class ScanBenchmarkTest
+{
+	private static final FrameDecoder.Listener NO_LISTENER = new FrameDecoder.Listener()
+	{
+		@Override
+		public void onResult(final Result result, final byte[] frame)
+		{
+		}
+
+		@Override
+		public void onFrameDone(final byte[] frame)
+		{
+		}
+	};
+
+	private static List<ScanCorpus.Entry> corpus;
+
+	private static final Logger log = LoggerFactory.getLogger(ScanBenchmarkTest.class);
+
+	private static final class Stats
+	{
+		public int numFrames = 0;
+		public int numDecoded = 0;
+		public int numWrong = 0;
+		public int numDownscaledHits = 0;
+		public final List<Long> decodeTimes = new ArrayList<Long>();
+		public final List<String> failures = new ArrayList<String>();
+
+		@Override
+		public String toString()
+		{
+			Collections.sort(decodeTimes);
+			final long median = decodeTimes.isEmpty() ? 0 : decodeTimes.get(decodeTimes.size() / 2);
+			final long max = decodeTimes.isEmpty() ? 0 : decodeTimes.get(decodeTimes.size() - 1);
+
+			return String.format("%3d/%3d decoded (%3d%%), %3d at half resolution, %d wrong, median %5.1f ms, max %5.1f ms", numDecoded,
+					numFrames, numDecoded * 100 / numFrames, numDownscaledHits, numWrong, median / 1000000.0, max / 1000000.0);
+		}
+	}
+
+	@BeforeClass
+	public static void loadCorpus() throws Exception
+	{
+		corpus = ScanCorpus.load();
+
+		// warm up the decoder, so the first entries are not penalized by class loading and compilation
+		for (int i = 0; i < 3; i++)
+			for (final ScanCorpus.Entry entry : corpus)
+				decoder(entry, true).decode(entry.frame);
+	}
+
+	@Test
+	public void halfResolutionFirst()
+	{
+		final Map<String, Stats> stats = run(true);
+		report("half resolution first", stats);
+		assertAllDecoded(stats.get(ScanCorpus.CATEGORY_CLEAN));
+
+		final Stats total = stats.get("total");
+		assertTrue("half resolution never decoded", total.numDownscaledHits > 0);
+		assertTrue(total.numDownscaledHits <= total.numDecoded + total.numWrong);
+	}
+
+	@Test
+	public void fullResolution()
+	{
+		final Map<String, Stats> stats = run(false);
+		report("full resolution", stats);
+		assertAllDecoded(stats.get(ScanCorpus.CATEGORY_CLEAN));
+		assertEquals(0, stats.get("total").numDownscaledHits);
+	}
+
+	private Map<String, Stats> run(final boolean tryDownscaled)
+	{
+		final Map<String, Stats> stats = new LinkedHashMap<String, Stats>();
+		final Stats total = new Stats();
+
+		for (final ScanCorpus.Entry entry : corpus)
+		{
+			Stats categoryStats = stats.get(entry.category);
+			if (categoryStats == null)
+			{
+				categoryStats = new Stats();
+				stats.put(entry.category, categoryStats);
+			}
+
+			final FrameDecoder decoder = decoder(entry, tryDownscaled);
+			final long start = System.nanoTime();
+			final Result result = decoder.decode(entry.frame);
+			final long time = System.nanoTime() - start;
+
+			for (final Stats s : new Stats[] { categoryStats, total })
+			{
+				s.numFrames++;
+				s.numDownscaledHits += decoder.getNumDownscaledHits();
+				if (result == null)
+				{
+					s.failures.add(entry.name);
+				}
+				else if (!entry.text.equals(result.getText()))
+				{
+					s.numWrong++;
+					s.failures.add(entry.name + " (wrong)");
+				}
+				else
+				{
+					s.numDecoded++;
+					s.decodeTimes.add(time);
+				}
+			}
+		}
+
+		stats.put("total", total);
+		return stats;
+	}
+
+	private static FrameDecoder decoder(@Nonnull final ScanCorpus.Entry entry, final boolean tryDownscaled)
+	{
+		// centered square like the viewfinder of the scanner
+		final int frameSize = Math.min(entry.width, entry.height) * 3 / 4;
+		final int left = (entry.width - frameSize) / 2;
+		final int top = (entry.height - frameSize) / 2;
+
+		return new FrameDecoder(entry.width, entry.height, left, top, frameSize, frameSize, tryDownscaled, new EnumMap<DecodeHintType, Object>(
+				DecodeHintType.class), NO_LISTENER);
+	}
+
+	private static void report(@Nonnull final String title, @Nonnull final Map<String, Stats> stats)
+	{
+		log.info("scan benchmark, {}:", title);
+		for (final Map.Entry<String, Stats> entry : stats.entrySet())
+		{
+			log.info(String.format("  %-9s %s", entry.getKey(), entry.getValue()));
+			if (!"total".equals(entry.getKey()) && !entry.getValue().failures.isEmpty())
+				log.info("            failed: {}", entry.getValue().failures);
+		}
+	}
+
+	private static void assertAllDecoded(@Nonnull final Stats stats)
+	{
+		assertTrue("not decoded: " + stats.failures, stats.failures.isEmpty());
+	}
+}
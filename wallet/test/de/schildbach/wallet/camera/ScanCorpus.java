@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.camera;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import de.schildbach.wallet.util.Qr;
+
+/**
+ * A corpus of NV21 preview frames showing QR codes, for evaluating the scanner without a phone.
+ *
+ * Frames are synthesized from the payloads the app actually shows: payment URIs and transactions encoded with
+ * {@link Qr#encodeBinary(byte[])}, rendered with the same encoding hints as {@link Qr#bitmap(String, int)}. Each is
+ * degraded by blur, viewing angle, lighting or sensor noise. The synthesis is deterministic, so results are comparable
+ * between runs.
+ *
+ * Recorded frames can be added by pointing the system property {@code scan.corpus} to a directory of raw NV21 dumps
+ * named {@code <name>-<width>x<height>.nv21}, each with a {@code <name>-<width>x<height>.txt} holding the expected text.
+ *
+ * @author Litecoin Dev Team
+ */
+public final class ScanCorpus
+{
+	public static final int WIDTH = 640;
+	public static final int HEIGHT = 480;
+
+	public static final String CATEGORY_CLEAN = "clean";
+	public static final String CATEGORY_BLUR = "blur";
+	public static final String CATEGORY_ANGLE = "angle";
+	public static final String CATEGORY_LIGHTING = "lighting";
+	public static final String CATEGORY_NOISE = "noise";
+	public static final String CATEGORY_RECORDED = "recorded";
+
+	private static final int CODE_SIZE = 320; // fits the framed region of the preview
+	private static final int QUIET_ZONE_MODULES = 4;
+	private static final int[] BINARY_PAYLOAD_SIZES = { 100, 300, 600 };
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Pattern RECORDED_FRAME_NAME = Pattern.compile("(.+)-(\\d+)x(\\d+)\\.nv21");
+
+	public static final class Entry
+	{
+		public final String name;
+		public final String category;
+		public final String text;
+		public final int width;
+		public final int height;
+		public final byte[] frame;
+
+		private Entry(@Nonnull final String name, @Nonnull final String category, @Nonnull final String text, final int width,
+				final int height, @Nonnull final byte[] frame)
+		{
+			this.name = name;
+			this.category = category;
+			this.text = text;
+			this.width = width;
+			this.height = height;
+			this.frame = frame;
+		}
+
+		@Override
+		public String toString()
+		{
+			return category + "/" + name;
+		}
+	}
+
+	private static final class Conditions
+	{
+		public float rotation = 0; // degrees
+		public float tilt = 0; // 0 is head-on, towards 1 is edge-on
+		public int blurRadius = 0;
+		public int black = 16;
+		public int white = 235;
+		public float gradient = 0; // fraction of brightness lost across the frame
+		public float noise = 0; // standard deviation of luminance noise
+	}
+
+	public static List<Entry> load() throws IOException
+	{
+		final List<Entry> entries = new ArrayList<Entry>();
+
+		final Random random = new Random(0);
+		final List<String> payloads = new ArrayList<String>();
+		payloads.add("litecoin:LQ4i7FHbXVrx4uk6Ae4YqJWGmJ9GoxNGYf");
+		payloads.add("litecoin:LQ4i7FHbXVrx4uk6Ae4YqJWGmJ9GoxNGYf?amount=12.3456789&label=Coffee%20shop&message=Order%2042");
+		for (final int size : BINARY_PAYLOAD_SIZES)
+		{
+			// like a serialized transaction, mostly hashes, keys and signatures which do not compress
+			final byte[] bytes = new byte[size];
+			random.nextBytes(bytes);
+			payloads.add(Qr.encodeBinary(bytes));
+		}
+
+		for (final String payload : payloads)
+		{
+			final String prefix = payload.startsWith("litecoin:") ? "uri" + payload.length() : "tx" + payload.length();
+
+			entries.add(entry(prefix, CATEGORY_CLEAN, payload, new Conditions(), random));
+
+			for (final int radius : new int[] { 1, 2, 3 })
+			{
+				final Conditions conditions = new Conditions();
+				conditions.blurRadius = radius;
+				entries.add(entry(prefix + "-r" + radius, CATEGORY_BLUR, payload, conditions, random));
+			}
+
+			for (final float rotation : new float[] { 15, 45 })
+			{
+				for (final float tilt : new float[] { 0, 0.2f, 0.4f })
+				{
+					final Conditions conditions = new Conditions();
+					conditions.rotation = rotation;
+					conditions.tilt = tilt;
+					entries.add(entry(prefix + "-rot" + (int) rotation + "-tilt" + (int) (tilt * 100), CATEGORY_ANGLE, payload, conditions,
+							random));
+				}
+			}
+
+			final Conditions dark = new Conditions();
+			dark.black = 8;
+			dark.white = 60;
+			entries.add(entry(prefix + "-dark", CATEGORY_LIGHTING, payload, dark, random));
+
+			final Conditions washedOut = new Conditions();
+			washedOut.black = 170;
+			washedOut.white = 240;
+			entries.add(entry(prefix + "-washed", CATEGORY_LIGHTING, payload, washedOut, random));
+
+			final Conditions shadow = new Conditions();
+			shadow.gradient = 0.7f;
+			entries.add(entry(prefix + "-shadow", CATEGORY_LIGHTING, payload, shadow, random));
+
+			for (final float noise : new float[] { 10, 25 })
+			{
+				final Conditions conditions = new Conditions();
+				conditions.noise = noise;
+				conditions.blurRadius = 1;
+				entries.add(entry(prefix + "-n" + (int) noise, CATEGORY_NOISE, payload, conditions, random));
+			}
+		}
+
+		entries.addAll(loadRecorded());
+
+		return entries;
+	}
+
+	private static List<Entry> loadRecorded() throws IOException
+	{
+		final List<Entry> entries = new ArrayList<Entry>();
+
+		final String dirName = System.getProperty("scan.corpus");
+		if (dirName == null)
+			return entries;
+
+		final File[] files = new File(dirName).listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(final File dir, final String name)
+			{
+				return RECORDED_FRAME_NAME.matcher(name).matches();
+			}
+		});
+		if (files == null)
+			throw new IOException("cannot read corpus directory " + dirName);
+		Arrays.sort(files);
+
+		for (final File file : files)
+		{
+			final Matcher m = RECORDED_FRAME_NAME.matcher(file.getName());
+			m.matches();
+			final int width = Integer.parseInt(m.group(2));
+			final int height = Integer.parseInt(m.group(3));
+
+			final byte[] frame = readFully(file);
+			if (frame.length < width * height)
+				throw new IOException(file + ": too short for " + width + "x" + height);
+
+			final File textFile = new File(file.getParentFile(), file.getName().replaceFirst("\\.nv21$", ".txt"));
+			final String text = new String(readFully(textFile), UTF_8).trim();
+
+			entries.add(new Entry(m.group(1), CATEGORY_RECORDED, text, width, height, frame));
+		}
+
+		return entries;
+	}
+
+	private static byte[] readFully(@Nonnull final File file) throws IOException
+	{
+		final byte[] bytes = new byte[(int) file.length()];
+		final DataInputStream is = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			is.readFully(bytes);
+			return bytes;
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	private static Entry entry(@Nonnull final String name, @Nonnull final String category, @Nonnull final String text,
+			@Nonnull final Conditions conditions, @Nonnull final Random random)
+	{
+		final BitMatrix matrix = encode(text);
+		final int modules = matrix.getWidth();
+		final float moduleSize = (float) CODE_SIZE / modules;
+		final float half = CODE_SIZE / 2f;
+		final double angle = Math.toRadians(conditions.rotation);
+		final float cos = (float) Math.cos(angle);
+		final float sin = (float) Math.sin(angle);
+
+		final float[] luminance = new float[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			for (int x = 0; x < WIDTH; x++)
+			{
+				// map the frame pixel back onto the code plane: undo rotation, then perspective of a code turned away
+				final float dx = x + 0.5f - WIDTH / 2f;
+				final float dy = y + 0.5f - HEIGHT / 2f;
+				float u = dx * cos + dy * sin;
+				float v = -dx * sin + dy * cos;
+				final float depth = 1 - conditions.tilt * u / half;
+				u /= depth;
+				v /= depth;
+
+				final int mx = (int) Math.floor((u + half) / moduleSize);
+				final int my = (int) Math.floor((v + half) / moduleSize);
+
+				final float level;
+				if (depth <= 0)
+					level = 0.4f;
+				else if (mx >= 0 && my >= 0 && mx < modules && my < modules)
+					level = matrix.get(mx, my) ? 0 : 1;
+				else if (mx >= -QUIET_ZONE_MODULES && my >= -QUIET_ZONE_MODULES && mx < modules + QUIET_ZONE_MODULES
+						&& my < modules + QUIET_ZONE_MODULES)
+					level = 1; // quiet zone
+				else
+					level = 0.4f; // whatever is around the code
+
+				luminance[y * WIDTH + x] = conditions.black + (conditions.white - conditions.black) * level;
+			}
+		}
+
+		if (conditions.gradient > 0)
+			for (int y = 0; y < HEIGHT; y++)
+				for (int x = 0; x < WIDTH; x++)
+					luminance[y * WIDTH + x] *= 1 - conditions.gradient * x / WIDTH;
+
+		if (conditions.blurRadius > 0)
+			boxBlur(luminance, conditions.blurRadius);
+
+		final byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+		for (int i = 0; i < luminance.length; i++)
+		{
+			float l = luminance[i];
+			if (conditions.noise > 0)
+				l += random.nextGaussian() * conditions.noise;
+			frame[i] = (byte) Math.max(0, Math.min(255, Math.round(l)));
+		}
+
+		// neutral chroma
+		Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 128);
+
+		return new Entry(name, category, text, WIDTH, HEIGHT, frame);
+	}
+
+	private static BitMatrix encode(@Nonnull final String text)
+	{
+		try
+		{
+			// same hints as Qr.bitmap(), but one pixel per module
+			final Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
+			hints.put(EncodeHintType.MARGIN, 0);
+			hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+			return new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+		}
+		catch (final WriterException x)
+		{
+			throw new RuntimeException(x);
+		}
+	}
+
+	private static void boxBlur(@Nonnull final float[] luminance, final int radius)
+	{
+		final float[] tmp = new float[luminance.length];
+		final int span = radius * 2 + 1;
+
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++)
+			{
+				float sum = 0;
+				for (int k = -radius; k <= radius; k++)
+					sum += luminance[y * WIDTH + Math.max(0, Math.min(WIDTH - 1, x + k))];
+				tmp[y * WIDTH + x] = sum / span;
+			}
+
+		for (int y = 0; y < HEIGHT; y++)
+			for (int x = 0; x < WIDTH; x++)
+			{
+				float sum = 0;
+				for (int k = -radius; k <= radius; k++)
+					sum += tmp[Math.max(0, Math.min(HEIGHT - 1, y + k)) * WIDTH + x];
+				luminance[y * WIDTH + x] = sum / span;
+			}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.bitcoin.core.PeerAddress;
+import com.google.bitcoin.core.Sha256Hash;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class BroadcastOutboxTest
+{
+	private static final Sha256Hash TX1 = Sha256Hash.create(new byte[] { 1 });
+	private static final Sha256Hash TX2 = Sha256Hash.create(new byte[] { 2 });
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile("broadcast", ".outbox");
+		file.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void backoff()
+	{
+		final BroadcastOutbox outbox = new BroadcastOutbox(file);
+		outbox.add(TX1, 0);
+
+		Map<Sha256Hash, Integer> due = outbox.pollDue(0);
+		assertEquals(1, (int) due.get(TX1));
+
+		long now = 0;
+		for (int attempt = 2; attempt <= 4; attempt++)
+		{
+			assertTrue(outbox.pollDue(outbox.getNextAttemptAt() - 1).isEmpty());
+			now = outbox.getNextAttemptAt();
+			due = outbox.pollDue(now);
+			assertEquals(attempt, (int) due.get(TX1));
+		}
+
+		assertEquals(2 * BroadcastOutbox.backoff(3), BroadcastOutbox.backoff(4));
+		assertEquals(BroadcastOutbox.backoff(100), BroadcastOutbox.backoff(101));
+	}
+
+	@Test
+	public void giveUpAfterMaxAttempts()
+	{
+		final BroadcastOutbox outbox = new BroadcastOutbox(file);
+		outbox.add(TX1, 0);
+
+		for (int i = 0; i < BroadcastOutbox.MAX_ATTEMPTS; i++)
+			assertFalse(outbox.pollDue(outbox.getNextAttemptAt()).isEmpty());
+
+		assertTrue(outbox.pollDue(outbox.getNextAttemptAt()).isEmpty());
+		assertTrue(outbox.isEmpty());
+	}
+
+	@Test
+	public void removeWhenRelayedByEnoughPeers() throws Exception
+	{
+		final BroadcastOutbox outbox = new BroadcastOutbox(file);
+		outbox.add(TX1, 0);
+		outbox.add(TX2, 0);
+
+		final PeerAddress peer1 = new PeerAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }), 9333);
+		final PeerAddress peer2 = new PeerAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 }), 9333);
+
+		assertFalse(outbox.acknowledge(TX1, peer1, 100));
+		assertFalse(outbox.acknowledge(TX1, peer1, 200)); // same peer again
+		assertTrue(outbox.acknowledge(TX1, peer2, 300));
+
+		assertFalse(outbox.contains(TX1));
+		assertTrue(outbox.contains(TX2));
+
+		final StringBuilder report = new StringBuilder();
+		outbox.appendReport(report);
+		assertTrue(report.toString(), report.toString().contains("median 100 ms"));
+	}
+
+	@Test
+	public void surviveRestart()
+	{
+		final BroadcastOutbox outbox = new BroadcastOutbox(file);
+		outbox.add(TX1, 0);
+		outbox.add(TX2, 0);
+		outbox.pollDue(0);
+
+		final BroadcastOutbox restarted = new BroadcastOutbox(file);
+		assertEquals(outbox.getQueued(), restarted.getQueued());
+
+		// due right away, counting on from the attempts before the restart
+		final Map<Sha256Hash, Integer> due = restarted.pollDue(1);
+		assertEquals(2, (int) due.get(TX1));
+		assertEquals(2, (int) due.get(TX2));
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.bitcoin.core.PeerAddress;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class PeerMetricsTest
+{
+	private PeerMetrics metrics;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		metrics = new PeerMetrics(new PeerAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }), 9333));
+	}
+
+	@Test
+	public void messagesPerSecond() throws Exception
+	{
+		metrics.connected(1000);
+		metrics.numMessages.addAndGet(20);
+
+		assertEquals(2.0, metrics.getMessagesPerSecond(11000), 0.001);
+
+		metrics.disconnected(21000, "connection lost");
+		assertFalse(metrics.isConnected());
+		assertEquals(1.0, metrics.getMessagesPerSecond(99000), 0.001);
+	}
+
+	@Test
+	public void reconnectResetsCounters() throws Exception
+	{
+		metrics.connected(1000);
+		metrics.numMessages.addAndGet(1000);
+		metrics.bytesReceived.addAndGet(50000);
+		metrics.numBlocks.addAndGet(10);
+		metrics.disconnected(11000, "connection lost");
+
+		metrics.connected(100000);
+		assertTrue(metrics.isConnected());
+		assertEquals(2, metrics.getNumConnects());
+		assertEquals(0, metrics.getNumMessages());
+		assertEquals(0, metrics.getBytesReceived());
+		assertEquals(0, metrics.getNumBlocks());
+
+		// the rate of the first connection must not carry over to the young second one
+		metrics.numMessages.addAndGet(5);
+		assertEquals(1.0, metrics.getMessagesPerSecond(105000), 0.001);
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+
+/**
+ * Also serves as benchmark: logs the per-call overhead of writing to a file directly and through the appender.
+ *
+ * @author Litecoin Dev Team
+ */
+public class AsyncBatchingAppenderTest
+{
+	private static final int NUM_EVENTS = 20000;
+
+	private LoggerContext context;
+	private File file;
+
+	// the benchmark result goes to the regular logging, not to the context under test
+	private static final org.slf4j.Logger benchmarkLog = org.slf4j.LoggerFactory.getLogger(AsyncBatchingAppenderTest.class);
+
+	@Before
+	public void setUp() throws Exception
+	{
+		context = new LoggerContext();
+		file = File.createTempFile("wallet", ".log");
+	}
+
+	@After
+	public void tearDown()
+	{
+		context.stop();
+		file.delete();
+	}
+
+	@Test
+	public void benchmark() throws Exception
+	{
+		final long syncTime = run(false, NUM_EVENTS);
+		assertEquals(NUM_EVENTS, readLines().size());
+
+		file.delete();
+		context.reset();
+
+		final long asyncTime = run(true, NUM_EVENTS);
+		assertEquals(NUM_EVENTS, readLines().size());
+
+		benchmarkLog.info("logging {} events: synchronous {} ns per call, asynchronous {} ns per call", new Object[] { NUM_EVENTS,
+				syncTime / NUM_EVENTS, asyncTime / NUM_EVENTS });
+	}
+
+	@Test
+	public void keepOrder() throws Exception
+	{
+		run(true, 1000);
+
+		final List<String> lines = readLines();
+		assertEquals(1000, lines.size());
+		for (int i = 0; i < lines.size(); i++)
+			assertTrue(lines.get(i), lines.get(i).endsWith("event " + i));
+	}
+
+	@Test
+	public void dropOnlyBelowWarn() throws Exception
+	{
+		final Logger log = logger(true, 10);
+		for (int i = 0; i < 5000; i++)
+		{
+			log.info("info {}", i);
+			if (i % 100 == 0)
+				log.warn("warn {}", i);
+		}
+		context.stop();
+
+		final List<String> lines = readLines();
+		int numWarnings = 0;
+		int numInfos = 0;
+		boolean reportedDrops = false;
+		for (final String line : lines)
+		{
+			if (line.contains("warn "))
+				numWarnings++;
+			else if (line.contains("info "))
+				numInfos++;
+			else if (line.contains("dropped"))
+				reportedDrops = true;
+		}
+
+		assertEquals(50, numWarnings);
+		assertTrue(numInfos == 5000 || reportedDrops);
+	}
+
+	private long run(final boolean async, final int numEvents)
+	{
+		final Logger log = logger(async, numEvents);
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < numEvents; i++)
+			log.info("event {}", i);
+		final long time = System.nanoTime() - start;
+
+		// flushes whatever is still queued
+		context.stop();
+
+		return time;
+	}
+
+	private Logger logger(final boolean async, final int queueSize)
+	{
+		final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+		encoder.setContext(context);
+		encoder.setPattern("%d{HH:mm:ss.SSS} [%thread] %logger{0} - %msg%n");
+		encoder.start();
+
+		final FileAppender<ILoggingEvent> fileAppender = new FileAppender<ILoggingEvent>();
+		fileAppender.setContext(context);
+		fileAppender.setFile(file.getAbsolutePath());
+		fileAppender.setEncoder(encoder);
+		fileAppender.start();
+
+		final Appender<ILoggingEvent> appender;
+		if (async)
+		{
+			final AsyncBatchingAppender asyncAppender = new AsyncBatchingAppender(fileAppender, encoder, queueSize);
+			asyncAppender.setContext(context);
+			asyncAppender.start();
+			appender = asyncAppender;
+		}
+		else
+		{
+			appender = fileAppender;
+		}
+
+		final Logger log = context.getLogger(AsyncBatchingAppenderTest.class);
+		log.detachAndStopAllAppenders();
+		log.addAppender(appender);
+		log.setAdditive(false);
+		log.setLevel(Level.INFO);
+		return log;
+	}
+
+	private List<String> readLines() throws Exception
+	{
+		final List<String> lines = new ArrayList<String>();
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while (null != (line = reader.readLine()))
+				lines.add(line);
+		}
+		finally
+		{
+			reader.close();
+		}
+		return lines;
+	}
+}
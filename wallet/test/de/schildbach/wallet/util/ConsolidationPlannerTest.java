@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.AbstractBlockChain.NewBlockType;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+
+import de.schildbach.wallet.UnspentOutputIndex;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class ConsolidationPlannerTest
+{
+	private static final BigInteger FEE = BigInteger.valueOf(100000);
+	private static final BigInteger SMALL_OUTPUT = BigInteger.valueOf(10000000);
+	private static final BigInteger CENT = BigInteger.valueOf(1000000);
+	private static final int MIN_SMALL_OUTPUTS = 50;
+	private static final int MAX_INPUTS = 25;
+
+	private final NetworkParameters params = LitecoinParams.get();
+	private Wallet wallet;
+	private Address address;
+	private UnspentOutputIndex unspentOutputIndex;
+	private ConsolidationPlanner planner;
+
+	@Before
+	public void setUp()
+	{
+		wallet = new Wallet(params);
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+		address = key.toAddress(params);
+
+		unspentOutputIndex = new UnspentOutputIndex(wallet);
+		final FeeAwareCoinSelector coinSelector = new FeeAwareCoinSelector(wallet, unspentOutputIndex, FEE, FEE, FEE);
+		planner = new ConsolidationPlanner(unspentOutputIndex, coinSelector, FEE, SMALL_OUTPUT, MIN_SMALL_OUTPUTS, MAX_INPUTS);
+	}
+
+	@Test
+	public void tooFewSmallOutputs() throws Exception
+	{
+		receive(CENT, MIN_SMALL_OUTPUTS - 1);
+		receive(SMALL_OUTPUT, 1);
+		unspentOutputIndex.awaitReady();
+
+		final ConsolidationPlanner.Plan plan = planner.plan();
+
+		assertEquals(MIN_SMALL_OUTPUTS, plan.numOutputs);
+		assertEquals(MIN_SMALL_OUTPUTS - 1, plan.numSmallOutputs);
+		assertTrue(plan.sweeps.isEmpty());
+		assertEquals(BigInteger.ZERO, plan.fee);
+		assertEquals(plan.numInputsToSpendAllBefore, plan.numInputsToSpendAllAfter);
+		assertEquals(plan.feeToSpendAllBefore, plan.feeToSpendAllAfter);
+	}
+
+	@Test
+	public void sweepsSmallOutputs() throws Exception
+	{
+		receive(CENT, 60);
+		receive(SMALL_OUTPUT, 1);
+		unspentOutputIndex.awaitReady();
+
+		final ConsolidationPlanner.Plan plan = planner.plan();
+
+		assertEquals(61, plan.numOutputs);
+		assertEquals(60, plan.numSmallOutputs);
+		assertEquals(3, plan.sweeps.size());
+
+		final Set<TransactionOutput> inputs = new HashSet<TransactionOutput>();
+		BigInteger fee = BigInteger.ZERO;
+		for (final FeeAwareCoinSelector.Selection sweep : plan.sweeps)
+		{
+			assertTrue(sweep.inputs.size() <= MAX_INPUTS);
+			for (final TransactionOutput input : sweep.inputs)
+			{
+				assertEquals(CENT, input.getValue());
+				assertTrue(inputs.add(input));
+			}
+			assertEquals(BigInteger.ZERO, sweep.change);
+			fee = fee.add(sweep.fee);
+		}
+
+		assertEquals(60, inputs.size());
+		assertEquals(CENT.multiply(BigInteger.valueOf(60)), plan.sweptValue);
+		assertEquals(fee, plan.fee);
+
+		// the large output and one output per sweep remain
+		assertEquals(61, plan.numInputsToSpendAllBefore);
+		assertEquals(4, plan.numInputsToSpendAllAfter);
+		assertTrue(plan.feeToSpendAllAfter.compareTo(plan.feeToSpendAllBefore) < 0);
+	}
+
+	@Test
+	public void outputsNotWorthSpendingAreLeftAlone() throws Exception
+	{
+		// less than the fee it takes to spend them
+		receive(BigInteger.valueOf(10000), MIN_SMALL_OUTPUTS);
+		unspentOutputIndex.awaitReady();
+
+		final ConsolidationPlanner.Plan plan = planner.plan();
+
+		assertEquals(MIN_SMALL_OUTPUTS, plan.numOutputs);
+		assertEquals(0, plan.numSmallOutputs);
+		assertTrue(plan.sweeps.isEmpty());
+	}
+
+	private void receive(final BigInteger value, final int numOutputs) throws Exception
+	{
+		final StoredBlock block = new StoredBlock(params.getGenesisBlock().cloneAsHeader(), BigInteger.ONE, 1);
+
+		for (int i = 0; i < numOutputs; i++)
+		{
+			final Transaction tx = new Transaction(params);
+			tx.addInput(new Transaction(params).addOutput(value, new ECKey().toAddress(params)));
+			tx.addOutput(value, address);
+			wallet.receiveFromBlock(tx, block, NewBlockType.BEST_CHAIN, 0);
+		}
+	}
+}
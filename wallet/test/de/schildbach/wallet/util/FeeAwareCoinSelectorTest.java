@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+
+import de.schildbach.wallet.UnspentOutputIndex;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class FeeAwareCoinSelectorTest
+{
+	private static final BigInteger FEE_PER_KB = BigInteger.valueOf(100000);
+	private static final BigInteger MIN_FEE = BigInteger.valueOf(100000);
+	private static final BigInteger DUST_THRESHOLD = BigInteger.valueOf(100000);
+	// outpoint, script length, sequence, signature, compressed public key
+	private static final int INPUT_SIZE = 36 + 1 + 4 + 74 + 34;
+
+	private final NetworkParameters params = LitecoinParams.get();
+	private Wallet wallet;
+	private FeeAwareCoinSelector selector;
+
+	@Before
+	public void setUp()
+	{
+		wallet = new Wallet(params);
+		selector = new FeeAwareCoinSelector(wallet, new UnspentOutputIndex(wallet), FEE_PER_KB, MIN_FEE, DUST_THRESHOLD);
+	}
+
+	@Test
+	public void estimateInputSize()
+	{
+		assertEquals(INPUT_SIZE, selector.estimateInputSize(output(1000000)));
+
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+		final Transaction tx = new Transaction(params);
+		tx.addOutput(BigInteger.valueOf(1000000), key.toAddress(params));
+		assertEquals(INPUT_SIZE - 34 + (key.isCompressed() ? 34 : 66), selector.estimateInputSize(tx.getOutput(0)));
+
+		final Transaction rawTx = new Transaction(params);
+		rawTx.addOutput(new TransactionOutput(params, rawTx, BigInteger.valueOf(1000000), key));
+		assertEquals(36 + 1 + 4 + 74, selector.estimateInputSize(rawTx.getOutput(0)));
+	}
+
+	@Test
+	public void feeForSize()
+	{
+		assertEquals(MIN_FEE, selector.feeForSize(200, 0));
+		assertEquals(FEE_PER_KB, selector.feeForSize(999, 0));
+		assertEquals(FEE_PER_KB.multiply(BigInteger.valueOf(2)), selector.feeForSize(1000, 0));
+		assertEquals(FEE_PER_KB.add(MIN_FEE.multiply(BigInteger.valueOf(2))), selector.feeForSize(999, 2));
+	}
+
+	@Test
+	public void outputsSize()
+	{
+		assertEquals(34, FeeAwareCoinSelector.outputsSize(1));
+		assertEquals(2 + 34 * 300, FeeAwareCoinSelector.outputsSize(300));
+	}
+
+	@Test
+	public void exactAmountNeedsNoChange() throws Exception
+	{
+		final FeeAwareCoinSelector.Selection selection = selector.select(candidates(1100000).iterator(), amounts(1000000), Integer.MAX_VALUE);
+
+		assertEquals(1, selection.inputs.size());
+		assertEquals(BigInteger.valueOf(1000000), selection.amount);
+		assertEquals(BigInteger.valueOf(100000), selection.fee);
+		assertEquals(BigInteger.ZERO, selection.change);
+		assertEquals(10 + INPUT_SIZE + 34, selection.estimatedSize);
+	}
+
+	@Test
+	public void dustChangeGoesToFee() throws Exception
+	{
+		final FeeAwareCoinSelector.Selection selection = selector.select(candidates(1150000).iterator(), amounts(1000000), Integer.MAX_VALUE);
+
+		assertEquals(BigInteger.valueOf(150000), selection.fee);
+		assertEquals(BigInteger.ZERO, selection.change);
+	}
+
+	@Test
+	public void change() throws Exception
+	{
+		final FeeAwareCoinSelector.Selection selection = selector.select(candidates(10000000).iterator(), amounts(1000000), Integer.MAX_VALUE);
+
+		assertEquals(BigInteger.valueOf(100000), selection.fee);
+		assertEquals(BigInteger.valueOf(8900000), selection.change);
+		assertEquals(10 + INPUT_SIZE + 2 * 34, selection.estimatedSize);
+	}
+
+	@Test
+	public void gathersInputsInOrder() throws Exception
+	{
+		final FeeAwareCoinSelector.Selection selection = selector.select(candidates(800000, 600000, 400000).iterator(), amounts(1000000),
+				Integer.MAX_VALUE);
+
+		assertEquals(2, selection.inputs.size());
+		assertEquals(BigInteger.valueOf(800000), selection.inputs.get(0).getValue());
+		assertEquals(BigInteger.valueOf(600000), selection.inputs.get(1).getValue());
+		assertEquals(BigInteger.valueOf(100000), selection.fee);
+		assertEquals(BigInteger.valueOf(300000), selection.change);
+	}
+
+	@Test
+	public void tooLarge() throws Exception
+	{
+		assertNull(selector.select(candidates(500000, 500000, 500000).iterator(), amounts(1000000), 10 + 2 * INPUT_SIZE + 34));
+	}
+
+	@Test
+	public void insufficientMoney() throws Exception
+	{
+		try
+		{
+			selector.select(candidates(500000).iterator(), amounts(1000000), Integer.MAX_VALUE);
+			fail();
+		}
+		catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+		{
+			// half of the amount, plus the fee
+			assertEquals(BigInteger.valueOf(600000), x.missing);
+		}
+	}
+
+	@Test
+	public void insufficientMoneyWithoutCandidates() throws Exception
+	{
+		try
+		{
+			selector.select(Collections.<TransactionOutput> emptyList().iterator(), amounts(1000000), Integer.MAX_VALUE);
+			fail();
+		}
+		catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+		{
+			assertEquals(BigInteger.valueOf(1100000), x.missing);
+		}
+	}
+
+	@Test
+	public void emptyWalletSubtractsFee() throws Exception
+	{
+		final FeeAwareCoinSelector.Selection selection = selector.sweep(candidates(1000000, 1000000));
+
+		assertEquals(2, selection.inputs.size());
+		assertEquals(BigInteger.valueOf(100000), selection.fee);
+		assertEquals(BigInteger.valueOf(1900000), selection.amount);
+		assertEquals(BigInteger.ZERO, selection.change);
+		assertEquals(10 + 2 * INPUT_SIZE + 34, selection.estimatedSize);
+	}
+
+	@Test
+	public void emptyWalletBelowFee() throws Exception
+	{
+		try
+		{
+			selector.sweep(candidates(50000));
+			fail();
+		}
+		catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+		{
+			// the amount would be dust, so the dust fee is added on top
+			assertEquals(BigInteger.valueOf(150001), x.missing);
+		}
+	}
+
+	private List<TransactionOutput> candidates(final long... values)
+	{
+		final Transaction tx = new Transaction(params);
+		for (final long value : values)
+			tx.addOutput(BigInteger.valueOf(value), new ECKey().toAddress(params));
+		return tx.getOutputs();
+	}
+
+	private static List<BigInteger> amounts(final long... values)
+	{
+		final BigInteger[] amounts = new BigInteger[values.length];
+		for (int i = 0; i < values.length; i++)
+			amounts[i] = BigInteger.valueOf(values[i]);
+		return Arrays.asList(amounts);
+	}
+}
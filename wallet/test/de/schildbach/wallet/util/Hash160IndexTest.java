@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class Hash160IndexTest
+{
+	@Test
+	public void addAndLookup()
+	{
+		final Hash160Index index = new Hash160Index();
+		final List<byte[]> hashes = randomHashes(1000, 1);
+
+		assertEquals(1000, index.addAll(hashes));
+		assertEquals(1000, index.size());
+
+		for (final byte[] hash : hashes)
+		{
+			final int i = index.indexOf(hash);
+			assertTrue(i >= 0);
+			assertArrayEquals(hash, index.get(i));
+		}
+
+		for (final byte[] hash : randomHashes(1000, 2))
+			assertEquals(-1, index.indexOf(hash));
+	}
+
+	@Test
+	public void copyIsIndependent()
+	{
+		final Hash160Index index = new Hash160Index();
+		final List<byte[]> hashes = randomHashes(10, 5);
+		index.addAll(hashes);
+		index.setValue(0, 42);
+
+		final Hash160Index copy = index.copy();
+		index.setValue(0, 43);
+		index.addAll(randomHashes(10, 6));
+
+		assertEquals(10, copy.size());
+		assertEquals(42, copy.getValue(0));
+		for (final byte[] hash : hashes)
+			assertTrue(copy.indexOf(hash) >= 0);
+	}
+
+	@Test
+	public void lookupAtOffset()
+	{
+		final Hash160Index index = new Hash160Index();
+		final byte[] hash = randomHashes(1, 3).get(0);
+		index.addAll(Arrays.asList(hash));
+
+		final byte[] script = new byte[25];
+		System.arraycopy(hash, 0, script, 3, Hash160Index.HASH_LENGTH);
+		assertEquals(0, index.indexOf(script, 3));
+		assertEquals(-1, index.indexOf(script, 2));
+	}
+
+	@Test
+	public void mergeKeepsValuesAndSkipsDuplicates()
+	{
+		final Hash160Index index = new Hash160Index();
+		final List<byte[]> first = randomHashes(100, 4);
+		index.addAll(first);
+		for (int i = 0; i < index.size(); i++)
+			index.setValue(i, i + 1);
+		final List<Long> values = new ArrayList<Long>();
+		for (final byte[] hash : first)
+			values.add(index.getValue(index.indexOf(hash)));
+
+		final List<byte[]> second = new ArrayList<byte[]>(randomHashes(100, 5));
+		second.addAll(first.subList(0, 50)); // already contained
+		second.add(second.get(0)); // duplicate within batch
+		assertEquals(100, index.addAll(second));
+		assertEquals(200, index.size());
+
+		for (int i = 0; i < first.size(); i++)
+			assertEquals(values.get(i).longValue(), index.getValue(index.indexOf(first.get(i))));
+		assertEquals(0, index.getValue(index.indexOf(second.get(0))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectWrongLength()
+	{
+		new Hash160Index().addAll(Arrays.asList(new byte[19]));
+	}
+
+	private static List<byte[]> randomHashes(final int count, final long seed)
+	{
+		final Random random = new Random(seed);
+		final List<byte[]> hashes = new ArrayList<byte[]>(count);
+		for (int i = 0; i < count; i++)
+		{
+			final byte[] hash = new byte[Hash160Index.HASH_LENGTH];
+			random.nextBytes(hash);
+			hashes.add(hash);
+		}
+		return hashes;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.DumpedPrivateKey;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.uri.BitcoinURI;
+
+import de.schildbach.wallet.util.InputClassifier.Type;
+
+/**
+ * Also serves as microbenchmark: classifying a mix of inputs and running one decoder is compared to trying each
+ * decoder in turn until one does not throw.
+ *
+ * @author Litecoin Dev Team
+ */
+public class InputClassifierTest
+{
+	private static final int BENCHMARK_ROUNDS = 200;
+
+	private final NetworkParameters params = LitecoinParams.get();
+	private final InputClassifier classifier = new InputClassifier(params);
+
+	private static final Logger log = LoggerFactory.getLogger(InputClassifierTest.class);
+
+	@Test
+	public void uri()
+	{
+		assertEquals(Type.BITCOIN_URI, classifier.classify("litecoin:" + address()));
+		assertEquals(Type.BITCOIN_URI, classifier.classify("litecoin:" + address() + "?amount=1.5"));
+	}
+
+	@Test
+	public void address()
+	{
+		assertEquals(Type.ADDRESS, classifier.classify(address()));
+	}
+
+	@Test
+	public void invalidAddress()
+	{
+		assertEquals(Type.INVALID_ADDRESS, classifier.classify(corrupt(address())));
+
+		// bitcoin address, valid checksum but wrong version
+		assertEquals(Type.INVALID_ADDRESS, classifier.classify("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+	}
+
+	@Test
+	public void privateKey()
+	{
+		final ECKey key = new ECKey();
+		assertEquals(Type.PRIVATE_KEY, classifier.classify(key.getPrivateKeyEncoded(params).toString()));
+		assertEquals(Type.INVALID_ADDRESS, classifier.classify(corrupt(key.getPrivateKeyEncoded(params).toString())));
+	}
+
+	@Test
+	public void transaction()
+	{
+		assertEquals(Type.TRANSACTION, classifier.classify(transaction()));
+	}
+
+	@Test
+	public void unknown()
+	{
+		assertEquals(Type.UNKNOWN, classifier.classify(""));
+		assertEquals(Type.UNKNOWN, classifier.classify("hello world"));
+		assertEquals(Type.UNKNOWN, classifier.classify("0OIl0OIl0OIl0OIl0OIl0OIl")); // not Base58
+		assertEquals(Type.UNKNOWN, classifier.classify("bitcoin:1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+		assertEquals(Type.UNKNOWN, classifier.classify("http://example.com/" + transaction()));
+	}
+
+	@Test
+	public void benchmark()
+	{
+		final List<String> inputs = new ArrayList<String>();
+		for (int i = 0; i < 10; i++)
+		{
+			inputs.add(address());
+			inputs.add(corrupt(address()));
+			inputs.add("litecoin:" + address() + "?amount=0.1");
+			inputs.add("some text pasted by accident " + i);
+		}
+		inputs.add(new ECKey().getPrivateKeyEncoded(params).toString());
+		inputs.add(transaction());
+
+		int numClassified = 0;
+		int numTried = 0;
+		for (int i = 0; i < BENCHMARK_ROUNDS / 10; i++)
+		{
+			// warm up
+			for (final String input : inputs)
+			{
+				numClassified += classifyAndDecode(input) ? 1 : 0;
+				numTried += tryDecoders(input) ? 1 : 0;
+			}
+		}
+		assertEquals(numClassified, numTried);
+
+		final long classifyStart = System.nanoTime();
+		for (int i = 0; i < BENCHMARK_ROUNDS; i++)
+			for (final String input : inputs)
+				classifyAndDecode(input);
+		final long classifyTime = System.nanoTime() - classifyStart;
+
+		final long tryStart = System.nanoTime();
+		for (int i = 0; i < BENCHMARK_ROUNDS; i++)
+			for (final String input : inputs)
+				tryDecoders(input);
+		final long tryTime = System.nanoTime() - tryStart;
+
+		final int numInputs = BENCHMARK_ROUNDS * inputs.size();
+		log.info("parsing {} mixed inputs: classify first {} µs per input, trying each decoder {} µs per input", new Object[] { numInputs,
+				classifyTime / numInputs / 1000, tryTime / numInputs / 1000 });
+	}
+
+	private boolean classifyAndDecode(final String input)
+	{
+		try
+		{
+			switch (classifier.classify(input))
+			{
+				case BITCOIN_URI:
+					new BitcoinURI(params, input);
+					return true;
+				case ADDRESS:
+					new Address(params, input);
+					return true;
+				case PRIVATE_KEY:
+					new DumpedPrivateKey(params, input);
+					return true;
+				case TRANSACTION:
+					new Transaction(params, Qr.decodeBinary(input));
+					return true;
+				default:
+					return false;
+			}
+		}
+		catch (final Exception x)
+		{
+			return false;
+		}
+	}
+
+	private boolean tryDecoders(final String input)
+	{
+		try
+		{
+			new BitcoinURI(params, input);
+			return true;
+		}
+		catch (final Exception x)
+		{
+		}
+
+		try
+		{
+			new Address(params, input);
+			return true;
+		}
+		catch (final Exception x)
+		{
+		}
+
+		try
+		{
+			new DumpedPrivateKey(params, input);
+			return true;
+		}
+		catch (final Exception x)
+		{
+		}
+
+		try
+		{
+			new Transaction(params, Qr.decodeBinary(input));
+			return true;
+		}
+		catch (final Exception x)
+		{
+			return false;
+		}
+	}
+
+	private String address()
+	{
+		return new ECKey().toAddress(params).toString();
+	}
+
+	private String transaction()
+	{
+		final Transaction tx = new Transaction(params);
+		for (int i = 0; i < 3; i++)
+			tx.addOutput(Utils.CENT, new ECKey().toAddress(params));
+		return Qr.encodeBinary(tx.bitcoinSerialize());
+	}
+
+	private static String corrupt(final String input)
+	{
+		final char[] chars = input.toCharArray();
+		final int i = chars.length / 2;
+		chars[i] = chars[i] == 'x' ? 'y' : 'x';
+		return new String(chars);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class LabelCsvTest
+{
+	@Test
+	public void parseLine() throws Exception
+	{
+		assertEquals(Arrays.asList("a", "b"), LabelCsv.parseLine("a,b"));
+		assertEquals(Arrays.asList("a", ""), LabelCsv.parseLine("a,"));
+		assertEquals(Arrays.asList("a", "b, c"), LabelCsv.parseLine("a,\"b, c\""));
+		assertEquals(Arrays.asList("a", "say \"hi\""), LabelCsv.parseLine("a,\"say \"\"hi\"\"\""));
+		assertEquals(Arrays.asList(""), LabelCsv.parseLine(""));
+	}
+
+	@Test(expected = IOException.class)
+	public void unterminatedQuote() throws Exception
+	{
+		LabelCsv.parseLine("a,\"b");
+	}
+
+	@Test
+	public void readLabelsSkipsBadLines() throws Exception
+	{
+		final String csv = "address,label\n" //
+				+ "LKDxGDJq5fF4FohAB8zJH24mDDNHDNtqsE,\"Alice, Inc.\"\n" //
+				+ "LKKG9A9a8n7CeHK8Nk7RdNZiCuHZW2U789,\"unterminated\n" //
+				+ "LKKG9A9a8n7CeHK8Nk7RdNZiCuHZW2U789,\n" //
+				+ "not an address,Bob\n" //
+				+ "\n" //
+				+ "LKKG9A9a8n7CeHK8Nk7RdNZiCuHZW2U789,Carol\n";
+
+		final LabelCsv.Result result = LabelCsv.readLabels(new StringReader(csv), LitecoinParams.get());
+
+		assertEquals(2, result.labels.size());
+		assertEquals("Alice, Inc.", result.labels.get("LKDxGDJq5fF4FohAB8zJH24mDDNHDNtqsE"));
+		assertEquals("Carol", result.labels.get("LKKG9A9a8n7CeHK8Nk7RdNZiCuHZW2U789"));
+		assertEquals(3, result.numBadLines);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Transaction.SigHash;
+import com.google.bitcoin.core.TransactionInput;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.Wallet;
+
+/**
+ * Also serves as benchmark: signing a synthetic 500-input transaction logs the time taken sequentially and in
+ * parallel.
+ *
+ * @author Litecoin Dev Team
+ */
+public class ParallelInputSignerTest
+{
+	private static final int NUM_INPUTS = 500;
+
+	private final NetworkParameters params = LitecoinParams.get();
+	private Wallet wallet;
+	private Transaction funding;
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelInputSignerTest.class);
+
+	@Before
+	public void setUp()
+	{
+		wallet = new Wallet(params);
+		funding = new Transaction(params);
+
+		for (int i = 0; i < NUM_INPUTS; i++)
+		{
+			final ECKey key = new ECKey();
+			wallet.addKey(key);
+			funding.addOutput(Utils.CENT, key.toAddress(params));
+		}
+	}
+
+	@Test
+	public void signLargeTransaction() throws Exception
+	{
+		final Transaction sequential = spendAll();
+		final long sequentialStart = System.nanoTime();
+		sequential.signInputs(SigHash.ALL, wallet);
+		final long sequentialTime = System.nanoTime() - sequentialStart;
+
+		final Transaction parallel = spendAll();
+		final long parallelStart = System.nanoTime();
+		new ParallelInputSigner(wallet).signInputs(parallel, null);
+		final long parallelTime = System.nanoTime() - parallelStart;
+
+		for (int i = 0; i < NUM_INPUTS; i++)
+		{
+			final TransactionInput input = parallel.getInput(i);
+			input.getScriptSig().correctlySpends(parallel, i, funding.getOutput(i).getScriptPubKey(), true);
+		}
+		assertEquals(sequential.getInputs().size(), parallel.getInputs().size());
+
+		log.info("signing {} inputs: sequential {} ms, parallel {} ms on {} cores", new Object[] { NUM_INPUTS, sequentialTime / 1000000,
+				parallelTime / 1000000, Runtime.getRuntime().availableProcessors() });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void alreadySigned() throws Exception
+	{
+		final Transaction tx = spendAll();
+		final ParallelInputSigner signer = new ParallelInputSigner(wallet);
+		signer.signInputs(tx, null);
+		signer.signInputs(tx, null);
+	}
+
+	private Transaction spendAll()
+	{
+		final Transaction tx = new Transaction(params);
+		tx.addOutput(Utils.CENT.multiply(BigInteger.valueOf(NUM_INPUTS - 1)), new ECKey().toAddress(params));
+		for (int i = 0; i < NUM_INPUTS; i++)
+			tx.addInput(funding.getOutput(i));
+		return tx;
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.litecoin.LitecoinParams;
+
+import com.google.bitcoin.core.AbstractBlockChain.NewBlockType;
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.StoredBlock;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+
+import de.schildbach.wallet.UnspentOutputIndex;
+import de.schildbach.wallet.util.PaymentBatch.Payment;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class PaymentBatchTest
+{
+	private static final String ADDRESS_1 = "LKDxGDJq5fF4FohAB8zJH24mDDNHDNtqsE";
+	private static final String ADDRESS_2 = "LKKG9A9a8n7CeHK8Nk7RdNZiCuHZW2U789";
+	private static final BigInteger COIN = BigInteger.valueOf(100000000);
+	private static final BigInteger FEE = BigInteger.valueOf(100000);
+
+	private final NetworkParameters params = LitecoinParams.get();
+	private Wallet wallet;
+	private Address changeAddress;
+	private FeeAwareCoinSelector coinSelector;
+
+	@Before
+	public void setUp()
+	{
+		wallet = new Wallet(params);
+		final ECKey key = new ECKey();
+		wallet.addKey(key);
+		changeAddress = key.toAddress(params);
+		coinSelector = new FeeAwareCoinSelector(wallet, new UnspentOutputIndex(wallet), FEE, FEE, FEE);
+	}
+
+	@Test
+	public void read() throws Exception
+	{
+		final List<Payment> payments = PaymentBatch.read(new StringReader("address,amount,label\n" //
+				+ "\n" //
+				+ "# comment\n" //
+				+ ADDRESS_1 + ",1.5,\"Alice, Bob\"\n" //
+				+ ADDRESS_2 + ",0.001,\n" //
+				+ "litecoin:" + ADDRESS_1 + "?amount=2&label=Carol\n"), params);
+
+		assertEquals(3, payments.size());
+		assertEquals(ADDRESS_1, payments.get(0).address.toString());
+		assertEquals(BigInteger.valueOf(150000000), payments.get(0).amount);
+		assertEquals("Alice, Bob", payments.get(0).label);
+		assertEquals(BigInteger.valueOf(100000), payments.get(1).amount);
+		assertNull(payments.get(1).label);
+		assertEquals(COIN.multiply(BigInteger.valueOf(2)), payments.get(2).amount);
+		assertEquals("Carol", payments.get(2).label);
+	}
+
+	@Test
+	public void readWithoutHeader() throws Exception
+	{
+		final List<Payment> payments = PaymentBatch.read(new StringReader(ADDRESS_1 + ",1\n"), params);
+
+		assertEquals(1, payments.size());
+		assertEquals(COIN, payments.get(0).amount);
+	}
+
+	@Test
+	public void readRejectsBadLines() throws Exception
+	{
+		assertUnreadable(ADDRESS_1 + ",1\nnot an address,1\n");
+		assertUnreadable(ADDRESS_1 + "\n");
+		assertUnreadable(ADDRESS_1 + ",one\n");
+		assertUnreadable(ADDRESS_1 + ",-1\n");
+		assertUnreadable(ADDRESS_1 + ",0\n");
+		assertUnreadable(ADDRESS_1 + ",0.000000001\n");
+		assertUnreadable("litecoin:" + ADDRESS_1 + "\n");
+	}
+
+	@Test
+	public void planSingleTransaction() throws Exception
+	{
+		receive(COIN, COIN);
+
+		final List<Payment> payments = new ArrayList<Payment>();
+		payments.add(payment(ADDRESS_1, COIN.divide(BigInteger.valueOf(2))));
+		payments.add(payment(ADDRESS_2, COIN.divide(BigInteger.valueOf(4))));
+
+		final PaymentBatch.Plan plan = PaymentBatch.plan(payments, coinSelector, changeAddress);
+
+		assertEquals(1, plan.sendRequests.size());
+		assertEquals(1, plan.selections.size());
+		assertEquals(BigInteger.valueOf(75000000), plan.amount);
+		assertEquals(plan.selections.get(0).fee, plan.fee);
+
+		final Transaction tx = plan.sendRequests.get(0).tx;
+		assertEquals(2, tx.getOutputs().size());
+		assertEquals(0, tx.getInputs().size()); // added on completion
+		assertEquals(plan.fee, plan.sendRequests.get(0).fee);
+	}
+
+	@Test
+	public void planSplitsLargeBatches() throws Exception
+	{
+		receive(COIN, COIN, COIN, COIN);
+
+		final int numPayments = 2000;
+		final BigInteger amount = BigInteger.valueOf(100000);
+		final List<Payment> payments = new ArrayList<Payment>(numPayments);
+		for (int i = 0; i < numPayments; i++)
+			payments.add(payment(i % 2 == 0 ? ADDRESS_1 : ADDRESS_2, amount));
+
+		final PaymentBatch.Plan plan = PaymentBatch.plan(payments, coinSelector, changeAddress);
+
+		assertTrue(plan.sendRequests.size() > 1);
+		assertEquals(amount.multiply(BigInteger.valueOf(numPayments)), plan.amount);
+
+		int numOutputs = 0;
+		BigInteger fee = BigInteger.ZERO;
+		final Set<TransactionOutput> inputs = new HashSet<TransactionOutput>();
+		for (int i = 0; i < plan.sendRequests.size(); i++)
+		{
+			final FeeAwareCoinSelector.Selection selection = plan.selections.get(i);
+			numOutputs += plan.sendRequests.get(i).tx.getOutputs().size();
+			fee = fee.add(selection.fee);
+			assertTrue(selection.estimatedSize <= PaymentBatch.MAX_TRANSACTION_SIZE);
+
+			// transactions of a batch must not share inputs
+			for (final TransactionOutput input : selection.inputs)
+				assertTrue(inputs.add(input));
+		}
+
+		assertEquals(numPayments, numOutputs);
+		assertEquals(plan.fee, fee);
+	}
+
+	@Test
+	public void planInsufficientMoney() throws Exception
+	{
+		receive(COIN);
+
+		final List<Payment> payments = new ArrayList<Payment>();
+		payments.add(payment(ADDRESS_1, COIN.divide(BigInteger.valueOf(2))));
+		payments.add(payment(ADDRESS_2, COIN.divide(BigInteger.valueOf(2))));
+
+		try
+		{
+			PaymentBatch.plan(payments, coinSelector, changeAddress);
+			fail();
+		}
+		catch (final FeeAwareCoinSelector.InsufficientMoneyException x)
+		{
+			assertTrue(x.missing.signum() > 0);
+		}
+	}
+
+	private void assertUnreadable(final String csv)
+	{
+		try
+		{
+			PaymentBatch.read(new StringReader(csv), params);
+			fail(csv);
+		}
+		catch (final IOException x)
+		{
+			// expected
+		}
+	}
+
+	private Payment payment(final String address, final BigInteger amount) throws Exception
+	{
+		return new Payment(new Address(params, address), amount, null);
+	}
+
+	private void receive(final BigInteger... values) throws Exception
+	{
+		final StoredBlock block = new StoredBlock(params.getGenesisBlock().cloneAsHeader(), BigInteger.ONE, 1);
+
+		for (final BigInteger value : values)
+		{
+			final Transaction tx = new Transaction(params);
+			tx.addInput(new Transaction(params).addOutput(value, new ECKey().toAddress(params)));
+			tx.addOutput(value, changeAddress);
+			wallet.receiveFromBlock(tx, block, NewBlockType.BEST_CHAIN, 0);
+		}
+	}
+}
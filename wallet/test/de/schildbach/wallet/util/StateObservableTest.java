@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class StateObservableTest
+{
+	@Test
+	public void coalesceToLatest()
+	{
+		final StateObservable<Integer> observable = new StateObservable<Integer>();
+		final ManualExecutor executor = new ManualExecutor();
+		final RecordingListener listener = new RecordingListener();
+		observable.addListener(listener, executor);
+
+		for (int i = 1; i <= 100; i++)
+			observable.set(i);
+
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+		assertEquals(1, listener.states.size());
+		assertEquals(100, (int) listener.states.get(0));
+	}
+
+	@Test
+	public void deliverCurrentOnRegistration()
+	{
+		final StateObservable<Integer> observable = new StateObservable<Integer>();
+		final ManualExecutor executor = new ManualExecutor();
+		observable.set(7);
+
+		final RecordingListener listener = new RecordingListener();
+		observable.addListener(listener, executor);
+		executor.runAll();
+		assertEquals(1, listener.states.size());
+		assertEquals(7, (int) listener.states.get(0));
+
+		// same value again is not delivered
+		observable.set(7);
+		executor.runAll();
+		assertEquals(1, listener.states.size());
+	}
+
+	@Test
+	public void noDeliveryAfterRemoval()
+	{
+		final StateObservable<Integer> observable = new StateObservable<Integer>();
+		final ManualExecutor executor = new ManualExecutor();
+		final RecordingListener listener = new RecordingListener();
+		observable.addListener(listener, executor);
+
+		observable.set(1);
+		observable.removeListener(listener);
+		executor.runAll();
+		assertTrue(listener.states.isEmpty());
+
+		observable.clear();
+		assertNull(observable.get());
+	}
+
+	private static class ManualExecutor implements Executor
+	{
+		public final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+		@Override
+		public void execute(final Runnable command)
+		{
+			tasks.add(command);
+		}
+
+		public void runAll()
+		{
+			Runnable task;
+			while (null != (task = tasks.poll()))
+				task.run();
+		}
+	}
+
+	private static class RecordingListener implements StateObservable.Listener<Integer>
+	{
+		public final List<Integer> states = new ArrayList<Integer>();
+
+		@Override
+		public void onStateChanged(final Integer state)
+		{
+			states.add(state);
+		}
+	}
+}
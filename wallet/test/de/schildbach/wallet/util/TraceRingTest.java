@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Litecoin Dev Team
+ */
+public class TraceRingTest
+{
+	private static final int NUM_SLOTS = 4;
+	private static final int SLOT_SIZE = 1024;
+
+	private File file;
+	private TraceRing ring;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile("traces", null);
+		file.delete();
+		ring = new TraceRing(file, NUM_SLOTS, SLOT_SIZE);
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void empty() throws Exception
+	{
+		assertTrue(ring.isEmpty());
+
+		final StringBuilder report = new StringBuilder();
+		ring.copyTo(report);
+		assertEquals("", report.toString());
+	}
+
+	@Test
+	public void deduplicate() throws Exception
+	{
+		for (int i = 0; i < 1000; i++)
+			ring.add(trace("peer flapping"), i * 1000L, "1.0", 1);
+		ring.add(trace("something else"), 0, "1.0", 1);
+
+		final String report = report();
+		assertEquals(1, occurrences(report, "peer flapping"));
+		assertTrue(report.contains("1000 times"));
+		assertEquals(1, occurrences(report, "something else"));
+		assertEquals(16 + NUM_SLOTS * SLOT_SIZE, file.length());
+	}
+
+	@Test
+	public void overwriteOldest() throws Exception
+	{
+		for (int i = 0; i < NUM_SLOTS + 2; i++)
+			ring.add(trace("trace " + i + "."), 0, "1.0", 1);
+
+		final String report = report();
+		assertFalse(report.contains("trace 0."));
+		assertFalse(report.contains("trace 1."));
+		for (int i = 2; i < NUM_SLOTS + 2; i++)
+			assertEquals(1, occurrences(report, "trace " + i + "."));
+		assertTrue(report.indexOf("trace 2.") < report.indexOf("trace " + (NUM_SLOTS + 1) + "."));
+		assertEquals(16 + NUM_SLOTS * SLOT_SIZE, file.length());
+	}
+
+	@Test
+	public void truncate() throws Exception
+	{
+		// random text does not compress
+		final Random random = new Random(0);
+		final StringBuilder trace = new StringBuilder("huge");
+		for (int i = 0; i < SLOT_SIZE * 4; i++)
+			trace.append((char) ('a' + random.nextInt(26)));
+		ring.add(trace.toString(), 0, "1.0", 1);
+
+		final String report = report();
+		assertTrue(report.contains("huge"));
+		assertTrue(report.contains("truncated"));
+	}
+
+	@Test
+	public void startOverIfDamaged() throws Exception
+	{
+		final FileOutputStream os = new FileOutputStream(file);
+		os.write("not a trace ring".getBytes());
+		os.close();
+
+		ring.add(trace("fresh"), 0, "1.0", 1);
+		assertTrue(report().contains("fresh"));
+	}
+
+	@Test
+	public void clear() throws Exception
+	{
+		ring.add(trace("cleared"), 0, "1.0", 1);
+		assertFalse(ring.isEmpty());
+		ring.clear();
+		assertTrue(ring.isEmpty());
+	}
+
+	private String report() throws Exception
+	{
+		final StringBuilder report = new StringBuilder();
+		ring.copyTo(report);
+		return report.toString();
+	}
+
+	private static String trace(final String message)
+	{
+		return "java.lang.RuntimeException: " + message + "\n\tat de.schildbach.wallet.Foo.bar(Foo.java:42)\n";
+	}
+
+	private static int occurrences(final String text, final String part)
+	{
+		int count = 0;
+		for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1))
+			count++;
+		return count;
+	}
+}